@@ -0,0 +1,73 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import com.robtheis.aptr.transport.HttpClientTransport;
+import com.robtheis.aptr.transport.PooledTransport;
+import com.robtheis.aptr.transport.Transport;
+import java.io.IOException;
+import java.net.http.HttpClient;
+
+/**
+ * Where benchmark requests go: "memory" isolates the client's CPU and allocation cost,
+ * "loopback" adds the pooled HTTP transport and a stub server on 127.0.0.1, and "httpclient"
+ * sends everything to the stub through the JDK HTTP client.
+ */
+final class Backend {
+  static final String MEMORY = "memory";
+  static final String LOOPBACK = "loopback";
+  static final String HTTP_CLIENT = "httpclient";
+
+  private final StubServer server;
+  private final Transport transport;
+  private final String endpoint;
+
+  Backend(final String kind) throws IOException {
+    if (MEMORY.equals(kind)) {
+      server = null;
+      transport = new InMemoryTransport();
+      endpoint = InMemoryTransport.ENDPOINT;
+    } else if (LOOPBACK.equals(kind)) {
+      server = StubServer.start();
+      transport = new PooledTransport();
+      endpoint = server.getEndpoint();
+    } else if (HTTP_CLIENT.equals(kind)) {
+      server = StubServer.start();
+      // No fallback, so blocking requests stay on the HTTP client too
+      transport = new HttpClientTransport(HttpClient.Version.HTTP_2, null, null);
+      endpoint = server.getEndpoint();
+    } else {
+      throw new IllegalArgumentException("unknown backend: " + kind);
+    }
+  }
+
+  Transport getTransport() {
+    return transport;
+  }
+
+  String getEndpoint() {
+    return endpoint;
+  }
+
+  void close() {
+    transport.shutdown();
+    if (server != null) {
+      server.stop();
+    }
+  }
+}
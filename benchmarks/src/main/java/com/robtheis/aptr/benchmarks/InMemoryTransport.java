@@ -0,0 +1,70 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.Transport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A transport that answers from {@link StubResponses} without touching a socket, so
+ * that benchmarks measure the client's own work: building the request URL, reading
+ * the body and parsing the JSON.
+ */
+final class InMemoryTransport implements Transport {
+  static final String ENDPOINT = "http://localhost/json/";
+
+  @Override
+  public HttpResponse execute(final HttpRequest request) throws IOException {
+    final URL url = request.getUrl();
+    String params = url.getQuery();
+    if (request.getBody() != null) {
+      // Written out as a connection would, so POST requests pay for encoding their body
+      final ByteArrayOutputStream form = new ByteArrayOutputStream();
+      request.getBody().writeTo(form);
+      params = new String(form.toByteArray(), StandardCharsets.US_ASCII);
+    }
+    final InputStream body = new ByteArrayInputStream(StubResponses.forRequest(url.getPath(), params));
+    return new HttpResponse() {
+      public int getStatusCode() {
+        return 200;
+      }
+
+      public String getHeader(final String name) {
+        return null;
+      }
+
+      public InputStream getBody() {
+        return body;
+      }
+
+      public void close() {
+      }
+    };
+  }
+
+  @Override
+  public void shutdown() {
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link Language#fromString(String)} and {@link LanguagePair#fromString(String)}
+ * for the first and last codes in the enum and for a code that is not there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanguageBenchmark {
+
+  @Param({"an", "cy", "zz"})
+  public String code;
+
+  // Copied so the lookup cannot be folded into an identity comparison
+  private String lookup;
+  private String pairLookup;
+
+  @Setup
+  public void setUp() {
+    lookup = new String(code);
+    pairLookup = code + "|es";
+  }
+
+  @Benchmark
+  public Language fromString() {
+    return Language.fromString(lookup);
+  }
+
+  @Benchmark
+  public LanguagePair pairFromString() {
+    return LanguagePair.fromString(pairLookup);
+  }
+}
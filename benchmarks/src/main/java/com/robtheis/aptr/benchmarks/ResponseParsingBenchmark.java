@@ -0,0 +1,123 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import com.robtheis.aptr.ApertiumTranslatorAPI;
+import com.robtheis.aptr.ClientSettings;
+import com.robtheis.aptr.transport.Transport;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The response readers of {@link ApertiumTranslatorAPI}, each fed a canned body:
+ * <ul>
+ * <li>retrieveString: inputStreamToString and jsonToString</li>
+ * <li>retrieveStringArr: inputStreamToString and jsonArrToStringArr</li>
+ * <li>retrieveIntArray: inputStreamToString and jsonToIntArr</li>
+ * <li>retrieveSubObjString: the streaming reader that replaced jsonSubObjToString</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+  // Exposes the protected readers
+  static final class Api extends ApertiumTranslatorAPI {
+    Api(final Transport transport) {
+      super(ClientSettings.builder().transport(transport).connectTimeout(0).readTimeout(0).build());
+    }
+
+    String string(final URL url) throws Exception {
+      return retrieveString(url);
+    }
+
+    String[] stringArray(final URL url, final String property) throws Exception {
+      return retrieveStringArr(url, property);
+    }
+
+    Integer[] intArray(final URL url) throws Exception {
+      return retrieveIntArray(url);
+    }
+
+    String subObjString(final URL url, final String property, final String subObjProperty) throws Exception {
+      return retrieveSubObjString(url, property, subObjProperty);
+    }
+  }
+
+  @Param({Backend.MEMORY, Backend.LOOPBACK})
+  public String backend;
+
+  private Backend target;
+  private Api api;
+  private URL stringUrl;
+  private URL stringArrayUrl;
+  private URL intArrayUrl;
+  private URL translateUrl;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    target = new Backend(backend);
+    api = new Api(target.getTransport());
+    stringUrl = new URL(target.getEndpoint() + "string");
+    stringArrayUrl = new URL(target.getEndpoint() + "stringArray");
+    intArrayUrl = new URL(target.getEndpoint() + "intArray");
+    translateUrl = new URL(target.getEndpoint() + "translate?q=x");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    target.close();
+  }
+
+  @Benchmark
+  public String retrieveString() throws Exception {
+    return api.string(stringUrl);
+  }
+
+  @Benchmark
+  public String[] retrieveStringArr() throws Exception {
+    return api.stringArray(stringArrayUrl, "text");
+  }
+
+  @Benchmark
+  public Integer[] retrieveIntArray() throws Exception {
+    return api.intArray(intArrayUrl);
+  }
+
+  @Benchmark
+  public String retrieveSubObjString() throws Exception {
+    return api.subObjString(translateUrl, "responseData", "translatedText");
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Canned Apertium responses, shared by the in-memory transport and the stub server
+ * so that both backends return byte-for-byte the same bodies.
+ */
+final class StubResponses {
+  static final String KEY = "0123456789abcdef0123456789abcdef";
+
+  static final String TRANSLATED_TEXT = "The quick brown fox jumps over the lazy dog.";
+
+  private static final String TRANSLATION = "{\"responseData\":{\"translatedText\":\"" + TRANSLATED_TEXT
+      + "\"},\"responseDetails\":null,\"responseStatus\":200}";
+
+  private static final byte[] STRING = bytes("\"" + TRANSLATED_TEXT + "\"");
+  private static final byte[] STRING_ARRAY = bytes(stringArray(32));
+  private static final byte[] INT_ARRAY = bytes(intArray(256));
+  private static final byte[] NOT_FOUND = bytes("{\"responseData\":null,\"responseDetails\":\"Not found\",\"responseStatus\":404}");
+
+  private StubResponses() {
+  }
+
+  /**
+   * Returns the body for a request to the given path. Translate requests get one
+   * translation per q parameter, as the service does.
+   */
+  static byte[] forRequest(final String path, final String rawQuery) {
+    if (path.endsWith("/translate")) {
+      return translations(countTexts(rawQuery));
+    } else if (path.endsWith("/string")) {
+      return STRING;
+    } else if (path.endsWith("/stringArray")) {
+      return STRING_ARRAY;
+    } else if (path.endsWith("/intArray")) {
+      return INT_ARRAY;
+    }
+    return NOT_FOUND;
+  }
+
+  private static int countTexts(final String rawQuery) {
+    int count = 0;
+    if (rawQuery != null) {
+      for (int i = rawQuery.indexOf("q="); i >= 0; i = rawQuery.indexOf("q=", i + 2)) {
+        if (i == 0 || rawQuery.charAt(i - 1) == '&') {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private static byte[] translations(final int count) {
+    if (count <= 1) {
+      return bytes(TRANSLATION);
+    }
+    final StringBuilder body = new StringBuilder("{\"responseData\":[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append(TRANSLATION);
+    }
+    return bytes(body.append("],\"responseDetails\":null,\"responseStatus\":200}").toString());
+  }
+
+  private static String stringArray(final int count) {
+    final StringBuilder body = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append("{\"sourceLanguage\":\"en\",\"targetLanguage\":\"es\",\"text\":\"").append(TRANSLATED_TEXT).append("\"}");
+    }
+    return body.append(']').toString();
+  }
+
+  private static String intArray(final int count) {
+    final StringBuilder body = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append(i * 7919 % 100000);
+    }
+    return body.append(']').toString();
+  }
+
+  private static byte[] bytes(final String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process HTTP server on the loopback interface that answers like the Apertium
+ * JSON API, so that benchmarks exercise the real transport without a key or network.
+ */
+final class StubServer {
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private StubServer(final HttpServer pServer, final ExecutorService pExecutor) {
+    server = pServer;
+    executor = pExecutor;
+  }
+
+  static StubServer start() throws IOException {
+    // Otherwise Nagle's algorithm holds the body back behind the headers until the
+    // client's delayed ACK, adding about 40 ms to every request
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+      final Thread thread = new Thread(r, "stub-server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", exchange -> {
+      String params = exchange.getRequestURI().getRawQuery();
+      try (InputStream in = exchange.getRequestBody()) {
+        final byte[] form = in.readAllBytes();
+        if ("POST".equals(exchange.getRequestMethod())) {
+          params = new String(form, StandardCharsets.US_ASCII);
+        }
+      }
+      final byte[] body = StubResponses.forRequest(exchange.getRequestURI().getPath(), params);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    return new StubServer(server, executor);
+  }
+
+  /**
+   * Returns the base URL the server answers on, ending in "/json/".
+   */
+  String getEndpoint() {
+    return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/json/";
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.benchmarks;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.translate.TranslatorClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end cost of a translate call: URL construction, the request, and parsing the
+ * response. {@code Translate.execute} delegates to the same {@link TranslatorClient}
+ * code; a client is used here so the requests can be pointed at the stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslateBenchmark {
+  private static final String TEXT = "El veloz murciélago hindú comía feliz cardillo y kiwi.";
+
+  @Param({Backend.MEMORY, Backend.LOOPBACK, Backend.HTTP_CLIENT})
+  public String backend;
+
+  private Backend target;
+  private TranslatorClient client;
+  private String[] batch;
+  // Long enough to be sent as a POST
+  private String large;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    target = new Backend(backend);
+    client = TranslatorClient.builder()
+      .endpoint(target.getEndpoint())
+      .key(StubResponses.KEY)
+      .transport(target.getTransport())
+      .build();
+    batch = new String[16];
+    for (int i = 0; i < batch.length; i++) {
+      batch[i] = TEXT + " " + i;
+    }
+    final StringBuilder text = new StringBuilder();
+    while (text.length() < 8000) {
+      text.append(TEXT).append(' ');
+    }
+    large = text.toString();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    target.close();
+  }
+
+  @Benchmark
+  public String translate() throws Exception {
+    return client.translate(TEXT, Language.SPANISH, Language.ENGLISH);
+  }
+
+  @Benchmark
+  public String translateLarge() throws Exception {
+    return client.translate(large, Language.SPANISH, Language.ENGLISH);
+  }
+
+  @Benchmark
+  public String[] translateBatch() throws Exception {
+    return client.translate(batch, Language.SPANISH, Language.ENGLISH);
+  }
+
+  // The texts of the batch as concurrent single requests, which is where the transport's
+  // handling of many requests in flight shows
+  @Benchmark
+  public String[] translateConcurrent() throws Exception {
+    final List<CompletableFuture<String>> pending = new ArrayList<CompletableFuture<String>>(batch.length);
+    for (int i = 0; i < batch.length; i++) {
+      pending.add(client.translateAsync(batch[i], Language.SPANISH, Language.ENGLISH));
+    }
+    final String[] results = new String[batch.length];
+    for (int i = 0; i < batch.length; i++) {
+      results[i] = pending.get(i).get();
+    }
+    return results;
+  }
+}
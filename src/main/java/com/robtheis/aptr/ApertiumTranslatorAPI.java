@@ -19,10 +19,31 @@
 package com.robtheis.aptr;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import com.robtheis.aptr.language.LanguagePair;
+import com.robtheis.aptr.metrics.MetricsRegistry;
+import com.robtheis.aptr.transport.HttpClientTransport;
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.PooledTransport;
+import com.robtheis.aptr.transport.RequestBody;
+import com.robtheis.aptr.transport.Transport;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
@@ -30,24 +51,114 @@ import org.json.simple.JSONValue;
 /**
  * Makes the generic Apertium API calls. Different service classes can then
  * extend this to make the specific service calls.
+ *
+ * Each instance sends its requests with its own transport, referrer and timeouts.
+ * The static setters configure the defaults used by the static service classes.
  */
 public abstract class ApertiumTranslatorAPI {
   //Encoding type
   protected static final String ENCODING = "UTF-8";
 
   protected static String apiKey;
-  private static String referrer;
+  private static String defaultReferrer;
+  private static volatile Transport defaultTransport = new PooledTransport();
+
+  //Timeouts, so that a stalled server cannot hang a caller indefinitely
+  public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+  public static final int DEFAULT_READ_TIMEOUT = 30000;
+  private static volatile int defaultConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+  private static volatile int defaultReadTimeout = DEFAULT_READ_TIMEOUT;
+  private static volatile long defaultDeadline;
+  private static volatile double defaultHedgePercentile;
+
+  //Asynchronous requests
+  public static final int DEFAULT_MAX_ASYNC_REQUESTS = 64;
+  private static volatile Executor defaultAsyncExecutor;
+  private static volatile int defaultMaxAsyncRequests = DEFAULT_MAX_ASYNC_REQUESTS;
+  private static volatile RateLimiter defaultRateLimiter;
+  private static volatile MetricsRegistry defaultMetrics;
+  private static volatile CircuitBreaker defaultCircuitBreaker;
+
+  // Bumped whenever one of the static defaults changes
+  private static final AtomicInteger DEFAULTS_VERSION = new AtomicInteger();
+
+  private static final String RESPONSE_DETAILS = "responseDetails";
+  private static final String RESPONSE_STATUS = "responseStatus";
 
   protected static final String PARAM_API_KEY = "key=",
                                 PARAM_LANG_PAIR = "&langpair=",
                                 PARAM_TEXT = "&q=";
 
+  private final Transport transport;
+  private final String referrer;
+  private final int connectTimeout;
+  private final int readTimeout;
+  private final long deadline;
+  // Null unless requests are hedged
+  private final LatencyWindow latencies;
+  private final Executor asyncExecutor;
+  private final InFlightLimiter asyncLimiter;
+  private final RateLimiter rateLimiter;
+  // Null unless requests are reported
+  private final MetricsRegistry metrics;
+  // Null unless failing endpoints are cut off
+  private final CircuitBreaker circuitBreaker;
+
+  /**
+   * Creates an instance that sends requests using the static defaults.
+   */
+  protected ApertiumTranslatorAPI() {
+    this(ClientSettings.builder()
+        .transport(defaultTransport)
+        .referrer(defaultReferrer)
+        .connectTimeout(defaultConnectTimeout)
+        .readTimeout(defaultReadTimeout)
+        .deadline(defaultDeadline)
+        .hedging(defaultHedgePercentile)
+        .asyncExecutor(defaultAsyncExecutor)
+        .maxAsyncRequests(defaultMaxAsyncRequests)
+        .rateLimiter(defaultRateLimiter)
+        .metrics(defaultMetrics)
+        .circuitBreaker(defaultCircuitBreaker)
+        .build());
+  }
+
+  /**
+   * Creates an instance with its own request settings.
+   * 
+   * @param settings The transport, timeouts and other settings to send requests with.
+   */
+  protected ApertiumTranslatorAPI(final ClientSettings settings) {
+    if(settings==null) {
+      throw new IllegalArgumentException("settings must not be null");
+    }
+    transport = settings.transport;
+    referrer = settings.referrer;
+    connectTimeout = settings.connectTimeout;
+    readTimeout = settings.readTimeout;
+    deadline = settings.deadline;
+    latencies = settings.hedgePercentile==0 ? null
+        : settings.latencies!=null&&settings.latencies.getPercentile()==settings.hedgePercentile ? settings.latencies
+        : new LatencyWindow(settings.hedgePercentile);
+    asyncExecutor = settings.asyncExecutor;
+    asyncLimiter = new InFlightLimiter(settings.maxAsyncRequests, asyncExecutor!=null ? asyncExecutor : ForkJoinPool.commonPool());
+    rateLimiter = settings.rateLimiter;
+    metrics = settings.metrics;
+    circuitBreaker = settings.circuitBreaker;
+  }
+
+  // The recent latencies hedging is based on, or null if requests are not hedged
+  LatencyWindow getLatencyWindow() {
+    return latencies;
+  }
+
   /**
    * Sets the API key.
    * @param pKey The API key.
    */
   public static void setKey(final String pKey) {
     apiKey = pKey;
+    defaultsChanged();
   }
 
   /**
@@ -55,7 +166,202 @@ public abstract class ApertiumTranslatorAPI {
    * @param pKey The referrer.
    */
   public static void setHttpReferrer(final String pReferrer) {
-    referrer = pReferrer;
+    defaultReferrer = pReferrer;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets the transport used to send requests. The default is a {@link PooledTransport}, which
+   * reuses HTTP/1.1 keep-alive connections. For endpoints that speak HTTP/2, an
+   * {@link HttpClientTransport} multiplexes requests over one connection instead. The previous
+   * transport is not shut down.
+   * @param pTransport The transport.
+   */
+  public static void setTransport(final Transport pTransport) {
+    if(pTransport==null) {
+      throw new IllegalArgumentException("transport must not be null");
+    }
+    defaultTransport = pTransport;
+    defaultsChanged();
+  }
+
+  /**
+   * Returns the transport used to send requests.
+   * @return The current transport.
+   */
+  public static Transport getTransport() {
+    return defaultTransport;
+  }
+
+  /**
+   * Sets the executor that asynchronous requests run on: blocking sends, for a transport such
+   * as {@link PooledTransport}, and completion handlers, including JSON parsing. Pass null,
+   * the default, to leave both to the transport. A {@link PooledTransport} then runs them on
+   * its own threads, one for each connection it may open, and an {@link HttpClientTransport}
+   * on the HTTP client's. Neither uses the common fork/join pool.
+   * @param pExecutor The executor, or null.
+   */
+  public static void setAsyncExecutor(final Executor pExecutor) {
+    defaultAsyncExecutor = pExecutor;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets the maximum number of asynchronous requests on the wire at once. Further
+   * requests are queued, without blocking the caller, until earlier ones complete.
+   * @param pMaxRequests The in-flight limit.
+   */
+  public static void setMaxAsyncRequests(final int pMaxRequests) {
+    if(pMaxRequests<1) {
+      throw new IllegalArgumentException("maxRequests must be at least 1");
+    }
+    defaultMaxAsyncRequests = pMaxRequests;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets the rate limiter that paces requests, or null to send them as they come.
+   * @param pRateLimiter The rate limiter, or null.
+   */
+  public static void setRateLimiter(final RateLimiter pRateLimiter) {
+    defaultRateLimiter = pRateLimiter;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets the registry that receives a report of every request sent, or null to report
+   * nothing, which is the default.
+   * @param pMetrics The registry, or null.
+   */
+  public static void setMetricsRegistry(final MetricsRegistry pMetrics) {
+    defaultMetrics = pMetrics;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets the circuit breaker that requests go through, or null to always send them, which
+   * is the default.
+   * @param pCircuitBreaker The breaker, or null.
+   */
+  public static void setCircuitBreaker(final CircuitBreaker pCircuitBreaker) {
+    defaultCircuitBreaker = pCircuitBreaker;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets how long to wait for a connection to be established. Defaults to
+   * {@link #DEFAULT_CONNECT_TIMEOUT}.
+   * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+   */
+  public static void setConnectTimeout(final int millis) {
+    if(millis<0) {
+      throw new IllegalArgumentException("millis must not be negative");
+    }
+    defaultConnectTimeout = millis;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets how long to wait for the server to respond once connected. Defaults to
+   * {@link #DEFAULT_READ_TIMEOUT}.
+   * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+   */
+  public static void setReadTimeout(final int millis) {
+    if(millis<0) {
+      throw new IllegalArgumentException("millis must not be negative");
+    }
+    defaultReadTimeout = millis;
+    defaultsChanged();
+  }
+
+  /**
+   * Sets how long a call may take in all, counting every request it makes (such as each
+   * hop of a pivot translation) and any wait on the rate limiter, before it fails with a
+   * {@link TimeoutException}.
+   * @param millis The deadline in milliseconds, or 0 for none, which is the default.
+   */
+  public static void setDeadline(final long millis) {
+    if(millis<0) {
+      throw new IllegalArgumentException("millis must not be negative");
+    }
+    defaultDeadline = millis;
+    defaultsChanged();
+  }
+
+  /**
+   * Turns hedged requests on or off. When on, a request still unanswered after the given
+   * percentile of recent latency is sent a second time, and whichever response arrives first
+   * is used. At the 95th percentile, that costs about 5% more requests. It is off by default.
+   * @param percentile The percentile, between 0 and 1 (such as 0.95), or 0 to turn hedging off.
+   */
+  public static void setHedgePercentile(final double percentile) {
+    if(percentile!=0) {
+      LatencyWindow.checkPercentile(percentile);
+    }
+    defaultHedgePercentile = percentile;
+    defaultsChanged();
+  }
+
+  protected static int getConnectTimeout() {
+    return defaultConnectTimeout;
+  }
+
+  protected static int getReadTimeout() {
+    return defaultReadTimeout;
+  }
+
+  protected static long getDeadline() {
+    return defaultDeadline;
+  }
+
+  protected static double getHedgePercentile() {
+    return defaultHedgePercentile;
+  }
+
+  protected static RateLimiter getRateLimiter() {
+    return defaultRateLimiter;
+  }
+
+  protected static MetricsRegistry getMetricsRegistry() {
+    return defaultMetrics;
+  }
+
+  protected static CircuitBreaker getCircuitBreaker() {
+    return defaultCircuitBreaker;
+  }
+
+  protected static String getHttpReferrer() {
+    return defaultReferrer;
+  }
+
+  protected static Executor getAsyncExecutor() {
+    return defaultAsyncExecutor;
+  }
+
+  protected static int getMaxAsyncRequests() {
+    return defaultMaxAsyncRequests;
+  }
+
+  /**
+   * Returns a number that changes whenever one of the static defaults is set, so that
+   * subclasses can tell when an instance built from them is out of date.
+   * @return The current version of the defaults.
+   */
+  protected static int getDefaultsVersion() {
+    return DEFAULTS_VERSION.get();
+  }
+
+  /**
+   * Bumps the version returned by {@link #getDefaultsVersion()}. Subclasses with static
+   * settings of their own call this when one of them changes.
+   */
+  protected static void defaultsChanged() {
+    DEFAULTS_VERSION.incrementAndGet();
+  }
+
+  // Parses the body of a successful response
+  private interface ResponseReader<T> {
+    T read(InputStream body) throws Exception;
   }
 
   /**
@@ -65,26 +371,304 @@ public abstract class ApertiumTranslatorAPI {
    * @return The translated String.
    * @throws Exception on error.
    */
-  private static String retrieveResponse(final URL url) throws Exception {
-    final HttpURLConnection uc = (HttpURLConnection) url.openConnection();
+  private String retrieveResponse(final URL url) throws Exception {
+    return retrieveResponse(ServiceRequest.to(url), ApertiumTranslatorAPI::inputStreamToString);
+  }
+
+  /**
+   * Applies this instance's deadline to call options that carry none. A call should do this
+   * once when it starts and pass the result to each request it makes, so that they all share
+   * the one deadline.
+   * 
+   * @param options The caller's options.
+   * @return The options to send the call's requests with.
+   */
+  protected CallOptions startCall(final CallOptions options) {
+    if(options==null) {
+      throw new IllegalArgumentException("options must not be null");
+    }
+    return deadline>0&&!options.hasDeadline() ? options.withDeadlineAfter(deadline) : options;
+  }
+
+  /**
+   * Forms an HTTP request, sends it using GET method, or POST method if there is a body, and hands
+   * the response stream to the given reader, so the body can be parsed as it arrives.
+   * 
+   * @param call The request, with its body, timeouts, deadline and language pair.
+   * @param reader Parses the response body.
+   * @return The parsed result.
+   * @throws Exception on error.
+   */
+  private <T> T retrieveResponse(final ServiceRequest call, final ResponseReader<T> reader) throws Exception {
+    final URL url = call.getUrl();
+    final RequestBody body = call.getBody();
+    final CallOptions options = call.getOptions();
+    final LanguagePair pair = call.getPair();
+    if(latencies!=null&&options.isHedging()) {
+      // A hedge needs a second request on the wire, which the asynchronous path has without a second thread
+      return await(retrieveResponseAsync(call, reader));
+    }
+    // Fail fast, before waiting on the rate limiter, if the endpoint is cut off
+    final CircuitBreaker.Circuit circuit = circuitBreaker!=null ? circuitBreaker.circuit(url.getAuthority(), pair) : null;
+    final int permit = circuit!=null ? circuit.acquire() : 0;
+    final HttpRequest request;
+    try {
+      // Waiting on the limiter counts against the deadline, like any other part of the call
+      if(rateLimiter!=null&&!rateLimiter.tryAcquire(call.getSize(), options.remainingNanos(), TimeUnit.NANOSECONDS)) {
+        throw deadlineExceeded(null);
+      }
+      request = newRequest(url, body, options);
+    } catch (Exception ex) {
+      if(circuit!=null)
+        circuit.cancel(permit);
+      throw ex;
+    }
+    final RequestRecorder recorder = RequestRecorder.start(metrics, url, call.getSize(), pair, false);
+    final long start = System.nanoTime();
+    final T result;
+    try {
+      result = readResponse(transport.execute(request), reader, recorder);
+    } catch (Exception ex) {
+      if(recorder!=null)
+        recorder.finish(ex);
+      final Exception thrown = ex instanceof IOException&&options.remainingNanos()<=0 ? deadlineExceeded(ex) : ex;
+      if(circuit!=null)
+        circuit.record(permit, System.nanoTime() - start, thrown);
+      throw thrown;
+    }
+    final long elapsed = System.nanoTime() - start;
+    if(recorder!=null)
+      recorder.finish(null);
+    if(latencies!=null)
+      latencies.record(elapsed);
+    if(circuit!=null)
+      circuit.record(permit, elapsed, null);
+    return result;
+  }
+
+  // Builds the request, with its timeouts cut to the time left before the deadline
+  private HttpRequest newRequest(final URL url, final RequestBody body, final CallOptions options) throws TimeoutException {
+    final long remaining = options.remainingNanos();
+    if(remaining<=0) {
+      throw deadlineExceeded(null);
+    }
+    final HttpRequest request = new HttpRequest(body!=null ? "POST" : "GET", url);
     if(referrer!=null)
-      uc.setRequestProperty("referer", referrer);
-    uc.setRequestProperty("Content-Type","text/plain; charset=" + ENCODING);
-    uc.setRequestProperty("Accept-Charset",ENCODING);
-    uc.setRequestMethod("GET");
+      request.setHeader("referer", referrer);
+    request.setHeader("Content-Type","text/plain; charset=" + ENCODING);
+    request.setHeader("Accept-Charset",ENCODING);
+    request.setConnectTimeout(timeout(options.getConnectTimeout()!=0 ? options.getConnectTimeout() : connectTimeout, remaining));
+    request.setReadTimeout(timeout(options.getReadTimeout()!=0 ? options.getReadTimeout() : readTimeout, remaining));
+    if(body!=null) {
+      request.setBody(body);
+      // A translation POST has no side effects, so it may be resent on a fresh connection
+      request.setIdempotent(true);
+    }
+    return request;
+  }
+
+  // The timeout, or the time left if that is shorter; 0 means no timeout
+  private static int timeout(final int millis, final long remainingNanos) {
+    if(remainingNanos==Long.MAX_VALUE) {
+      return millis;
+    }
+    final long left = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999999));
+    return millis==0||left<millis ? (int)Math.min(Integer.MAX_VALUE, left) : millis;
+  }
 
+  private static TimeoutException deadlineExceeded(final Throwable cause) {
+    final TimeoutException ex = new TimeoutException("[apertium-translator-api] Deadline exceeded");
+    if(cause!=null)
+      ex.initCause(cause);
+    return ex;
+  }
+
+  // Checks the status and parses the body, then closes the response
+  private <T> T readResponse(final HttpResponse response, final ResponseReader<T> reader, final RequestRecorder recorder) throws Exception {
     try {
-      final int responseCode = uc.getResponseCode();
-      final String result = inputStreamToString(uc.getInputStream());
+      final int responseCode = response.getStatusCode();
+      final InputStream body = recorder!=null ? recorder.received(responseCode, response.getConnectNanos(), response.getBody()) : response.getBody();
       if(responseCode!=200) {
-        throw new Exception("Error from Apertium API: " + result);
+        throw new ServiceException("Error from Apertium API: " + inputStreamToString(body),
+            responseCode, ServiceException.parseRetryAfter(response.getHeader("Retry-After")));
       }
+      final T result = reader.read(body);
+      recordOutcome(null);
       return result;
+    } catch (ServiceException ex) {
+      recordOutcome(ex);
+      throw ex;
     } finally { 
-      if(uc!=null) {
-        uc.disconnect();
+      // Closing (not disconnecting) returns the connection to the pool
+      response.close();
+    }
+  }
+
+  /**
+   * Forms an HTTP request and sends it using GET method, or POST method if there is a body, without
+   * blocking the calling thread. The returned future completes with the response body as parsed by
+   * the given reader.
+   * 
+   * If requests are hedged and this one is still unanswered after the hedging percentile of
+   * recent latency, it is sent once more, and the first successful response wins. The call
+   * fails only if every request sent for it fails.
+   * 
+   * @param call The request, with its body, timeouts, deadline and language pair.
+   * @param reader Parses the response body.
+   * @return A future for the parsed result.
+   */
+  private <T> CompletableFuture<T> retrieveResponseAsync(final ServiceRequest call, final ResponseReader<T> reader) {
+    final URL url = call.getUrl();
+    final RequestBody body = call.getBody();
+    final CallOptions options = call.getOptions();
+    final LanguagePair pair = call.getPair();
+    final CircuitBreaker.Circuit circuit = circuitBreaker!=null ? circuitBreaker.circuit(url.getAuthority(), pair) : null;
+    final int permit;
+    try {
+      permit = circuit!=null ? circuit.acquire() : 0;
+    } catch (CircuitOpenException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    final HttpRequest request;
+    try {
+      request = newRequest(url, body, options);
+    } catch (TimeoutException ex) {
+      if(circuit!=null)
+        circuit.cancel(permit);
+      return CompletableFuture.failedFuture(ex);
+    }
+    final InFlightLimiter limiter = asyncLimiter;
+    final LatencyWindow window = options.isHedging() ? latencies : null;
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    final AtomicInteger attempts = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    // When the first attempt went out, or 0 until it does
+    final AtomicLong sent = new AtomicLong();
+    if(circuit!=null) {
+      // Hedges and all, the call counts once. A call cancelled by its caller says nothing
+      // about the endpoint, so it hands its permit back like one that never went out.
+      result.whenComplete((value, error) -> {
+        final long started = sent.get();
+        if(started==0||error instanceof CancellationException) {
+          circuit.cancel(permit);
+        } else {
+          circuit.record(permit, System.nanoTime() - started, error);
+        }
+      });
+    }
+    final Runnable send = new Runnable() {
+      public void run() {
+        if(result.isDone()) {
+          // Answered by another attempt, or out of time, while this one waited for a slot
+          limiter.release();
+          return;
+        }
+        final boolean first = attempts.incrementAndGet()==1;
+        final RequestRecorder recorder = RequestRecorder.start(metrics, url, call.getSize(), pair, !first);
+        final long start = System.nanoTime();
+        if(first)
+          sent.set(start);
+        final CompletableFuture<HttpResponse> response = transport.executeAsync(request, asyncExecutor);
+        final BiConsumer<HttpResponse, Throwable> complete = (received, error) -> {
+          limiter.release();
+          try {
+            if(error!=null) {
+              throw unwrap(error);
+            }
+            final T parsed = readResponse(received, reader, recorder);
+            if(latencies!=null)
+              latencies.record(System.nanoTime() - start);
+            if(recorder!=null)
+              recorder.finish(null);
+            result.complete(parsed);
+          } catch (Throwable ex) {
+            if(recorder!=null)
+              recorder.finish(ex);
+            // Wait for a hedge still on the wire before giving up
+            if(failures.incrementAndGet()>=attempts.get()) {
+              result.completeExceptionally(ex);
+            }
+          }
+        };
+        if(asyncExecutor!=null) {
+          response.whenCompleteAsync(complete, asyncExecutor);
+        } else {
+          response.whenComplete(complete);
+        }
+        final long hedgeAfter = first&&window!=null ? window.threshold() : -1;
+        if(hedgeAfter>=0&&hedgeAfter<options.remainingNanos()) {
+          CompletableFuture.delayedExecutor(hedgeAfter, TimeUnit.NANOSECONDS, limiter.getExecutor()).execute(() -> {
+            if(!result.isDone()) {
+              // A hedge the limiter would hold past the deadline is simply not sent
+              submit(call, limiter, this);
+            }
+          });
+        }
       }
+    };
+    if(!submit(call, limiter, send)) {
+      result.completeExceptionally(deadlineExceeded(null));
+    }
+    if(!options.hasDeadline()) {
+      return result;
     }
+    // Failing the result at the deadline also stops any hedge still waiting to go out
+    final CompletableFuture<T> bounded = new CompletableFuture<T>();
+    result.orTimeout(Math.max(1, options.remainingNanos()), TimeUnit.NANOSECONDS).whenComplete((value, error) -> {
+      if(error==null) {
+        bounded.complete(value);
+      } else {
+        bounded.completeExceptionally(error instanceof TimeoutException ? deadlineExceeded(null) : error);
+      }
+    });
+    return bounded;
+  }
+
+  // Sends the request once the rate limiter allows it and a slot is free. Returns false,
+  // without sending, if the limiter would hold the request back past the deadline.
+  private boolean submit(final ServiceRequest call, final InFlightLimiter limiter, final Runnable send) {
+    final long delay = rateLimiter!=null ? rateLimiter.reserve(call.getSize(), call.getOptions().remainingNanos()) : 0;
+    if(delay<0) {
+      return false;
+    }
+    if(delay>0) {
+      // Hold the request back without tying up a thread or an in-flight slot
+      CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, limiter.getExecutor()).execute(() -> limiter.submit(send));
+    } else {
+      limiter.submit(send);
+    }
+    return true;
+  }
+
+  // Waits for the future, rethrowing the exception it failed with
+  private static <T> T await(final CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if(cause instanceof Exception) {
+        throw (Exception)cause;
+      }
+      if(cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw ex;
+    }
+  }
+
+  // Feeds the service's answer back to the rate limiter
+  private void recordOutcome(final ServiceException error) {
+    if(rateLimiter!=null) {
+      if(error==null) {
+        rateLimiter.recordSuccess();
+      } else if(error.isThrottled()) {
+        rateLimiter.recordThrottle(error.getRetryAfterMillis());
+      }
+    }
+  }
+
+  private static Throwable unwrap(final Throwable error) {
+    return error instanceof CompletionException && error.getCause()!=null ? error.getCause() : error;
   }
 
   /**
@@ -94,7 +678,7 @@ public abstract class ApertiumTranslatorAPI {
    * @return The translated String.
    * @throws Exception on error.
    */
-  protected static String retrieveString(final URL url) throws Exception {
+  protected String retrieveString(final URL url) throws Exception {
     try {
       final String response = retrieveResponse(url);      
       return jsonToString(response);
@@ -113,7 +697,7 @@ public abstract class ApertiumTranslatorAPI {
    * @return The translated String[].
    * @throws Exception on error.
    */
-  protected static String[] retrieveStringArr(final URL url, final String jsonProperty) throws Exception {
+  protected String[] retrieveStringArr(final URL url, final String jsonProperty) throws Exception {
     try {
       final String response = retrieveResponse(url);    
       return jsonArrToStringArr(response,jsonProperty);
@@ -133,16 +717,90 @@ public abstract class ApertiumTranslatorAPI {
    * @return The translated String.
    * @throws Exception on error.
    */
-  protected static String retrieveSubObjString(final URL url, final String jsonProperty, final String jsonSubObjProperty) throws Exception {
+  protected String retrieveSubObjString(final URL url, final String jsonProperty, final String jsonSubObjProperty) throws Exception {
+    return retrieveSubObjString(ServiceRequest.to(url), jsonProperty, jsonSubObjProperty);
+  }
+
+  /**
+   * Form of {@link #retrieveSubObjString(URL, String, String)} that sends the given request,
+   * with its body, call options and language pair.
+   * 
+   * @param request The request to send.
+   * @param jsonProperty The JSON Property (key) indicating the object we want to parse.
+   * @param jsonSubObjProperty The JSON Property, in the nested object, that we want the value of.
+   * @return The translated String.
+   * @throws Exception on error.
+   */
+  protected String retrieveSubObjString(final ServiceRequest request, final String jsonProperty, final String jsonSubObjProperty) throws Exception {
     try {
-      final String response = retrieveResponse(url);
-      //System.out.println("response: " + response);
-      return jsonSubObjToString(response, jsonProperty, jsonSubObjProperty);
+      return retrieveResponse(request, body -> readSubObjString(body, jsonProperty, jsonSubObjProperty));
     } catch (Exception ex) {
       throw new Exception("[apertium-translator-api] Error retrieving translation.", ex);
     }    
   }
   
+  /**
+   * Asynchronous form of {@link #retrieveSubObjString(ServiceRequest, String, String)}. The request
+   * does not block the calling thread; the returned future completes with the value of the given
+   * JSON Property in the nested object, or exceptionally on error.
+   * 
+   * @param request The request to send.
+   * @param jsonProperty The JSON Property (key) indicating the object we want to parse.
+   * @param jsonSubObjProperty The JSON Property, in the nested object, that we want the value of.
+   * @return A future for the translated String.
+   */
+  protected CompletableFuture<String> retrieveSubObjStringAsync(final ServiceRequest request, final String jsonProperty, final String jsonSubObjProperty) {
+    final CompletableFuture<String> result = new CompletableFuture<String>();
+    retrieveResponseAsync(request, body -> readSubObjString(body, jsonProperty, jsonSubObjProperty)).whenComplete((response, error) -> {
+      if(error!=null) {
+        result.completeExceptionally(new Exception("[apertium-translator-api] Error retrieving translation.", error));
+      } else {
+        result.complete(response);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Fetches the JSON response for a request carrying several texts. The specified JSON Property
+   * holds an array with one object per text, and each of those objects nests the result under
+   * the same JSON Property again. Returns the value of the given property in each nested object,
+   * in request order.
+   * 
+   * @param request The request to send.
+   * @param jsonProperty The JSON Property (key) indicating the array of objects we want to parse.
+   * @param jsonSubObjProperty The JSON Property, in each nested object, that we want the value of.
+   * @return The translated String[].
+   * @throws Exception on error.
+   */
+  protected String[] retrieveSubObjStringArr(final ServiceRequest request, final String jsonProperty, final String jsonSubObjProperty) throws Exception {
+    try {
+      return retrieveResponse(request, body -> readSubObjStringArr(body, jsonProperty, jsonSubObjProperty));
+    } catch (Exception ex) {
+      throw new Exception("[apertium-translator-api] Error retrieving translation.", ex);
+    }
+  }
+
+  /**
+   * Asynchronous form of {@link #retrieveSubObjStringArr(ServiceRequest, String, String)}.
+   *
+   * @param request The request to send.
+   * @param jsonProperty The JSON Property (key) indicating the array of objects we want to parse.
+   * @param jsonSubObjProperty The JSON Property, in each nested object, that we want the value of.
+   * @return A future for the translated String[].
+   */
+  protected CompletableFuture<String[]> retrieveSubObjStringArrAsync(final ServiceRequest request, final String jsonProperty, final String jsonSubObjProperty) {
+    final CompletableFuture<String[]> result = new CompletableFuture<String[]>();
+    retrieveResponseAsync(request, body -> readSubObjStringArr(body, jsonProperty, jsonSubObjProperty)).whenComplete((response, error) -> {
+      if(error!=null) {
+        result.completeExceptionally(new Exception("[apertium-translator-api] Error retrieving translation.", error));
+      } else {
+        result.complete(response);
+      }
+    });
+    return result;
+  }
+
   /**
    * Fetches the JSON response, parses the JSON Response as an array of Strings
    * and returns the result of the request as a String Array.
@@ -153,10 +811,50 @@ public abstract class ApertiumTranslatorAPI {
    * @return The translated String[].
    * @throws Exception on error.
    */
-  protected static String[] retrieveStringArr(final URL url) throws Exception {
+  protected String[] retrieveStringArr(final URL url) throws Exception {
     return retrieveStringArr(url,null);
   }
 
+  /**
+   * Fetches the JSON response, walks to the array of JSONObjects under the specified JSON Property
+   * and returns, for each object, the String values of the given properties. The response is
+   * parsed as it arrives. Used for services such as listPairs, whose responseData is an array of
+   * records rather than the bare array {@link #retrieveStringArr(URL, String)} expects.
+   * 
+   * @param url The URL to query.
+   * @param jsonProperty The JSON Property (key) indicating the array of objects we want to parse.
+   * @param properties The JSON Properties to read from each object.
+   * @return One row per object, holding the values of the properties in the order given (null where missing).
+   * @throws Exception on error.
+   */
+  protected String[][] retrieveObjArrStrings(final URL url, final String jsonProperty, final String... properties) throws Exception {
+    try {
+      return retrieveResponse(ServiceRequest.to(url), body -> readObjArrStrings(body, jsonProperty, properties));
+    } catch (Exception ex) {
+      throw new Exception("[apertium-translator-api] Error retrieving response.", ex);
+    }
+  }
+
+  /**
+   * Asynchronous form of {@link #retrieveObjArrStrings(URL, String, String...)}.
+   *
+   * @param url The URL to query.
+   * @param jsonProperty The JSON Property (key) indicating the array of objects we want to parse.
+   * @param properties The JSON Properties to read from each object.
+   * @return A future for one row per object, holding the values of the properties in the order given.
+   */
+  protected CompletableFuture<String[][]> retrieveObjArrStringsAsync(final URL url, final String jsonProperty, final String... properties) {
+    final CompletableFuture<String[][]> result = new CompletableFuture<String[][]>();
+    retrieveResponseAsync(ServiceRequest.to(url), body -> readObjArrStrings(body, jsonProperty, properties)).whenComplete((response, error) -> {
+      if(error!=null) {
+        result.completeExceptionally(new Exception("[apertium-translator-api] Error retrieving response.", error));
+      } else {
+        result.complete(response);
+      }
+    });
+    return result;
+  }
+
   /**
    * Fetches the JSON response, parses the JSON Response, returns the result of the request as an array of integers.
    * 
@@ -164,7 +862,7 @@ public abstract class ApertiumTranslatorAPI {
    * @return The translated String.
    * @throws Exception on error.
    */
-  protected static Integer[] retrieveIntArray(final URL url) throws Exception {
+  protected Integer[] retrieveIntArray(final URL url) throws Exception {
     try {
       final String response = retrieveResponse(url);    		
       return jsonToIntArr(response);
@@ -189,14 +887,160 @@ public abstract class ApertiumTranslatorAPI {
     return json.toString();
   }
 
-  // Helper method to parse a JSONObject with nested JSONObjects.
-  // Retrieves the object with the given propertyName, then the value for the given propertyName within that object.
-  private static String jsonSubObjToString(final String inputString, final String propertyName, final String subObjPropertyName) throws Exception {
-    JSONObject jsonObj = (JSONObject)JSONValue.parse(inputString);   
-    JSONObject dataObj = (JSONObject)JSONValue.parse(jsonObj.get(propertyName).toString());
-    return dataObj.get(subObjPropertyName).toString();
+  // Helper method to parse a JSONObject with nested JSONObjects, straight from the response stream.
+  // Walks to the object with the given propertyName, then returns the value for the given subObjPropertyName within
+  // that object. The rest of the document is neither parsed nor kept.
+  private static String readSubObjString(final InputStream inputStream, final String propertyName, final String subObjPropertyName) throws Exception {
+    final JsonStreamReader reader = new JsonStreamReader(new InputStreamReader(inputStream, ENCODING));
+    String details = null;
+    int status = 0;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      final String name = reader.nextName();
+      if(name.equals(propertyName)&&reader.peek()==JsonStreamReader.BEGIN_OBJECT) {
+        final String value = readProperty(reader, subObjPropertyName);
+        if(value!=null) {
+          return value;
+        }
+      } else if(name.equals(RESPONSE_DETAILS)&&reader.peek()==JsonStreamReader.STRING) {
+        details = reader.nextString();
+      } else if(name.equals(RESPONSE_STATUS)&&reader.peek()==JsonStreamReader.NUMBER) {
+        status = parseStatus(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    throw new ServiceException("Error from Apertium API: " + details, status, -1);
   }
-  
+
+  // Helper method to parse a JSONObject whose given property is an array of JSONObjects, straight from the response
+  // stream. Returns the values of the given properties of each object.
+  private static String[][] readObjArrStrings(final InputStream inputStream, final String propertyName, final String[] properties) throws Exception {
+    final JsonStreamReader reader = new JsonStreamReader(new InputStreamReader(inputStream, ENCODING));
+    String details = null;
+    int status = 0;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      final String name = reader.nextName();
+      final int token = reader.peek();
+      if(name.equals(propertyName)&&token==JsonStreamReader.BEGIN_ARRAY) {
+        final List<String[]> rows = new ArrayList<String[]>();
+        reader.beginArray();
+        while(reader.hasNext()) {
+          if(reader.peek()!=JsonStreamReader.BEGIN_OBJECT) {
+            reader.skipValue();
+            continue;
+          }
+          final String[] row = new String[properties.length];
+          reader.beginObject();
+          while(reader.hasNext()) {
+            final String itemName = reader.nextName();
+            int column = -1;
+            for(int i = 0; i < properties.length && column < 0; i++) {
+              if(properties[i].equals(itemName)) {
+                column = i;
+              }
+            }
+            if(column>=0&&reader.peek()==JsonStreamReader.STRING) {
+              row[column] = reader.nextString();
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          rows.add(row);
+        }
+        reader.endArray();
+        return rows.toArray(new String[rows.size()][]);
+      } else if(name.equals(RESPONSE_DETAILS)&&token==JsonStreamReader.STRING) {
+        details = reader.nextString();
+      } else if(name.equals(RESPONSE_STATUS)&&token==JsonStreamReader.NUMBER) {
+        status = parseStatus(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    throw new ServiceException("Error from Apertium API: " + details, status, -1);
+  }
+
+  // Helper method to parse a JSONObject whose given property is an array of per-text responses, straight from
+  // the response stream. A request with a single text gets the plain nested object back instead, so accept that too.
+  private static String[] readSubObjStringArr(final InputStream inputStream, final String propertyName, final String subObjPropertyName) throws Exception {
+    final JsonStreamReader reader = new JsonStreamReader(new InputStreamReader(inputStream, ENCODING));
+    String details = null;
+    int status = 0;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      final String name = reader.nextName();
+      final int token = reader.peek();
+      if(name.equals(propertyName)&&token==JsonStreamReader.BEGIN_OBJECT) {
+        final String value = readProperty(reader, subObjPropertyName);
+        if(value!=null) {
+          return new String[] { value };
+        }
+      } else if(name.equals(propertyName)&&token==JsonStreamReader.BEGIN_ARRAY) {
+        final List<String> values = new ArrayList<String>();
+        reader.beginArray();
+        while(reader.hasNext()) {
+          String value = null;
+          String itemDetails = null;
+          int itemStatus = 0;
+          reader.beginObject();
+          while(reader.hasNext()) {
+            final String itemName = reader.nextName();
+            if(itemName.equals(propertyName)&&reader.peek()==JsonStreamReader.BEGIN_OBJECT) {
+              value = readProperty(reader, subObjPropertyName);
+            } else if(itemName.equals(RESPONSE_DETAILS)&&reader.peek()==JsonStreamReader.STRING) {
+              itemDetails = reader.nextString();
+            } else if(itemName.equals(RESPONSE_STATUS)&&reader.peek()==JsonStreamReader.NUMBER) {
+              itemStatus = parseStatus(reader.nextString());
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          if(value==null) {
+            throw new ServiceException("Error from Apertium API: " + itemDetails, itemStatus, -1);
+          }
+          values.add(value);
+        }
+        reader.endArray();
+        return values.toArray(new String[values.size()]);
+      } else if(name.equals(RESPONSE_DETAILS)&&token==JsonStreamReader.STRING) {
+        details = reader.nextString();
+      } else if(name.equals(RESPONSE_STATUS)&&token==JsonStreamReader.NUMBER) {
+        status = parseStatus(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    throw new ServiceException("Error from Apertium API: " + details, status, -1);
+  }
+
+  private static int parseStatus(final String status) {
+    try {
+      return (int)Double.parseDouble(status);
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  // Reads the object at the reader's position and returns the String value of the given property,
+  // or null if it is absent or null.
+  private static String readProperty(final JsonStreamReader reader, final String propertyName) throws Exception {
+    String value = null;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      if(reader.nextName().equals(propertyName)&&reader.peek()!=JsonStreamReader.NULL) {
+        value = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return value;
+  }
+
   // Helper method to parse a JSONArray. Reads an array of JSONObjects and returns a String Array
   // containing the toString() of the desired property. If propertyName is null, just return the String value.
   private static String[] jsonArrToStringArr(final String inputString, final String propertyName) throws Exception {
@@ -246,7 +1090,12 @@ public abstract class ApertiumTranslatorAPI {
 
   //Check if ready to make request, if not, throw a RuntimeException
   protected static void validateServiceState() throws Exception {
-    if(apiKey==null||apiKey.length()<27) {
+    validateApiKey(apiKey);
+  }
+
+  //Check that the given key looks like an Apertium API key, if not, throw a RuntimeException
+  protected static void validateApiKey(final String key) {
+    if(key==null||key.length()<27) {
       throw new RuntimeException("INVALID_API_KEY - Please set the API Key with your Apertium API Key");
     }
   }
@@ -0,0 +1,139 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for a single call, overriding the client's own. Options are immutable; each
+ * {@code with} method returns a copy.
+ *
+ * The deadline is fixed when it is set, not when the call starts, so one set of options
+ * can give several calls a shared time budget:
+ *
+ * <pre>
+ * CallOptions job = CallOptions.DEFAULT.withDeadlineAfter(2000);
+ * String heading = client.translate(headingText, from, to, job);
+ * String body = client.translate(bodyText, from, to, job);  // gets what is left of the 2 seconds
+ * </pre>
+ */
+public final class CallOptions {
+  /**
+   * Options that change nothing: the client's timeouts, deadline and hedging apply.
+   */
+  public static final CallOptions DEFAULT = new CallOptions(0, 0, false, 0, true);
+
+  private final int connectTimeout;
+  private final int readTimeout;
+  private final boolean hasDeadline;
+  private final long deadlineNanos;
+  private final boolean hedging;
+
+  private CallOptions(final int pConnectTimeout, final int pReadTimeout, final boolean pHasDeadline,
+      final long pDeadlineNanos, final boolean pHedging) {
+    connectTimeout = pConnectTimeout;
+    readTimeout = pReadTimeout;
+    hasDeadline = pHasDeadline;
+    deadlineNanos = pDeadlineNanos;
+    hedging = pHedging;
+  }
+
+  /**
+   * Returns a copy with the given connect timeout.
+   * @param millis The timeout in milliseconds, or 0 for the client's.
+   * @return The new options.
+   */
+  public CallOptions withConnectTimeout(final int millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("millis must not be negative");
+    }
+    return new CallOptions(millis, readTimeout, hasDeadline, deadlineNanos, hedging);
+  }
+
+  /**
+   * Returns a copy with the given read timeout.
+   * @param millis The timeout in milliseconds, or 0 for the client's.
+   * @return The new options.
+   */
+  public CallOptions withReadTimeout(final int millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("millis must not be negative");
+    }
+    return new CallOptions(connectTimeout, millis, hasDeadline, deadlineNanos, hedging);
+  }
+
+  /**
+   * Returns a copy whose calls must finish within the given time from now, replacing the
+   * client's deadline. A call still running when it passes fails with an exception caused
+   * by a {@link java.util.concurrent.TimeoutException}.
+   * @param millis The time allowed, in milliseconds.
+   * @return The new options.
+   */
+  public CallOptions withDeadlineAfter(final long millis) {
+    if (millis <= 0) {
+      throw new IllegalArgumentException("millis must be positive");
+    }
+    return new CallOptions(connectTimeout, readTimeout, true,
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), hedging);
+  }
+
+  /**
+   * Returns a copy that never sends hedged requests, even if the client hedges.
+   * @return The new options.
+   */
+  public CallOptions withoutHedging() {
+    return new CallOptions(connectTimeout, readTimeout, hasDeadline, deadlineNanos, false);
+  }
+
+  /**
+   * @return The connect timeout in milliseconds, or 0 for the client's.
+   */
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * @return The read timeout in milliseconds, or 0 for the client's.
+   */
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * @return Whether these options carry a deadline.
+   */
+  public boolean hasDeadline() {
+    return hasDeadline;
+  }
+
+  /**
+   * Returns the time left before the deadline.
+   * @return The time left in nanoseconds, which is 0 or less once the deadline has passed,
+   *         or Long.MAX_VALUE if there is no deadline.
+   */
+  public long remainingNanos() {
+    return hasDeadline ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+  }
+
+  /**
+   * @return Whether calls may send hedged requests if the client hedges.
+   */
+  public boolean isHedging() {
+    return hedging;
+  }
+}
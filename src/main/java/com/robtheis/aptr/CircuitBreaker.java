@@ -0,0 +1,479 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import com.robtheis.aptr.language.LanguagePair;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing, so that callers fail at once
+ * instead of each waiting out a doomed round trip.
+ *
+ * Each endpoint (host and port), or each language pair on it if the breaker is built
+ * {@link Builder#perPair(boolean) per pair}, has its own circuit. A circuit starts closed and
+ * keeps the outcomes of the most recent calls. Once enough calls have been seen, it opens if
+ * too many of them failed, or too many took longer than the slow-call duration. While open it
+ * turns calls away with a {@link CircuitOpenException}. After the open duration it is half
+ * open: a few probe calls go through, and the circuit closes if they fare well enough, or
+ * opens again if they do not.
+ *
+ * A call is one request as the caller sees it, hedges included. Failures are I/O errors,
+ * timeouts, server errors (5xx) and unreadable responses. 4xx responses and throttling
+ * (429 or 503, see {@link ServiceException#isThrottled()}) say nothing about the endpoint's
+ * health (the rate limiter and key pool deal with throttling), so they are not counted at all.
+ *
+ * State changes go to the {@link Listener}, if there is one, and are emitted as
+ * {@code com.robtheis.aptr.CircuitBreaker} flight recorder events. One breaker may be shared
+ * by several clients.
+ */
+public final class CircuitBreaker {
+  public static final double DEFAULT_FAILURE_RATE = 0.5;
+  public static final double DEFAULT_SLOW_CALL_RATE = 1.0;
+  public static final long DEFAULT_SLOW_CALL_MILLIS = 10000;
+  public static final int DEFAULT_WINDOW_SIZE = 100;
+  public static final int DEFAULT_MIN_CALLS = 20;
+  public static final long DEFAULT_OPEN_MILLIS = 30000;
+  public static final int DEFAULT_PROBES = 5;
+
+  // Outcome flags kept in the window
+  private static final byte FAILED = 1;
+  private static final byte SLOW = 2;
+  // Slot of the circuit for the whole endpoint, after those of the pairs
+  private static final int ENDPOINT = LanguagePair.indexCount();
+
+  /**
+   * The state of a circuit.
+   */
+  public enum State {
+    /** Calls go through, and their outcomes are counted. */
+    CLOSED,
+    /** Calls are turned away. */
+    OPEN,
+    /** A few probe calls go through to test whether the endpoint has recovered. */
+    HALF_OPEN
+  }
+
+  /**
+   * Receives the state changes of a breaker's circuits.
+   */
+  public interface Listener {
+    /**
+     * Called after a circuit changes state, on the thread whose call caused the change.
+     * Must be quick and must not throw.
+     * @param endpoint The host and port of the circuit.
+     * @param pair The language pair of the circuit, or null if the circuit covers the whole endpoint.
+     * @param from The state before.
+     * @param to The state now.
+     */
+    void stateChanged(String endpoint, LanguagePair pair, State from, State to);
+  }
+
+  private final double failureRate;
+  private final double slowCallRate;
+  private final long slowCallNanos;
+  private final int windowSize;
+  private final int minCalls;
+  private final long openNanos;
+  private final int probes;
+  private final boolean perPair;
+  private final Listener listener;
+  // The circuits of each endpoint, indexed by LanguagePair.index(), or at ENDPOINT
+  private final ConcurrentHashMap<String, AtomicReferenceArray<Circuit>> endpoints =
+      new ConcurrentHashMap<String, AtomicReferenceArray<Circuit>>();
+
+  private CircuitBreaker(final Builder builder) {
+    failureRate = builder.failureRate;
+    slowCallRate = builder.slowCallRate;
+    slowCallNanos = TimeUnit.MILLISECONDS.toNanos(builder.slowCallMillis);
+    windowSize = builder.windowSize;
+    minCalls = builder.minCalls;
+    openNanos = TimeUnit.MILLISECONDS.toNanos(builder.openMillis);
+    probes = builder.probes;
+    perPair = builder.perPair;
+    listener = builder.listener;
+  }
+
+  /**
+   * Returns a builder for a new breaker.
+   * @return The builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the state of the circuit a request would go through.
+   * @param endpoint The host and port, such as "api.apertium.org".
+   * @param pair The language pair, or null. Ignored unless the breaker is per pair.
+   * @return The state; CLOSED for a circuit that has seen no calls.
+   */
+  public State getState(final String endpoint, final LanguagePair pair) {
+    final AtomicReferenceArray<Circuit> circuits = endpoints.get(endpoint);
+    final Circuit circuit = circuits != null ? circuits.get(slot(pair)) : null;
+    return circuit != null ? circuit.state() : State.CLOSED;
+  }
+
+  /**
+   * Returns the circuit for requests to the endpoint and pair.
+   */
+  Circuit circuit(final String endpoint, final LanguagePair pair) {
+    AtomicReferenceArray<Circuit> circuits = endpoints.get(endpoint);
+    if (circuits == null) {
+      circuits = endpoints.computeIfAbsent(endpoint, e -> new AtomicReferenceArray<Circuit>(ENDPOINT + 1));
+    }
+    final int slot = slot(pair);
+    final Circuit circuit = circuits.get(slot);
+    if (circuit != null) {
+      return circuit;
+    }
+    final Circuit created = new Circuit(endpoint, slot != ENDPOINT ? pair : null);
+    return circuits.compareAndSet(slot, null, created) ? created : circuits.get(slot);
+  }
+
+  private int slot(final LanguagePair pair) {
+    return perPair && pair != null ? pair.index() : ENDPOINT;
+  }
+
+  /**
+   * One circuit. Calls take a permit with {@link #acquire()} and must report back with
+   * {@link #record(int, long, Throwable)} or {@link #cancel(int)}, passing the number
+   * acquire returned, so that calls begun before a state change are not counted after it.
+   */
+  final class Circuit {
+    private final String endpoint;
+    private final LanguagePair pair;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final byte[] window = new byte[windowSize];
+
+    // Read without the lock by acquire and getState; written under it
+    private volatile State state = State.CLOSED;
+    private volatile int generation;
+    // Guarded by lock
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private long openUntilNanos;
+    private int probesStarted;
+    private int probesReported;
+
+    Circuit(final String pEndpoint, final LanguagePair pPair) {
+      endpoint = pEndpoint;
+      pair = pPair;
+    }
+
+    State state() {
+      return state;
+    }
+
+    /**
+     * Lets a call through, or turns it away if the circuit is open or its probes are all taken.
+     * @return The number to report the call's outcome with.
+     * @throws CircuitOpenException if the call may not go through.
+     */
+    int acquire() throws CircuitOpenException {
+      // Most calls find the circuit closed, which needs no lock
+      final int current = generation;
+      if (state == State.CLOSED) {
+        return current;
+      }
+      State changedFrom = null;
+      final int permit;
+      lock.lock();
+      try {
+        final long now = System.nanoTime();
+        if (state == State.OPEN) {
+          if (now - openUntilNanos < 0) {
+            throw rejected(TimeUnit.NANOSECONDS.toMillis(openUntilNanos - now));
+          }
+          changedFrom = change(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+          if (probesStarted >= probes) {
+            throw rejected(0);
+          }
+          probesStarted++;
+        }
+        permit = generation;
+      } finally {
+        lock.unlock();
+      }
+      notifyChange(changedFrom, State.HALF_OPEN, 0, 0);
+      return permit;
+    }
+
+    /**
+     * Counts the outcome of a call let through by {@link #acquire()}.
+     * @param permit The number acquire returned.
+     * @param nanos How long the call took.
+     * @param error The exception the call failed with, or null if it succeeded.
+     */
+    void record(final int permit, final long nanos, final Throwable error) {
+      final boolean counted = error == null || isFailure(error);
+      final byte outcome = (byte) ((error != null ? FAILED : 0) | (nanos >= slowCallNanos ? SLOW : 0));
+      State changedFrom = null;
+      State changedTo = null;
+      double failed = 0;
+      double slow = 0;
+      lock.lock();
+      try {
+        if (permit != generation || state == State.OPEN) {
+          return;
+        }
+        if (!counted) {
+          releaseProbe();
+          return;
+        }
+        if (calls == windowSize) {
+          failures -= window[next] & FAILED;
+          slowCalls -= (window[next] & SLOW) >> 1;
+        } else {
+          calls++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % windowSize;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+        failed = (double) failures / calls;
+        slow = (double) slowCalls / calls;
+        final boolean tripped = failed >= failureRate || slow >= slowCallRate;
+        if (state == State.CLOSED) {
+          if (calls >= minCalls && tripped) {
+            changedTo = State.OPEN;
+            changedFrom = change(changedTo);
+          }
+        } else if (++probesReported >= probes) {
+          // Every probe has reported back. They are counted apart from the window, which
+          // may hold fewer calls than there are probes.
+          changedTo = tripped ? State.OPEN : State.CLOSED;
+          changedFrom = change(changedTo);
+        }
+      } finally {
+        lock.unlock();
+      }
+      notifyChange(changedFrom, changedTo, failed, slow);
+    }
+
+    /**
+     * Hands back a permit from {@link #acquire()} for a call that never reached the endpoint,
+     * such as one that ran out of time while it waited to be sent.
+     * @param permit The number acquire returned.
+     */
+    void cancel(final int permit) {
+      if (state != State.HALF_OPEN) {
+        return;
+      }
+      lock.lock();
+      try {
+        if (permit == generation) {
+          releaseProbe();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    // Must hold lock. Gives a probe that proved nothing back to the next call.
+    private void releaseProbe() {
+      if (state == State.HALF_OPEN) {
+        probesStarted--;
+      }
+    }
+
+    // Must hold lock. Moves to the new state with an empty window and returns the old state.
+    private State change(final State to) {
+      final State from = state;
+      state = to;
+      generation++;
+      next = 0;
+      calls = 0;
+      failures = 0;
+      slowCalls = 0;
+      probesStarted = 0;
+      probesReported = 0;
+      if (to == State.OPEN) {
+        openUntilNanos = System.nanoTime() + openNanos;
+      }
+      return from;
+    }
+
+    private CircuitOpenException rejected(final long retryAfterMillis) {
+      return new CircuitOpenException("[apertium-translator-api] Circuit open for " + endpoint
+          + (pair != null ? " " + pair : ""), retryAfterMillis);
+    }
+
+    private void notifyChange(final State from, final State to, final double failed, final double slow) {
+      if (from == null) {
+        return;
+      }
+      final CircuitBreakerEvent event = new CircuitBreakerEvent();
+      if (event.shouldCommit()) {
+        event.endpoint = endpoint;
+        event.pair = pair != null ? pair.getCode() : null;
+        event.from = from.name();
+        event.to = to.name();
+        event.failureRate = failed;
+        event.slowCallRate = slow;
+        event.commit();
+      }
+      if (listener != null) {
+        listener.stateChanged(endpoint, pair, from, to);
+      }
+    }
+  }
+
+  // Whether the error counts against the endpoint's health; throttling is left to the rate limiter
+  private static boolean isFailure(final Throwable error) {
+    if (CircuitOpenException.find(error) != null) {
+      return false;
+    }
+    final ServiceException service = ServiceException.find(error);
+    return service == null || !service.isThrottled() && (service.getStatusCode() >= 500 || service.getStatusCode() < 400);
+  }
+
+  /**
+   * Collects the settings for a {@link CircuitBreaker}.
+   */
+  public static final class Builder {
+    private double failureRate = DEFAULT_FAILURE_RATE;
+    private double slowCallRate = DEFAULT_SLOW_CALL_RATE;
+    private long slowCallMillis = DEFAULT_SLOW_CALL_MILLIS;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private int minCalls = DEFAULT_MIN_CALLS;
+    private long openMillis = DEFAULT_OPEN_MILLIS;
+    private int probes = DEFAULT_PROBES;
+    private boolean perPair;
+    private Listener listener;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the fraction of failed calls at which the circuit opens. Defaults to {@link CircuitBreaker#DEFAULT_FAILURE_RATE}.
+     * @param rate The rate, above 0 and at most 1.
+     * @return This builder.
+     */
+    public Builder failureRate(final double rate) {
+      checkRate(rate);
+      failureRate = rate;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of slow calls at which the circuit opens, and how long a call must take
+     * to count as slow. Slow calls count whether or not they succeed. By default the circuit
+     * opens only if every call takes {@link CircuitBreaker#DEFAULT_SLOW_CALL_MILLIS} or longer.
+     * @param rate The rate, above 0 and at most 1.
+     * @param millis The duration of a slow call, in milliseconds.
+     * @return This builder.
+     */
+    public Builder slowCallRate(final double rate, final long millis) {
+      checkRate(rate);
+      if (millis <= 0) {
+        throw new IllegalArgumentException("millis must be positive");
+      }
+      slowCallRate = rate;
+      slowCallMillis = millis;
+      return this;
+    }
+
+    /**
+     * Sets how many of the most recent calls the rates are worked out over, and how many a
+     * circuit must have seen before it can open. Defaults to {@link CircuitBreaker#DEFAULT_WINDOW_SIZE}
+     * and {@link CircuitBreaker#DEFAULT_MIN_CALLS}.
+     * @param size The number of calls kept.
+     * @param minimum The fewest calls to judge by, at most size.
+     * @return This builder.
+     */
+    public Builder window(final int size, final int minimum) {
+      if (minimum < 1 || size < minimum) {
+        throw new IllegalArgumentException("minimum must be at least 1 and size at least minimum");
+      }
+      windowSize = size;
+      minCalls = minimum;
+      return this;
+    }
+
+    /**
+     * Sets how long a circuit stays open before it lets probes through. Defaults to
+     * {@link CircuitBreaker#DEFAULT_OPEN_MILLIS}.
+     * @param millis The duration in milliseconds.
+     * @return This builder.
+     */
+    public Builder openDuration(final long millis) {
+      if (millis <= 0) {
+        throw new IllegalArgumentException("millis must be positive");
+      }
+      openMillis = millis;
+      return this;
+    }
+
+    /**
+     * Sets how many probe calls a half-open circuit lets through. The circuit closes if their
+     * failure and slow-call rates are below the thresholds; with more probes than the window
+     * holds, the rates are those of the most recent probes. Defaults to {@link CircuitBreaker#DEFAULT_PROBES}.
+     * @param count The number of probes.
+     * @return This builder.
+     */
+    public Builder probes(final int count) {
+      if (count < 1) {
+        throw new IllegalArgumentException("count must be at least 1");
+      }
+      probes = count;
+      return this;
+    }
+
+    /**
+     * Gives each language pair on an endpoint a circuit of its own, so that a pair the
+     * service fails on does not cut off the others. Off by default.
+     * @param enabled Whether each pair has its own circuit.
+     * @return This builder.
+     */
+    public Builder perPair(final boolean enabled) {
+      perPair = enabled;
+      return this;
+    }
+
+    /**
+     * Sets the listener told of each state change.
+     * @param pListener The listener, or null for none.
+     * @return This builder.
+     */
+    public Builder listener(final Listener pListener) {
+      listener = pListener;
+      return this;
+    }
+
+    /**
+     * Builds the breaker.
+     * @return The new breaker.
+     */
+    public CircuitBreaker build() {
+      return new CircuitBreaker(this);
+    }
+
+    private static void checkRate(final double rate) {
+      if (!(rate > 0 && rate <= 1)) {
+        throw new IllegalArgumentException("rate must be above 0 and at most 1");
+      }
+    }
+  }
+}
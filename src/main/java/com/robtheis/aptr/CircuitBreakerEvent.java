@@ -0,0 +1,61 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a circuit of a {@link CircuitBreaker} changing state.
+ */
+@Name("com.robtheis.aptr.CircuitBreaker")
+@Label("Apertium Circuit Breaker")
+@Category("Apertium Translator")
+@Description("A circuit of a circuit breaker changing state")
+@StackTrace(false)
+final class CircuitBreakerEvent extends Event {
+
+  @Label("Endpoint")
+  @Description("Host and port of the circuit")
+  String endpoint;
+
+  @Label("Language Pair")
+  @Description("Language pair of the circuit, if it has one of its own")
+  String pair;
+
+  @Label("From")
+  String from;
+
+  @Label("To")
+  String to;
+
+  @Label("Failure Rate")
+  @Description("Fraction of the counted calls that failed, when the change followed a call")
+  @Percentage
+  double failureRate;
+
+  @Label("Slow Call Rate")
+  @Description("Fraction of the counted calls that were slow, when the change followed a call")
+  @Percentage
+  double slowCallRate;
+}
@@ -0,0 +1,58 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+/**
+ * Thrown when a {@link CircuitBreaker} turns a request away without sending it, because
+ * the endpoint (or language pair) behind it has been failing.
+ */
+public class CircuitOpenException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterMillis;
+
+  public CircuitOpenException(final String message, final long pRetryAfterMillis) {
+    super(message);
+    retryAfterMillis = pRetryAfterMillis;
+  }
+
+  /**
+   * Returns how long until the breaker lets a probe request through, or 0 if probes are
+   * already on the wire and the outcome is pending.
+   * @return The delay in milliseconds.
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  /**
+   * Returns the first CircuitOpenException in the cause chain of the given error,
+   * or null if the request was not turned away by a circuit breaker.
+   * @param error The error, typically one thrown by a translate call.
+   * @return The CircuitOpenException, or null.
+   */
+  public static CircuitOpenException find(Throwable error) {
+    while (error != null) {
+      if (error instanceof CircuitOpenException) {
+        return (CircuitOpenException) error;
+      }
+      error = error.getCause();
+    }
+    return null;
+  }
+}
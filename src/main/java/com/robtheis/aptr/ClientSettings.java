@@ -0,0 +1,234 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import com.robtheis.aptr.metrics.MetricsRegistry;
+import com.robtheis.aptr.transport.Transport;
+import java.util.concurrent.Executor;
+
+/**
+ * The settings an {@link ApertiumTranslatorAPI} instance sends its requests with: the
+ * transport, referrer and timeouts, and the optional components that pace, hedge, report
+ * and guard the requests. Settings are immutable; build them with {@link #builder()}.
+ *
+ * New settings are added here rather than as constructor parameters, so subclasses keep
+ * compiling as the list grows.
+ */
+public final class ClientSettings {
+  final Transport transport;
+  final String referrer;
+  final int connectTimeout;
+  final int readTimeout;
+  final long deadline;
+  final double hedgePercentile;
+  final Executor asyncExecutor;
+  final int maxAsyncRequests;
+  final RateLimiter rateLimiter;
+  final MetricsRegistry metrics;
+  final CircuitBreaker circuitBreaker;
+  // Carried over from an earlier instance, or null
+  final LatencyWindow latencies;
+
+  private ClientSettings(final Builder builder) {
+    transport = builder.transport;
+    referrer = builder.referrer;
+    connectTimeout = builder.connectTimeout;
+    readTimeout = builder.readTimeout;
+    deadline = builder.deadline;
+    hedgePercentile = builder.hedgePercentile;
+    asyncExecutor = builder.asyncExecutor;
+    maxAsyncRequests = builder.maxAsyncRequests;
+    rateLimiter = builder.rateLimiter;
+    metrics = builder.metrics;
+    circuitBreaker = builder.circuitBreaker;
+    latencies = builder.latencies;
+  }
+
+  /**
+   * Returns a builder with the default timeouts and in-flight limit, and no transport.
+   * @return The builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Collects the settings for a {@link ClientSettings}.
+   */
+  public static final class Builder {
+    private Transport transport;
+    private String referrer;
+    private int connectTimeout = ApertiumTranslatorAPI.DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = ApertiumTranslatorAPI.DEFAULT_READ_TIMEOUT;
+    private long deadline;
+    private double hedgePercentile;
+    private Executor asyncExecutor;
+    private int maxAsyncRequests = ApertiumTranslatorAPI.DEFAULT_MAX_ASYNC_REQUESTS;
+    private RateLimiter rateLimiter;
+    private MetricsRegistry metrics;
+    private CircuitBreaker circuitBreaker;
+    private LatencyWindow latencies;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the transport used to send requests. Required.
+     * @param pTransport The transport.
+     * @return This builder.
+     */
+    public Builder transport(final Transport pTransport) {
+      transport = pTransport;
+      return this;
+    }
+
+    /**
+     * Sets the HTTP referrer field.
+     * @param pReferrer The referrer, or null to send none.
+     * @return This builder.
+     */
+    public Builder referrer(final String pReferrer) {
+      referrer = pReferrer;
+      return this;
+    }
+
+    /**
+     * Sets how long to wait for a connection to be established.
+     * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+     * @return This builder.
+     */
+    public Builder connectTimeout(final int millis) {
+      connectTimeout = millis;
+      return this;
+    }
+
+    /**
+     * Sets how long to wait for the server to respond once connected.
+     * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+     * @return This builder.
+     */
+    public Builder readTimeout(final int millis) {
+      readTimeout = millis;
+      return this;
+    }
+
+    /**
+     * Sets how long each call may take in all, counting every request it makes and any
+     * time spent waiting on the rate limiter.
+     * @param millis The deadline in milliseconds, or 0 for none.
+     * @return This builder.
+     */
+    public Builder deadline(final long millis) {
+      deadline = millis;
+      return this;
+    }
+
+    /**
+     * Sets the percentile of recent latency after which an unanswered request is sent again.
+     * @param percentile The percentile, between 0 and 1 (such as 0.95), or 0 to never hedge.
+     * @return This builder.
+     */
+    public Builder hedging(final double percentile) {
+      hedgePercentile = percentile;
+      return this;
+    }
+
+    /**
+     * Sets the executor that asynchronous requests and their completions run on.
+     * @param pExecutor The executor, or null to leave them to the transport's threads.
+     * @return This builder.
+     */
+    public Builder asyncExecutor(final Executor pExecutor) {
+      asyncExecutor = pExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of asynchronous requests on the wire at once.
+     * @param pMaxRequests The in-flight limit.
+     * @return This builder.
+     */
+    public Builder maxAsyncRequests(final int pMaxRequests) {
+      maxAsyncRequests = pMaxRequests;
+      return this;
+    }
+
+    /**
+     * Sets the rate limiter that paces the requests.
+     * @param pRateLimiter The limiter, or null to send requests as they come.
+     * @return This builder.
+     */
+    public Builder rateLimiter(final RateLimiter pRateLimiter) {
+      rateLimiter = pRateLimiter;
+      return this;
+    }
+
+    /**
+     * Sets the registry that receives a report of each request.
+     * @param pMetrics The registry, or null to report nothing.
+     * @return This builder.
+     */
+    public Builder metrics(final MetricsRegistry pMetrics) {
+      metrics = pMetrics;
+      return this;
+    }
+
+    /**
+     * Sets the circuit breaker the requests go through.
+     * @param pCircuitBreaker The breaker, or null to always send requests.
+     * @return This builder.
+     */
+    public Builder circuitBreaker(final CircuitBreaker pCircuitBreaker) {
+      circuitBreaker = pCircuitBreaker;
+      return this;
+    }
+
+    /**
+     * Starts hedging from the latencies an earlier instance has recorded, instead of
+     * waiting for new ones. They are shared with that instance, and used only if both
+     * hedge at the same percentile.
+     * @param previous The instance being replaced, or null.
+     * @return This builder.
+     */
+    public Builder latenciesOf(final ApertiumTranslatorAPI previous) {
+      latencies = previous != null ? previous.getLatencyWindow() : null;
+      return this;
+    }
+
+    /**
+     * Builds the settings.
+     * @return The new settings.
+     * @throws IllegalArgumentException if there is no transport or a value is out of range.
+     */
+    public ClientSettings build() {
+      if (transport == null) {
+        throw new IllegalArgumentException("transport must not be null");
+      }
+      if (connectTimeout < 0 || readTimeout < 0 || deadline < 0) {
+        throw new IllegalArgumentException("timeouts must not be negative");
+      }
+      if (hedgePercentile != 0) {
+        LatencyWindow.checkPercentile(hedgePercentile);
+      }
+      if (maxAsyncRequests < 1) {
+        throw new IllegalArgumentException("maxAsyncRequests must be at least 1");
+      }
+      return new ClientSettings(this);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of asynchronous requests on the wire without blocking the
+ * caller. Tasks over the limit are queued and started, on the given executor,
+ * as earlier requests complete.
+ */
+final class InFlightLimiter {
+  private final int maxInFlight;
+  private final Executor executor;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final ArrayDeque<Runnable> waiting = new ArrayDeque<Runnable>();
+  private int inFlight;
+
+  InFlightLimiter(final int pMaxInFlight, final Executor pExecutor) {
+    if (pMaxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1");
+    }
+    maxInFlight = pMaxInFlight;
+    executor = pExecutor;
+  }
+
+  /**
+   * Runs the task now if a slot is free, otherwise once one is. The task must
+   * call {@link #release()} exactly once when its request completes.
+   */
+  void submit(final Runnable task) {
+    lock.lock();
+    try {
+      if (inFlight >= maxInFlight) {
+        waiting.addLast(task);
+        return;
+      }
+      inFlight++;
+    } finally {
+      lock.unlock();
+    }
+    task.run();
+  }
+
+  /**
+   * Frees a slot, handing it straight to the next queued task if there is one.
+   */
+  void release() {
+    final Runnable next;
+    lock.lock();
+    try {
+      next = waiting.pollFirst();
+      if (next == null) {
+        inFlight--;
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (next != null) {
+      // Start it elsewhere so that a chain of completions cannot grow the stack
+      executor.execute(next);
+    }
+  }
+
+  Executor getExecutor() {
+    return executor;
+  }
+
+  int getMaxInFlight() {
+    return maxInFlight;
+  }
+}
@@ -0,0 +1,394 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull parser for JSON documents. Values are read one token at a time
+ * straight from the underlying Reader, so callers can walk to the property they
+ * need and skip everything else without building an object tree. Skipped strings
+ * are never materialized.
+ */
+final class JsonStreamReader {
+
+  // Tokens returned by peek()
+  static final int BEGIN_OBJECT = 1;
+  static final int END_OBJECT = 2;
+  static final int BEGIN_ARRAY = 3;
+  static final int END_ARRAY = 4;
+  static final int NAME = 5;
+  static final int STRING = 6;
+  static final int NUMBER = 7;
+  static final int BOOLEAN = 8;
+  static final int NULL = 9;
+  static final int END_DOCUMENT = 10;
+  private static final int NONE = 0;
+
+  // Scopes kept on the stack
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_OBJECT = 2;
+  private static final int NONEMPTY_OBJECT = 3;
+  private static final int DANGLING_NAME = 4;
+  private static final int EMPTY_ARRAY = 5;
+  private static final int NONEMPTY_ARRAY = 6;
+
+  private final Reader in;
+  private final char[] buffer = new char[1024];
+  private int pos;
+  private int limit;
+
+  private int[] stack = new int[16];
+  private int stackSize = 1;
+
+  private int peeked = NONE;
+  // Text of a peeked number or boolean
+  private String peekedLiteral;
+
+  JsonStreamReader(final Reader pIn) {
+    in = pIn;
+    stack[0] = EMPTY_DOCUMENT;
+  }
+
+  int peek() throws IOException {
+    if (peeked != NONE) {
+      return peeked;
+    }
+    final int scope = stack[stackSize - 1];
+    int c;
+    switch (scope) {
+      case EMPTY_ARRAY:
+        stack[stackSize - 1] = NONEMPTY_ARRAY;
+        c = nextNonWhitespace();
+        if (c == ']') {
+          return peeked = END_ARRAY;
+        }
+        pos--;
+        return peeked = peekValue();
+      case NONEMPTY_ARRAY:
+        c = nextNonWhitespace();
+        if (c == ']') {
+          return peeked = END_ARRAY;
+        }
+        if (c != ',') {
+          throw syntaxError("Expected ',' or ']'");
+        }
+        return peeked = peekValue();
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = nextNonWhitespace();
+        if (c == '}') {
+          return peeked = END_OBJECT;
+        }
+        if (scope == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError("Expected ',' or '}'");
+          }
+          c = nextNonWhitespace();
+        }
+        if (c != '"') {
+          throw syntaxError("Expected a property name");
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        return peeked = NAME;
+      case DANGLING_NAME:
+        if (nextNonWhitespace() != ':') {
+          throw syntaxError("Expected ':'");
+        }
+        stack[stackSize - 1] = NONEMPTY_OBJECT;
+        return peeked = peekValue();
+      case EMPTY_DOCUMENT:
+        stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        return peeked = peekValue();
+      default:
+        return peeked = END_DOCUMENT;
+    }
+  }
+
+  boolean hasNext() throws IOException {
+    final int p = peek();
+    return p != END_OBJECT && p != END_ARRAY && p != END_DOCUMENT;
+  }
+
+  void beginObject() throws IOException {
+    expect(BEGIN_OBJECT, "an object");
+    push(EMPTY_OBJECT);
+  }
+
+  void endObject() throws IOException {
+    expect(END_OBJECT, "the end of an object");
+    stackSize--;
+  }
+
+  void beginArray() throws IOException {
+    expect(BEGIN_ARRAY, "an array");
+    push(EMPTY_ARRAY);
+  }
+
+  void endArray() throws IOException {
+    expect(END_ARRAY, "the end of an array");
+    stackSize--;
+  }
+
+  String nextName() throws IOException {
+    expect(NAME, "a property name");
+    return readString();
+  }
+
+  /**
+   * Returns the next value as a String. Numbers and booleans are returned as
+   * they appear in the document.
+   */
+  String nextString() throws IOException {
+    final int p = peek();
+    if (p == STRING) {
+      peeked = NONE;
+      return readString();
+    }
+    if (p == NUMBER || p == BOOLEAN) {
+      peeked = NONE;
+      return peekedLiteral;
+    }
+    throw syntaxError("Expected a string");
+  }
+
+  /**
+   * Skips the next value, including any nested objects and arrays.
+   */
+  void skipValue() throws IOException {
+    int depth = 0;
+    do {
+      final int p = peek();
+      peeked = NONE;
+      switch (p) {
+        case BEGIN_OBJECT:
+          push(EMPTY_OBJECT);
+          depth++;
+          break;
+        case BEGIN_ARRAY:
+          push(EMPTY_ARRAY);
+          depth++;
+          break;
+        case END_OBJECT:
+        case END_ARRAY:
+          stackSize--;
+          depth--;
+          break;
+        case NAME:
+        case STRING:
+          skipString();
+          break;
+        case END_DOCUMENT:
+          throw syntaxError("Unexpected end of document");
+        default:
+          break;
+      }
+    } while (depth > 0);
+  }
+
+  private void expect(final int token, final String description) throws IOException {
+    if (peek() != token) {
+      throw syntaxError("Expected " + description);
+    }
+    peeked = NONE;
+  }
+
+  private void push(final int scope) {
+    if (stackSize == stack.length) {
+      final int[] grown = new int[stackSize * 2];
+      System.arraycopy(stack, 0, grown, 0, stackSize);
+      stack = grown;
+    }
+    stack[stackSize++] = scope;
+  }
+
+  // Classifies the value starting at the next non-whitespace character. The opening
+  // quote of a string is consumed; numbers and literals are read in full.
+  private int peekValue() throws IOException {
+    final int c = nextNonWhitespace();
+    switch (c) {
+      case '{':
+        return BEGIN_OBJECT;
+      case '[':
+        return BEGIN_ARRAY;
+      case '"':
+        return STRING;
+      case 't':
+        readKeyword("rue");
+        peekedLiteral = "true";
+        return BOOLEAN;
+      case 'f':
+        readKeyword("alse");
+        peekedLiteral = "false";
+        return BOOLEAN;
+      case 'n':
+        readKeyword("ull");
+        return NULL;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          peekedLiteral = readNumber((char) c);
+          return NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char) c + "'");
+    }
+  }
+
+  private void readKeyword(final String rest) throws IOException {
+    for (int i = 0; i < rest.length(); i++) {
+      if (!fill() || buffer[pos++] != rest.charAt(i)) {
+        throw syntaxError("Invalid literal");
+      }
+    }
+  }
+
+  private String readNumber(final char first) throws IOException {
+    final StringBuilder number = new StringBuilder(16).append(first);
+    while (fill()) {
+      final char c = buffer[pos];
+      if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+        number.append(c);
+        pos++;
+      } else {
+        break;
+      }
+    }
+    return number.toString();
+  }
+
+  // Reads the rest of a string whose opening quote has been consumed
+  private String readString() throws IOException {
+    StringBuilder builder = null;
+    while (true) {
+      if (!fill()) {
+        throw new EOFException("Unterminated string");
+      }
+      // Copy runs of plain characters straight out of the buffer
+      int start = pos;
+      while (pos < limit) {
+        final char c = buffer[pos];
+        if (c == '"' || c == '\\') {
+          break;
+        }
+        pos++;
+      }
+      if (pos < limit && buffer[pos] == '"' && builder == null) {
+        final String value = new String(buffer, start, pos - start);
+        pos++;
+        return value;
+      }
+      if (builder == null) {
+        builder = new StringBuilder(Math.max(16, (pos - start) * 2));
+      }
+      builder.append(buffer, start, pos - start);
+      if (pos == limit) {
+        continue;
+      }
+      if (buffer[pos++] == '"') {
+        return builder.toString();
+      }
+      builder.append(readEscape());
+    }
+  }
+
+  private void skipString() throws IOException {
+    while (true) {
+      if (!fill()) {
+        throw new EOFException("Unterminated string");
+      }
+      final char c = buffer[pos++];
+      if (c == '"') {
+        return;
+      }
+      if (c == '\\') {
+        readEscape();
+      }
+    }
+  }
+
+  // Reads the escape sequence following a backslash
+  private char readEscape() throws IOException {
+    if (!fill()) {
+      throw new EOFException("Unterminated escape sequence");
+    }
+    final char c = buffer[pos++];
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          if (!fill()) {
+            throw new EOFException("Unterminated escape sequence");
+          }
+          final int digit = Character.digit(buffer[pos++], 16);
+          if (digit < 0) {
+            throw syntaxError("Invalid unicode escape");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        // \" \\ \/ and any other escaped character stand for themselves
+        return c;
+    }
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    while (fill()) {
+      final char c = buffer[pos++];
+      // Some services prepend a byte order mark; treat it like whitespace
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\uFEFF') {
+        return c;
+      }
+    }
+    throw new EOFException("Unexpected end of input");
+  }
+
+  // Makes sure at least one character is buffered; returns false at end of input
+  private boolean fill() throws IOException {
+    if (pos < limit) {
+      return true;
+    }
+    int n;
+    do {
+      n = in.read(buffer, 0, buffer.length);
+    } while (n == 0);
+    if (n == -1) {
+      pos = limit = 0;
+      return false;
+    }
+    pos = 0;
+    limit = n;
+    return true;
+  }
+
+  private IOException syntaxError(final String message) {
+    return new IOException("Malformed JSON: " + message);
+  }
+}
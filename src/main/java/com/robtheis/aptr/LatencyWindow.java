@@ -0,0 +1,84 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latencies of the most recent requests and tracks a percentile of them, which
+ * decides how long a request may go unanswered before it is hedged. The percentile is
+ * worked out again every {@link #RECOMPUTE_EVERY} samples rather than on every request,
+ * so reading it costs one volatile read.
+ */
+final class LatencyWindow {
+  static final int SIZE = 512;
+  static final int RECOMPUTE_EVERY = 64;
+  // Too few samples say little about the tail, so nothing is hedged until there are this many
+  static final int MIN_SAMPLES = 32;
+
+  private final double percentile;
+  private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+  private final AtomicLong count = new AtomicLong();
+  // Nanoseconds, or -1 while there are too few samples
+  private volatile long threshold = -1;
+
+  LatencyWindow(final double pPercentile) {
+    checkPercentile(pPercentile);
+    percentile = pPercentile;
+  }
+
+  static void checkPercentile(final double percentile) {
+    if (!(percentile > 0 && percentile < 1)) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1");
+    }
+  }
+
+  /**
+   * Records the latency of a request that succeeded.
+   */
+  void record(final long nanos) {
+    final long n = count.getAndIncrement();
+    samples.set((int) (n % SIZE), nanos);
+    final long recorded = n + 1;
+    if (recorded == MIN_SAMPLES || (recorded > MIN_SAMPLES && recorded % RECOMPUTE_EVERY == 0)) {
+      recompute((int) Math.min(recorded, SIZE));
+    }
+  }
+
+  double getPercentile() {
+    return percentile;
+  }
+
+  /**
+   * Returns the latency at the percentile, or -1 if there are too few samples to tell.
+   */
+  long threshold() {
+    return threshold;
+  }
+
+  private void recompute(final int size) {
+    final long[] sorted = new long[size];
+    for (int i = 0; i < size; i++) {
+      sorted[i] = samples.get(i);
+    }
+    Arrays.sort(sorted);
+    threshold = sorted[Math.min(size - 1, (int) (percentile * size))];
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces requests with a pair of token buckets, one counting requests and one counting
+ * request bytes. Each bucket holds up to one second's worth of tokens, so short bursts
+ * go out at once and sustained traffic settles at the configured rates.
+ *
+ * The rates adapt to the service (additive increase, multiplicative decrease): each
+ * throttled response halves them, at most once a second, and each successful response
+ * nudges them back up until the configured rates are reached again. A Retry-After
+ * delay from the service holds back all requests until it has passed.
+ *
+ * One limiter may be shared by several clients that draw on the same quota.
+ */
+public final class RateLimiter {
+  private static final double DECREASE_FACTOR = 0.5;
+  private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // The rates never drop below this fraction of the configured ones
+  private static final double MIN_RATE_FRACTION = 1.0 / 64;
+  // Fraction of the configured rate regained per second while requests succeed
+  private static final double INCREASE_FRACTION = 1.0 / 20;
+
+  private final double maxRequestRate;
+  private final double maxByteRate;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // Guarded by lock
+  private double scale = 1;
+  private double requestTokens;
+  private double byteTokens;
+  private long lastRefillNanos;
+  private long lastDecreaseNanos;
+  private boolean decreased;
+
+  /**
+   * Creates a limiter for requests only.
+   * @param requestsPerSecond The highest sustained request rate.
+   */
+  public RateLimiter(final double requestsPerSecond) {
+    this(requestsPerSecond, 0);
+  }
+
+  /**
+   * Creates a limiter for requests and request bytes.
+   * @param requestsPerSecond The highest sustained request rate.
+   * @param bytesPerSecond The highest sustained rate of request bytes (URL and body), or 0 for no limit.
+   */
+  public RateLimiter(final double requestsPerSecond, final double bytesPerSecond) {
+    if (!(requestsPerSecond > 0) || !(bytesPerSecond >= 0)) {
+      throw new IllegalArgumentException("requestsPerSecond must be positive and bytesPerSecond not negative");
+    }
+    maxRequestRate = requestsPerSecond;
+    maxByteRate = bytesPerSecond;
+    requestTokens = requestCapacity();
+    byteTokens = maxByteRate;
+    lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes the tokens for one request, waiting until they are available.
+   * @param bytes The size of the request in bytes.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  public void acquire(final int bytes) throws InterruptedException {
+    final long wait = reserve(bytes);
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+
+  /**
+   * Takes the tokens for one request if they become available within the timeout,
+   * waiting until they do. If they would not, returns at once without taking any.
+   * @param bytes The size of the request in bytes.
+   * @param timeout The longest time to wait.
+   * @param unit The unit of the timeout.
+   * @return true if the tokens were taken, false if the wait would exceed the timeout.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  public boolean tryAcquire(final int bytes, final long timeout, final TimeUnit unit) throws InterruptedException {
+    final long wait = reserve(bytes, unit.toNanos(timeout));
+    if (wait < 0) {
+      return false;
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+    return true;
+  }
+
+  /**
+   * Takes the tokens for one request without waiting, and returns how long the caller
+   * must hold the request back. Used by asynchronous callers to schedule the request.
+   * @param bytes The size of the request in bytes.
+   * @return The delay in nanoseconds, or 0 to send now.
+   */
+  public long reserve(final int bytes) {
+    return reserve(bytes, Long.MAX_VALUE);
+  }
+
+  /**
+   * Form of {@link #reserve(int)} that takes the tokens only if the request could go out
+   * within the given time.
+   * @param bytes The size of the request in bytes.
+   * @param maxDelayNanos The longest delay the caller accepts, in nanoseconds.
+   * @return The delay in nanoseconds, 0 to send now, or -1 if the delay would exceed the
+   *         limit, in which case no tokens were taken.
+   */
+  public long reserve(final int bytes, final long maxDelayNanos) {
+    lock.lock();
+    try {
+      final long now = System.nanoTime();
+      refill(now);
+      final double requestsLeft = requestTokens - 1;
+      final double bytesLeft = byteTokens - bytes;
+      double deficitSeconds = requestsLeft < 0 ? -requestsLeft / requestRate() : 0;
+      if (maxByteRate > 0 && bytesLeft < 0) {
+        deficitSeconds = Math.max(deficitSeconds, -bytesLeft / byteRate());
+      }
+      // Refilling resumes at lastRefillNanos, which is in the future during a Retry-After pause
+      final long delay = Math.max(0, lastRefillNanos - now) + (long) (deficitSeconds * 1e9);
+      if (delay > maxDelayNanos) {
+        return -1;
+      }
+      requestTokens = requestsLeft;
+      if (maxByteRate > 0) {
+        byteTokens = bytesLeft;
+      }
+      return delay;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records a request the service accepted, raising the rates towards the configured ones.
+   */
+  public void recordSuccess() {
+    lock.lock();
+    try {
+      if (scale < 1) {
+        // Divided by the request rate so the gain per second does not depend on it
+        scale = Math.min(1, scale + INCREASE_FRACTION / requestRate());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records a request the service throttled, cutting the rates and, if the service said
+   * when to come back, pausing until then.
+   * @param retryAfterMillis The Retry-After delay in milliseconds, or a negative number if none was given.
+   */
+  public void recordThrottle(final long retryAfterMillis) {
+    lock.lock();
+    try {
+      final long now = System.nanoTime();
+      refill(now);
+      // Requests already on the wire when the rates were cut are likely to be throttled
+      // too; only the first of them counts
+      if (!decreased || now - lastDecreaseNanos >= DECREASE_INTERVAL_NANOS) {
+        scale = Math.max(MIN_RATE_FRACTION, scale * DECREASE_FACTOR);
+        requestTokens = Math.min(requestTokens, requestCapacity());
+        byteTokens = Math.min(byteTokens, byteRate());
+        lastDecreaseNanos = now;
+        decreased = true;
+      }
+      if (retryAfterMillis > 0) {
+        final long resume = now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+        if (resume - lastRefillNanos > 0) {
+          lastRefillNanos = resume;
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the request rate currently allowed, which is below the configured rate
+   * after the service has throttled requests.
+   * @return Requests per second.
+   */
+  public double getRequestRate() {
+    lock.lock();
+    try {
+      return requestRate();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the rate of request bytes currently allowed.
+   * @return Bytes per second, or 0 if bytes are not limited.
+   */
+  public double getByteRate() {
+    lock.lock();
+    try {
+      return byteRate();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private double requestRate() {
+    return maxRequestRate * scale;
+  }
+
+  private double byteRate() {
+    return maxByteRate * scale;
+  }
+
+  private double requestCapacity() {
+    return Math.max(1, requestRate());
+  }
+
+  private void refill(final long now) {
+    final long elapsed = now - lastRefillNanos;
+    if (elapsed <= 0) {
+      return;
+    }
+    final double seconds = elapsed / 1e9;
+    requestTokens = Math.min(requestCapacity(), requestTokens + seconds * requestRate());
+    if (maxByteRate > 0) {
+      byteTokens = Math.min(byteRate(), byteTokens + seconds * byteRate());
+    }
+    lastRefillNanos = now;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one request to the service, with the time spent in each stage.
+ * The stages add up to the event's duration, less a little bookkeeping.
+ */
+@Name("com.robtheis.aptr.Request")
+@Label("Apertium Request")
+@Category("Apertium Translator")
+@Description("A request to the Apertium service, with the time spent in each stage")
+// Requests complete on transport threads, where the stack says nothing about the caller
+@StackTrace(false)
+final class RequestEvent extends Event {
+
+  @Label("Endpoint")
+  @Description("Host and port the request was sent to")
+  String endpoint;
+
+  @Label("Language Pair")
+  String pair;
+
+  @Label("Hedge")
+  @Description("Whether the request was sent again because the first went unanswered for too long")
+  boolean hedge;
+
+  @Label("Request Size")
+  @DataAmount
+  long requestBytes;
+
+  @Label("Response Size")
+  @DataAmount
+  long responseBytes;
+
+  @Label("Status Code")
+  int statusCode;
+
+  @Label("Error")
+  String error;
+
+  @Label("Connect")
+  @Description("Waiting for a connection, and opening one if none could be reused; -1 if the transport cannot tell")
+  @Timespan
+  long connect;
+
+  @Label("Time To First Byte")
+  @Description("Writing the request, including encoding a POST body, and waiting for the response headers")
+  @Timespan
+  long timeToFirstByte;
+
+  @Label("Body Read")
+  @Description("Reading the response body from the network")
+  @Timespan
+  long bodyRead;
+
+  @Label("JSON Parse")
+  @Description("Parsing the response body, less the time spent waiting for it to arrive")
+  @Timespan
+  long parse;
+}
@@ -0,0 +1,169 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import com.robtheis.aptr.language.LanguagePair;
+import com.robtheis.aptr.metrics.MetricsRegistry;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Reports one request on the wire to a {@link MetricsRegistry} and, while the flight
+ * recorder is recording them, as a {@link RequestEvent}. It counts the response bytes as the
+ * body is read, timing the reads if there is an event, and reports the request once it has
+ * finished.
+ */
+final class RequestRecorder {
+  private final MetricsRegistry metrics;
+  // Null unless the event is being recorded
+  private final RequestEvent event;
+  private final String endpoint;
+  private final LanguagePair pair;
+  private final long requestBytes;
+  private final long start;
+  private long received;
+  private long connectNanos = -1;
+  private int statusCode;
+  private CountingInputStream body;
+
+  private RequestRecorder(final MetricsRegistry pMetrics, final RequestEvent pEvent, final URL url,
+      final LanguagePair pPair, final long pRequestBytes, final boolean hedge) {
+    metrics = pMetrics;
+    event = pEvent;
+    endpoint = url.getAuthority();
+    pair = pPair;
+    requestBytes = pRequestBytes;
+    if (metrics != null) {
+      metrics.requestStarted(endpoint, pair, hedge);
+    }
+    if (event != null) {
+      event.hedge = hedge;
+      event.begin();
+    }
+    start = System.nanoTime();
+  }
+
+  /**
+   * Starts recording a request about to go on the wire.
+   * @return The recorder, or null if there is no registry and the event is not being recorded.
+   */
+  static RequestRecorder start(final MetricsRegistry metrics, final URL url, final int size,
+      final LanguagePair pair, final boolean hedge) {
+    final RequestEvent event = new RequestEvent();
+    final boolean recording = event.isEnabled();
+    if (metrics == null && !recording) {
+      return null;
+    }
+    return new RequestRecorder(metrics, recording ? event : null, url, pair, size, hedge);
+  }
+
+  /**
+   * Notes the arrival of the response headers and returns the body, counting the bytes read
+   * from it.
+   */
+  InputStream received(final int pStatusCode, final long pConnectNanos, final InputStream stream) {
+    received = System.nanoTime();
+    statusCode = pStatusCode;
+    connectNanos = pConnectNanos;
+    body = new CountingInputStream(stream, event != null);
+    return body;
+  }
+
+  /**
+   * Reports the request, which failed with the given exception, or succeeded if it is null.
+   */
+  void finish(final Throwable error) {
+    final long end = System.nanoTime();
+    final long responseBytes = body != null ? body.count : 0;
+    if (metrics != null) {
+      metrics.requestFinished(endpoint, pair, end - start, requestBytes, responseBytes, statusCode, error);
+    }
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.endpoint = endpoint;
+        event.pair = pair != null ? pair.getCode() : null;
+        event.requestBytes = requestBytes;
+        event.responseBytes = responseBytes;
+        event.statusCode = statusCode;
+        event.error = error != null ? error.getClass().getName() + ": " + error.getMessage() : null;
+        event.connect = connectNanos;
+        if (body != null) {
+          event.timeToFirstByte = received - start - Math.max(0, connectNanos);
+          event.bodyRead = body.readNanos;
+          event.parse = end - received - body.readNanos;
+        } else {
+          // Failed before the headers arrived
+          event.timeToFirstByte = end - start - Math.max(0, connectNanos);
+        }
+        event.commit();
+      }
+    }
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+    private final boolean timed;
+    long count;
+    long readNanos;
+
+    CountingInputStream(final InputStream in, final boolean pTimed) {
+      super(in);
+      timed = pTimed;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final long start = timed ? System.nanoTime() : 0;
+      final int b = in.read();
+      if (timed) {
+        readNanos += System.nanoTime() - start;
+      }
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      final long start = timed ? System.nanoTime() : 0;
+      final int n = in.read(buffer, offset, length);
+      if (timed) {
+        readNanos += System.nanoTime() - start;
+      }
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final long skipped = in.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
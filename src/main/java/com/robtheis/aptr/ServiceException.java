@@ -0,0 +1,89 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+/**
+ * Thrown when the Apertium API answers with an error status, either as the HTTP
+ * status code or as the responseStatus of the JSON response.
+ */
+public class ServiceException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+  private final long retryAfterMillis;
+
+  public ServiceException(final String message, final int pStatusCode, final long pRetryAfterMillis) {
+    super(message);
+    statusCode = pStatusCode;
+    retryAfterMillis = pRetryAfterMillis;
+  }
+
+  /**
+   * Returns the status reported by the service, such as 403 or 503.
+   * @return The status code.
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * Returns how long the service asked us to wait before retrying, from the
+   * Retry-After header, or -1 if it did not say.
+   * @return The delay in milliseconds, or -1.
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  /**
+   * Returns whether the service is pushing back because of request volume
+   * (429 Too Many Requests or 503 Service Unavailable).
+   * @return True if the request was throttled.
+   */
+  public boolean isThrottled() {
+    return statusCode == 429 || statusCode == 503;
+  }
+
+  /**
+   * Returns the first ServiceException in the cause chain of the given error,
+   * or null if the error did not come from the service.
+   * @param error The error, typically one thrown by a translate call.
+   * @return The ServiceException, or null.
+   */
+  public static ServiceException find(Throwable error) {
+    while (error != null) {
+      if (error instanceof ServiceException) {
+        return (ServiceException) error;
+      }
+      error = error.getCause();
+    }
+    return null;
+  }
+
+  // Parses a Retry-After header given in seconds; HTTP dates are not supported
+  static long parseRetryAfter(final String header) {
+    if (header == null) {
+      return -1;
+    }
+    try {
+      return Math.max(0, Long.parseLong(header.trim())) * 1000;
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import com.robtheis.aptr.language.LanguagePair;
+import com.robtheis.aptr.transport.RequestBody;
+import java.net.URL;
+
+/**
+ * One request to the service: where it goes, any parameters sent in its body, the
+ * settings of the call it belongs to, and the language pair it translates. Requests are
+ * immutable; each {@code with} method returns a copy.
+ *
+ * New per-request details are added here rather than as parameters of the retrieve
+ * methods, so subclasses keep compiling as the list grows.
+ */
+public final class ServiceRequest {
+  private final URL url;
+  private final RequestBody body;
+  private final CallOptions options;
+  private final LanguagePair pair;
+  // -1 until the caller says, as the encoder already knows it
+  private final int size;
+
+  private ServiceRequest(final URL pUrl, final RequestBody pBody, final CallOptions pOptions, final LanguagePair pPair,
+      final int pSize) {
+    url = pUrl;
+    body = pBody;
+    options = pOptions;
+    pair = pPair;
+    size = pSize;
+  }
+
+  /**
+   * Returns a GET request for the URL, sent with the default call options.
+   * @param url The URL, with any parameters already in its query.
+   * @return The request.
+   */
+  public static ServiceRequest to(final URL url) {
+    if (url == null) {
+      throw new IllegalArgumentException("url must not be null");
+    }
+    return new ServiceRequest(url, null, CallOptions.DEFAULT, null, -1);
+  }
+
+  /**
+   * Returns a copy that POSTs the given parameters in the request body.
+   * @param pBody The parameters, or null to send a GET.
+   * @return The new request.
+   */
+  public ServiceRequest withBody(final RequestBody pBody) {
+    return new ServiceRequest(url, pBody, options, pair, -1);
+  }
+
+  /**
+   * Returns a copy sent with the given call options.
+   * @param pOptions The options, as returned by {@link ApertiumTranslatorAPI#startCall(CallOptions)}.
+   * @return The new request.
+   */
+  public ServiceRequest withOptions(final CallOptions pOptions) {
+    if (pOptions == null) {
+      throw new IllegalArgumentException("options must not be null");
+    }
+    return new ServiceRequest(url, body, pOptions, pair, size);
+  }
+
+  /**
+   * Returns a copy reported to the metrics registry and circuit breaker under the given pair.
+   * @param pPair The language pair the request translates, or null.
+   * @return The new request.
+   */
+  public ServiceRequest withPair(final LanguagePair pPair) {
+    return new ServiceRequest(url, body, options, pPair, size);
+  }
+
+  /**
+   * Returns a copy whose size on the wire is already known, such as the length of the
+   * buffer its URL was encoded into, so {@link #getSize()} need not work it out again.
+   * Set it after the body, which resets it.
+   * @param pSize The length of the URL plus that of the body, in bytes.
+   * @return The new request.
+   */
+  public ServiceRequest withSize(final int pSize) {
+    if (pSize < 0) {
+      throw new IllegalArgumentException("size must not be negative");
+    }
+    return new ServiceRequest(url, body, options, pair, pSize);
+  }
+
+  public URL getUrl() {
+    return url;
+  }
+
+  /**
+   * @return The parameters sent in the request body, or null for a GET.
+   */
+  public RequestBody getBody() {
+    return body;
+  }
+
+  public CallOptions getOptions() {
+    return options;
+  }
+
+  /**
+   * @return The language pair the request translates, or null.
+   */
+  public LanguagePair getPair() {
+    return pair;
+  }
+
+  /**
+   * Returns the size of the request on the wire, as counted by the rate limiter and the
+   * metrics: the length of the URL, which is already percent-encoded, plus that of the body.
+   * @return The size in bytes.
+   */
+  public int getSize() {
+    if (size >= 0) {
+      return size;
+    }
+    return url.toString().length() + (body != null ? (int) Math.min(Integer.MAX_VALUE, body.getContentLength()) : 0);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+/**
+ * A point-in-time snapshot of cache counters.
+ */
+public final class CacheStats {
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final long expirations;
+  private final int entries;
+  private final long bytes;
+
+  CacheStats(final long hits, final long misses, final long evictions, final long expirations,
+      final int entries, final long bytes) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.expirations = expirations;
+    this.entries = entries;
+    this.bytes = bytes;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of entries removed to stay within the memory budget.
+   * @return The eviction count.
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Returns the number of entries dropped because they outlived the TTL.
+   * @return The expiration count.
+   */
+  public long getExpirations() {
+    return expirations;
+  }
+
+  public int getEntries() {
+    return entries;
+  }
+
+  /**
+   * Returns the estimated memory held by the cached entries.
+   * @return The size in bytes.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the fraction of lookups that were hits, or 0 if there were none.
+   * @return The hit rate, between 0 and 1.
+   */
+  public double getHitRate() {
+    final long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return "[hits: " + hits + "; misses: " + misses + "; evictions: " + evictions
+        + "; expirations: " + expirations + "; entries: " + entries + "; bytes: " + bytes + "]";
+  }
+}
@@ -0,0 +1,736 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Translation cache kept on disk, so that translations survive restarts. Put it behind an
+ * in-memory cache with {@link TieredTranslationCache}.
+ *
+ * The cache is a directory holding two files. translations.log is an append-only log of
+ * records, each holding a language pair, a hash of the source text, the source text and its
+ * translation, and a CRC of the lot. translations.idx is a memory-mapped hash table from the
+ * text hashes to record offsets. Opening the cache maps the index and replays only the records
+ * appended since the index was last written to, so it takes milliseconds however large the
+ * log. A torn record at the end of the log, left by a crash mid-write, is truncated away.
+ *
+ * Replacing a translation leaves the old record in the log. Once more than half the log is
+ * such dead records, it is compacted in the background: the live records are copied to a new
+ * log, which then takes the old one's place.
+ *
+ * Writes are not forced to disk as they are made, so a power failure may lose the latest
+ * translations; a process crash does not. Call {@link #flush()} to force them out. Errors
+ * reading or writing the files are treated as misses, since translations can always be
+ * fetched again.
+ */
+public final class DiskTranslationCache implements TranslationCache, Closeable {
+  private static final String LOG_FILE = "translations.log";
+  private static final String INDEX_FILE = "translations.idx";
+  private static final String COMPACT_FILE = "translations.log.compact";
+
+  // "APTRLOG1" and "APTRIDX1"
+  private static final long LOG_MAGIC = 0x415054524C4F4731L;
+  private static final long INDEX_MAGIC = 0x4150545249445831L;
+
+  // Log header: magic, generation. The generation changes whenever the log is rewritten, and
+  // an index built for another generation is thrown away.
+  private static final int LOG_HEADER_BYTES = 16;
+  // Record: payload length, CRC of the payload, then the payload: text hash, pair code length,
+  // pair code, text length, text, and the translation filling the rest
+  private static final int RECORD_HEADER_BYTES = 8;
+  private static final int MIN_PAYLOAD_BYTES = 14;
+  private static final int MAX_PAYLOAD_BYTES = 1 << 24;
+
+  // Index header: magic, generation, capacity, count, indexed log length, live record bytes
+  private static final int INDEX_HEADER_BYTES = 64;
+  private static final int GENERATION_OFFSET = 8;
+  private static final int CAPACITY_OFFSET = 16;
+  private static final int COUNT_OFFSET = 20;
+  private static final int INDEXED_LENGTH_OFFSET = 24;
+  private static final int LIVE_BYTES_OFFSET = 32;
+  // Slot: text hash (0 if empty), record offset
+  private static final int SLOT_BYTES = 16;
+  private static final int INITIAL_CAPACITY = 1024;
+  // Keeps the mapped index under 2 GB
+  private static final int MAX_CAPACITY = 1 << 26;
+
+  // Logs smaller than this are not worth compacting
+  private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+  // A record read back from the log
+  private static final class Record {
+    final long hash;
+    final String code;
+    final int crc;
+    final byte[] payload;
+    final int textOffset;
+    final int textLength;
+
+    Record(final long pHash, final String pCode, final int pCrc, final byte[] pPayload,
+        final int pTextOffset, final int pTextLength) {
+      hash = pHash;
+      code = pCode;
+      crc = pCrc;
+      payload = pPayload;
+      textOffset = pTextOffset;
+      textLength = pTextLength;
+    }
+
+    boolean matches(final String pCode, final byte[] text) {
+      return code.equals(pCode) && Arrays.equals(payload, textOffset, textOffset + textLength, text, 0, text.length);
+    }
+
+    byte[] text() {
+      return Arrays.copyOfRange(payload, textOffset, textOffset + textLength);
+    }
+
+    String translation() {
+      final int start = textOffset + textLength;
+      return new String(payload, start, payload.length - start, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+      return RECORD_HEADER_BYTES + payload.length;
+    }
+  }
+
+  private final File directory;
+  private final File logFile;
+  private final File indexFile;
+  private final Executor executor;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicBoolean compacting = new AtomicBoolean();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  // Run by compactLog() between copying the records and swapping the logs; for tests
+  volatile Runnable afterCopy;
+
+  // Guarded by lock
+  private FileChannel log;
+  private long logLength;
+  private long generation;
+  private FileChannel indexChannel;
+  private MappedByteBuffer index;
+  private int capacity;
+  private int count;
+  private long liveBytes;
+  // Bumped by clear(), so a compaction running across it knows to give up
+  private int epoch;
+  private boolean closed;
+
+  /**
+   * Opens the cache in the given directory, creating it if need be. Compaction runs in the
+   * common fork/join pool.
+   * @param pDirectory The directory for the cache files.
+   * @throws IOException if the files cannot be opened or are not a translation cache.
+   */
+  public DiskTranslationCache(final File pDirectory) throws IOException {
+    this(pDirectory, null);
+  }
+
+  /**
+   * Opens the cache in the given directory, creating it if need be. Only one cache at a time,
+   * in this process or any other, may have the directory open.
+   * @param pDirectory The directory for the cache files.
+   * @param pExecutor The executor that runs compactions, or null for the common fork/join pool.
+   * @throws IOException if the files cannot be opened or are not a translation cache.
+   */
+  public DiskTranslationCache(final File pDirectory, final Executor pExecutor) throws IOException {
+    directory = pDirectory;
+    logFile = new File(pDirectory, LOG_FILE);
+    indexFile = new File(pDirectory, INDEX_FILE);
+    executor = pExecutor != null ? pExecutor : ForkJoinPool.commonPool();
+    Files.createDirectories(pDirectory.toPath());
+    openLog();
+    try {
+      openIndex();
+    } catch (IOException ex) {
+      log.close();
+      if (indexChannel != null) {
+        indexChannel.close();
+      }
+      throw ex;
+    }
+  }
+
+  @Override
+  public String get(final Language from, final Language to, final String text) {
+    final String code = code(from, to);
+    final byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+    final long hash = hash(code, textBytes);
+    lock.readLock().lock();
+    try {
+      if (!closed) {
+        final int mask = capacity - 1;
+        for (int i = start(hash, mask); index.getLong(slot(i)) != 0; i = (i + 1) & mask) {
+          if (index.getLong(slot(i)) == hash) {
+            final Record record = readRecord(log, index.getLong(slot(i) + 8), logLength);
+            if (record != null && record.matches(code, textBytes)) {
+              hits.incrementAndGet();
+              return record.translation();
+            }
+          }
+        }
+      }
+    } catch (IOException ex) {
+      // Counted as a miss
+    } finally {
+      lock.readLock().unlock();
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  @Override
+  public void put(final Language from, final Language to, final String text, final String translation) {
+    final String code = code(from, to);
+    final byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+    final byte[] translationBytes = translation.getBytes(StandardCharsets.UTF_8);
+    final byte[] codeBytes = code.getBytes(StandardCharsets.UTF_8);
+    final int payloadLength = MIN_PAYLOAD_BYTES + codeBytes.length + textBytes.length + translationBytes.length;
+    if (payloadLength > MAX_PAYLOAD_BYTES) {
+      return;
+    }
+    final long hash = hash(code, textBytes);
+    boolean compact = false;
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      final int i = find(hash, code, textBytes);
+      if (index.getLong(slot(i)) != 0) {
+        final Record existing = readRecord(log, index.getLong(slot(i) + 8), logLength);
+        if (existing != null && existing.translation().equals(translation)) {
+          return;
+        }
+      }
+      final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength);
+      record.putInt(payloadLength).putInt(0).putLong(hash)
+          .putShort((short) codeBytes.length).put(codeBytes)
+          .putInt(textBytes.length).put(textBytes).put(translationBytes);
+      record.putInt(4, crc(record.array(), RECORD_HEADER_BYTES, payloadLength));
+      record.flip();
+      final long offset = logLength;
+      writeFully(log, record, offset);
+      logLength += record.capacity();
+      insert(hash, code, textBytes, offset, record.capacity());
+      writeIndexHeader();
+      compact = logLength >= MIN_COMPACTION_BYTES && liveBytes * 2 < logLength - LOG_HEADER_BYTES;
+    } catch (IOException ex) {
+      // The translation will be fetched again next time
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (compact && !compacting.get()) {
+      executor.execute(() -> {
+        try {
+          compact();
+        } catch (IOException ex) {
+          // Tried again after the next put
+        }
+      });
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      epoch++;
+      generation = newGeneration();
+      log.truncate(0);
+      writeLogHeader(log, generation);
+      logLength = LOG_HEADER_BYTES;
+      resetIndex(INITIAL_CAPACITY);
+      writeIndexHeader();
+    } catch (IOException ex) {
+      // The generation changed, so a half-cleared cache is rebuilt from the log when reopened
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Rewrites the log with only its live records, reclaiming the space taken by replaced
+   * translations. This runs in the background on its own when enough of the log is dead;
+   * lookups and writes carry on while the records are copied. Does nothing if a compaction
+   * is already running.
+   * @throws IOException if the new log cannot be written.
+   */
+  public void compact() throws IOException {
+    if (!compacting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      compactLog();
+    } finally {
+      compacting.set(false);
+    }
+  }
+
+  /**
+   * Forces everything written so far out to the disk.
+   * @throws IOException on error.
+   */
+  public void flush() throws IOException {
+    lock.readLock().lock();
+    try {
+      if (!closed) {
+        log.force(false);
+        index.force();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Flushes and closes the cache files. Afterwards every lookup misses and writes are ignored.
+   * @throws IOException on error.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      index.force();
+      try {
+        log.force(false);
+      } finally {
+        log.close();
+        indexChannel.close();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the cache counters. The byte count is the size of the log on disk.
+   * @return A snapshot of the counters.
+   */
+  public CacheStats getStats() {
+    lock.readLock().lock();
+    try {
+      return new CacheStats(hits.get(), misses.get(), 0, 0, count, logLength);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void openLog() throws IOException {
+    log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (log.size() < LOG_HEADER_BYTES) {
+      // New, or torn before the header was complete
+      generation = newGeneration();
+      log.truncate(0);
+      writeLogHeader(log, generation);
+      logLength = LOG_HEADER_BYTES;
+      return;
+    }
+    final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+    if (!readFully(log, header, 0) || header.getLong(0) != LOG_MAGIC) {
+      log.close();
+      throw new IOException(logFile + " is not a translation log");
+    }
+    generation = header.getLong(8);
+    logLength = log.size();
+  }
+
+  private void openIndex() throws IOException {
+    indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    // The index file is never replaced, so its lock guards the directory until close()
+    try {
+      if (indexChannel.tryLock() == null) {
+        throw new IOException(directory + " is in use by another process");
+      }
+    } catch (OverlappingFileLockException ex) {
+      throw new IOException(directory + " is already open", ex);
+    }
+    final long size = indexChannel.size();
+    if (size >= INDEX_HEADER_BYTES && size <= INDEX_HEADER_BYTES + (long) MAX_CAPACITY * SLOT_BYTES) {
+      index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      final int indexCapacity = index.getInt(CAPACITY_OFFSET);
+      final long indexedLength = index.getLong(INDEXED_LENGTH_OFFSET);
+      if (index.getLong(0) == INDEX_MAGIC && index.getLong(GENERATION_OFFSET) == generation
+          && indexCapacity > 0 && Integer.bitCount(indexCapacity) == 1
+          && size == INDEX_HEADER_BYTES + (long) indexCapacity * SLOT_BYTES
+          && indexedLength >= LOG_HEADER_BYTES && indexedLength <= logLength) {
+        capacity = indexCapacity;
+        count = index.getInt(COUNT_OFFSET);
+        liveBytes = index.getLong(LIVE_BYTES_OFFSET);
+        replay(indexedLength);
+        return;
+      }
+    }
+    // Missing, damaged or built for another log: rebuild it from the whole log
+    resetIndex(INITIAL_CAPACITY);
+    replay(LOG_HEADER_BYTES);
+  }
+
+  // Indexes the records from the given offset to the end of the log, truncating the log at the
+  // first record that is cut short or fails its CRC
+  private void replay(final long from) throws IOException {
+    long offset = from;
+    while (offset < logLength) {
+      final Record record = readRecord(log, offset, logLength);
+      if (record == null) {
+        log.truncate(offset);
+        logLength = offset;
+        break;
+      }
+      insert(record.hash, record.code, record.text(), offset, record.size());
+      offset += record.size();
+    }
+    writeIndexHeader();
+  }
+
+  // Points the key's slot at the record, replacing any older record for the same key
+  private void insert(final long hash, final String code, final byte[] text, final long offset, final int size) throws IOException {
+    final int i = find(hash, code, text);
+    if (index.getLong(slot(i)) != 0) {
+      final Record existing = readRecord(log, index.getLong(slot(i) + 8), logLength);
+      if (existing != null) {
+        liveBytes -= existing.size();
+      }
+    } else if (count >= MAX_CAPACITY / 2) {
+      // Full; the record is left unindexed, as dead space for the next compaction
+      return;
+    } else {
+      count++;
+    }
+    index.putLong(slot(i), hash);
+    index.putLong(slot(i) + 8, offset);
+    liveBytes += size;
+    if (count * 2 > capacity && capacity < MAX_CAPACITY) {
+      grow();
+    }
+  }
+
+  // Returns the slot holding the key, or the empty slot where it belongs
+  private int find(final long hash, final String code, final byte[] text) throws IOException {
+    final int mask = capacity - 1;
+    int i = start(hash, mask);
+    while (index.getLong(slot(i)) != 0) {
+      if (index.getLong(slot(i)) == hash) {
+        final Record record = readRecord(log, index.getLong(slot(i) + 8), logLength);
+        if (record != null && record.matches(code, text)) {
+          break;
+        }
+      }
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void grow() throws IOException {
+    final long[] hashes = new long[count];
+    final long[] offsets = new long[count];
+    final int n = collect(hashes, offsets);
+    final long bytes = liveBytes;
+    resetIndex(capacity * 2);
+    for (int j = 0; j < n; j++) {
+      place(hashes[j], offsets[j]);
+    }
+    count = n;
+    liveBytes = bytes;
+    writeIndexHeader();
+  }
+
+  // Copies the occupied slots into the arrays and returns how many there were
+  private int collect(final long[] hashes, final long[] offsets) {
+    int n = 0;
+    for (int i = 0; i < capacity && n < hashes.length; i++) {
+      final long hash = index.getLong(slot(i));
+      if (hash != 0) {
+        hashes[n] = hash;
+        offsets[n++] = index.getLong(slot(i) + 8);
+      }
+    }
+    return n;
+  }
+
+  // Puts a slot into an index known not to hold the key already
+  private void place(final long hash, final long offset) {
+    final int mask = capacity - 1;
+    int i = start(hash, mask);
+    while (index.getLong(slot(i)) != 0) {
+      i = (i + 1) & mask;
+    }
+    index.putLong(slot(i), hash);
+    index.putLong(slot(i) + 8, offset);
+  }
+
+  // Maps an empty index of the given capacity. Its generation stays 0, marking it invalid,
+  // until writeIndexHeader() is called once the slots are filled in.
+  private void resetIndex(final int pCapacity) throws IOException {
+    final long size = INDEX_HEADER_BYTES + (long) pCapacity * SLOT_BYTES;
+    if (index != null) {
+      index.putLong(GENERATION_OFFSET, 0);
+    }
+    if (indexChannel.size() > size) {
+      indexChannel.truncate(size);
+    }
+    index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    index.putLong(0, INDEX_MAGIC);
+    index.putLong(GENERATION_OFFSET, 0);
+    index.putInt(CAPACITY_OFFSET, pCapacity);
+    for (long position = INDEX_HEADER_BYTES; position < size; position += 8) {
+      index.putLong((int) position, 0);
+    }
+    capacity = pCapacity;
+    count = 0;
+    liveBytes = 0;
+  }
+
+  private void writeIndexHeader() {
+    index.putInt(COUNT_OFFSET, count);
+    index.putLong(INDEXED_LENGTH_OFFSET, logLength);
+    index.putLong(LIVE_BYTES_OFFSET, liveBytes);
+    index.putLong(GENERATION_OFFSET, generation);
+  }
+
+  private void compactLog() throws IOException {
+    final long end;
+    final long[] offsets;
+    final int startEpoch;
+    final FileChannel source;
+    lock.readLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      end = logLength;
+      offsets = new long[count];
+      final int n = collect(new long[count], offsets);
+      Arrays.sort(offsets, 0, n);
+      startEpoch = epoch;
+      source = log;
+    } finally {
+      lock.readLock().unlock();
+    }
+    final File tmp = new File(directory, COMPACT_FILE);
+    final long newGeneration = newGeneration();
+    final Map<Long, Long> moved = new HashMap<Long, Long>(offsets.length * 2);
+    final FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      writeLogHeader(out, newGeneration);
+      long outLength = LOG_HEADER_BYTES;
+      // Copy the records that were live when compaction began, in log order, without the lock
+      for (long offset : offsets) {
+        if (offset == 0) {
+          continue;
+        }
+        final Record record = readRecord(source, offset, end);
+        if (record != null) {
+          outLength = writeRecord(out, record, outLength);
+          moved.put(offset, outLength - record.size());
+        }
+      }
+      final Runnable hook = afterCopy;
+      if (hook != null) {
+        hook.run();
+      }
+      lock.writeLock().lock();
+      try {
+        if (closed || epoch != startEpoch) {
+          return;
+        }
+        // Then, with writes held off, the records written since and the new index
+        final long[] hashes = new long[count];
+        final long[] current = new long[count];
+        final int n = collect(hashes, current);
+        int live = 0;
+        for (int j = 0; j < n; j++) {
+          Long target = moved.get(current[j]);
+          if (current[j] >= end) {
+            final Record record = readRecord(log, current[j], logLength);
+            if (record != null) {
+              target = outLength;
+              outLength = writeRecord(out, record, outLength);
+            }
+          }
+          if (target != null) {
+            hashes[live] = hashes[j];
+            current[live++] = target;
+          }
+        }
+        out.force(false);
+        out.close();
+        Files.move(tmp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.close();
+        log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        generation = newGeneration;
+        logLength = outLength;
+        int newCapacity = INITIAL_CAPACITY;
+        while (live * 2 > newCapacity && newCapacity < MAX_CAPACITY) {
+          newCapacity *= 2;
+        }
+        resetIndex(newCapacity);
+        for (int j = 0; j < live; j++) {
+          place(hashes[j], current[j]);
+        }
+        count = live;
+        liveBytes = outLength - LOG_HEADER_BYTES;
+        writeIndexHeader();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } finally {
+      out.close();
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  // Appends the record as read, and returns the new end of the log
+  private static long writeRecord(final FileChannel out, final Record record, final long position) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(record.size());
+    buffer.putInt(record.payload.length).putInt(record.crc).put(record.payload).flip();
+    writeFully(out, buffer, position);
+    return position + record.size();
+  }
+
+  // Reads and checks the record at the offset, returning null if it runs past the limit, is
+  // malformed or fails its CRC
+  private static Record readRecord(final FileChannel channel, final long offset, final long limit) throws IOException {
+    if (offset < LOG_HEADER_BYTES || offset + RECORD_HEADER_BYTES > limit) {
+      return null;
+    }
+    final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+    if (!readFully(channel, header, offset)) {
+      return null;
+    }
+    final int length = header.getInt(0);
+    if (length < MIN_PAYLOAD_BYTES || length > MAX_PAYLOAD_BYTES || offset + RECORD_HEADER_BYTES + length > limit) {
+      return null;
+    }
+    final byte[] payload = new byte[length];
+    if (!readFully(channel, ByteBuffer.wrap(payload), offset + RECORD_HEADER_BYTES)
+        || crc(payload, 0, length) != header.getInt(4)) {
+      return null;
+    }
+    final ByteBuffer fields = ByteBuffer.wrap(payload);
+    final long hash = fields.getLong();
+    final int codeLength = fields.getShort() & 0xffff;
+    if (codeLength > length - MIN_PAYLOAD_BYTES) {
+      return null;
+    }
+    final String code = new String(payload, 10, codeLength, StandardCharsets.UTF_8);
+    fields.position(10 + codeLength);
+    final int textLength = fields.getInt();
+    if (textLength < 0 || textLength > fields.remaining()) {
+      return null;
+    }
+    return new Record(hash, code, header.getInt(4), payload, fields.position(), textLength);
+  }
+
+  private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+    long at = position;
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, at);
+      if (read < 0) {
+        return false;
+      }
+      at += read;
+    }
+    return true;
+  }
+
+  private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+    long at = position;
+    while (buffer.hasRemaining()) {
+      at += channel.write(buffer, at);
+    }
+  }
+
+  private static void writeLogHeader(final FileChannel channel, final long pGeneration) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+    header.putLong(LOG_MAGIC).putLong(pGeneration).flip();
+    writeFully(channel, header, 0);
+  }
+
+  private static long newGeneration() {
+    // Never 0, which marks an index as invalid
+    return ThreadLocalRandom.current().nextLong() | 1;
+  }
+
+  private static String code(final Language from, final Language to) {
+    return LanguagePair.of(from, to).getCode();
+  }
+
+  // 64-bit FNV-1a over the pair code and the UTF-8 text, with a final mix so the low bits
+  // used to pick a slot depend on every input byte. Never 0, which marks an empty slot.
+  private static long hash(final String code, final byte[] text) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < code.length(); i++) {
+      h = (h ^ code.charAt(i)) * 0x100000001b3L;
+    }
+    for (byte b : text) {
+      h = (h ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h != 0 ? h : 1;
+  }
+
+  private static int crc(final byte[] bytes, final int offset, final int length) {
+    final CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static int start(final long hash, final int mask) {
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  private static int slot(final int i) {
+    return INDEX_HEADER_BYTES + i * SLOT_BYTES;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import com.robtheis.aptr.language.Language;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory translation cache bounded by an estimate of the memory its entries
+ * hold. When the budget is exceeded the least recently used entries are evicted,
+ * and entries older than the time-to-live are treated as absent.
+ *
+ * Guarded by a {@link ReentrantLock} rather than a monitor, so a virtual thread waiting for
+ * the cache parks instead of pinning its carrier thread.
+ */
+public final class LruTranslationCache implements TranslationCache {
+  // Rough per-entry cost of the map node, key, entry and String headers
+  private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+  private static final class Entry {
+    final String translation;
+    final long expiresAtNanos;
+    final int bytes;
+
+    Entry(final String pTranslation, final long pExpiresAtNanos, final int pBytes) {
+      translation = pTranslation;
+      expiresAtNanos = pExpiresAtNanos;
+      bytes = pBytes;
+    }
+  }
+
+  private final long maxBytes;
+  private final long ttlNanos;
+  // Access-ordered, so iteration starts at the least recently used entry
+  private final LinkedHashMap<TranslationKey, Entry> entries = new LinkedHashMap<TranslationKey, Entry>(256, 0.75f, true);
+  private final ReentrantLock lock = new ReentrantLock();
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+
+  /**
+   * Creates a cache.
+   * @param pMaxBytes The memory budget for cached entries, in bytes.
+   * @param ttlMillis How long an entry stays valid, or 0 for no expiry.
+   */
+  public LruTranslationCache(final long pMaxBytes, final long ttlMillis) {
+    if (pMaxBytes <= 0 || ttlMillis < 0) {
+      throw new IllegalArgumentException("maxBytes must be positive and ttlMillis must not be negative");
+    }
+    maxBytes = pMaxBytes;
+    ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+  }
+
+  @Override
+  public String get(final Language from, final Language to, final String text) {
+    final TranslationKey key = new TranslationKey(from, to, text);
+    lock.lock();
+    try {
+      final Entry entry = entries.get(key);
+      if (entry == null) {
+        misses++;
+        return null;
+      }
+      if (ttlNanos > 0 && System.nanoTime() - entry.expiresAtNanos >= 0) {
+        entries.remove(key);
+        bytes -= entry.bytes;
+        expirations++;
+        misses++;
+        return null;
+      }
+      hits++;
+      return entry.translation;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(final Language from, final Language to, final String text, final String translation) {
+    final int size = estimateBytes(text, translation);
+    if (size > maxBytes) {
+      return;
+    }
+    final TranslationKey key = new TranslationKey(from, to, text);
+    final Entry entry = new Entry(translation, System.nanoTime() + ttlNanos, size);
+    lock.lock();
+    try {
+      final Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        bytes -= previous.bytes;
+      }
+      bytes += size;
+      final Iterator<Map.Entry<TranslationKey, Entry>> eldest = entries.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        bytes -= eldest.next().getValue().bytes;
+        eldest.remove();
+        evictions++;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      entries.clear();
+      bytes = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the cache counters.
+   * @return A snapshot of the counters.
+   */
+  public CacheStats getStats() {
+    lock.lock();
+    try {
+      return new CacheStats(hits, misses, evictions, expirations, entries.size(), bytes);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static int estimateBytes(final String text, final String translation) {
+    return ENTRY_OVERHEAD_BYTES + 2 * (text.length() + translation.length());
+  }
+}
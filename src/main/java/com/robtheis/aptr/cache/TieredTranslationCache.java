@@ -0,0 +1,68 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import com.robtheis.aptr.language.Language;
+
+/**
+ * Two caches, one in front of the other: typically a small, fast
+ * {@link LruTranslationCache} in front of a large, persistent {@link DiskTranslationCache}.
+ * Lookups try the front cache first, and translations found only in the back one are
+ * copied to the front. Translations are stored in both.
+ */
+public final class TieredTranslationCache implements TranslationCache {
+  private final TranslationCache front;
+  private final TranslationCache back;
+
+  /**
+   * Creates a tiered cache.
+   * @param pFront The cache consulted first.
+   * @param pBack The cache consulted on a miss in the front one.
+   */
+  public TieredTranslationCache(final TranslationCache pFront, final TranslationCache pBack) {
+    if (pFront == null || pBack == null) {
+      throw new IllegalArgumentException("both caches are required");
+    }
+    front = pFront;
+    back = pBack;
+  }
+
+  @Override
+  public String get(final Language from, final Language to, final String text) {
+    String translation = front.get(from, to, text);
+    if (translation == null) {
+      translation = back.get(from, to, text);
+      if (translation != null) {
+        front.put(from, to, text, translation);
+      }
+    }
+    return translation;
+  }
+
+  @Override
+  public void put(final Language from, final Language to, final String text, final String translation) {
+    front.put(from, to, text, translation);
+    back.put(from, to, text, translation);
+  }
+
+  @Override
+  public void clear() {
+    front.clear();
+    back.clear();
+  }
+}
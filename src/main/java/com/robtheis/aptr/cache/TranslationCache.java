@@ -0,0 +1,50 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import com.robtheis.aptr.language.Language;
+
+/**
+ * Stores translations keyed by language pair and source text. Implementations
+ * must be safe for use by concurrent threads.
+ */
+public interface TranslationCache {
+
+  /**
+   * Returns the cached translation, or null if there is none.
+   * @param from The language translated from.
+   * @param to The language translated to.
+   * @param text The source text.
+   * @return The translation, or null.
+   */
+  String get(Language from, Language to, String text);
+
+  /**
+   * Stores a translation.
+   * @param from The language translated from.
+   * @param to The language translated to.
+   * @param text The source text.
+   * @param translation The translated text.
+   */
+  void put(Language from, Language to, String text, String translation);
+
+  /**
+   * Removes all cached translations.
+   */
+  void clear();
+}
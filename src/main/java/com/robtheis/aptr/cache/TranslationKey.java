@@ -0,0 +1,70 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import com.robtheis.aptr.language.Language;
+
+/**
+ * Identifies one translation: a source text and the language pair to translate it with.
+ * Used as a map key by caches and by anything else that must tell translations apart.
+ */
+public final class TranslationKey {
+  private final Language from;
+  private final Language to;
+  private final String text;
+  private final int hash;
+
+  /**
+   * Creates a key.
+   * @param pFrom The language translated from.
+   * @param pTo The language translated to.
+   * @param pText The source text.
+   */
+  public TranslationKey(final Language pFrom, final Language pTo, final String pText) {
+    from = pFrom;
+    to = pTo;
+    text = pText;
+    hash = 31 * (31 * pFrom.hashCode() + pTo.hashCode()) + pText.hashCode();
+  }
+
+  public Language getFrom() {
+    return from;
+  }
+
+  public Language getTo() {
+    return to;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof TranslationKey)) {
+      return false;
+    }
+    final TranslationKey other = (TranslationKey) o;
+    return from == other.from && to == other.to && text.equals(other.text);
+  }
+}
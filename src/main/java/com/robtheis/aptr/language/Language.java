@@ -18,6 +18,9 @@
  */
 package com.robtheis.aptr.language;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Language - an enum of language codes supported by the Apertium API
  */
@@ -45,6 +48,14 @@ public enum Language {
   SWEDISH("sv"),
   WELSH("cy");
 
+  private static final Map<String, Language> BY_CODE = new HashMap<String, Language>();
+
+  static {
+    for (Language l : values()) {
+      BY_CODE.put(l.language, l);
+    }
+  }
+
   /**
    * String representation of this language.
    */
@@ -58,13 +69,13 @@ public enum Language {
     language = pLanguage;
   }
 
+  /**
+   * Returns the Language with the given code, such as "es".
+   * @param pLanguage The language code.
+   * @return The Language, or null if the code is not known.
+   */
   public static Language fromString(final String pLanguage) {
-    for (Language l : values()) {
-      if (l.toString().equals(pLanguage)) {
-        return l;
-      }
-    }
-    return null;
+    return BY_CODE.get(pLanguage);
   }
 
   /**
@@ -0,0 +1,149 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.language;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LanguagePair - a direction of translation, from one {@link Language} to another.
+ *
+ * There is exactly one instance per pair, created up front, so pairs can be compared
+ * with == and looked up in constant time by their languages or by their code. Pairs of
+ * a language with itself exist too, since the service echoes such requests back.
+ */
+public final class LanguagePair {
+  private static final int LANGUAGE_COUNT = Language.values().length;
+
+  // Indexed by from.ordinal() * LANGUAGE_COUNT + to.ordinal()
+  private static final LanguagePair[] BY_ORDINALS = new LanguagePair[LANGUAGE_COUNT * LANGUAGE_COUNT];
+  private static final Map<String, LanguagePair> BY_CODE = new HashMap<String, LanguagePair>();
+  private static final List<LanguagePair> ALL;
+
+  static {
+    final List<LanguagePair> all = new ArrayList<LanguagePair>();
+    for (Language from : Language.values()) {
+      for (Language to : Language.values()) {
+        final LanguagePair pair = new LanguagePair(from, to);
+        BY_ORDINALS[from.ordinal() * LANGUAGE_COUNT + to.ordinal()] = pair;
+        BY_CODE.put(pair.code, pair);
+        if (from != to) {
+          all.add(pair);
+        }
+      }
+    }
+    ALL = Collections.unmodifiableList(all);
+  }
+
+  private final Language from;
+  private final Language to;
+  private final String code;
+  private final String encoded;
+
+  private LanguagePair(final Language pFrom, final Language pTo) {
+    from = pFrom;
+    to = pTo;
+    code = pFrom + "|" + pTo;
+    encoded = URLEncoder.encode(code, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the pair for translating from one language to another.
+   * @param from The language to translate from.
+   * @param to The language to translate to.
+   * @return The pair.
+   * @throws IllegalArgumentException if a language is null.
+   */
+  public static LanguagePair of(final Language from, final Language to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("a language pair needs two languages");
+    }
+    return BY_ORDINALS[from.ordinal() * LANGUAGE_COUNT + to.ordinal()];
+  }
+
+  /**
+   * Returns the pair with the given code, such as "es|en".
+   * @param pCode The pair code.
+   * @return The pair, or null if the code is not known.
+   */
+  public static LanguagePair fromString(final String pCode) {
+    return BY_CODE.get(pCode);
+  }
+
+  /**
+   * Returns every pair of two different languages.
+   * @return An unmodifiable list of the pairs.
+   */
+  public static List<LanguagePair> values() {
+    return ALL;
+  }
+
+  /**
+   * Returns the size of an array indexed by {@link #index()}.
+   * @return One more than the largest index.
+   */
+  public static int indexCount() {
+    return BY_ORDINALS.length;
+  }
+
+  public Language getFrom() {
+    return from;
+  }
+
+  public Language getTo() {
+    return to;
+  }
+
+  /**
+   * Returns the code for this pair, such as "es|en", as used in the langpair parameter.
+   * @return The pair code.
+   */
+  public String getCode() {
+    return code;
+  }
+
+  /**
+   * Returns the code for this pair ready to go on the wire, such as "es%7Cen".
+   * @return The URL-encoded pair code.
+   */
+  public String getEncoded() {
+    return encoded;
+  }
+
+  /**
+   * Returns a small number unique to this pair, for indexing arrays of per-pair data.
+   * @return The index, from 0 to {@link #indexCount()} (exclusive).
+   */
+  public int index() {
+    return from.ordinal() * LANGUAGE_COUNT + to.ordinal();
+  }
+
+  /**
+   * Returns the String representation of this pair.
+   * @return The pair code.
+   */
+  @Override
+  public String toString() {
+    return code;
+  }
+}
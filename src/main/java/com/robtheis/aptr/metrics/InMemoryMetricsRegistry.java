@@ -0,0 +1,242 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.metrics;
+
+import com.robtheis.aptr.language.LanguagePair;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Keeps request metrics in memory, per endpoint and per language pair: counts of requests,
+ * hedges and errors (by exception type and by HTTP status code), bytes sent and received,
+ * the number of requests in flight, and a latency histogram giving the 50th, 99th and
+ * 99.9th percentiles.
+ *
+ * Counters are {@link LongAdder}s, and the series for a pair is found by its index in an
+ * array, so recording a request takes no locks and allocates nothing once the series exists.
+ * One registry can be shared by several clients.
+ *
+ * <pre>
+ * InMemoryMetricsRegistry metrics = new InMemoryMetricsRegistry();
+ * metrics.registerMBean("translator");
+ * TranslatorClient client = TranslatorClient.builder().key(key).metrics(metrics).build();
+ * </pre>
+ */
+public final class InMemoryMetricsRegistry implements MetricsRegistry, MetricsMXBean {
+  private static final String DOMAIN = "com.robtheis.aptr";
+  // Slot for requests without a pair, after those of the pairs themselves
+  private static final int NO_PAIR = LanguagePair.indexCount();
+  private static final int MIN_STATUS = 100;
+  private static final int MAX_STATUS = 599;
+
+  // The series of each endpoint, indexed by LanguagePair.index()
+  private final ConcurrentHashMap<String, AtomicReferenceArray<Series>> endpoints =
+      new ConcurrentHashMap<String, AtomicReferenceArray<Series>>();
+
+  private static final class Series {
+    final LongAdder requests = new LongAdder();
+    final LongAdder hedges = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder inFlight = new LongAdder();
+    final LongAdder requestBytes = new LongAdder();
+    final LongAdder responseBytes = new LongAdder();
+    final LatencyHistogram latencies = new LatencyHistogram();
+    // Indexed by status code less MIN_STATUS; codes outside the range share the last slot
+    final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<LongAdder>(MAX_STATUS - MIN_STATUS + 2);
+    final ConcurrentHashMap<String, LongAdder> errorTypes = new ConcurrentHashMap<String, LongAdder>();
+  }
+
+  @Override
+  public void requestStarted(final String endpoint, final LanguagePair pair, final boolean hedge) {
+    final Series series = series(endpoint, pair);
+    series.requests.increment();
+    series.inFlight.increment();
+    if (hedge) {
+      series.hedges.increment();
+    }
+  }
+
+  @Override
+  public void requestFinished(final String endpoint, final LanguagePair pair, final long nanos,
+      final long requestBytes, final long responseBytes, final int statusCode, final Throwable error) {
+    final Series series = series(endpoint, pair);
+    series.inFlight.decrement();
+    series.latencies.record(nanos);
+    series.requestBytes.add(requestBytes);
+    series.responseBytes.add(responseBytes);
+    if (statusCode > 0) {
+      final int slot = statusCode >= MIN_STATUS && statusCode <= MAX_STATUS
+          ? statusCode - MIN_STATUS : series.statuses.length() - 1;
+      counter(series.statuses, slot).increment();
+    }
+    if (error != null) {
+      series.errors.increment();
+      final String type = error.getClass().getSimpleName();
+      LongAdder count = series.errorTypes.get(type);
+      if (count == null) {
+        count = series.errorTypes.computeIfAbsent(type, t -> new LongAdder());
+      }
+      count.increment();
+    }
+  }
+
+  private Series series(final String endpoint, final LanguagePair pair) {
+    AtomicReferenceArray<Series> pairs = endpoints.get(endpoint);
+    if (pairs == null) {
+      pairs = endpoints.computeIfAbsent(endpoint, e -> new AtomicReferenceArray<Series>(NO_PAIR + 1));
+    }
+    final int index = pair != null ? pair.index() : NO_PAIR;
+    final Series series = pairs.get(index);
+    if (series != null) {
+      return series;
+    }
+    final Series created = new Series();
+    return pairs.compareAndSet(index, null, created) ? created : pairs.get(index);
+  }
+
+  private static LongAdder counter(final AtomicReferenceArray<LongAdder> counters, final int index) {
+    final LongAdder counter = counters.get(index);
+    if (counter != null) {
+      return counter;
+    }
+    final LongAdder created = new LongAdder();
+    return counters.compareAndSet(index, null, created) ? created : counters.get(index);
+  }
+
+  @Override
+  public long getRequests() {
+    return total(series -> series.requests);
+  }
+
+  @Override
+  public long getErrors() {
+    return total(series -> series.errors);
+  }
+
+  @Override
+  public long getInFlight() {
+    return total(series -> series.inFlight);
+  }
+
+  // Sums one counter over every series
+  private long total(final Function<Series, LongAdder> counter) {
+    long total = 0;
+    for (AtomicReferenceArray<Series> pairs : endpoints.values()) {
+      for (int i = 0; i < pairs.length(); i++) {
+        final Series series = pairs.get(i);
+        total += series != null ? counter.apply(series).sum() : 0;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns a snapshot for each endpoint and pair that has seen a request, sorted by endpoint
+   * and then by pair.
+   * @return The snapshots.
+   */
+  @Override
+  public List<RequestStats> getStats() {
+    final List<RequestStats> stats = new ArrayList<RequestStats>();
+    for (String endpoint : new TreeMap<String, AtomicReferenceArray<Series>>(endpoints).keySet()) {
+      final AtomicReferenceArray<Series> pairs = endpoints.get(endpoint);
+      // The pairless series (listPairs and the like) comes first
+      final Series pairless = pairs.get(NO_PAIR);
+      if (pairless != null) {
+        stats.add(snapshot(endpoint, null, pairless));
+      }
+      for (LanguagePair pair : LanguagePair.values()) {
+        final Series series = pairs.get(pair.index());
+        if (series != null) {
+          stats.add(snapshot(endpoint, pair.getCode(), series));
+        }
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Returns a snapshot of the requests sent to one endpoint for one pair.
+   * @param endpoint The host and port, as in {@link RequestStats#getEndpoint()}.
+   * @param pair The language pair, or null for requests that translate nothing.
+   * @return The snapshot, or null if no such request has been sent.
+   */
+  public RequestStats getStats(final String endpoint, final LanguagePair pair) {
+    final AtomicReferenceArray<Series> pairs = endpoints.get(endpoint);
+    final Series series = pairs != null ? pairs.get(pair != null ? pair.index() : NO_PAIR) : null;
+    return series != null ? snapshot(endpoint, pair != null ? pair.getCode() : null, series) : null;
+  }
+
+  private static RequestStats snapshot(final String endpoint, final String pair, final Series series) {
+    final Map<Integer, Long> statusCounts = new TreeMap<Integer, Long>();
+    for (int i = 0; i < series.statuses.length(); i++) {
+      final LongAdder count = series.statuses.get(i);
+      if (count != null) {
+        // Out-of-range codes are reported under 0
+        statusCounts.put(i < series.statuses.length() - 1 ? i + MIN_STATUS : 0, count.sum());
+      }
+    }
+    final Map<String, Long> errorCounts = new TreeMap<String, Long>();
+    for (Map.Entry<String, LongAdder> entry : series.errorTypes.entrySet()) {
+      errorCounts.put(entry.getKey(), entry.getValue().sum());
+    }
+    return new RequestStats(endpoint, pair, series.requests.sum(), series.hedges.sum(), series.errors.sum(),
+        series.inFlight.sum(), series.requestBytes.sum(), series.responseBytes.sum(),
+        series.latencies.snapshot(0.5, 0.99, 0.999), Collections.unmodifiableMap(statusCounts),
+        Collections.unmodifiableMap(errorCounts));
+  }
+
+  /**
+   * Registers this registry with the platform MBean server, under the name
+   * com.robtheis.aptr:type=Metrics,name=<i>name</i>.
+   * @param name The name to register under, which tells registries apart.
+   * @return The name it was registered under.
+   * @throws JMException if the name is taken or cannot be used.
+   */
+  public ObjectName registerMBean(final String name) throws JMException {
+    final ObjectName objectName = objectName(name);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  /**
+   * Removes a registration made by {@link #registerMBean(String)}.
+   * @param name The name it was registered under.
+   * @throws JMException if nothing is registered under that name.
+   */
+  public void unregisterMBean(final String name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+  }
+
+  private static ObjectName objectName(final String name) throws JMException {
+    if (name == null) {
+      throw new IllegalArgumentException("name must not be null");
+    }
+    return new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+  }
+}
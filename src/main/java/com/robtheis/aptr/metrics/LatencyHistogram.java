@@ -0,0 +1,108 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in log-linear buckets, in the manner of an HDR histogram. Each power of
+ * two is split into {@link #SUB_COUNT} buckets, so any percentile is reported to within about
+ * 3% of the true value, in fixed memory, whatever the range of the latencies recorded.
+ *
+ * Recording is lock-free. Requests with the same latency bump the same bucket, but latencies
+ * spread over many buckets, so there is little contention; the totals are striped.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BITS = 5;
+  static final int SUB_COUNT = 1 << SUB_BITS;
+  // Latencies from 2^40 ns (about 18 minutes) up share one overflow bucket, the last
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a latency.
+   */
+  void record(final long nanos) {
+    final long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    total.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Returns the latency at each of the given percentiles, all read from one pass over the
+   * buckets, followed by the mean, the maximum and the number of latencies recorded.
+   */
+  long[] snapshot(final double... percentiles) {
+    final long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    final long highest = max.get();
+    final long[] values = new long[percentiles.length + 3];
+    if (count > 0) {
+      for (int p = 0; p < percentiles.length; p++) {
+        // The nearest rank. Shaving the product keeps rounding error, as in 0.07 * 100 =
+        // 7.000000000000001, from pushing an exact rank up to the next one.
+        final long rank = Math.max(1, (long) Math.ceil(percentiles[p] * count * (1 - 1e-12)));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+          seen += snapshot[i];
+          if (seen >= rank) {
+            // The overflow bucket has no upper edge, so the maximum stands in for it
+            values[p] = i == BUCKETS - 1 ? highest : Math.min(highestInBucket(i), highest);
+            break;
+          }
+        }
+      }
+      values[percentiles.length] = total.sum() / count;
+    }
+    values[percentiles.length + 1] = highest;
+    values[percentiles.length + 2] = count;
+    return values;
+  }
+
+  private static int index(final long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent >= MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    final int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+    return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  private static long highestInBucket(final int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    final int shift = index / SUB_COUNT - 1;
+    final long lowest = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
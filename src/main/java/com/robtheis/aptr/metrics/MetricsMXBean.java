@@ -0,0 +1,47 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.metrics;
+
+import java.util.List;
+
+/**
+ * The JMX view of an {@link InMemoryMetricsRegistry}, registered with
+ * {@link InMemoryMetricsRegistry#registerMBean(String)}.
+ */
+public interface MetricsMXBean {
+
+  /**
+   * @return The number of requests sent, across all endpoints and pairs.
+   */
+  long getRequests();
+
+  /**
+   * @return The number of requests that failed, across all endpoints and pairs.
+   */
+  long getErrors();
+
+  /**
+   * @return The number of requests on the wire, across all endpoints and pairs.
+   */
+  long getInFlight();
+
+  /**
+   * @return A snapshot for each endpoint and pair that has seen a request.
+   */
+  List<RequestStats> getStats();
+}
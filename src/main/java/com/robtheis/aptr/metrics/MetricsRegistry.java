@@ -0,0 +1,52 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.metrics;
+
+import com.robtheis.aptr.language.LanguagePair;
+
+/**
+ * Receives a report of every request a client sends to the service. Plug in an
+ * implementation to feed the numbers to a metrics library of your choice, or use
+ * {@link InMemoryMetricsRegistry}, which keeps them itself and exposes them through JMX.
+ *
+ * Both methods are called on the request path, from whichever threads send and complete
+ * requests, so implementations must be thread-safe, quick and must not throw.
+ */
+public interface MetricsRegistry {
+
+  /**
+   * Called as a request goes on the wire.
+   * @param endpoint The host and port the request is sent to.
+   * @param pair The language pair translated, or null for requests that translate nothing, such as listPairs.
+   * @param hedge Whether the request is a hedge, sent again because the first went unanswered for too long.
+   */
+  void requestStarted(String endpoint, LanguagePair pair, boolean hedge);
+
+  /**
+   * Called once for every started request, when its response has been read or it failed.
+   * @param endpoint The host and port the request was sent to.
+   * @param pair The language pair translated, or null.
+   * @param nanos The time from sending the request to parsing the response.
+   * @param requestBytes The size of the URL and request body.
+   * @param responseBytes The size of the response body read.
+   * @param statusCode The HTTP status code, or 0 if no response arrived.
+   * @param error The exception the request failed with, or null if it succeeded.
+   */
+  void requestFinished(String endpoint, LanguagePair pair, long nanos, long requestBytes, long responseBytes,
+      int statusCode, Throwable error);
+}
@@ -0,0 +1,173 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.metrics;
+
+import java.util.Map;
+
+/**
+ * A point-in-time snapshot of the requests sent to one endpoint for one language pair.
+ * Latencies are in nanoseconds, measured from sending a request to parsing its response.
+ */
+public final class RequestStats {
+  private final String endpoint;
+  private final String pair;
+  private final long requests;
+  private final long hedges;
+  private final long errors;
+  private final long inFlight;
+  private final long requestBytes;
+  private final long responseBytes;
+  private final long p50;
+  private final long p99;
+  private final long p999;
+  private final long mean;
+  private final long max;
+  private final Map<Integer, Long> statusCounts;
+  private final Map<String, Long> errorCounts;
+
+  RequestStats(final String endpoint, final String pair, final long requests, final long hedges, final long errors,
+      final long inFlight, final long requestBytes, final long responseBytes, final long[] latencies,
+      final Map<Integer, Long> statusCounts, final Map<String, Long> errorCounts) {
+    this.endpoint = endpoint;
+    this.pair = pair;
+    this.requests = requests;
+    this.hedges = hedges;
+    this.errors = errors;
+    this.inFlight = inFlight;
+    this.requestBytes = requestBytes;
+    this.responseBytes = responseBytes;
+    this.p50 = latencies[0];
+    this.p99 = latencies[1];
+    this.p999 = latencies[2];
+    this.mean = latencies[3];
+    this.max = latencies[4];
+    this.statusCounts = statusCounts;
+    this.errorCounts = errorCounts;
+  }
+
+  /**
+   * Returns the host and port the requests went to.
+   * @return The endpoint.
+   */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Returns the language pair, such as "es|en", or null for requests that translate
+   * nothing, such as listPairs.
+   * @return The pair code, or null.
+   */
+  public String getPair() {
+    return pair;
+  }
+
+  /**
+   * Returns the number of requests sent, hedges included.
+   * @return The request count.
+   */
+  public long getRequests() {
+    return requests;
+  }
+
+  /**
+   * Returns the number of hedged requests, sent again because the first went unanswered
+   * for too long.
+   * @return The hedge count.
+   */
+  public long getHedges() {
+    return hedges;
+  }
+
+  /**
+   * Returns the number of requests that failed, for any reason.
+   * @return The error count.
+   */
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * Returns the number of requests on the wire when the snapshot was taken.
+   * @return The in-flight count.
+   */
+  public long getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Returns the total size of the URLs and request bodies sent.
+   * @return The size in bytes.
+   */
+  public long getRequestBytes() {
+    return requestBytes;
+  }
+
+  /**
+   * Returns the total size of the response bodies read.
+   * @return The size in bytes.
+   */
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
+  public long getLatencyP50Nanos() {
+    return p50;
+  }
+
+  public long getLatencyP99Nanos() {
+    return p99;
+  }
+
+  public long getLatencyP999Nanos() {
+    return p999;
+  }
+
+  public long getLatencyMeanNanos() {
+    return mean;
+  }
+
+  public long getLatencyMaxNanos() {
+    return max;
+  }
+
+  /**
+   * Returns the number of responses with each HTTP status code.
+   * @return The counts, by status code.
+   */
+  public Map<Integer, Long> getStatusCounts() {
+    return statusCounts;
+  }
+
+  /**
+   * Returns the number of failed requests by the simple class name of their exception,
+   * such as "SocketTimeoutException" or "ServiceException".
+   * @return The counts, by exception type.
+   */
+  public Map<String, Long> getErrorCounts() {
+    return errorCounts;
+  }
+
+  @Override
+  public String toString() {
+    return "[endpoint: " + endpoint + "; pair: " + pair + "; requests: " + requests + "; hedges: " + hedges
+        + "; errors: " + errors + "; inFlight: " + inFlight + "; requestBytes: " + requestBytes
+        + "; responseBytes: " + responseBytes + "; p50: " + p50 + "; p99: " + p99 + "; p999: " + p999
+        + "; max: " + max + "; statuses: " + statusCounts + "; errorTypes: " + errorCounts + "]";
+  }
+}
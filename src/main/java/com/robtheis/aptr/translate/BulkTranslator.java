@@ -0,0 +1,310 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.language.Language;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs bulk translation jobs: many independent texts, each with its own language pair.
+ * Every item is translated with a blocking call on a thread of its own, and at most
+ * {@code maxConcurrency} items are in flight at once. The input is read only as permits
+ * free up, so a long stream is never buffered ahead of the requests.
+ *
+ * On Java 21 and later the threads are virtual, so thousands of requests waiting on the
+ * service cost next to nothing. The request path takes no monitors (caches, the pair list and
+ * the limiters all use {@code java.util.concurrent} locks), so a waiting virtual thread never
+ * pins its carrier. On older JVMs each item gets a short-lived daemon platform thread instead,
+ * so keep {@code maxConcurrency} to what a thread pool would be sized to.
+ *
+ * A failed item does not stop the job; its exception is kept in its {@link Result}.
+ * Bulk translators hold no state between jobs and are safe for concurrent use.
+ */
+public final class BulkTranslator {
+  private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+  private final TranslatorClient client;
+  private final int maxConcurrency;
+  private final ThreadFactory threadFactory;
+
+  /**
+   * A text to translate and its language pair.
+   */
+  public static final class Item {
+    private final String text;
+    private final Language from;
+    private final Language to;
+
+    /**
+     * Creates an item.
+     * @param pText The String to translate.
+     * @param pFrom The language to translate from.
+     * @param pTo The language to translate to.
+     */
+    public Item(final String pText, final Language pFrom, final Language pTo) {
+      text = pText;
+      from = pFrom;
+      to = pTo;
+    }
+
+    /**
+     * @return The String to translate.
+     */
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * @return The language to translate from.
+     */
+    public Language getFrom() {
+      return from;
+    }
+
+    /**
+     * @return The language to translate to.
+     */
+    public Language getTo() {
+      return to;
+    }
+  }
+
+  /**
+   * The outcome of one item: its translation, or the exception or error that stopped it.
+   */
+  public static final class Result {
+    private final int index;
+    private final Item item;
+    private final String translation;
+    private final Throwable error;
+
+    Result(final int pIndex, final Item pItem, final String pTranslation, final Throwable pError) {
+      index = pIndex;
+      item = pItem;
+      translation = pTranslation;
+      error = pError;
+    }
+
+    /**
+     * @return The item's position in the input, counting from 0.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * @return The item.
+     */
+    public Item getItem() {
+      return item;
+    }
+
+    /**
+     * @return The translated String, or null if the item failed.
+     */
+    public String getTranslation() {
+      return translation;
+    }
+
+    /**
+     * @return The exception or error the translation threw, or null if it succeeded.
+     */
+    public Throwable getError() {
+      return error;
+    }
+
+    /**
+     * @return Whether the item was translated.
+     */
+    public boolean isSuccess() {
+      return error == null;
+    }
+  }
+
+  /**
+   * Creates a bulk translator that runs items on virtual threads where the JVM has them.
+   * @param pClient The client to translate with.
+   * @param pMaxConcurrency The most items to have in flight at once.
+   */
+  public BulkTranslator(final TranslatorClient pClient, final int pMaxConcurrency) {
+    this(pClient, pMaxConcurrency, VIRTUAL_THREADS);
+  }
+
+  /**
+   * Creates a bulk translator.
+   * @param pClient The client to translate with.
+   * @param pMaxConcurrency The most items to have in flight at once.
+   * @param pThreadFactory Makes the thread each item runs on, or null for virtual threads
+   *                       where the JVM has them.
+   */
+  public BulkTranslator(final TranslatorClient pClient, final int pMaxConcurrency, final ThreadFactory pThreadFactory) {
+    if (pClient == null) {
+      throw new IllegalArgumentException("client must not be null");
+    }
+    if (pMaxConcurrency <= 0) {
+      throw new IllegalArgumentException("maxConcurrency must be positive");
+    }
+    client = pClient;
+    maxConcurrency = pMaxConcurrency;
+    threadFactory = pThreadFactory != null ? pThreadFactory : VIRTUAL_THREADS;
+  }
+
+  /**
+   * Returns whether this JVM has virtual threads, and so whether the default thread factory
+   * uses them.
+   * @return true on Java 21 and later.
+   */
+  public static boolean isVirtualThreadsAvailable() {
+    return !(VIRTUAL_THREADS instanceof PlatformThreadFactory);
+  }
+
+  /**
+   * Translates every item, returning the results in input order once all are done.
+   * @param items The items to translate.
+   * @return One result per item, in the order of the input.
+   * @throws InterruptedException if the calling thread is interrupted; items in flight are interrupted too.
+   */
+  public List<Result> translateAll(final Iterable<Item> items) throws InterruptedException {
+    final List<Result> results = new ArrayList<Result>();
+    run(items.iterator(), result -> {
+      while (results.size() <= result.getIndex()) {
+        results.add(null);
+      }
+      results.set(result.getIndex(), result);
+    });
+    return results;
+  }
+
+  /**
+   * Translates every item, returning the results in input order once all are done.
+   * @param items The items to translate.
+   * @return One result per item, in the order of the input.
+   * @throws InterruptedException if the calling thread is interrupted; items in flight are interrupted too.
+   */
+  public List<Result> translateAll(final Stream<Item> items) throws InterruptedException {
+    return translateAll((Iterable<Item>) items::iterator);
+  }
+
+  /**
+   * Translates every item, handing each result over as soon as it is done. The callback runs
+   * on the calling thread, one result at a time, so it needs no locking of its own; an
+   * exception it throws ends the job, leaving the items in flight to finish unobserved.
+   * @param items The items to translate.
+   * @param onResult Called once per item, in order of completion.
+   * @throws InterruptedException if the calling thread is interrupted; items in flight are interrupted too.
+   */
+  public void translateAll(final Iterable<Item> items, final Consumer<Result> onResult) throws InterruptedException {
+    run(items.iterator(), onResult);
+  }
+
+  /**
+   * Translates every item, handing each result over as soon as it is done. The callback runs
+   * on the calling thread, one result at a time, so it needs no locking of its own.
+   * @param items The items to translate.
+   * @param onResult Called once per item, in order of completion.
+   * @throws InterruptedException if the calling thread is interrupted; items in flight are interrupted too.
+   */
+  public void translateAll(final Stream<Item> items, final Consumer<Result> onResult) throws InterruptedException {
+    run(items.iterator(), onResult);
+  }
+
+  private void run(final Iterator<Item> items, final Consumer<Result> onResult) throws InterruptedException {
+    final Semaphore permits = new Semaphore(maxConcurrency);
+    final BlockingQueue<Result> done = new LinkedBlockingQueue<Result>();
+    final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    int submitted = 0;
+    int delivered = 0;
+    try {
+      while (items.hasNext()) {
+        final Item item = items.next();
+        final int index = submitted;
+        permits.acquire();
+        // Each permit is released after its result is queued, so there is usually one to hand over
+        for (Result result = done.poll(); result != null; result = done.poll()) {
+          onResult.accept(result);
+          delivered++;
+        }
+        final Thread thread = threadFactory.newThread(() -> {
+          try {
+            done.add(translate(index, item));
+          } finally {
+            running.remove(Thread.currentThread());
+            permits.release();
+          }
+        });
+        running.add(thread);
+        thread.start();
+        submitted++;
+      }
+      while (delivered < submitted) {
+        onResult.accept(done.take());
+        delivered++;
+      }
+    } catch (InterruptedException ex) {
+      for (Thread thread : running) {
+        thread.interrupt();
+      }
+      throw ex;
+    }
+  }
+
+  // Catches errors too: an item whose result is never queued would leave run() waiting forever
+  private Result translate(final int index, final Item item) {
+    try {
+      return new Result(index, item, client.translate(item.getText(), item.getFrom(), item.getTo()), null);
+    } catch (Throwable ex) {
+      return new Result(index, item, null, ex);
+    }
+  }
+
+  // Thread.ofVirtual().name(...).factory(), looked up reflectively since the library targets Java 11
+  private static ThreadFactory virtualThreadFactory() {
+    try {
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+      final Method name = builderClass.getMethod("name", String.class, long.class);
+      final Method factory = builderClass.getMethod("factory");
+      return (ThreadFactory) factory.invoke(name.invoke(ofVirtual.invoke(null), "aptr-bulk-", 0L));
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return new PlatformThreadFactory();
+    }
+  }
+
+  private static final class PlatformThreadFactory implements ThreadFactory {
+    private final AtomicLong count = new AtomicLong();
+
+    @Override
+    public Thread newThread(final Runnable task) {
+      final Thread thread = new Thread(task, "aptr-bulk-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
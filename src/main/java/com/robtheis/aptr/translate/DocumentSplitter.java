@@ -0,0 +1,118 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits a document into pieces whose UTF-8 encoding fits in a size limit. Pieces end
+ * at the last paragraph break that fits, failing that at the last sentence end, then
+ * at the last whitespace, and only as a last resort in the middle of a word. The
+ * pieces are contiguous, so concatenating them gives back the document exactly.
+ */
+final class DocumentSplitter {
+
+  private DocumentSplitter() {
+  }
+
+  /**
+   * Splits the text into contiguous pieces of at most maxBytes UTF-8 bytes each.
+   * @param text The document.
+   * @param maxBytes The largest piece, in UTF-8 bytes.
+   * @param locale The language of the text, for finding sentence ends.
+   * @return The pieces, in order.
+   */
+  static List<String> split(final String text, final int maxBytes, final Locale locale) {
+    if (maxBytes < 4) {
+      throw new IllegalArgumentException("maxBytes must be at least 4");
+    }
+    final List<String> pieces = new ArrayList<String>();
+    final BreakIterator sentences = BreakIterator.getSentenceInstance(locale);
+    sentences.setText(text);
+    int start = 0;
+    while (start < text.length()) {
+      final int limit = fit(text, start, maxBytes);
+      if (limit == text.length()) {
+        pieces.add(text.substring(start));
+        break;
+      }
+      int end = lastParagraphBreak(text, start, limit);
+      if (end <= start) {
+        end = sentences.preceding(limit + 1);
+      }
+      if (end <= start) {
+        end = lastWhitespace(text, start, limit);
+      }
+      if (end <= start) {
+        end = limit;
+      }
+      pieces.add(text.substring(start, end));
+      start = end;
+    }
+    return pieces;
+  }
+
+  // Returns the furthest index such that text[start, index) fits in maxBytes, never
+  // splitting a surrogate pair
+  private static int fit(final String text, final int start, final int maxBytes) {
+    int bytes = 0;
+    int i = start;
+    while (i < text.length()) {
+      final int codePoint = text.codePointAt(i);
+      final int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+      if (bytes + size > maxBytes) {
+        break;
+      }
+      bytes += size;
+      i += Character.charCount(codePoint);
+    }
+    return i;
+  }
+
+  // Returns the index just past the last blank line in text(start, limit], or -1
+  private static int lastParagraphBreak(final String text, final int start, final int limit) {
+    for (int i = limit - 1; i > start; i--) {
+      if (text.charAt(i) == '\n') {
+        // A blank line: another line break with only spaces or tabs in between
+        for (int j = i - 1; j >= start; j--) {
+          final char c = text.charAt(j);
+          if (c == '\n') {
+            return i + 1;
+          }
+          if (c != ' ' && c != '\t' && c != '\r') {
+            break;
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  // Returns the index just past the last whitespace in text(start, limit], or -1
+  private static int lastWhitespace(final String text, final int start, final int limit) {
+    for (int i = limit - 1; i > start; i--) {
+      if (Character.isWhitespace(text.charAt(i))) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.ServiceException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads requests round-robin across several API keys. A key whose requests are
+ * throttled by the service is sidelined for a cooldown that doubles with each
+ * consecutive throttle, and traffic moves to the remaining keys until it expires.
+ */
+public final class KeyPool {
+  public static final long DEFAULT_COOLDOWN_MILLIS = 1000;
+  public static final long DEFAULT_MAX_COOLDOWN_MILLIS = 60000;
+
+  private static final class KeyState {
+    final String key;
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final AtomicLong throttles = new AtomicLong();
+    final AtomicInteger consecutiveThrottles = new AtomicInteger();
+    volatile long sidelinedUntilNanos = System.nanoTime();
+
+    KeyState(final String pKey) {
+      key = pKey;
+    }
+
+    boolean isSidelined(final long now) {
+      return now - sidelinedUntilNanos < 0;
+    }
+  }
+
+  private final KeyState[] keys;
+  private final Map<String, KeyState> byKey = new LinkedHashMap<String, KeyState>();
+  private final long cooldownNanos;
+  private final long maxCooldownNanos;
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * Creates a pool with the default cooldowns.
+   * @param pKeys The API keys to rotate through.
+   */
+  public KeyPool(final String... pKeys) {
+    this(DEFAULT_COOLDOWN_MILLIS, DEFAULT_MAX_COOLDOWN_MILLIS, pKeys);
+  }
+
+  /**
+   * Creates a pool.
+   * @param cooldownMillis How long a key is sidelined after its first throttled request.
+   * @param maxCooldownMillis The longest a key is sidelined, however often it is throttled.
+   * @param pKeys The API keys to rotate through.
+   */
+  public KeyPool(final long cooldownMillis, final long maxCooldownMillis, final String... pKeys) {
+    if (pKeys == null || pKeys.length == 0) {
+      throw new IllegalArgumentException("at least one key is required");
+    }
+    if (cooldownMillis < 0 || maxCooldownMillis < cooldownMillis) {
+      throw new IllegalArgumentException("cooldowns must satisfy 0 <= cooldownMillis <= maxCooldownMillis");
+    }
+    keys = new KeyState[pKeys.length];
+    for (int i = 0; i < pKeys.length; i++) {
+      if (pKeys[i] == null || byKey.containsKey(pKeys[i])) {
+        throw new IllegalArgumentException("keys must be non-null and distinct");
+      }
+      keys[i] = new KeyState(pKeys[i]);
+      byKey.put(pKeys[i], keys[i]);
+    }
+    cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMillis);
+    maxCooldownNanos = TimeUnit.MILLISECONDS.toNanos(maxCooldownMillis);
+  }
+
+  /**
+   * Returns the key to use for the next request: the next key in turn that is not
+   * sidelined, or, if every key is sidelined, the one whose cooldown ends first.
+   * @return An API key.
+   */
+  public String acquire() {
+    final long now = System.nanoTime();
+    final int start = next.getAndIncrement() & Integer.MAX_VALUE;
+    KeyState soonest = null;
+    for (int i = 0; i < keys.length; i++) {
+      final KeyState state = keys[(start + i) % keys.length];
+      if (!state.isSidelined(now)) {
+        state.requests.incrementAndGet();
+        return state.key;
+      }
+      if (soonest == null || state.sidelinedUntilNanos - soonest.sidelinedUntilNanos < 0) {
+        soonest = state;
+      }
+    }
+    soonest.requests.incrementAndGet();
+    return soonest.key;
+  }
+
+  /**
+   * Records that a request made with the key succeeded, ending any run of throttles.
+   * @param key The key that was used.
+   */
+  public void recordSuccess(final String key) {
+    final KeyState state = byKey.get(key);
+    if (state != null) {
+      state.consecutiveThrottles.set(0);
+    }
+  }
+
+  /**
+   * Records that a request made with the key failed. Throttling responses sideline
+   * the key; other failures are only counted.
+   * @param key The key that was used.
+   * @param error The error the request failed with.
+   */
+  public void recordFailure(final String key, final Throwable error) {
+    final KeyState state = byKey.get(key);
+    if (state == null) {
+      return;
+    }
+    final ServiceException service = ServiceException.find(error);
+    if (service == null || !service.isThrottled()) {
+      state.errors.incrementAndGet();
+      return;
+    }
+    state.throttles.incrementAndGet();
+    final int run = Math.min(state.consecutiveThrottles.incrementAndGet(), 30);
+    long cooldown = Math.min(maxCooldownNanos, cooldownNanos << (run - 1));
+    if (cooldown < 0) {
+      cooldown = maxCooldownNanos;
+    }
+    if (service.getRetryAfterMillis() >= 0) {
+      cooldown = Math.max(cooldown, TimeUnit.MILLISECONDS.toNanos(service.getRetryAfterMillis()));
+    }
+    state.sidelinedUntilNanos = System.nanoTime() + cooldown;
+  }
+
+  /**
+   * Returns usage counters for each key, in the order the keys were given.
+   * @return A snapshot of the per-key counters.
+   */
+  public Map<String, KeyStats> getStats() {
+    final long now = System.nanoTime();
+    final Map<String, KeyStats> stats = new LinkedHashMap<String, KeyStats>();
+    for (KeyState state : keys) {
+      stats.put(state.key, new KeyStats(state.requests.get(), state.errors.get(),
+          state.throttles.get(), state.isSidelined(now)));
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the number of keys in the pool.
+   * @return The key count.
+   */
+  public int size() {
+    return keys.length;
+  }
+}
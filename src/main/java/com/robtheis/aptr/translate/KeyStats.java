@@ -0,0 +1,73 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+/**
+ * A point-in-time snapshot of the usage counters for one key in a {@link KeyPool}.
+ */
+public final class KeyStats {
+  private final long requests;
+  private final long errors;
+  private final long throttles;
+  private final boolean sidelined;
+
+  KeyStats(final long requests, final long errors, final long throttles, final boolean sidelined) {
+    this.requests = requests;
+    this.errors = errors;
+    this.throttles = throttles;
+    this.sidelined = sidelined;
+  }
+
+  /**
+   * Returns the number of requests the key has been handed out for.
+   * @return The request count.
+   */
+  public long getRequests() {
+    return requests;
+  }
+
+  /**
+   * Returns the number of failed requests that were not throttling responses.
+   * @return The error count.
+   */
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * Returns the number of requests the service throttled.
+   * @return The throttle count.
+   */
+  public long getThrottles() {
+    return throttles;
+  }
+
+  /**
+   * Returns whether the key is currently sitting out a cooldown.
+   * @return True if the key is sidelined.
+   */
+  public boolean isSidelined() {
+    return sidelined;
+  }
+
+  @Override
+  public String toString() {
+    return "[requests: " + requests + "; errors: " + errors + "; throttles: " + throttles
+        + "; sidelined: " + sidelined + "]";
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.CallOptions;
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Merges concurrent single-text translations into array requests. Texts for the same
+ * language pair are held until the group reaches its item limit, until adding another
+ * would take the group past the service's size limit, or until the oldest has waited the
+ * maximum delay, whichever comes first. The group then goes out as one request, and each
+ * caller gets its own translation, or the request's exception.
+ *
+ * Only calls with the same timeouts and hedging share a group, so each request goes out
+ * with its callers' own settings. Deadlines differ from call to call, so a group is sent
+ * with the latest of its callers' deadlines, or none if any caller has none, and each
+ * caller's own deadline bounds how long that caller waits. A caller with a short deadline
+ * never cuts the request short for the others.
+ */
+final class MicroBatcher {
+
+  interface Sender {
+    CompletableFuture<String[]> send(String[] texts, Language from, Language to, CallOptions call);
+  }
+
+  private final Sender sender;
+  private final int maxItems;
+  private final Executor timer;
+  private final ReentrantLock lock = new ReentrantLock();
+  // The groups filling up for each pair, one per set of call settings, chained through
+  // Group.next and indexed by LanguagePair.index()
+  private final Group[] open = new Group[LanguagePair.indexCount()];
+
+  MicroBatcher(final Sender pSender, final long maxDelayMillis, final int pMaxItems) {
+    if (maxDelayMillis <= 0 || pMaxItems < 2) {
+      throw new IllegalArgumentException("maxDelayMillis must be positive and maxItems at least 2");
+    }
+    sender = pSender;
+    maxItems = pMaxItems;
+    timer = CompletableFuture.delayedExecutor(maxDelayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static final class Group {
+    final Language from;
+    final Language to;
+    final List<String> texts = new ArrayList<String>();
+    final List<CompletableFuture<String>> results = new ArrayList<CompletableFuture<String>>();
+    // The options of the caller with the latest deadline, which the group is sent with
+    CallOptions call;
+    int bytes;
+    boolean open = true;
+    Group next;
+
+    Group(final Language pFrom, final Language pTo, final CallOptions pCall) {
+      from = pFrom;
+      to = pTo;
+      call = pCall;
+    }
+
+    boolean accepts(final CallOptions other) {
+      return other.getConnectTimeout() == call.getConnectTimeout() && other.getReadTimeout() == call.getReadTimeout()
+          && other.isHedging() == call.isHedging();
+    }
+
+    void add(final String text, final CompletableFuture<String> result, final int textBytes, final CallOptions other) {
+      texts.add(text);
+      results.add(result);
+      bytes += textBytes;
+      if (call.hasDeadline() && (!other.hasDeadline() || other.remainingNanos() > call.remainingNanos())) {
+        call = other;
+      }
+    }
+  }
+
+  /**
+   * Adds the text to the open group for its pair, and sends any group that is now full.
+   * The text must already be known to fit in one request.
+   */
+  CompletableFuture<String> submit(final String text, final Language from, final Language to, final CallOptions call) {
+    final int index = LanguagePair.of(from, to).index();
+    final int bytes = utf8Length(text);
+    final CompletableFuture<String> result = new CompletableFuture<String>();
+    Group full = null;
+    Group opened = null;
+    lock.lock();
+    try {
+      Group group = open[index];
+      while (group != null && !group.accepts(call)) {
+        group = group.next;
+      }
+      if (group != null && group.bytes + bytes > TranslatorClient.MAX_TEXT_BYTES) {
+        full = group;
+        close(index, group);
+        group = null;
+      }
+      if (group == null) {
+        group = new Group(from, to, call);
+        group.next = open[index];
+        open[index] = group;
+        opened = group;
+      }
+      group.add(text, result, bytes, call);
+      // maxItems is at least 2, so a group just opened is never full as well
+      if (group.texts.size() >= maxItems) {
+        full = group;
+        close(index, group);
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (full != null) {
+      send(full);
+    }
+    if (opened != null) {
+      final Group scheduled = opened;
+      timer.execute(() -> expire(index, scheduled));
+    }
+    return TranslatorClient.withDeadline(result, call);
+  }
+
+  /**
+   * Sends every open group now, without waiting out its delay.
+   */
+  void flush() {
+    final List<Group> groups = new ArrayList<Group>();
+    lock.lock();
+    try {
+      for (int i = 0; i < open.length; i++) {
+        for (Group group = open[i]; group != null; group = group.next) {
+          group.open = false;
+          groups.add(group);
+        }
+        open[i] = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (Group group : groups) {
+      send(group);
+    }
+  }
+
+  // Sends the group if it is still open once its oldest text has waited the maximum delay
+  private void expire(final int index, final Group group) {
+    lock.lock();
+    try {
+      if (!group.open) {
+        return;
+      }
+      close(index, group);
+    } finally {
+      lock.unlock();
+    }
+    send(group);
+  }
+
+  // Takes the group out of its pair's chain; the caller holds the lock
+  private void close(final int index, final Group group) {
+    group.open = false;
+    if (open[index] == group) {
+      open[index] = group.next;
+      return;
+    }
+    for (Group previous = open[index]; previous != null; previous = previous.next) {
+      if (previous.next == group) {
+        previous.next = group.next;
+        return;
+      }
+    }
+  }
+
+  private static int utf8Length(final String text) {
+    int bytes = 0;
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      // A surrogate pair takes four bytes, two for each half
+      bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
+    return bytes;
+  }
+
+  private void send(final Group group) {
+    final CompletableFuture<String[]> sent;
+    try {
+      sent = sender.send(group.texts.toArray(new String[0]), group.from, group.to, group.call);
+    } catch (RuntimeException ex) {
+      for (CompletableFuture<String> result : group.results) {
+        result.completeExceptionally(ex);
+      }
+      return;
+    }
+    sent.whenComplete((translations, error) -> {
+      for (int i = 0; i < group.results.size(); i++) {
+        if (error != null) {
+          group.results.get(i).completeExceptionally(error);
+        } else {
+          group.results.get(i).complete(translations[i]);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A directed graph of the language pairs a service supports, for finding routes between
+ * languages that have no direct pair. Each route translates through one or more pivot
+ * languages, using as few hops as possible.
+ *
+ * Among routes of the same length, the one through the best-connected pivots wins: a
+ * language the service pairs with many others tends to be one its translators are built
+ * around, such as English or Spanish. Routes are worked out on first use and kept.
+ * Graphs are immutable and safe for concurrent use.
+ */
+public final class PairGraph {
+  // Routes longer than this lose too much in translation to be worth taking
+  public static final int MAX_HOPS = 3;
+
+  private static final int LANGUAGE_COUNT = Language.values().length;
+  private static final List<LanguagePair> NO_ROUTE = Collections.emptyList();
+
+  // Each language's targets, best-connected first, indexed by ordinal
+  private final Language[][] targets = new Language[LANGUAGE_COUNT][];
+  // Indexed by LanguagePair.index(); filled in as routes are asked for
+  private final List<?>[] routes = new List<?>[LanguagePair.indexCount()];
+
+  /**
+   * Creates a graph.
+   * @param pairs The supported pairs.
+   */
+  public PairGraph(final Collection<LanguagePair> pairs) {
+    final List<List<Language>> byFrom = new ArrayList<List<Language>>(LANGUAGE_COUNT);
+    final int[] degree = new int[LANGUAGE_COUNT];
+    for (int i = 0; i < LANGUAGE_COUNT; i++) {
+      byFrom.add(new ArrayList<Language>());
+    }
+    for (LanguagePair pair : pairs) {
+      byFrom.get(pair.getFrom().ordinal()).add(pair.getTo());
+      degree[pair.getFrom().ordinal()]++;
+      degree[pair.getTo().ordinal()]++;
+    }
+    for (int i = 0; i < LANGUAGE_COUNT; i++) {
+      final Language[] to = byFrom.get(i).toArray(new Language[0]);
+      Arrays.sort(to, (a, b) -> degree[b.ordinal()] - degree[a.ordinal()]);
+      targets[i] = to;
+    }
+  }
+
+  /**
+   * Returns the shortest route from one language to the other.
+   * @param from The language to translate from.
+   * @param to The language to translate to.
+   * @return The pairs to translate through in turn (a single pair if the service supports it
+   *         directly), or null if there is no route of at most {@link #MAX_HOPS} hops.
+   * @throws IllegalArgumentException if a language is null or both are the same.
+   */
+  @SuppressWarnings("unchecked")
+  public List<LanguagePair> route(final Language from, final Language to) {
+    if (from == to) {
+      throw new IllegalArgumentException("a route needs two different languages");
+    }
+    final int index = LanguagePair.of(from, to).index();
+    List<LanguagePair> route = (List<LanguagePair>) routes[index];
+    if (route == null) {
+      route = search(from, to);
+      // Racing threads compute equal immutable lists, which are safe to publish this way
+      routes[index] = route;
+    }
+    return route == NO_ROUTE ? null : route;
+  }
+
+  // Breadth-first search, visiting the best-connected languages first at each level
+  private List<LanguagePair> search(final Language from, final Language to) {
+    final Language[] previous = new Language[LANGUAGE_COUNT];
+    final int[] hops = new int[LANGUAGE_COUNT];
+    final Language[] queue = new Language[LANGUAGE_COUNT];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = from;
+    previous[from.ordinal()] = from;
+    while (head < tail) {
+      final Language current = queue[head++];
+      if (hops[current.ordinal()] == MAX_HOPS) {
+        break;
+      }
+      for (Language next : targets[current.ordinal()]) {
+        if (previous[next.ordinal()] != null) {
+          continue;
+        }
+        previous[next.ordinal()] = current;
+        hops[next.ordinal()] = hops[current.ordinal()] + 1;
+        if (next == to) {
+          final LanguagePair[] route = new LanguagePair[hops[next.ordinal()]];
+          for (Language step = to; step != from; step = previous[step.ordinal()]) {
+            route[hops[step.ordinal()] - 1] = LanguagePair.of(previous[step.ordinal()], step);
+          }
+          return Collections.unmodifiableList(Arrays.asList(route));
+        }
+        queue[tail++] = next;
+      }
+    }
+    return NO_ROUTE;
+  }
+}
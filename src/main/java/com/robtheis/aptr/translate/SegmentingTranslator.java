@@ -0,0 +1,223 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.CallOptions;
+import com.robtheis.aptr.language.Language;
+import java.nio.charset.StandardCharsets;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Translates texts sentence by sentence, sending each distinct sentence once. Every text
+ * in a batch is split into sentences, repeated sentences are merged across the whole batch,
+ * and only those missing from the client's cache go on the wire, packed into as few requests
+ * as the service allows. The translations are then put back together around the original
+ * whitespace.
+ *
+ * Apertium translates sentence by sentence anyway, so the result reads the same as
+ * translating each text whole. Content built from templates, where many texts share most of
+ * their sentences, needs a fraction of the requests. With a cache on the client, sentences
+ * seen in earlier batches are not sent again either.
+ *
+ * Segmenting translators hold no state of their own and are safe for concurrent use.
+ */
+public final class SegmentingTranslator {
+  private final TranslatorClient client;
+
+  /**
+   * Creates a segmenting translator.
+   * @param pClient The client to translate the sentences with.
+   */
+  public SegmentingTranslator(final TranslatorClient pClient) {
+    if (pClient == null) {
+      throw new IllegalArgumentException("client must not be null");
+    }
+    client = pClient;
+  }
+
+  /**
+   * Translates a text sentence by sentence, sending each distinct sentence once.
+   *
+   * @param text The String to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated String.
+   * @throws Exception on error.
+   */
+  public String translate(final String text, final Language from, final Language to) throws Exception {
+    return translate(new String[] {text}, from, to)[0];
+  }
+
+  /**
+   * Translates texts sentence by sentence, sending each sentence that occurs anywhere in
+   * the batch once.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated Strings, in the same order as the input.
+   * @throws Exception on error.
+   */
+  public String[] translate(final String[] texts, final Language from, final Language to) throws Exception {
+    return translate(texts, from, to, CallOptions.DEFAULT);
+  }
+
+  /**
+   * Form of {@link #translate(String[], Language, Language)} with timeouts, a deadline or
+   * hedging of its own. The deadline covers the whole batch.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return The translated Strings, in the same order as the input.
+   * @throws Exception on error.
+   */
+  public String[] translate(final String[] texts, final Language from, final Language to, final CallOptions options) throws Exception {
+    final Segments segments = new Segments(texts, from);
+    return segments.join(client.translate(segments.sentences(), from, to, options));
+  }
+
+  /**
+   * Asynchronous form of {@link #translate(String[], Language, Language, CallOptions)}.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return A future for the translated Strings, completed exceptionally on error.
+   */
+  public CompletableFuture<String[]> translateAsync(final String[] texts, final Language from, final Language to, final CallOptions options) {
+    final Segments segments;
+    try {
+      segments = new Segments(texts, from);
+    } catch (RuntimeException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return client.translateAsync(segments.sentences(), from, to, options).thenApply(segments::join);
+  }
+
+  /**
+   * The distinct sentences of a batch of texts, and where each occurrence sits in its text.
+   */
+  private static final class Segments {
+    private final String[] texts;
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private final List<String> sentences = new ArrayList<String>();
+    // For each text, a (start, end, sentence index) triple per sentence, in order
+    private final int[][] positions;
+    private int[] current = new int[48];
+    private int count;
+
+    Segments(final String[] pTexts, final Language from) {
+      texts = pTexts;
+      positions = new int[texts.length][];
+      final Locale locale = new Locale(from.toString());
+      final BreakIterator breaks = BreakIterator.getSentenceInstance(locale);
+      for (int i = 0; i < texts.length; i++) {
+        final String text = texts[i];
+        count = 0;
+        if (text != null && text.length() > 0) {
+          breaks.setText(text);
+          int start = breaks.first();
+          for (int end = breaks.next(); end != BreakIterator.DONE; start = end, end = breaks.next()) {
+            add(text, start, end, locale);
+          }
+        }
+        positions[i] = Arrays.copyOf(current, count);
+      }
+    }
+
+    /**
+     * Returns the distinct sentences, without the whitespace around them.
+     */
+    String[] sentences() {
+      return sentences.toArray(new String[0]);
+    }
+
+    /**
+     * Puts each text back together from the translations of its sentences, keeping the
+     * whitespace between them as it was.
+     */
+    String[] join(final String[] translations) {
+      final String[] results = new String[texts.length];
+      for (int i = 0; i < texts.length; i++) {
+        final String text = texts[i];
+        final int[] at = positions[i];
+        if (at.length == 0) {
+          results[i] = text;
+          continue;
+        }
+        final StringBuilder joined = new StringBuilder(text.length() + text.length() / 4);
+        int copied = 0;
+        for (int j = 0; j < at.length; j += 3) {
+          joined.append(text, copied, at[j]).append(translations[at[j + 2]]);
+          copied = at[j + 1];
+        }
+        results[i] = joined.append(text, copied, text.length()).toString();
+      }
+      return results;
+    }
+
+    // Records text[start, end) without its surrounding whitespace, splitting it further if
+    // it is too long for one request
+    private void add(final String text, final int from, final int to, final Locale locale) {
+      int start = from;
+      int end = to;
+      while (start < end && Character.isWhitespace(text.charAt(start))) {
+        start++;
+      }
+      while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+        end--;
+      }
+      if (start == end) {
+        return;
+      }
+      final String sentence = text.substring(start, end);
+      // Three bytes per char is the most UTF-8 needs, so most sentences skip the exact count
+      if (sentence.length() * 3 > TranslatorClient.MAX_TEXT_BYTES
+          && sentence.getBytes(StandardCharsets.UTF_8).length > TranslatorClient.MAX_TEXT_BYTES) {
+        int offset = start;
+        for (String piece : DocumentSplitter.split(sentence, TranslatorClient.MAX_TEXT_BYTES, locale)) {
+          add(text, offset, offset + piece.length(), locale);
+          offset += piece.length();
+        }
+        return;
+      }
+      Integer index = indexes.get(sentence);
+      if (index == null) {
+        index = sentences.size();
+        indexes.put(sentence, index);
+        sentences.add(sentence);
+      }
+      if (count + 3 > current.length) {
+        current = Arrays.copyOf(current, current.length * 2);
+      }
+      current[count++] = start;
+      current[count++] = end;
+      current[count++] = index;
+    }
+  }
+}
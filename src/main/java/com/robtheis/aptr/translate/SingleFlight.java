@@ -0,0 +1,200 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.CallOptions;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller does the work,
+ * and callers arriving while it is in flight share its result or its exception.
+ * Nothing is remembered once the call completes.
+ *
+ * Only calls with the same timeouts and hedging setting are coalesced. Deadlines may
+ * differ: each caller waits no longer than its own, and a caller whose leader ran out of
+ * time while it still has time left runs the call again rather than take the leader's
+ * {@link TimeoutException}.
+ */
+final class SingleFlight<K, V> {
+
+  interface Call<V> {
+    V call() throws Exception;
+  }
+
+  /**
+   * A caller's key, with the settings that change how the call is sent.
+   */
+  private static final class FlightKey<K> {
+    final K key;
+    final int connectTimeout;
+    final int readTimeout;
+    final boolean hedging;
+    final int hash;
+
+    FlightKey(final K pKey, final CallOptions options) {
+      key = pKey;
+      connectTimeout = options.getConnectTimeout();
+      readTimeout = options.getReadTimeout();
+      hedging = options.isHedging();
+      hash = 31 * (31 * (31 * key.hashCode() + connectTimeout) + readTimeout) + (hedging ? 1 : 0);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof FlightKey)) {
+        return false;
+      }
+      final FlightKey<?> other = (FlightKey<?>) o;
+      return connectTimeout == other.connectTimeout && readTimeout == other.readTimeout
+          && hedging == other.hedging && key.equals(other.key);
+    }
+  }
+
+  private final ConcurrentHashMap<FlightKey<K>, CompletableFuture<V>> inFlight =
+      new ConcurrentHashMap<FlightKey<K>, CompletableFuture<V>>();
+
+  /**
+   * Runs the call, or waits for an identical call already in flight.
+   */
+  V execute(final K key, final CallOptions options, final Call<V> call) throws Exception {
+    final FlightKey<K> flightKey = new FlightKey<K>(key, options);
+    while (true) {
+      final CompletableFuture<V> flight = new CompletableFuture<V>();
+      final CompletableFuture<V> existing = inFlight.putIfAbsent(flightKey, flight);
+      if (existing != null) {
+        try {
+          return await(existing, options);
+        } catch (Exception ex) {
+          if (leaderTimedOut(ex, options)) {
+            continue;
+          }
+          throw ex;
+        }
+      }
+      try {
+        final V value = call.call();
+        flight.complete(value);
+        return value;
+      } catch (Exception ex) {
+        flight.completeExceptionally(ex);
+        throw ex;
+      } catch (Error err) {
+        flight.completeExceptionally(err);
+        throw err;
+      } finally {
+        inFlight.remove(flightKey, flight);
+      }
+    }
+  }
+
+  /**
+   * Starts the call, or attaches to an identical call already in flight. Each caller gets
+   * a future of its own, so cancelling or completing it leaves the other callers alone.
+   */
+  CompletableFuture<V> executeAsync(final K key, final CallOptions options, final Supplier<CompletableFuture<V>> call) {
+    final FlightKey<K> flightKey = new FlightKey<K>(key, options);
+    final CompletableFuture<V> flight = new CompletableFuture<V>();
+    final CompletableFuture<V> existing = inFlight.putIfAbsent(flightKey, flight);
+    if (existing != null) {
+      return TranslatorClient.withDeadline(follow(existing, key, options, call), options);
+    }
+    final CompletableFuture<V> started;
+    try {
+      started = call.get();
+    } catch (RuntimeException ex) {
+      inFlight.remove(flightKey, flight);
+      flight.completeExceptionally(ex);
+      return flight.copy();
+    }
+    started.whenComplete((value, error) -> {
+      inFlight.remove(flightKey, flight);
+      if (error != null) {
+        flight.completeExceptionally(error);
+      } else {
+        flight.complete(value);
+      }
+    });
+    return flight.copy();
+  }
+
+  // Passes on the leader's outcome, or runs the call again if only the leader's deadline passed
+  private CompletableFuture<V> follow(final CompletableFuture<V> leader, final K key, final CallOptions options,
+      final Supplier<CompletableFuture<V>> call) {
+    final CompletableFuture<V> result = new CompletableFuture<V>();
+    leader.whenComplete((value, error) -> {
+      if (error == null) {
+        result.complete(value);
+      } else if (leaderTimedOut(error, options)) {
+        executeAsync(key, options, call).whenComplete((retried, retryError) -> {
+          if (retryError != null) {
+            result.completeExceptionally(retryError);
+          } else {
+            result.complete(retried);
+          }
+        });
+      } else {
+        result.completeExceptionally(error);
+      }
+    });
+    return result;
+  }
+
+  // Whether the leader failed on its deadline while this caller still has time left
+  private static boolean leaderTimedOut(final Throwable error, final CallOptions options) {
+    if (options.remainingNanos() <= 0) {
+      return false;
+    }
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof TimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <V> V await(final CompletableFuture<V> flight, final CallOptions options) throws Exception {
+    try {
+      if (!options.hasDeadline()) {
+        return flight.get();
+      }
+      return flight.get(Math.max(0, options.remainingNanos()), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    } catch (TimeoutException ex) {
+      // This caller's own deadline, not the leader's
+      throw new TimeoutException("[apertium-translator-api] Deadline exceeded");
+    }
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The language pairs the service supports, as reported by its listPairs service and
+ * kept in memory and, optionally, in a file so that they survive restarts.
+ *
+ * The first check loads the pairs, from the file if it is recent enough and from the
+ * service otherwise. The service is asked without blocking any thread, and concurrent
+ * checks share one load. After that every check is an array lookup. Once the pairs are
+ * older than the refresh interval they are fetched again in the background while the old
+ * ones stay in use. If the pairs cannot be fetched, every pair is allowed, so that a
+ * listPairs outage never blocks translation.
+ */
+public final class SupportedPairs {
+  public static final long DEFAULT_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+  // How long to wait before trying again after a failed fetch
+  private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final String FILE_HEADER = "# apertium listPairs ";
+
+  // Fetches the pairs from the service
+  interface Loader {
+    CompletableFuture<Set<LanguagePair>> load();
+  }
+
+  private static final class Snapshot {
+    final Set<LanguagePair> pairs;
+    // Indexed by LanguagePair.index()
+    final boolean[] supported;
+    final PairGraph graph;
+    final long fetchedAtMillis;
+
+    Snapshot(final Set<LanguagePair> pPairs, final long pFetchedAtMillis) {
+      pairs = Collections.unmodifiableSet(new LinkedHashSet<LanguagePair>(pPairs));
+      supported = new boolean[LanguagePair.indexCount()];
+      for (LanguagePair pair : pPairs) {
+        supported[pair.index()] = true;
+      }
+      graph = new PairGraph(pairs);
+      fetchedAtMillis = pFetchedAtMillis;
+    }
+  }
+
+  private volatile Loader loader;
+  private final File file;
+  private final long refreshMillis;
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private final ReentrantLock loadLock = new ReentrantLock();
+  private volatile Snapshot snapshot;
+  private volatile long nextAttemptMillis;
+  // The first load while it is under way, guarded by loadLock
+  private CompletableFuture<Snapshot> loading;
+
+  SupportedPairs(final Loader pLoader, final File pFile, final long pRefreshMillis) {
+    if (pRefreshMillis <= 0) {
+      throw new IllegalArgumentException("refreshMillis must be positive");
+    }
+    loader = pLoader;
+    file = pFile;
+    refreshMillis = pRefreshMillis;
+  }
+
+  // Fetches from now on through the given loader, such as that of a client replacing the one that created this
+  void setLoader(final Loader pLoader) {
+    loader = pLoader;
+  }
+
+  // Whether this keeps its pairs in the given file and refreshes them as often as asked
+  boolean hasSettings(final File pFile, final long pRefreshMillis) {
+    return (file == null ? pFile == null : file.equals(pFile)) && refreshMillis == pRefreshMillis;
+  }
+
+  /**
+   * Returns whether the service supports the pair, waiting for the first load if need be.
+   * Returns true if the supported pairs are not known, because they could not be fetched.
+   * @param pair The language pair.
+   * @return False only if the pair is known to be unsupported.
+   */
+  public boolean isSupported(final LanguagePair pair) {
+    return isSupported(current(), pair);
+  }
+
+  /**
+   * Returns the shortest route between two languages over the supported pairs, through
+   * pivot languages if need be. See {@link PairGraph#route(Language, Language)}.
+   * @param from The language to translate from.
+   * @param to The language to translate to.
+   * @return The pairs to translate through in turn, or null if there is no route or the
+   *         supported pairs are not known.
+   */
+  public List<LanguagePair> route(final Language from, final Language to) {
+    return route(current(), from, to);
+  }
+
+  /**
+   * Returns the supported pairs, loading them first if need be.
+   * @return The pairs, or an empty set if they could not be fetched.
+   */
+  public Set<LanguagePair> getPairs() {
+    final Snapshot current = current();
+    return current != null ? current.pairs : Collections.<LanguagePair>emptySet();
+  }
+
+  /**
+   * Fetches the pairs from the service now, whatever the age of the ones held.
+   * @return The pairs.
+   * @throws Exception if they could not be fetched.
+   */
+  public Set<LanguagePair> refresh() throws Exception {
+    try {
+      return fetch().get().pairs;
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+    }
+  }
+
+  // Starts the first load if need be and returns whether it is over, whether or not the
+  // pairs could be fetched
+  boolean isLoaded() {
+    return load().isDone();
+  }
+
+  // Returns a future completed once the pairs are loaded or could not be, or once the
+  // timeout passes, whichever comes first. Never completes exceptionally.
+  CompletableFuture<Void> whenLoaded(final long timeoutNanos) {
+    final CompletableFuture<Snapshot> load = load();
+    if (load.isDone()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    // A dependent future, so the timeout does not complete the load shared with other callers
+    final CompletableFuture<Void> loaded = load.thenApply(fetched -> (Void) null);
+    return timeoutNanos == Long.MAX_VALUE ? loaded : loaded.completeOnTimeout(null, Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+  }
+
+  // Blocking form of whenLoaded
+  void awaitLoaded(final long timeoutNanos) throws InterruptedException {
+    final CompletableFuture<Snapshot> load = load();
+    try {
+      if (timeoutNanos == Long.MAX_VALUE) {
+        load.get();
+      } else {
+        load.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+      }
+    } catch (ExecutionException | TimeoutException ex) {
+      // Every pair is allowed until the load finishes
+    }
+  }
+
+  // Forms of isSupported and route that never wait for the first load: until it
+  // finishes, every pair is allowed and there is no route
+  boolean isSupportedNow(final LanguagePair pair) {
+    return isSupported(peek(), pair);
+  }
+
+  List<LanguagePair> routeNow(final Language from, final Language to) {
+    return route(peek(), from, to);
+  }
+
+  private static boolean isSupported(final Snapshot current, final LanguagePair pair) {
+    return current == null || current.supported[pair.index()];
+  }
+
+  private static List<LanguagePair> route(final Snapshot current, final Language from, final Language to) {
+    return current != null ? current.graph.route(from, to) : null;
+  }
+
+  private Snapshot current() {
+    final Snapshot current = peek();
+    return current != null ? current : load().join();
+  }
+
+  // Returns the pairs held, or null if they are not loaded yet
+  private Snapshot peek() {
+    final Snapshot current = snapshot;
+    if (current != null && System.currentTimeMillis() - current.fetchedAtMillis >= refreshMillis) {
+      refreshInBackground();
+    }
+    return current;
+  }
+
+  // Starts the first load, unless it is under way or done, and returns it. The future
+  // holds the pairs, or null if they could not be fetched, and never completes exceptionally.
+  private CompletableFuture<Snapshot> load() {
+    Snapshot current = snapshot;
+    if (current != null) {
+      return CompletableFuture.completedFuture(current);
+    }
+    // A lock rather than a monitor, so virtual threads reading the file do not pin their carriers
+    loadLock.lock();
+    try {
+      current = snapshot;
+      if (current != null || System.currentTimeMillis() < nextAttemptMillis) {
+        return CompletableFuture.completedFuture(current);
+      }
+      if (loading != null) {
+        return loading;
+      }
+      final Snapshot saved = read();
+      if (saved != null && System.currentTimeMillis() - saved.fetchedAtMillis < refreshMillis) {
+        snapshot = saved;
+        return CompletableFuture.completedFuture(saved);
+      }
+      final CompletableFuture<Snapshot> load = new CompletableFuture<Snapshot>();
+      loading = load;
+      fetch().whenComplete((fetched, error) -> {
+        loadLock.lock();
+        try {
+          if (error != null) {
+            nextAttemptMillis = System.currentTimeMillis() + RETRY_MILLIS;
+            // Better stale pairs than none
+            snapshot = saved;
+          }
+          loading = null;
+        } finally {
+          loadLock.unlock();
+        }
+        load.complete(snapshot);
+      });
+      return load;
+    } finally {
+      loadLock.unlock();
+    }
+  }
+
+  private void refreshInBackground() {
+    if (System.currentTimeMillis() < nextAttemptMillis || !refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    fetch().whenComplete((fetched, error) -> {
+      if (error != null) {
+        nextAttemptMillis = System.currentTimeMillis() + RETRY_MILLIS;
+      }
+      refreshing.set(false);
+    });
+  }
+
+  // Asks the service for the pairs and keeps them once they arrive
+  private CompletableFuture<Snapshot> fetch() {
+    final CompletableFuture<Set<LanguagePair>> pairs;
+    try {
+      pairs = loader.load();
+    } catch (RuntimeException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return pairs.thenApply(fetched -> {
+      final Snapshot loaded = new Snapshot(fetched, System.currentTimeMillis());
+      snapshot = loaded;
+      save(loaded);
+      return loaded;
+    });
+  }
+
+  // Reads the pairs saved by an earlier run, or returns null if there are none
+  private Snapshot read() {
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      final String header = in.readLine();
+      if (header == null || !header.startsWith(FILE_HEADER)) {
+        return null;
+      }
+      final long fetchedAt = Long.parseLong(header.substring(FILE_HEADER.length()).trim());
+      final Set<LanguagePair> pairs = new LinkedHashSet<LanguagePair>();
+      String line;
+      while ((line = in.readLine()) != null) {
+        final LanguagePair pair = LanguagePair.fromString(line.trim());
+        if (pair != null && pair.getFrom() != pair.getTo()) {
+          pairs.add(pair);
+        }
+      }
+      return new Snapshot(pairs, fetchedAt);
+    } catch (IOException | NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  // Writes the pairs to a temporary file and moves it into place, so readers never see half a file
+  private void save(final Snapshot fetched) {
+    if (file == null) {
+      return;
+    }
+    try {
+      final File dir = file.getAbsoluteFile().getParentFile();
+      if (dir != null) {
+        Files.createDirectories(dir.toPath());
+      }
+      final File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+      try {
+        try (BufferedWriter out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+          out.write(FILE_HEADER + fetched.fetchedAtMillis);
+          out.newLine();
+          for (LanguagePair pair : fetched.pairs) {
+            out.write(pair.getCode());
+            out.newLine();
+          }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp.toPath());
+      }
+    } catch (IOException ex) {
+      // The file is only a cache; the pairs in memory are still good
+    }
+  }
+}
@@ -19,23 +19,148 @@
 package com.robtheis.aptr.translate;
 
 import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
 import com.robtheis.aptr.ApertiumTranslatorAPI;
-import java.net.URL;
-import java.net.URLEncoder;
+import com.robtheis.aptr.cache.TranslationCache;
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Makes calls to the Apertium machine translation web service API
+ * 
+ * The static methods use a shared {@link TranslatorClient} configured through the static
+ * setters. Build a TranslatorClient directly to use several keys or endpoints side by side.
  */
 public final class Translate extends ApertiumTranslatorAPI {
 
-  private static final String SERVICE_URL = "http://api.apertium.org/json/translate?";
+  private static volatile TranslationCache cache;
+  private static volatile boolean coalescing;
+  private static volatile long batchDelayMillis;
+  private static volatile int batchMaxItems;
+  private static volatile boolean validatePairs;
+  private static volatile boolean pivoting;
+  private static volatile File pairCacheFile;
 
-  private static final String RESPONSE_LABEL = "responseData";
-  private static final String TRANSLATION_LABEL = "translatedText";
+  private static volatile TranslatorClient client;
+  private static volatile int clientVersion;
+  // Guards the settings and the client; a lock rather than a monitor, so virtual threads do not pin
+  private static final ReentrantLock LOCK = new ReentrantLock();
   
   //prevent instantiation
   private Translate(){};
 
+  /**
+   * Sets the cache consulted before each translation request, or null to disable caching.
+   * @param pCache The cache, such as a {@link com.robtheis.aptr.cache.LruTranslationCache}.
+   */
+  public static void setCache(final TranslationCache pCache) {
+    LOCK.lock();
+    try {
+      cache = pCache;
+      defaultsChanged();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Turns request coalescing on or off. When on, concurrent calls to translate the same text
+   * with the same language pair share a single request and all receive its result (or its
+   * exception). It is off by default.
+   * @param enabled Whether to coalesce identical concurrent requests.
+   */
+  public static void setCoalescing(final boolean enabled) {
+    LOCK.lock();
+    try {
+      coalescing = enabled;
+      defaultsChanged();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Turns micro-batching on or off. When on, concurrent single-text calls for the same
+   * language pair are held for up to maxDelayMillis and sent together as one array request,
+   * as soon as maxItems of them are waiting. Each caller still gets its own translation.
+   * It is off by default.
+   * @param maxDelayMillis The longest a text waits for others to join it, or 0 to turn batching off.
+   * @param maxItems The most texts in one batch; at least 2.
+   */
+  public static void setMicroBatching(final long maxDelayMillis, final int maxItems) {
+    if(maxDelayMillis<0||(maxDelayMillis>0&&maxItems<2)) {
+      throw new IllegalArgumentException("maxDelayMillis must not be negative and maxItems must be at least 2");
+    }
+    LOCK.lock();
+    try {
+      batchDelayMillis = maxDelayMillis;
+      batchMaxItems = maxItems;
+      defaultsChanged();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Turns pair validation on or off. When on, the list of pairs the service supports is
+   * fetched once (and refreshed daily), and requests for any other pair are rejected with
+   * an UNSUPPORTED_LANGUAGE_PAIR RuntimeException before they go on the wire. It is off by default.
+   * @param enabled Whether to check pairs against the service's list.
+   */
+  public static void setPairValidation(final boolean enabled) {
+    LOCK.lock();
+    try {
+      validatePairs = enabled;
+      defaultsChanged();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Turns pivot translation on or off. When on, a pair Apertium does not support is translated
+   * through one or more intermediate languages, such as Catalan to English by way of Spanish.
+   * Pairs with no route are rejected as with {@link #setPairValidation(boolean)}.
+   * It is off by default.
+   * @param enabled Whether to translate through pivot languages.
+   */
+  public static void setPivoting(final boolean enabled) {
+    LOCK.lock();
+    try {
+      pivoting = enabled;
+      defaultsChanged();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Sets a file in which to keep the list of supported pairs between runs, or null to keep
+   * it in memory only.
+   * @param pFile The file, or null.
+   */
+  public static void setPairCacheFile(final File pFile) {
+    LOCK.lock();
+    try {
+      pairCacheFile = pFile;
+      defaultsChanged();
+    } finally {
+      LOCK.unlock();
+    }
+  }
+
+  /**
+   * Asks Apertium which language pairs it offers.
+   * 
+   * @return The supported pairs.
+   * @throws Exception on error.
+   */
+  public static Set<LanguagePair> listPairs() throws Exception {
+    return client().listPairs();
+  }
+
   /**
    * Translates text from a given Language to another given Language using Apertium.
    * 
@@ -46,22 +171,119 @@ public final class Translate extends ApertiumTranslatorAPI {
    * @throws Exception on error.
    */
   public static String execute(final String text, final Language from, final Language to) throws Exception {
-    //Run the basic service validations first
-    validateServiceState(text); 
-    final String params = 
-      PARAM_API_KEY + URLEncoder.encode(apiKey,ENCODING) 
-      + PARAM_LANG_PAIR + URLEncoder.encode(from.toString(),ENCODING) + URLEncoder.encode("|",ENCODING) + URLEncoder.encode(to.toString(),ENCODING) 
-      + PARAM_TEXT + URLEncoder.encode(text,ENCODING);
-    final URL url = new URL(SERVICE_URL + params);
-    final String response = retrieveSubObjString(url, RESPONSE_LABEL, TRANSLATION_LABEL);    
-    return response.trim();
+    return client().translate(text, from, to);
+  }
+
+  /**
+   * Translates text from a given Language to another given Language using Apertium, without
+   * blocking the calling thread while the request is on the wire.
+   * 
+   * @param text The String to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return A future for the translated String, completed exceptionally on error.
+   */
+  public static CompletableFuture<String> executeAsync(final String text, final Language from, final Language to) {
+    return client().translateAsync(text, from, to);
+  }
+
+  /**
+   * Translates an array of texts from a given Language to another given Language using Apertium.
+   * The texts are packed into as few requests as the service's size limit allows.
+   * 
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated Strings, in the same order as the input.
+   * @throws Exception on error.
+   */
+  public static String[] execute(final String[] texts, final Language from, final Language to) throws Exception {
+    return client().translate(texts, from, to);
+  }
+
+  /**
+   * Translates a document of any length using Apertium. Text over the service's size limit
+   * is split at paragraph and sentence boundaries, the pieces are translated concurrently
+   * and the translations are joined in order, keeping the original whitespace between them.
+   * 
+   * @param text The document to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated document.
+   * @throws Exception on error.
+   */
+  public static String executeDocument(final String text, final Language from, final Language to) throws Exception {
+    return client().translateDocument(text, from, to);
+  }
+
+  /**
+   * Translates an array of texts sentence by sentence using Apertium. Each sentence that
+   * occurs anywhere in the array is sent once, and only if it is not in the cache.
+   * 
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated Strings, in the same order as the input.
+   * @throws Exception on error.
+   */
+  public static String[] executeSegmented(final String[] texts, final Language from, final Language to) throws Exception {
+    return new SegmentingTranslator(client()).translate(texts, from, to);
+  }
+
+  /**
+   * Returns a bulk translator on the shared client, for jobs of many independent texts.
+   * Each text is translated on a virtual thread where the JVM has them.
+   * 
+   * @param maxConcurrency The most texts to have in flight at once.
+   * @return The bulk translator.
+   */
+  public static BulkTranslator bulk(final int maxConcurrency) {
+    return new BulkTranslator(client(), maxConcurrency);
   }
 
-  private static void validateServiceState(final String text) throws Exception {
-    final int byteLength = text.getBytes(ENCODING).length;
-    if(byteLength>10240) {
-      throw new RuntimeException("TEXT_TOO_LARGE");
+  // Returns the shared client, rebuilding it if any of the static settings changed since it was built.
+  // The new client carries on with the old one's supported pairs and latencies.
+  private static TranslatorClient client() {
+    final int version = getDefaultsVersion();
+    TranslatorClient c = client;
+    if(c==null||clientVersion!=version) {
+      LOCK.lock();
+      try {
+        c = client;
+        if(c==null||clientVersion!=version) {
+          final TranslatorClient previous = c;
+          c = TranslatorClient.builder()
+            .key(apiKey)
+            .referrer(getHttpReferrer())
+            .connectTimeout(getConnectTimeout())
+            .readTimeout(getReadTimeout())
+            .deadline(getDeadline())
+            .hedging(getHedgePercentile())
+            .transport(getTransport())
+            .cache(cache)
+            .coalescing(coalescing)
+            .microBatching(batchDelayMillis, batchMaxItems)
+            .asyncExecutor(getAsyncExecutor())
+            .maxAsyncRequests(getMaxAsyncRequests())
+            .rateLimiter(getRateLimiter())
+            .metrics(getMetricsRegistry())
+            .circuitBreaker(getCircuitBreaker())
+            .validatePairs(validatePairs)
+            .pivoting(pivoting)
+            .pairCacheFile(pairCacheFile)
+            .replacing(previous)
+            .build();
+          clientVersion = version;
+          client = c;
+          if(previous!=null) {
+            // Sends what the old client holds for batching; calls already on it finish as usual
+            previous.shutdown();
+          }
+        }
+      } finally {
+        LOCK.unlock();
+      }
     }
-    validateServiceState();
+    return c;
   }
 }
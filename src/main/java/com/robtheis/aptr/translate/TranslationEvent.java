@@ -0,0 +1,118 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for texts a client translated: either a batch sent in one request,
+ * from building the request to receiving the translations, or texts answered from the cache.
+ * The {@code com.robtheis.aptr.Request} events of a sent batch fall within it.
+ */
+@Name("com.robtheis.aptr.Translation")
+@Label("Apertium Translation")
+@Category("Apertium Translator")
+@Description("Texts translated by a client, sent in one request or answered from the cache")
+final class TranslationEvent extends Event {
+  static final String HIT = "HIT";
+  static final String MISS = "MISS";
+  static final String NO_CACHE = "NONE";
+
+  @Label("Language Pair")
+  String pair;
+
+  @Label("Texts")
+  int texts;
+
+  @Label("Text Length")
+  @Description("Total length of the texts, in chars")
+  long textLength;
+
+  @Label("Cache Outcome")
+  @Description("HIT if answered from the cache, MISS if the cache had to be passed by, NONE if there is no cache")
+  String cacheOutcome;
+
+  @Label("Encode")
+  @Description("Building the request URL or form body")
+  @Timespan
+  long encode;
+
+  @Label("Failed")
+  boolean failed;
+
+  // Not recorded; the event keeps its own start time, which it does not expose
+  private transient long started;
+
+  /**
+   * Starts an event for texts about to be sent.
+   * @return The event, or null if it is not being recorded.
+   */
+  static TranslationEvent beginSend() {
+    final TranslationEvent event = new TranslationEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    event.started = System.nanoTime();
+    return event;
+  }
+
+  /**
+   * Records that the request has been built.
+   */
+  void encoded() {
+    encode = System.nanoTime() - started;
+  }
+
+  /**
+   * Ends and commits an event started by {@link #beginSend()}.
+   */
+  void sent(final Language from, final Language to, final int count, final long length, final boolean cached,
+      final boolean pFailed) {
+    end();
+    if (shouldCommit()) {
+      pair = LanguagePair.of(from, to).getCode();
+      texts = count;
+      textLength = length;
+      cacheOutcome = cached ? MISS : NO_CACHE;
+      failed = pFailed;
+      commit();
+    }
+  }
+
+  /**
+   * Commits an event for texts answered from the cache.
+   */
+  static void cacheHit(final Language from, final Language to, final int count, final long length) {
+    final TranslationEvent event = new TranslationEvent();
+    if (event.shouldCommit()) {
+      event.pair = LanguagePair.of(from, to).getCode();
+      event.texts = count;
+      event.textLength = length;
+      event.cacheOutcome = HIT;
+      event.commit();
+    }
+  }
+}
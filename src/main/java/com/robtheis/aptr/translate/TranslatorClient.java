@@ -0,0 +1,1317 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import com.robtheis.aptr.ApertiumTranslatorAPI;
+import com.robtheis.aptr.CallOptions;
+import com.robtheis.aptr.CircuitBreaker;
+import com.robtheis.aptr.CircuitOpenException;
+import com.robtheis.aptr.ClientSettings;
+import com.robtheis.aptr.RateLimiter;
+import com.robtheis.aptr.ServiceRequest;
+import com.robtheis.aptr.cache.TranslationCache;
+import com.robtheis.aptr.cache.TranslationKey;
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import com.robtheis.aptr.metrics.MetricsRegistry;
+import com.robtheis.aptr.transport.FormBody;
+import com.robtheis.aptr.transport.QueryEncoder;
+import com.robtheis.aptr.transport.HttpClientTransport;
+import com.robtheis.aptr.transport.PooledTransport;
+import com.robtheis.aptr.transport.Transport;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A configured connection to an Apertium endpoint. Clients are immutable and safe
+ * for concurrent use, so several can run side by side with different endpoints,
+ * keys and settings.
+ *
+ * <pre>
+ * TranslatorClient client = TranslatorClient.builder()
+ *     .key(apiKey)
+ *     .readTimeout(5000)
+ *     .build();
+ * String translation = client.translate("Hola, mundo!", Language.SPANISH, Language.ENGLISH);
+ * </pre>
+ */
+public final class TranslatorClient extends ApertiumTranslatorAPI {
+  public static final String DEFAULT_ENDPOINT = "http://api.apertium.org/json/";
+
+  // Longest URL sent as a GET; many proxies and servers reject URLs much past 2 KB
+  public static final int DEFAULT_MAX_GET_URL_LENGTH = 2048;
+
+  private static final String TRANSLATE_SERVICE = "translate";
+  private static final String LIST_PAIRS_SERVICE = "listPairs";
+
+  private static final String KEY_FIELD = "key";
+  private static final String LANG_PAIR_FIELD = "langpair";
+  private static final String TEXT_FIELD = "q";
+
+  private static final String RESPONSE_LABEL = "responseData";
+  private static final String TRANSLATION_LABEL = "translatedText";
+  private static final String SOURCE_LABEL = "sourceLanguage";
+  private static final String TARGET_LABEL = "targetLanguage";
+
+  // Largest text, in UTF-8 bytes, the service accepts in one request
+  static final int MAX_TEXT_BYTES = 10240;
+
+  private final String endpoint;
+  private final String translateUrl;
+  private final int maxGetUrlLength;
+  // The encoded key and langpair parameters, per key, indexed by language pair
+  private final ConcurrentHashMap<String, String[]> paramPrefixes = new ConcurrentHashMap<String, String[]>();
+  private final String key;
+  private final KeyPool keyPool;
+  private final TranslationCache cache;
+  private final SingleFlight<TranslationKey, String> flights;
+  private final MicroBatcher batcher;
+  private final SupportedPairs supportedPairs;
+  private final boolean pivoting;
+  // Set when the builder created the transport, so shutdown() may release it
+  private final Transport ownedTransport;
+
+  private TranslatorClient(final Builder builder, final Transport transport, final boolean ownsTransport) {
+    super(builder.settings(transport));
+    endpoint = builder.endpoint;
+    translateUrl = endpoint + TRANSLATE_SERVICE;
+    maxGetUrlLength = builder.maxGetUrlLength;
+    key = builder.key;
+    keyPool = builder.keyPool;
+    cache = builder.cache;
+    flights = builder.coalescing ? new SingleFlight<TranslationKey, String>() : null;
+    batcher = builder.batchDelayMillis>0 ? new MicroBatcher(this::translateAsyncCall, builder.batchDelayMillis, builder.batchMaxItems) : null;
+    pivoting = builder.pivoting;
+    supportedPairs = builder.validatePairs||builder.pivoting ? supportedPairs(builder) : null;
+    ownedTransport = ownsTransport ? transport : null;
+  }
+
+  // Takes over the pairs of the client this one replaces, if they come from the same endpoint
+  // and are kept the same way, so they are not fetched again
+  private SupportedPairs supportedPairs(final Builder builder) {
+    final TranslatorClient previous = builder.previous;
+    if(previous!=null&&previous.supportedPairs!=null&&previous.endpoint.equals(endpoint)
+        &&previous.supportedPairs.hasSettings(builder.pairCacheFile, builder.pairRefreshMillis)) {
+      previous.supportedPairs.setLoader(this::listPairsAsync);
+      return previous.supportedPairs;
+    }
+    return new SupportedPairs(this::listPairsAsync, builder.pairCacheFile, builder.pairRefreshMillis);
+  }
+
+  /**
+   * Returns a builder for a new client.
+   * @return The builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Translates text from a given Language to another given Language.
+   *
+   * @param text The String to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated String.
+   * @throws Exception on error.
+   */
+  public String translate(final String text, final Language from, final Language to) throws Exception {
+    return translate(text, from, to, CallOptions.DEFAULT);
+  }
+
+  /**
+   * Translates text from a given Language to another given Language, with timeouts, a
+   * deadline or hedging of its own.
+   *
+   * @param text The String to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return The translated String.
+   * @throws Exception on error, caused by a {@link java.util.concurrent.TimeoutException} if the deadline passes.
+   */
+  public String translate(final String text, final Language from, final Language to, final CallOptions options) throws Exception {
+    return translateCall(text, from, to, startCall(options));
+  }
+
+  private String translateCall(final String text, final Language from, final Language to, final CallOptions call) throws Exception {
+    //Run the basic service validations first
+    final List<LanguagePair> route = validateServiceState(text, from, to, call);
+    if(cache!=null) {
+      final String cached = cache.get(from, to, text);
+      if(cached!=null) {
+        TranslationEvent.cacheHit(from, to, 1, text.length());
+        return cached;
+      }
+    }
+    if(route!=null) {
+      return translateVia(text, route, call);
+    }
+    if(flights!=null) {
+      return flights.execute(new TranslationKey(from, to, text), call, () -> fetch(text, from, to, call));
+    }
+    return fetch(text, from, to, call);
+  }
+
+  // Sends the text on its own, or adds it to the next batch for its pair
+  private String fetch(final String text, final Language from, final Language to, final CallOptions call) throws Exception {
+    if(batcher!=null) {
+      return await(batcher.submit(text, from, to, call));
+    }
+    return fetchSingle(text, from, to, call);
+  }
+
+  // Translates through each pair of the route in turn. Each hop goes through the cache, so
+  // the intermediate translations are kept as well as the end result.
+  private String translateVia(final String text, final List<LanguagePair> route, final CallOptions call) throws Exception {
+    String translation = text;
+    for(LanguagePair hop : route) {
+      translation = translateCall(translation, hop.getFrom(), hop.getTo(), call);
+    }
+    if(cache!=null) {
+      cache.put(route.get(0).getFrom(), route.get(route.size() - 1).getTo(), text, translation);
+    }
+    return translation;
+  }
+
+  private String fetchSingle(final String text, final Language from, final Language to, final CallOptions call) throws Exception {
+    final String k = nextKey();
+    final TranslationEvent event = TranslationEvent.beginSend();
+    final ServiceRequest request = wireRequest(k, from, to, new String[] {text}, null, 1);
+    if(event!=null)
+      event.encoded();
+    final String response;
+    try {
+      response = retrieveSubObjString(request.withOptions(call), RESPONSE_LABEL, TRANSLATION_LABEL).trim();
+    } catch (Exception ex) {
+      recordOutcome(k, ex);
+      if(event!=null)
+        event.sent(from, to, 1, text.length(), cache!=null, true);
+      throw ex;
+    }
+    recordOutcome(k, null);
+    if(event!=null)
+      event.sent(from, to, 1, text.length(), cache!=null, false);
+    if(cache!=null) {
+      cache.put(from, to, text, response);
+    }
+    return response;
+  }
+
+  /**
+   * Translates text from a given Language to another given Language, without blocking the
+   * calling thread while the request is on the wire.
+   *
+   * @param text The String to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return A future for the translated String, completed exceptionally on error.
+   */
+  public CompletableFuture<String> translateAsync(final String text, final Language from, final Language to) {
+    return translateAsync(text, from, to, CallOptions.DEFAULT);
+  }
+
+  /**
+   * Asynchronous form of {@link #translate(String, Language, Language, CallOptions)}.
+   *
+   * @param text The String to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return A future for the translated String, completed exceptionally on error or when the deadline passes.
+   */
+  public CompletableFuture<String> translateAsync(final String text, final Language from, final Language to, final CallOptions options) {
+    final CallOptions call;
+    try {
+      call = startCall(options);
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return translateAsyncCall(text, from, to, call);
+  }
+
+  private CompletableFuture<String> translateAsyncCall(final String text, final Language from, final Language to, final CallOptions call) {
+    if(!pairsLoaded()) {
+      return afterPairs(call).thenCompose(loaded -> translateLoadedAsync(text, from, to, call));
+    }
+    return translateLoadedAsync(text, from, to, call);
+  }
+
+  private CompletableFuture<String> translateLoadedAsync(final String text, final Language from, final Language to, final CallOptions call) {
+    final List<LanguagePair> route;
+    try {
+      validateTextSize(text);
+      validateKey();
+      route = route(from, to);
+      if(cache!=null) {
+        final String cached = cache.get(from, to, text);
+        if(cached!=null) {
+          TranslationEvent.cacheHit(from, to, 1, text.length());
+          return CompletableFuture.completedFuture(cached);
+        }
+      }
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    if(route!=null) {
+      return translateViaAsync(text, route, call);
+    }
+    if(flights!=null) {
+      return flights.executeAsync(new TranslationKey(from, to, text), call, () -> fetchAsync(text, from, to, call));
+    }
+    return fetchAsync(text, from, to, call);
+  }
+
+  private CompletableFuture<String> fetchAsync(final String text, final Language from, final Language to, final CallOptions call) {
+    if(batcher!=null) {
+      return batcher.submit(text, from, to, call);
+    }
+    return fetchSingleAsync(text, from, to, call);
+  }
+
+  private CompletableFuture<String> translateViaAsync(final String text, final List<LanguagePair> route, final CallOptions call) {
+    CompletableFuture<String> translation = CompletableFuture.completedFuture(text);
+    for(LanguagePair hop : route) {
+      translation = translation.thenCompose(previous -> translateAsyncCall(previous, hop.getFrom(), hop.getTo(), call));
+    }
+    if(cache==null) {
+      return translation;
+    }
+    return translation.thenApply(result -> {
+      cache.put(route.get(0).getFrom(), route.get(route.size() - 1).getTo(), text, result);
+      return result;
+    });
+  }
+
+  private CompletableFuture<String> fetchSingleAsync(final String text, final Language from, final Language to, final CallOptions call) {
+    final String k = nextKey();
+    final TranslationEvent event = TranslationEvent.beginSend();
+    final ServiceRequest request;
+    try {
+      request = wireRequest(k, from, to, new String[] {text}, null, 1);
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    if(event!=null)
+      event.encoded();
+    return retrieveSubObjStringAsync(request.withOptions(call), RESPONSE_LABEL, TRANSLATION_LABEL).whenComplete((response, error) -> {
+      recordOutcome(k, error);
+      if(event!=null)
+        event.sent(from, to, 1, text.length(), cache!=null, error!=null);
+    }).thenApply(response -> {
+      final String translation = response.trim();
+      if(cache!=null) {
+        cache.put(from, to, text, translation);
+      }
+      return translation;
+    });
+  }
+
+  /**
+   * Translates an array of texts from a given Language to another given Language.
+   * The texts are packed into as few requests as the service's size limit allows.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated Strings, in the same order as the input.
+   * @throws Exception on error.
+   */
+  public String[] translate(final String[] texts, final Language from, final Language to) throws Exception {
+    return translate(texts, from, to, CallOptions.DEFAULT);
+  }
+
+  /**
+   * Form of {@link #translate(String[], Language, Language)} with timeouts, a deadline or
+   * hedging of its own. The deadline covers every request the texts are packed into.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return The translated Strings, in the same order as the input.
+   * @throws Exception on error, caused by a {@link java.util.concurrent.TimeoutException} if the deadline passes.
+   */
+  public String[] translate(final String[] texts, final Language from, final Language to, final CallOptions options) throws Exception {
+    final CallOptions call = startCall(options);
+    validateKey();
+    awaitPairs(call);
+    final List<LanguagePair> route = route(from, to);
+    if(route!=null) {
+      return await(translateViaAsync(texts, route, call));
+    }
+    final String[] results = new String[texts.length];
+    packBatches(texts, from, to, results, (batch, size) -> translateBatch(texts, batch, size, from, to, results, call));
+    return results;
+  }
+
+  /**
+   * Asynchronous form of {@link #translate(String[], Language, Language)}. The requests for
+   * the batches go out concurrently, up to the client's limit on asynchronous requests.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return A future for the translated Strings, completed exceptionally if any batch fails.
+   */
+  public CompletableFuture<String[]> translateAsync(final String[] texts, final Language from, final Language to) {
+    return translateAsync(texts, from, to, CallOptions.DEFAULT);
+  }
+
+  /**
+   * Asynchronous form of {@link #translate(String[], Language, Language, CallOptions)}.
+   *
+   * @param texts The Strings to translate. Null and empty entries are returned unchanged.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return A future for the translated Strings, completed exceptionally if any batch fails or the deadline passes.
+   */
+  public CompletableFuture<String[]> translateAsync(final String[] texts, final Language from, final Language to, final CallOptions options) {
+    final CallOptions call;
+    try {
+      call = startCall(options);
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return translateAsyncCall(texts, from, to, call);
+  }
+
+  private CompletableFuture<String[]> translateAsyncCall(final String[] texts, final Language from, final Language to, final CallOptions call) {
+    if(!pairsLoaded()) {
+      return afterPairs(call).thenCompose(loaded -> translateLoadedAsync(texts, from, to, call));
+    }
+    return translateLoadedAsync(texts, from, to, call);
+  }
+
+  private CompletableFuture<String[]> translateLoadedAsync(final String[] texts, final Language from, final Language to, final CallOptions call) {
+    final String[] results = new String[texts.length];
+    final List<CompletableFuture<Void>> batches = new ArrayList<CompletableFuture<Void>>();
+    try {
+      validateKey();
+      final List<LanguagePair> route = route(from, to);
+      if(route!=null) {
+        return translateViaAsync(texts, route, call);
+      }
+      packBatches(texts, from, to, results, (batch, size) -> {
+        batches.add(translateBatchAsync(texts, Arrays.copyOf(batch, size), from, to, results, call));
+      });
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> results);
+  }
+
+  // Receives each batch packed by packBatches. The batch array is reused for the next batch.
+  private interface BatchSender {
+    void send(int[] batch, int size) throws Exception;
+  }
+
+  // Groups the texts that still need translating into batches within the service's size limit.
+  // Null and empty texts, and texts found in the cache, go straight into results.
+  private void packBatches(final String[] texts, final Language from, final Language to,
+      final String[] results, final BatchSender sender) throws Exception {
+    final int[] batch = new int[texts.length];
+    int batchSize = 0;
+    int batchBytes = 0;
+    int hits = 0;
+    long hitLength = 0;
+    for(int i = 0; i < texts.length; i++) {
+      if(texts[i]==null||texts[i].length()==0) {
+        results[i] = texts[i];
+        continue;
+      }
+      final int byteLength = validateTextSize(texts[i]);
+      if(cache!=null&&(results[i] = cache.get(from, to, texts[i]))!=null) {
+        hits++;
+        hitLength += texts[i].length();
+        continue;
+      }
+      if(batchSize>0&&batchBytes+byteLength>MAX_TEXT_BYTES) {
+        sender.send(batch, batchSize);
+        batchSize = 0;
+        batchBytes = 0;
+      }
+      batch[batchSize++] = i;
+      batchBytes += byteLength;
+    }
+    if(hits>0) {
+      TranslationEvent.cacheHit(from, to, hits, hitLength);
+    }
+    if(batchSize>0) {
+      sender.send(batch, batchSize);
+    }
+  }
+
+  // Total length of texts[batch[0..size)], for the flight recorder
+  private static long textLength(final String[] texts, final int[] batch, final int size) {
+    long length = 0;
+    for(int i = 0; i < size; i++) {
+      length += texts[batch[i]].length();
+    }
+    return length;
+  }
+
+  // Translates the texts along the route. Each batch (packed by its size in the source language)
+  // moves through the hops on its own, so the second hop of one batch overlaps the first hop of
+  // the next rather than waiting for the whole array.
+  private CompletableFuture<String[]> translateViaAsync(final String[] texts, final List<LanguagePair> route, final CallOptions call) {
+    final Language from = route.get(0).getFrom();
+    final Language to = route.get(route.size() - 1).getTo();
+    final String[] results = new String[texts.length];
+    final List<CompletableFuture<Void>> batches = new ArrayList<CompletableFuture<Void>>();
+    try {
+      packBatches(texts, from, to, results, (batch, size) -> {
+        final int[] indexes = Arrays.copyOf(batch, size);
+        final String[] sources = new String[size];
+        for(int i = 0; i < size; i++) {
+          sources[i] = texts[indexes[i]];
+        }
+        CompletableFuture<String[]> translations = CompletableFuture.completedFuture(sources);
+        for(LanguagePair hop : route) {
+          translations = translations.thenCompose(previous -> translateAsyncCall(previous, hop.getFrom(), hop.getTo(), call));
+        }
+        batches.add(translations.thenAccept(translated -> {
+          for(int i = 0; i < size; i++) {
+            results[indexes[i]] = translated[i];
+            if(cache!=null) {
+              cache.put(from, to, sources[i], translated[i]);
+            }
+          }
+        }));
+      });
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> results);
+  }
+
+  // Sends texts[batch[0..size)] in a single request, one q parameter per text, and stores
+  // each translation at its original index in results.
+  private void translateBatch(final String[] texts, final int[] batch, final int size,
+      final Language from, final Language to, final String[] results, final CallOptions call) throws Exception {
+    final String k = nextKey();
+    final TranslationEvent event = TranslationEvent.beginSend();
+    final ServiceRequest request = wireRequest(k, from, to, texts, batch, size);
+    if(event!=null)
+      event.encoded();
+    final String[] response;
+    try {
+      response = retrieveSubObjStringArr(request.withOptions(call), RESPONSE_LABEL, TRANSLATION_LABEL);
+    } catch (Exception ex) {
+      recordOutcome(k, ex);
+      if(event!=null)
+        event.sent(from, to, size, textLength(texts, batch, size), cache!=null, true);
+      throw ex;
+    }
+    recordOutcome(k, null);
+    if(event!=null)
+      event.sent(from, to, size, textLength(texts, batch, size), cache!=null, false);
+    if(response.length!=size) {
+      throw new Exception("[apertium-translator-api] Expected " + size + " translations but received " + response.length);
+    }
+    for(int i = 0; i < size; i++) {
+      results[batch[i]] = response[i].trim();
+      if(cache!=null) {
+        cache.put(from, to, texts[batch[i]], results[batch[i]]);
+      }
+    }
+  }
+
+  // Sends texts[batch[0..length)] in a single asynchronous request and stores each translation
+  // at its original index in results.
+  private CompletableFuture<Void> translateBatchAsync(final String[] texts, final int[] batch,
+      final Language from, final Language to, final String[] results, final CallOptions call) {
+    final String k = nextKey();
+    final TranslationEvent event = TranslationEvent.beginSend();
+    final ServiceRequest request;
+    try {
+      request = wireRequest(k, from, to, texts, batch, batch.length);
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    if(event!=null)
+      event.encoded();
+    return retrieveSubObjStringArrAsync(request.withOptions(call), RESPONSE_LABEL, TRANSLATION_LABEL).whenComplete((response, error) -> {
+      recordOutcome(k, error);
+      if(event!=null)
+        event.sent(from, to, batch.length, textLength(texts, batch, batch.length), cache!=null, error!=null);
+    }).thenAccept(response -> {
+      if(response.length!=batch.length) {
+        throw new CompletionException(new Exception("[apertium-translator-api] Expected " + batch.length
+            + " translations but received " + response.length));
+      }
+      for(int i = 0; i < batch.length; i++) {
+        results[batch[i]] = response[i].trim();
+        if(cache!=null) {
+          cache.put(from, to, texts[batch[i]], results[batch[i]]);
+        }
+      }
+    });
+  }
+
+  /**
+   * Translates a document of any length. Text over the service's size limit is split at
+   * paragraph and sentence boundaries, the pieces are translated concurrently (up to the
+   * client's limit on asynchronous requests) and the translations are joined in order.
+   * Whitespace around each piece, such as line breaks between paragraphs, is kept as it was.
+   *
+   * @param text The document to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return The translated document.
+   * @throws Exception on error.
+   */
+  public String translateDocument(final String text, final Language from, final Language to) throws Exception {
+    return await(translateDocumentAsync(text, from, to, CallOptions.DEFAULT));
+  }
+
+  /**
+   * Form of {@link #translateDocument(String, Language, Language)} with timeouts, a deadline
+   * or hedging of its own. The deadline covers the whole document.
+   *
+   * @param text The document to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return The translated document.
+   * @throws Exception on error, caused by a {@link java.util.concurrent.TimeoutException} if the deadline passes.
+   */
+  public String translateDocument(final String text, final Language from, final Language to, final CallOptions options) throws Exception {
+    return await(translateDocumentAsync(text, from, to, options));
+  }
+
+  /**
+   * Asynchronous form of {@link #translateDocument(String, Language, Language)}.
+   *
+   * @param text The document to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @return A future for the translated document, completed exceptionally if any piece fails.
+   */
+  public CompletableFuture<String> translateDocumentAsync(final String text, final Language from, final Language to) {
+    return translateDocumentAsync(text, from, to, CallOptions.DEFAULT);
+  }
+
+  /**
+   * Asynchronous form of {@link #translateDocument(String, Language, Language, CallOptions)}.
+   *
+   * @param text The document to translate.
+   * @param from The language code to translate from.
+   * @param to The language code to translate to.
+   * @param options The settings for this call.
+   * @return A future for the translated document, completed exceptionally if any piece fails or the deadline passes.
+   */
+  public CompletableFuture<String> translateDocumentAsync(final String text, final Language from, final Language to, final CallOptions options) {
+    final CallOptions call;
+    try {
+      call = startCall(options);
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    if(!pairsLoaded()) {
+      return afterPairs(call).thenCompose(loaded -> translateDocumentLoadedAsync(text, from, to, call));
+    }
+    return translateDocumentLoadedAsync(text, from, to, call);
+  }
+
+  private CompletableFuture<String> translateDocumentLoadedAsync(final String text, final Language from, final Language to, final CallOptions call) {
+    final List<String> pieces;
+    try {
+      validateKey();
+      route(from, to);
+      pieces = DocumentSplitter.split(text, MAX_TEXT_BYTES, new Locale(from.toString()));
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    final List<CompletableFuture<String>> translations = new ArrayList<CompletableFuture<String>>(pieces.size());
+    for(String piece : pieces) {
+      translations.add(translatePiece(piece, from, to, call));
+    }
+    return CompletableFuture.allOf(translations.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+      final StringBuilder document = new StringBuilder(text.length());
+      for(CompletableFuture<String> translation : translations) {
+        document.append(translation.join());
+      }
+      return document.toString();
+    });
+  }
+
+  // Translates the piece with its leading and trailing whitespace put back around the
+  // translation, since the service trims it
+  private CompletableFuture<String> translatePiece(final String piece, final Language from, final Language to, final CallOptions call) {
+    int start = 0;
+    int end = piece.length();
+    while(start<end&&Character.isWhitespace(piece.charAt(start))) {
+      start++;
+    }
+    while(end>start&&Character.isWhitespace(piece.charAt(end - 1))) {
+      end--;
+    }
+    if(start==end) {
+      return CompletableFuture.completedFuture(piece);
+    }
+    final String leading = piece.substring(0, start);
+    final String trailing = piece.substring(end);
+    return translateAsyncCall(piece.substring(start, end), from, to, call).thenApply(translation -> leading + translation + trailing);
+  }
+
+  /**
+   * Asks the service which language pairs it offers. Pairs involving a language missing from
+   * {@link Language}, incomplete entries and pairs of a language with itself are left out. Each call makes a request; see {@link #getSupportedPairs()}
+   * for a cached copy.
+   *
+   * @return The supported pairs.
+   * @throws Exception on error.
+   */
+  public Set<LanguagePair> listPairs() throws Exception {
+    final String k = nextKey();
+    final String[][] rows;
+    try {
+      rows = retrieveObjArrStrings(listPairsUrl(k), RESPONSE_LABEL, SOURCE_LABEL, TARGET_LABEL);
+    } catch (Exception ex) {
+      recordOutcome(k, ex);
+      throw ex;
+    }
+    recordOutcome(k, null);
+    return readPairs(rows);
+  }
+
+  /**
+   * Asynchronous form of {@link #listPairs()}.
+   *
+   * @return A future for the supported pairs, completed exceptionally on error.
+   */
+  public CompletableFuture<Set<LanguagePair>> listPairsAsync() {
+    final String k;
+    final URL url;
+    try {
+      k = nextKey();
+      url = listPairsUrl(k);
+    } catch (Exception ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return retrieveObjArrStringsAsync(url, RESPONSE_LABEL, SOURCE_LABEL, TARGET_LABEL)
+        .whenComplete((rows, error) -> recordOutcome(k, error))
+        .thenApply(TranslatorClient::readPairs);
+  }
+
+  private URL listPairsUrl(final String k) throws Exception {
+    final StringBuilder url = new StringBuilder(endpoint).append(LIST_PAIRS_SERVICE);
+    if(k!=null) {
+      url.append('?').append(KEY_FIELD).append('=');
+      QueryEncoder.encode(k, url);
+    }
+    return new URL(url.toString());
+  }
+
+  // Skips entries that name no pair of two different known languages, rather than failing the list
+  private static Set<LanguagePair> readPairs(final String[][] rows) {
+    final Set<LanguagePair> pairs = new LinkedHashSet<LanguagePair>();
+    for(String[] row : rows) {
+      final Language from = Language.fromString(row[0]);
+      final Language to = Language.fromString(row[1]);
+      if(from!=null&&to!=null&&from!=to) {
+        pairs.add(LanguagePair.of(from, to));
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   * Returns the cached list of pairs the service supports, against which requests are checked,
+   * or null if pair validation is off.
+   * @return The supported pairs, or null.
+   */
+  public SupportedPairs getSupportedPairs() {
+    return supportedPairs;
+  }
+
+  /**
+   * Returns the base URL of the Apertium JSON services this client talks to.
+   * @return The endpoint.
+   */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Returns the pool of keys this client rotates through, or null if it uses a single key.
+   * @return The key pool, or null.
+   */
+  public KeyPool getKeyPool() {
+    return keyPool;
+  }
+
+  /**
+   * Sends any texts still held for micro-batching, then releases the pooled connections
+   * held by this client. A transport passed to the builder is left alone, since it may be
+   * shared with other clients, and calls already sent through it complete as usual.
+   */
+  public void shutdown() {
+    if(batcher!=null) {
+      batcher.flush();
+    }
+    if(ownedTransport!=null) {
+      ownedTransport.shutdown();
+    }
+  }
+
+  /**
+   * Returns a future that fails with a {@link TimeoutException} once the call's deadline
+   * passes, if the given future has not completed by then.
+   */
+  static <T> CompletableFuture<T> withDeadline(final CompletableFuture<T> future, final CallOptions call) {
+    if(!call.hasDeadline()) {
+      return future;
+    }
+    final CompletableFuture<T> bounded = new CompletableFuture<T>();
+    future.orTimeout(Math.max(1, call.remainingNanos()), TimeUnit.NANOSECONDS).whenComplete((value, error) -> {
+      if(error==null) {
+        bounded.complete(value);
+      } else {
+        bounded.completeExceptionally(error instanceof TimeoutException
+            ? new TimeoutException("[apertium-translator-api] Deadline exceeded") : error);
+      }
+    });
+    return bounded;
+  }
+
+  // Waits for the future, rethrowing the exception it failed with
+  private static <T> T await(final CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if(cause instanceof Exception) {
+        throw (Exception)cause;
+      }
+      if(cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw ex;
+    }
+  }
+
+  // Picks the key for the next request
+  private String nextKey() {
+    return keyPool!=null ? keyPool.acquire() : key;
+  }
+
+  private void recordOutcome(final String k, final Throwable error) {
+    if(keyPool!=null) {
+      if(error==null) {
+        keyPool.recordSuccess(k);
+      } else if(CircuitOpenException.find(error)==null) {
+        // A request the breaker turned away never used the key
+        keyPool.recordFailure(k, error);
+      }
+    }
+  }
+
+  // Builds the request for texts[batch[0..size)], or texts[0..size) if batch is null. The query
+  // is encoded into this thread's buffer; if it outgrows maxGetUrlLength the texts go in a
+  // POST body instead, encoded as the body is written.
+  private ServiceRequest wireRequest(final String k, final Language from, final Language to,
+      final String[] texts, final int[] batch, final int size) throws MalformedURLException {
+    final String prefix = paramPrefix(k, from, to);
+    final StringBuilder query = QueryEncoder.buffer();
+    query.append(translateUrl).append('?').append(prefix);
+    boolean fits = query.length()<=maxGetUrlLength;
+    for(int i = 0; fits && i < size; i++) {
+      query.append('&').append(TEXT_FIELD).append('=');
+      fits = QueryEncoder.encode(texts[batch!=null ? batch[i] : i], query, maxGetUrlLength);
+    }
+    if(fits) {
+      return ServiceRequest.to(new URL(query.toString())).withPair(LanguagePair.of(from, to)).withSize(query.length());
+    }
+    final FormBody body = new FormBody().addEncoded(prefix);
+    for(int i = 0; i < size; i++) {
+      body.add(TEXT_FIELD, texts[batch!=null ? batch[i] : i]);
+    }
+    return ServiceRequest.to(new URL(translateUrl)).withBody(body).withPair(LanguagePair.of(from, to))
+        .withSize(translateUrl.length() + (int)Math.min(Integer.MAX_VALUE, body.getContentLength()));
+  }
+
+  // Returns "key=...&langpair=from%7Cto", built the first time a key and pair are used
+  private String paramPrefix(final String k, final Language from, final Language to) {
+    String[] byPair = paramPrefixes.get(k);
+    if(byPair==null) {
+      byPair = new String[LanguagePair.indexCount()];
+      final String[] existing = paramPrefixes.putIfAbsent(k, byPair);
+      if(existing!=null) {
+        byPair = existing;
+      }
+    }
+    final LanguagePair pair = LanguagePair.of(from, to);
+    String prefix = byPair[pair.index()];
+    if(prefix==null) {
+      final StringBuilder encoded = new StringBuilder(64);
+      encoded.append(KEY_FIELD).append('=');
+      QueryEncoder.encode(k, encoded);
+      encoded.append('&').append(LANG_PAIR_FIELD).append('=');
+      encoded.append(pair.getEncoded());
+      // Racing threads compute the same String, and Strings are safe to publish this way
+      prefix = encoded.toString();
+      byPair[pair.index()] = prefix;
+    }
+    return prefix;
+  }
+
+  // Returns the pivot route to take, or null to translate directly
+  private List<LanguagePair> validateServiceState(final String text, final Language from, final Language to, final CallOptions call) throws Exception {
+    validateTextSize(text);
+    validateKey();
+    awaitPairs(call);
+    return route(from, to);
+  }
+
+  // Whether route() can answer from the supported pairs without waiting for their first load
+  private boolean pairsLoaded() {
+    return supportedPairs==null||supportedPairs.isLoaded();
+  }
+
+  // Completes once the first load of the supported pairs is over, or once the call's
+  // deadline passes; until then route() lets every pair through
+  private CompletableFuture<Void> afterPairs(final CallOptions call) {
+    return supportedPairs.whenLoaded(call.remainingNanos());
+  }
+
+  // Blocking form of afterPairs
+  private void awaitPairs(final CallOptions call) throws InterruptedException {
+    if(supportedPairs!=null) {
+      supportedPairs.awaitLoaded(call.remainingNanos());
+    }
+  }
+
+  // The keys in a pool are checked when the client is built
+  private void validateKey() {
+    if(keyPool==null) {
+      validateApiKey(key);
+    }
+  }
+
+  // Returns null if the pair can be translated directly, or the route through pivot languages
+  // if it cannot. Rejects pairs the service offers no way to translate, without a round trip.
+  // Never waits for the pairs: callers wait for their first load first, bounded by the deadline.
+  // Text to translate into its own language is sent as is, as it always was; the service echoes it.
+  private List<LanguagePair> route(final Language from, final Language to) {
+    if(supportedPairs==null||from==to) {
+      return null;
+    }
+    if(supportedPairs.isSupportedNow(LanguagePair.of(from, to))) {
+      return null;
+    }
+    final List<LanguagePair> route = pivoting ? supportedPairs.routeNow(from, to) : null;
+    if(route!=null) {
+      return route;
+    }
+    throw new RuntimeException("UNSUPPORTED_LANGUAGE_PAIR - " + from + "|" + to + " is not offered by " + endpoint);
+  }
+
+  // Returns the UTF-8 length of the text, or throws if the service would reject it
+  private static int validateTextSize(final String text) throws Exception {
+    final int byteLength = text.getBytes(ENCODING).length;
+    if(byteLength>MAX_TEXT_BYTES) {
+      throw new RuntimeException("TEXT_TOO_LARGE");
+    }
+    return byteLength;
+  }
+
+  /**
+   * Collects the settings for a {@link TranslatorClient}. Builders are not thread-safe;
+   * the clients they build are.
+   */
+  public static final class Builder {
+    private String endpoint = DEFAULT_ENDPOINT;
+    private String key;
+    private KeyPool keyPool;
+    private String referrer;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+    private long deadline;
+    private double hedgePercentile;
+    private Transport transport;
+    private TranslationCache cache;
+    private boolean coalescing;
+    private long batchDelayMillis;
+    private int batchMaxItems;
+    private Executor asyncExecutor;
+    private int maxAsyncRequests = DEFAULT_MAX_ASYNC_REQUESTS;
+    private int maxGetUrlLength = DEFAULT_MAX_GET_URL_LENGTH;
+    private RateLimiter rateLimiter;
+    private MetricsRegistry metrics;
+    private CircuitBreaker circuitBreaker;
+    private boolean validatePairs;
+    private boolean pivoting;
+    private File pairCacheFile;
+    private long pairRefreshMillis = SupportedPairs.DEFAULT_REFRESH_MILLIS;
+    private TranslatorClient previous;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the base URL of the Apertium JSON services. Defaults to {@link TranslatorClient#DEFAULT_ENDPOINT}.
+     * @param pEndpoint The endpoint, such as "http://api.apertium.org/json/".
+     * @return This builder.
+     */
+    public Builder endpoint(final String pEndpoint) {
+      if(pEndpoint==null||pEndpoint.length()==0) {
+        throw new IllegalArgumentException("endpoint must not be empty");
+      }
+      endpoint = pEndpoint.endsWith("/") ? pEndpoint : pEndpoint + "/";
+      return this;
+    }
+
+    /**
+     * Sets the API key.
+     * @param pKey The API key.
+     * @return This builder.
+     */
+    public Builder key(final String pKey) {
+      key = pKey;
+      keyPool = null;
+      return this;
+    }
+
+    /**
+     * Sets several API keys to spread requests across. Replaces any key or key pool set earlier.
+     * @param pKeys The API keys.
+     * @return This builder.
+     */
+    public Builder keys(final String... pKeys) {
+      return keyPool(new KeyPool(pKeys));
+    }
+
+    /**
+     * Sets the pool of API keys to spread requests across, for example one with custom
+     * cooldowns or one shared with other clients. Replaces any key set earlier.
+     * @param pKeyPool The key pool.
+     * @return This builder.
+     */
+    public Builder keyPool(final KeyPool pKeyPool) {
+      keyPool = pKeyPool;
+      key = null;
+      return this;
+    }
+
+    /**
+     * Sets the HTTP referrer field.
+     * @param pReferrer The referrer, or null to send none.
+     * @return This builder.
+     */
+    public Builder referrer(final String pReferrer) {
+      referrer = pReferrer;
+      return this;
+    }
+
+    /**
+     * Sets how long to wait for a connection to be established. Defaults to
+     * {@link ApertiumTranslatorAPI#DEFAULT_CONNECT_TIMEOUT}.
+     * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+     * @return This builder.
+     */
+    public Builder connectTimeout(final int millis) {
+      connectTimeout = millis;
+      return this;
+    }
+
+    /**
+     * Sets how long to wait for the server to respond once connected. Defaults to
+     * {@link ApertiumTranslatorAPI#DEFAULT_READ_TIMEOUT}.
+     * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+     * @return This builder.
+     */
+    public Builder readTimeout(final int millis) {
+      readTimeout = millis;
+      return this;
+    }
+
+    /**
+     * Sets how long each call may take in all, counting every request it makes, such as the
+     * batches of an array or the hops of a pivot translation. A call still running when the
+     * deadline passes fails with an exception caused by a {@link java.util.concurrent.TimeoutException}.
+     * Each request's timeouts are cut to the time left. {@link CallOptions#withDeadlineAfter(long)}
+     * overrides it for a single call.
+     * @param millis The deadline in milliseconds, or 0 for none, which is the default.
+     * @return This builder.
+     */
+    public Builder deadline(final long millis) {
+      if(millis<0) {
+        throw new IllegalArgumentException("millis must not be negative");
+      }
+      deadline = millis;
+      return this;
+    }
+
+    /**
+     * Turns hedged requests on or off. When on, a request still unanswered after the given
+     * percentile of the client's recent latency is sent a second time, and whichever response
+     * arrives first is used. This trims the slowest responses at the cost of a few more
+     * requests: about 5% more at the 95th percentile. Hedging starts once the client has seen
+     * a few dozen responses. Blocking calls are sent asynchronously while hedging is on, so
+     * that the second request needs no thread of its own. A blocking transport, such as
+     * {@link PooledTransport}, still holds one of its threads per request in flight. It is off by default.
+     * @param percentile The percentile, between 0 and 1 (such as 0.95), or 0 to turn hedging off.
+     * @return This builder.
+     */
+    public Builder hedging(final double percentile) {
+      if(percentile!=0&&!(percentile>0&&percentile<1)) {
+        throw new IllegalArgumentException("percentile must be between 0 and 1");
+      }
+      hedgePercentile = percentile;
+      return this;
+    }
+
+    /**
+     * Sets the transport used to send requests. By default each client gets its own
+     * {@link PooledTransport}; pass an {@link HttpClientTransport} to use HTTP/2.
+     * @param pTransport The transport.
+     * @return This builder.
+     */
+    public Builder transport(final Transport pTransport) {
+      transport = pTransport;
+      return this;
+    }
+
+    /**
+     * Sets the rate limiter that paces this client's requests. Pass the same limiter to
+     * several clients to keep them within one quota together.
+     * @param pRateLimiter The rate limiter, or null to send requests as they come.
+     * @return This builder.
+     */
+    public Builder rateLimiter(final RateLimiter pRateLimiter) {
+      rateLimiter = pRateLimiter;
+      return this;
+    }
+
+    /**
+     * Sets the registry that receives a report of every request the client sends: its
+     * language pair, latency, sizes, status code and any error. Use an
+     * {@link com.robtheis.aptr.metrics.InMemoryMetricsRegistry} to keep the numbers and
+     * expose them through JMX, or plug in your own.
+     * @param pMetrics The registry, or null to report nothing.
+     * @return This builder.
+     */
+    public Builder metrics(final MetricsRegistry pMetrics) {
+      metrics = pMetrics;
+      return this;
+    }
+
+    /**
+     * Sets the circuit breaker the client's requests go through. While the endpoint, or
+     * the language pair on it, keeps failing, calls fail at once with an exception caused
+     * by a {@link CircuitOpenException} instead of waiting on the service.
+     * @param pCircuitBreaker The breaker, or null to always send requests.
+     * @return This builder.
+     */
+    public Builder circuitBreaker(final CircuitBreaker pCircuitBreaker) {
+      circuitBreaker = pCircuitBreaker;
+      return this;
+    }
+
+    /**
+     * Sets the cache consulted before each translation request.
+     * @param pCache The cache, or null for none.
+     * @return This builder.
+     */
+    public Builder cache(final TranslationCache pCache) {
+      cache = pCache;
+      return this;
+    }
+
+    /**
+     * Sets whether concurrent calls to translate the same text with the same language
+     * pair share a single request. Off by default.
+     * @param enabled Whether to coalesce identical concurrent requests.
+     * @return This builder.
+     */
+    public Builder coalescing(final boolean enabled) {
+      coalescing = enabled;
+      return this;
+    }
+
+    /**
+     * Turns micro-batching on or off. When on, single-text translations for the same language
+     * pair are held for up to maxDelayMillis and sent together as one array request, as soon
+     * as maxItems of them are waiting or the group reaches the service's size limit. Each
+     * caller still gets its own translation. This trades a few milliseconds of latency for
+     * far fewer requests when many threads translate short texts at once. It is off by default.
+     * @param maxDelayMillis The longest a text waits for others to join it, or 0 to turn batching off.
+     * @param maxItems The most texts in one batch; at least 2.
+     * @return This builder.
+     */
+    public Builder microBatching(final long maxDelayMillis, final int maxItems) {
+      if(maxDelayMillis<0||(maxDelayMillis>0&&maxItems<2)) {
+        throw new IllegalArgumentException("maxDelayMillis must not be negative and maxItems must be at least 2");
+      }
+      batchDelayMillis = maxDelayMillis;
+      batchMaxItems = maxItems;
+      return this;
+    }
+
+    /**
+     * Turns pair validation on or off. When on, the client fetches the list of pairs the
+     * service supports (once, then again after each refresh interval) and rejects requests
+     * for any other pair before they go on the wire. It is off by default.
+     * @param enabled Whether to check pairs against the service's list.
+     * @return This builder.
+     */
+    public Builder validatePairs(final boolean enabled) {
+      validatePairs = enabled;
+      return this;
+    }
+
+    /**
+     * Turns pivot translation on or off. When on, a pair the service does not support is
+     * translated through one or more pivot languages, along the shortest route over the pairs
+     * it does support (see {@link PairGraph}). This fetches the list of supported pairs as
+     * {@link #validatePairs(boolean)} does, and pairs with no route are rejected. It is off
+     * by default.
+     * @param enabled Whether to translate through pivot languages.
+     * @return This builder.
+     */
+    public Builder pivoting(final boolean enabled) {
+      pivoting = enabled;
+      return this;
+    }
+
+    /**
+     * Sets a file in which to keep the list of supported pairs between runs.
+     * @param pFile The file, or null to keep the list in memory only.
+     * @return This builder.
+     */
+    public Builder pairCacheFile(final File pFile) {
+      pairCacheFile = pFile;
+      return this;
+    }
+
+    /**
+     * Sets how old the list of supported pairs may get before it is fetched again.
+     * Defaults to {@link SupportedPairs#DEFAULT_REFRESH_MILLIS}.
+     * @param millis The refresh interval in milliseconds.
+     * @return This builder.
+     */
+    public Builder pairRefreshMillis(final long millis) {
+      if(millis<=0) {
+        throw new IllegalArgumentException("millis must be positive");
+      }
+      pairRefreshMillis = millis;
+      return this;
+    }
+
+    /**
+     * Sets the executor that asynchronous requests run on: blocking sends, for a transport
+     * such as {@link PooledTransport}, and completion handlers. By default both are left to
+     * the transport's own threads.
+     * @param pExecutor The executor, or null for the transport's threads.
+     * @return This builder.
+     */
+    public Builder asyncExecutor(final Executor pExecutor) {
+      asyncExecutor = pExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of asynchronous requests on the wire at once.
+     * @param pMaxRequests The in-flight limit.
+     * @return This builder.
+     */
+    public Builder maxAsyncRequests(final int pMaxRequests) {
+      maxAsyncRequests = pMaxRequests;
+      return this;
+    }
+
+    /**
+     * Sets the longest URL to send as a GET. Requests that would need a longer URL are sent as
+     * a POST, with the parameters streamed in the request body. Defaults to
+     * {@link TranslatorClient#DEFAULT_MAX_GET_URL_LENGTH}; pass 0 to always POST.
+     * @param length The URL length limit, in characters.
+     * @return This builder.
+     */
+    public Builder maxGetUrlLength(final int length) {
+      if(length<0) {
+        throw new IllegalArgumentException("length must not be negative");
+      }
+      maxGetUrlLength = length;
+      return this;
+    }
+
+    /**
+     * Builds the client as a replacement for another, such as one built before a setting
+     * changed. The new client takes over the list of supported pairs and the recent
+     * latencies the old one gathered, so neither has to be fetched or learned again.
+     * The old client is left running; shut it down once the new one is in use.
+     * @param pPrevious The client being replaced, or null.
+     * @return This builder.
+     */
+    public Builder replacing(final TranslatorClient pPrevious) {
+      previous = pPrevious;
+      return this;
+    }
+
+    // The request settings handed to ApertiumTranslatorAPI
+    private ClientSettings settings(final Transport pTransport) {
+      return ClientSettings.builder()
+          .transport(pTransport)
+          .referrer(referrer)
+          .connectTimeout(connectTimeout)
+          .readTimeout(readTimeout)
+          .deadline(deadline)
+          .hedging(hedgePercentile)
+          .asyncExecutor(asyncExecutor)
+          .maxAsyncRequests(maxAsyncRequests)
+          .rateLimiter(rateLimiter)
+          .metrics(metrics)
+          .circuitBreaker(circuitBreaker)
+          .latenciesOf(previous)
+          .build();
+    }
+
+    /**
+     * Creates the client.
+     * @return A new client.
+     */
+    public TranslatorClient build() {
+      if(keyPool!=null) {
+        for(String k : keyPool.getStats().keySet()) {
+          validateApiKey(k);
+        }
+      }
+      if(transport!=null) {
+        return new TranslatorClient(this, transport, false);
+      }
+      return new TranslatorClient(this, new PooledTransport(), true);
+    }
+  }
+}
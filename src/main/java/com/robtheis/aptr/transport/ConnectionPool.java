@@ -0,0 +1,317 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of persistent connections, keyed by route. Idle connections are
+ * handed out most-recently-used first and are closed once they have been idle
+ * longer than the pool's idle timeout (or the server's keep-alive timeout).
+ */
+final class ConnectionPool {
+
+  /**
+   * Opens a new connection for a route. Called without the pool lock held.
+   */
+  interface Connector {
+    PooledConnection connect() throws IOException;
+  }
+
+  private static final class RoutePool {
+    // Most recently used at the head
+    final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+    int allocated;
+    int pending;
+    long created;
+    long reused;
+    long evicted;
+  }
+
+  private final int maxPerRoute;
+  private final int maxTotal;
+  private final long idleTimeoutNanos;
+  private final long maxWaitNanos;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private final Map<String, RoutePool> routes = new HashMap<String, RoutePool>();
+  private int allocated;
+  private long nextSweepNanos;
+  private boolean shutdown;
+
+  ConnectionPool(final int pMaxPerRoute, final int pMaxTotal, final long idleTimeoutMillis, final long maxWaitMillis) {
+    if (pMaxPerRoute < 1 || pMaxTotal < pMaxPerRoute) {
+      throw new IllegalArgumentException("maxPerRoute must be at least 1 and no greater than maxTotal");
+    }
+    maxPerRoute = pMaxPerRoute;
+    maxTotal = pMaxTotal;
+    idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+  }
+
+  /**
+   * Leases a connection for the route, reusing an idle one when possible. Blocks
+   * while the route or the pool as a whole is at its limit, for no longer than the
+   * pool's maximum wait or the given timeout, whichever is shorter.
+   * @param timeoutMillis The request's connect timeout, or 0 for none.
+   * @throws SocketTimeoutException if no connection came free in time.
+   */
+  PooledConnection lease(final String route, final Connector connector, final int timeoutMillis) throws IOException {
+    final List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+    final RoutePool rp;
+    final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    // 0 means no limit, for either
+    final long maxWait = maxWaitNanos == 0 ? timeoutNanos : timeoutNanos == 0 ? maxWaitNanos : Math.min(maxWaitNanos, timeoutNanos);
+    lock.lock();
+    try {
+      rp = routeFor(route);
+      long remaining = maxWait;
+      while (true) {
+        if (shutdown) {
+          throw new IOException("Connection pool has been shut down");
+        }
+        final long now = System.nanoTime();
+        evictExpired(rp, now, toClose);
+        if (now - nextSweepNanos >= 0) {
+          for (RoutePool other : routes.values()) {
+            evictExpired(other, now, toClose);
+          }
+          nextSweepNanos = now + idleTimeoutNanos;
+        }
+        final PooledConnection idle = rp.idle.pollFirst();
+        if (idle != null) {
+          rp.reused++;
+          return idle;
+        }
+        if (rp.allocated < maxPerRoute) {
+          if (allocated >= maxTotal) {
+            evictOneIdle(toClose);
+          }
+          if (allocated < maxTotal) {
+            rp.allocated++;
+            allocated++;
+            break;
+          }
+        }
+        if (maxWait > 0 && remaining <= 0) {
+          throw new SocketTimeoutException("Timed out waiting for a connection to " + route);
+        }
+        rp.pending++;
+        try {
+          if (maxWait > 0) {
+            remaining = released.awaitNanos(remaining);
+          } else {
+            released.await();
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for a connection to " + route);
+        } finally {
+          rp.pending--;
+        }
+      }
+    } finally {
+      lock.unlock();
+      closeAll(toClose);
+    }
+
+    // A slot is reserved for us; open the socket outside the lock
+    try {
+      final PooledConnection conn = connector.connect();
+      lock.lock();
+      try {
+        rp.created++;
+      } finally {
+        lock.unlock();
+      }
+      return conn;
+    } catch (IOException ex) {
+      freeSlot(rp);
+      throw ex;
+    } catch (RuntimeException ex) {
+      freeSlot(rp);
+      throw ex;
+    }
+  }
+
+  /**
+   * Returns a leased connection. Connections that cannot be reused are closed.
+   */
+  void release(final PooledConnection conn, final boolean reusable) {
+    boolean close = true;
+    lock.lock();
+    try {
+      final RoutePool rp = routes.get(conn.route);
+      if (reusable && !shutdown && !conn.socket.isClosed()) {
+        conn.idleSinceNanos = System.nanoTime();
+        rp.idle.addFirst(conn);
+        close = false;
+      } else {
+        rp.allocated--;
+        allocated--;
+      }
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (close) {
+      conn.close();
+    }
+  }
+
+  /**
+   * Closes idle connections that have outlived the idle timeout.
+   */
+  void closeExpired() {
+    final List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+    lock.lock();
+    try {
+      final long now = System.nanoTime();
+      for (RoutePool rp : routes.values()) {
+        evictExpired(rp, now, toClose);
+      }
+    } finally {
+      lock.unlock();
+    }
+    closeAll(toClose);
+  }
+
+  /**
+   * Closes all idle connections and fails any further leases. Connections that
+   * are in use are closed when they are released.
+   */
+  void shutdown() {
+    final List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+    lock.lock();
+    try {
+      shutdown = true;
+      for (RoutePool rp : routes.values()) {
+        toClose.addAll(rp.idle);
+        rp.allocated -= rp.idle.size();
+        allocated -= rp.idle.size();
+        rp.idle.clear();
+      }
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    closeAll(toClose);
+  }
+
+  PoolStats getStats() {
+    lock.lock();
+    try {
+      int leased = 0, available = 0, pending = 0;
+      long created = 0, reused = 0, evicted = 0;
+      for (RoutePool rp : routes.values()) {
+        leased += rp.allocated - rp.idle.size();
+        available += rp.idle.size();
+        pending += rp.pending;
+        created += rp.created;
+        reused += rp.reused;
+        evicted += rp.evicted;
+      }
+      return new PoolStats(leased, available, pending, maxTotal, created, reused, evicted);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  Map<String, PoolStats> getRouteStats() {
+    lock.lock();
+    try {
+      final Map<String, PoolStats> stats = new LinkedHashMap<String, PoolStats>();
+      for (Map.Entry<String, RoutePool> entry : routes.entrySet()) {
+        final RoutePool rp = entry.getValue();
+        stats.put(entry.getKey(), new PoolStats(rp.allocated - rp.idle.size(), rp.idle.size(),
+            rp.pending, maxPerRoute, rp.created, rp.reused, rp.evicted));
+      }
+      return stats;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Must hold lock
+  private RoutePool routeFor(final String route) {
+    RoutePool rp = routes.get(route);
+    if (rp == null) {
+      rp = new RoutePool();
+      routes.put(route, rp);
+    }
+    return rp;
+  }
+
+  // Must hold lock. Oldest connections sit at the tail of the idle deque.
+  private void evictExpired(final RoutePool rp, final long now, final List<PooledConnection> toClose) {
+    PooledConnection conn;
+    while ((conn = rp.idle.peekLast()) != null && conn.isExpired(now, idleTimeoutNanos)) {
+      rp.idle.pollLast();
+      rp.allocated--;
+      rp.evicted++;
+      allocated--;
+      toClose.add(conn);
+    }
+  }
+
+  // Must hold lock. Frees a slot held by another route's idle connection.
+  private void evictOneIdle(final List<PooledConnection> toClose) {
+    final Iterator<RoutePool> it = routes.values().iterator();
+    while (it.hasNext()) {
+      final RoutePool rp = it.next();
+      final PooledConnection conn = rp.idle.pollLast();
+      if (conn != null) {
+        rp.allocated--;
+        rp.evicted++;
+        allocated--;
+        toClose.add(conn);
+        return;
+      }
+    }
+  }
+
+  private void freeSlot(final RoutePool rp) {
+    lock.lock();
+    try {
+      rp.allocated--;
+      allocated--;
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static void closeAll(final List<PooledConnection> conns) {
+    for (PooledConnection conn : conns) {
+      conn.close();
+    }
+  }
+}
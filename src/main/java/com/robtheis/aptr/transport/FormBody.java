@@ -0,0 +1,177 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An application/x-www-form-urlencoded body. Values are encoded as UTF-8 while the body
+ * is written, straight from the caller's strings, so a large text is never copied into
+ * an encoded String first. The encoding matches {@link java.net.URLEncoder}, so the same
+ * form can also serve as a query string.
+ */
+public final class FormBody implements RequestBody {
+  public static final String CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+
+  private static final int BUFFER_SIZE = 1024;
+  // Chars of a value encoded at a time
+  private static final int CHUNK_SIZE = 256;
+
+  // A null name marks a value that was added already encoded
+  private final List<String> names = new ArrayList<String>();
+  private final List<CharSequence> values = new ArrayList<CharSequence>();
+  private long contentLength = -1;
+
+  /**
+   * Adds a field. Fields are written in the order they were added, and a name may repeat.
+   * @param name The field name.
+   * @param value The field value.
+   * @return This body.
+   */
+  public FormBody add(final String name, final CharSequence value) {
+    if (name == null || value == null) {
+      throw new IllegalArgumentException("name and value must not be null");
+    }
+    names.add(name);
+    values.add(value);
+    contentLength = -1;
+    return this;
+  }
+
+  /**
+   * Adds fields that are already encoded, such as "key=abc&amp;langpair=es%7Cen", so that
+   * constant parameters can be encoded once and reused across requests.
+   * @param encoded The encoded fields, without a leading or trailing '&amp;'.
+   * @return This body.
+   */
+  public FormBody addEncoded(final String encoded) {
+    if (encoded == null) {
+      throw new IllegalArgumentException("encoded must not be null");
+    }
+    names.add(null);
+    values.add(encoded);
+    contentLength = -1;
+    return this;
+  }
+
+  @Override
+  public String getContentType() {
+    return CONTENT_TYPE;
+  }
+
+  @Override
+  public long getContentLength() {
+    if (contentLength < 0) {
+      long length = Math.max(0, names.size() - 1);
+      for (int i = 0; i < names.size(); i++) {
+        if (names.get(i) == null) {
+          length += values.get(i).length();
+        } else {
+          length += QueryEncoder.encodedLength(names.get(i)) + 1 + QueryEncoder.encodedLength(values.get(i));
+        }
+      }
+      contentLength = length;
+    }
+    return contentLength;
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    final Encoder encoder = new Encoder(out);
+    for (int i = 0; i < names.size(); i++) {
+      if (i > 0) {
+        encoder.write('&');
+      }
+      if (names.get(i) == null) {
+        encoder.writeAscii(values.get(i));
+        continue;
+      }
+      encoder.encode(names.get(i));
+      encoder.write('=');
+      encoder.encode(values.get(i));
+    }
+    encoder.flush();
+  }
+
+  /**
+   * Returns the encoded form, for use as a query string.
+   * @return The encoded fields, such as "key=abc&amp;q=Hola%2C+mundo".
+   */
+  @Override
+  public String toString() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, getContentLength()));
+    try {
+      writeTo(out);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+    return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+  // Percent-encodes a value a chunk at a time through QueryEncoder, into a small buffer that
+  // is handed to the stream as it fills
+  private static final class Encoder {
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final StringBuilder chunk = new StringBuilder(CHUNK_SIZE * 3);
+    private int count;
+
+    Encoder(final OutputStream pOut) {
+      out = pOut;
+    }
+
+    void encode(final CharSequence s) throws IOException {
+      for (int start = 0; start < s.length(); ) {
+        int end = Math.min(s.length(), start + CHUNK_SIZE);
+        if (end < s.length() && Character.isHighSurrogate(s.charAt(end - 1))) {
+          // Keep the pair together in the next chunk
+          end--;
+        }
+        chunk.setLength(0);
+        QueryEncoder.encode(s, start, end, chunk);
+        writeAscii(chunk);
+        start = end;
+      }
+    }
+
+    void writeAscii(final CharSequence s) throws IOException {
+      for (int i = 0; i < s.length(); i++) {
+        write(s.charAt(i));
+      }
+    }
+
+    void write(final int b) throws IOException {
+      if (count == buffer.length) {
+        flush();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    void flush() throws IOException {
+      if (count > 0) {
+        out.write(buffer, 0, count);
+        count = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Transport on the JDK's {@link HttpClient}. Where the server speaks HTTP/2, many concurrent
+ * requests share one multiplexed connection; elsewhere the client falls back to HTTP/1.1.
+ * Asynchronous requests never tie up a thread while on the wire. It is not the default:
+ * pass it to {@code .transport(...)} or {@code Translate.setTransport(...)} for endpoints
+ * that speak HTTP/2.
+ *
+ * All requests share one HTTP client, whose connect timeout is fixed when the transport is
+ * created: a request's own connect timeout does not apply to this transport. A request's
+ * read timeout bounds its whole exchange instead, from sending the request to the last byte
+ * of the body, so a server that trickles its response cannot hold a call past its read
+ * timeout or its deadline. Bodies are read in full before a response is returned.
+ *
+ * Given a fallback transport, blocking requests to a server that answered in HTTP/1.1 go
+ * through the fallback instead, which is what {@link PooledTransport} does best.
+ * Asynchronous requests stay on the HTTP client.
+ */
+public final class HttpClientTransport implements Transport {
+  /** The connect timeout of the HTTP client, in milliseconds, unless one is given. */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+  // Headers the HTTP client refuses to take from callers, plus Content-Type, which is set below
+  private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+      "connection", "content-length", "content-type", "expect", "host", "upgrade"));
+
+  private final HttpClient client;
+  private final Transport fallback;
+  // Origins ("http://host:port") that answered in HTTP/1.1
+  private final Set<String> http1Origins = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates a transport that prefers HTTP/2 and sends everything through the HTTP client.
+   */
+  public HttpClientTransport() {
+    this(HttpClient.Version.HTTP_2, DEFAULT_CONNECT_TIMEOUT, null, null);
+  }
+
+  /**
+   * Creates a transport with the default connect timeout.
+   * @param pVersion The preferred HTTP version; HTTP/2 falls back to HTTP/1.1 where the server needs it.
+   * @param pExecutor The executor for the HTTP client's own tasks, or null for its default.
+   * @param pFallback The transport for blocking requests to HTTP/1.1 servers, or null to
+   *                  send everything through the HTTP client. It is shut down with this one.
+   */
+  public HttpClientTransport(final HttpClient.Version pVersion, final Executor pExecutor, final Transport pFallback) {
+    this(pVersion, DEFAULT_CONNECT_TIMEOUT, pExecutor, pFallback);
+  }
+
+  /**
+   * Creates a transport.
+   * @param pVersion The preferred HTTP version; HTTP/2 falls back to HTTP/1.1 where the server needs it.
+   * @param pConnectTimeout The connect timeout in milliseconds, or 0 for none.
+   * @param pExecutor The executor for the HTTP client's own tasks, or null for its default.
+   * @param pFallback The transport for blocking requests to HTTP/1.1 servers, or null to
+   *                  send everything through the HTTP client. It is shut down with this one.
+   */
+  public HttpClientTransport(final HttpClient.Version pVersion, final int pConnectTimeout, final Executor pExecutor,
+                             final Transport pFallback) {
+    if (pVersion == null) {
+      throw new IllegalArgumentException("version must not be null");
+    }
+    if (pConnectTimeout < 0) {
+      throw new IllegalArgumentException("connect timeout must not be negative");
+    }
+    final HttpClient.Builder builder = HttpClient.newBuilder().version(pVersion);
+    if (pConnectTimeout > 0) {
+      builder.connectTimeout(Duration.ofMillis(pConnectTimeout));
+    }
+    if (pExecutor != null) {
+      builder.executor(pExecutor);
+    }
+    client = builder.build();
+    fallback = pFallback;
+  }
+
+  @Override
+  public HttpResponse execute(final HttpRequest request) throws IOException {
+    final String origin = origin(request.getUrl());
+    if (fallback != null && http1Origins.contains(origin)) {
+      return fallback.execute(request);
+    }
+    final CompletableFuture<HttpResponse> response = send(request, toClientRequest(request), origin);
+    try {
+      return response.get();
+    } catch (InterruptedException ex) {
+      response.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for " + request.getUrl());
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException("request to " + request.getUrl() + " failed", cause);
+    }
+  }
+
+  /**
+   * Sends the request without blocking. The body is received in full before the future
+   * completes, so it can be read without blocking.
+   * @param request The request to send.
+   * @param pExecutor Unused; the HTTP client runs on its own executor.
+   * @return A future for the response.
+   */
+  @Override
+  public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor pExecutor) {
+    final java.net.http.HttpRequest clientRequest;
+    try {
+      clientRequest = toClientRequest(request);
+    } catch (IOException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    return send(request, clientRequest, origin(request.getUrl()));
+  }
+
+  // Sends the request and reads the whole body, failing with an HttpTimeoutException if that
+  // takes longer than the read timeout
+  private CompletableFuture<HttpResponse> send(final HttpRequest request, final java.net.http.HttpRequest clientRequest,
+                                               final String origin) {
+    final CompletableFuture<java.net.http.HttpResponse<byte[]>> sent =
+        client.sendAsync(clientRequest, java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+    final CompletableFuture<HttpResponse> response = sent.thenApply(received -> {
+      recordVersion(origin, received);
+      return new ClientResponse(received.statusCode(), received.headers(), new ByteArrayInputStream(received.body()));
+    });
+    if (request.getReadTimeout() <= 0) {
+      return response;
+    }
+    final CompletableFuture<HttpResponse> bounded = new CompletableFuture<HttpResponse>();
+    response.orTimeout(request.getReadTimeout(), TimeUnit.MILLISECONDS).whenComplete((received, error) -> {
+      if (error == null) {
+        bounded.complete(received);
+      } else if (error instanceof TimeoutException) {
+        // Abandons the exchange, where the JDK supports it
+        sent.cancel(true);
+        bounded.completeExceptionally(new HttpTimeoutException("no complete response from " + request.getUrl()
+            + " within " + request.getReadTimeout() + " ms"));
+      } else {
+        bounded.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+            ? error.getCause() : error);
+      }
+    });
+    return bounded;
+  }
+
+  /**
+   * Shuts down the fallback transport, if any. The HTTP client's connections close once idle.
+   */
+  @Override
+  public void shutdown() {
+    if (fallback != null) {
+      fallback.shutdown();
+    }
+  }
+
+  private java.net.http.HttpRequest toClientRequest(final HttpRequest request) throws IOException {
+    final java.net.http.HttpRequest.Builder builder;
+    try {
+      builder = java.net.http.HttpRequest.newBuilder(request.getUrl().toURI());
+    } catch (URISyntaxException ex) {
+      throw new IOException("invalid URL " + request.getUrl(), ex);
+    }
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) {
+        builder.header(header.getKey(), header.getValue());
+      }
+    }
+    if (request.getReadTimeout() > 0) {
+      builder.timeout(Duration.ofMillis(request.getReadTimeout()));
+    }
+    final RequestBody body = request.getBody();
+    if (body != null) {
+      // The HTTP client takes the body as bytes, so encode it once up front
+      final ByteArrayOutputStream encoded = new ByteArrayOutputStream((int) Math.max(0, body.getContentLength()));
+      body.writeTo(encoded);
+      builder.header("Content-Type", body.getContentType());
+      builder.method(request.getMethod(), java.net.http.HttpRequest.BodyPublishers.ofByteArray(encoded.toByteArray()));
+    } else {
+      final String contentType = request.getHeaders().get("Content-Type");
+      if (contentType != null) {
+        builder.header("Content-Type", contentType);
+      }
+      builder.method(request.getMethod(), java.net.http.HttpRequest.BodyPublishers.noBody());
+    }
+    return builder.build();
+  }
+
+  private void recordVersion(final String origin, final java.net.http.HttpResponse<?> response) {
+    if (fallback != null && response.version() == HttpClient.Version.HTTP_1_1) {
+      http1Origins.add(origin);
+    }
+  }
+
+  private static String origin(final URL url) {
+    return url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+  }
+
+  private static final class ClientResponse implements HttpResponse {
+    private final int statusCode;
+    private final java.net.http.HttpHeaders headers;
+    private final InputStream body;
+
+    ClientResponse(final int pStatusCode, final java.net.http.HttpHeaders pHeaders, final InputStream pBody) {
+      statusCode = pStatusCode;
+      headers = pHeaders;
+      body = pBody;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    @Override
+    public String getHeader(final String name) {
+      return headers.firstValue(name).orElse(null);
+    }
+
+    @Override
+    public InputStream getBody() {
+      return body;
+    }
+
+    @Override
+    public void close() throws IOException {
+      body.close();
+    }
+  }
+}
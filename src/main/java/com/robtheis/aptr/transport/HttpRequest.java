@@ -0,0 +1,131 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An HTTP request to be sent through a {@link Transport}.
+ */
+public final class HttpRequest {
+  private final String method;
+  private final URL url;
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+  private int connectTimeout;
+  private int readTimeout;
+  private RequestBody body;
+  private boolean idempotent;
+
+  /**
+   * Creates a request.
+   * @param pMethod The HTTP method, such as "GET".
+   * @param pUrl The URL to request.
+   */
+  public HttpRequest(final String pMethod, final URL pUrl) {
+    if (pMethod == null || pUrl == null) {
+      throw new IllegalArgumentException("method and url are required");
+    }
+    method = pMethod;
+    url = pUrl;
+    idempotent = "GET".equals(pMethod) || "HEAD".equals(pMethod);
+  }
+
+  /**
+   * Sets a request header, replacing any previous value.
+   * @param name The header name.
+   * @param value The header value.
+   */
+  public void setHeader(final String name, final String value) {
+    headers.put(name, value);
+  }
+
+  /**
+   * Sets how long to wait for a connection to be established.
+   * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+   */
+  public void setConnectTimeout(final int millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("timeout must not be negative");
+    }
+    connectTimeout = millis;
+  }
+
+  /**
+   * Sets how long to wait for data from the server once connected.
+   * @param millis The timeout in milliseconds, or 0 to wait indefinitely.
+   */
+  public void setReadTimeout(final int millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("timeout must not be negative");
+    }
+    readTimeout = millis;
+  }
+
+  /**
+   * Sets the request body, sent with a Content-Length header.
+   * @param pBody The body, or null for none.
+   */
+  public void setBody(final RequestBody pBody) {
+    body = pBody;
+  }
+
+  /**
+   * Marks whether the request can safely be sent twice. Transports may resend an
+   * idempotent request when a reused connection turns out to have been closed.
+   * GET and HEAD requests are idempotent by default.
+   * @param pIdempotent Whether the request is idempotent.
+   */
+  public void setIdempotent(final boolean pIdempotent) {
+    idempotent = pIdempotent;
+  }
+
+  public RequestBody getBody() {
+    return body;
+  }
+
+  public boolean isIdempotent() {
+    return idempotent;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public URL getUrl() {
+    return url;
+  }
+
+  /**
+   * Returns the request headers in insertion order.
+   * @return An unmodifiable view of the headers.
+   */
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The response to an {@link HttpRequest}. The body must be read (or the response
+ * closed) before the underlying connection can be reused.
+ */
+public interface HttpResponse extends Closeable {
+
+  /**
+   * Returns the HTTP status code, such as 200.
+   * @return The status code.
+   */
+  int getStatusCode();
+
+  /**
+   * Returns the value of the given response header, or null if it was not sent.
+   * Header names are matched case-insensitively.
+   * @param name The header name.
+   * @return The header value, or null.
+   */
+  String getHeader(String name);
+
+  /**
+   * Returns the response body. Closing the stream has the same effect as closing
+   * the response.
+   * @return The body stream, never null.
+   * @throws IOException on error.
+   */
+  InputStream getBody() throws IOException;
+
+  /**
+   * Returns how long the request waited for a connection, counting the time to open one
+   * if none could be reused. This is 0, or close to it, for a request sent over an idle
+   * keep-alive connection.
+   * @return The time in nanoseconds, or -1 if the transport cannot tell.
+   */
+  default long getConnectNanos() {
+    return -1;
+  }
+
+  /**
+   * Releases the connection behind this response.
+   */
+  @Override
+  void close() throws IOException;
+}
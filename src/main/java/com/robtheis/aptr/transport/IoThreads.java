@@ -0,0 +1,66 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pools of daemon threads for blocking I/O, so that requests sent asynchronously
+ * through a blocking transport never tie up the common fork/join pool. Threads are started
+ * as requests need them and let go after a minute without work; requests beyond the bound
+ * wait in a queue.
+ */
+final class IoThreads {
+  // For transports with no threads of their own
+  static final int SHARED_THREADS = 64;
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private IoThreads() {
+  }
+
+  // Created on first use, since most transports never need it
+  private static final class Shared {
+    static final ExecutorService EXECUTOR = create("aptr-io-", SHARED_THREADS);
+  }
+
+  /**
+   * Returns the pool shared by transports that have none of their own.
+   */
+  static ExecutorService shared() {
+    return Shared.EXECUTOR;
+  }
+
+  /**
+   * Creates a pool of at most the given number of threads.
+   */
+  static ExecutorService create(final String name, final int threads) {
+    final AtomicLong count = new AtomicLong();
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), task -> {
+          final Thread thread = new Thread(task, name + count.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
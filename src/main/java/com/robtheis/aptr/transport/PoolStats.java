@@ -0,0 +1,107 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+/**
+ * A point-in-time snapshot of connection pool usage, either for the whole pool
+ * or for a single route (scheme, host and port).
+ */
+public final class PoolStats {
+  private final int leased;
+  private final int available;
+  private final int pending;
+  private final int max;
+  private final long created;
+  private final long reused;
+  private final long evicted;
+
+  PoolStats(final int leased, final int available, final int pending, final int max,
+      final long created, final long reused, final long evicted) {
+    this.leased = leased;
+    this.available = available;
+    this.pending = pending;
+    this.max = max;
+    this.created = created;
+    this.reused = reused;
+    this.evicted = evicted;
+  }
+
+  /**
+   * Returns the number of connections currently in use by a request.
+   * @return The leased connection count.
+   */
+  public int getLeased() {
+    return leased;
+  }
+
+  /**
+   * Returns the number of idle connections ready to be reused.
+   * @return The idle connection count.
+   */
+  public int getAvailable() {
+    return available;
+  }
+
+  /**
+   * Returns the number of requests waiting for a connection to become free.
+   * @return The pending request count.
+   */
+  public int getPending() {
+    return pending;
+  }
+
+  /**
+   * Returns the maximum number of connections allowed.
+   * @return The connection limit.
+   */
+  public int getMax() {
+    return max;
+  }
+
+  /**
+   * Returns the number of connections opened since the pool was created.
+   * @return The number of new connections.
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  /**
+   * Returns the number of times an idle connection was handed out again.
+   * @return The number of reuses.
+   */
+  public long getReused() {
+    return reused;
+  }
+
+  /**
+   * Returns the number of idle connections closed because they expired or
+   * made room for another route.
+   * @return The number of evictions.
+   */
+  public long getEvicted() {
+    return evicted;
+  }
+
+  @Override
+  public String toString() {
+    return "[leased: " + leased + "; pending: " + pending + "; available: " + available
+        + "; max: " + max + "; created: " + created + "; reused: " + reused
+        + "; evicted: " + evicted + "]";
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A persistent socket owned by a {@link ConnectionPool}.
+ */
+final class PooledConnection {
+  private static final int BUFFER_SIZE = 8192;
+
+  final String route;
+  final Socket socket;
+  final InputStream in;
+  final OutputStream out;
+
+  // Number of requests sent over this connection so far
+  int requestCount;
+  // When the connection was last returned to the pool
+  long idleSinceNanos;
+  // Server-advertised keep-alive timeout, or -1 if none was sent
+  long keepAliveNanos = -1;
+
+  PooledConnection(final String pRoute, final Socket pSocket) throws IOException {
+    route = pRoute;
+    socket = pSocket;
+    in = new BufferedInputStream(pSocket.getInputStream(), BUFFER_SIZE);
+    out = new BufferedOutputStream(pSocket.getOutputStream(), BUFFER_SIZE);
+  }
+
+  boolean isExpired(final long nowNanos, final long idleTimeoutNanos) {
+    final long idle = nowNanos - idleSinceNanos;
+    if (keepAliveNanos >= 0 && idle >= keepAliveNanos) {
+      return true;
+    }
+    return idle >= idleTimeoutNanos || socket.isClosed();
+  }
+
+  void close() {
+    try {
+      socket.close();
+    } catch (IOException ignored) {
+      // Nothing more can be done with a socket that fails to close
+    }
+  }
+}
@@ -0,0 +1,528 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * HTTP/1.1 transport that keeps persistent connections in a bounded, per-route
+ * pool so that consecutive requests to the same host reuse the same socket
+ * (and TLS session) instead of opening a new one each time.
+ *
+ * Connections are made directly to the target host; use {@link UrlConnectionTransport}
+ * when requests must go through a proxy.
+ *
+ * Asynchronous requests run on the transport's own daemon threads, one for each connection
+ * it may open, unless the caller supplies an executor.
+ */
+public final class PooledTransport implements Transport {
+  public static final int DEFAULT_MAX_PER_ROUTE = 8;
+  public static final int DEFAULT_MAX_TOTAL = 32;
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5000;
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+
+  private static final Charset ASCII = Charset.forName("ISO-8859-1");
+  private static final int MAX_LINE_LENGTH = 8192;
+  // Unread body bytes we are willing to skip to keep a connection alive
+  private static final int DRAIN_LIMIT = 8192;
+
+  private final ConnectionPool pool;
+  // Sends asynchronous requests; more threads than connections would only wait on the pool
+  private final ExecutorService io;
+
+  /**
+   * Creates a transport with the default pool limits.
+   */
+  public PooledTransport() {
+    this(DEFAULT_MAX_PER_ROUTE, DEFAULT_MAX_TOTAL, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_WAIT_MILLIS);
+  }
+
+  /**
+   * Creates a transport with the given pool limits.
+   *
+   * @param maxPerRoute The maximum number of connections to a single host.
+   * @param maxTotal The maximum number of connections across all hosts.
+   * @param idleTimeoutMillis How long an unused connection is kept open.
+   * @param maxWaitMillis How long a request waits for a free connection, or 0 for no limit. A
+   *                      request never waits longer than its own connect timeout, which is cut
+   *                      to the time left before its deadline.
+   */
+  public PooledTransport(final int maxPerRoute, final int maxTotal, final long idleTimeoutMillis, final long maxWaitMillis) {
+    pool = new ConnectionPool(maxPerRoute, maxTotal, idleTimeoutMillis, maxWaitMillis);
+    io = IoThreads.create("aptr-pooled-io-", maxTotal);
+  }
+
+  @Override
+  public HttpResponse execute(final HttpRequest request) throws IOException {
+    final URL url = request.getUrl();
+    final String scheme = url.getProtocol().toLowerCase(Locale.ROOT);
+    if (!"http".equals(scheme) && !"https".equals(scheme)) {
+      throw new IOException("Unsupported protocol: " + scheme);
+    }
+    final String host = url.getHost();
+    final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    final String route = scheme + "://" + host + ":" + port;
+    final ConnectionPool.Connector connector = new ConnectionPool.Connector() {
+      public PooledConnection connect() throws IOException {
+        return open(route, scheme, host, port, request.getConnectTimeout());
+      }
+    };
+
+    while (true) {
+      final long leaseStart = System.nanoTime();
+      final PooledConnection conn = pool.lease(route, connector, request.getConnectTimeout());
+      final long connectNanos = System.nanoTime() - leaseStart;
+      final boolean reused = conn.requestCount > 0;
+      boolean statusReceived = false;
+      try {
+        conn.requestCount++;
+        conn.socket.setSoTimeout(request.getReadTimeout());
+        writeRequest(conn, request, host, port != url.getDefaultPort() ? port : -1);
+        final String statusLine = readLine(conn.in);
+        if (statusLine == null) {
+          throw new EOFException("Connection closed by " + route + " before a response was received");
+        }
+        statusReceived = true;
+        return readResponse(conn, request, statusLine, connectNanos);
+      } catch (IOException ex) {
+        pool.release(conn, false);
+        // The server may have closed an idle keep-alive connection just as we reused it. A
+        // timeout means it is just slow, and retrying would only double the wait.
+        if (reused && !statusReceived && !(ex instanceof SocketTimeoutException) && isRetryable(request)) {
+          continue;
+        }
+        throw ex;
+      } catch (RuntimeException ex) {
+        pool.release(conn, false);
+        throw ex;
+      }
+    }
+  }
+
+  /**
+   * Sends the request on the given executor, or on one of the transport's own threads.
+   * @param request The request to send.
+   * @param executor The executor to run the blocking request on, or null for the transport's threads.
+   * @return A future for the response, completed exceptionally on error.
+   */
+  @Override
+  public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor executor) {
+    return Transport.super.executeAsync(request, executor != null ? executor : io);
+  }
+
+  /**
+   * Closes idle connections that have outlived the idle timeout. Expired
+   * connections are also closed lazily as requests are made.
+   */
+  public void closeExpiredConnections() {
+    pool.closeExpired();
+  }
+
+  /**
+   * Returns usage statistics for the pool as a whole.
+   * @return A snapshot of the pool statistics.
+   */
+  public PoolStats getPoolStats() {
+    return pool.getStats();
+  }
+
+  /**
+   * Returns usage statistics for each route (scheme, host and port) seen so far.
+   * @return A snapshot of the per-route statistics.
+   */
+  public Map<String, PoolStats> getRouteStats() {
+    return pool.getRouteStats();
+  }
+
+  @Override
+  public void shutdown() {
+    pool.shutdown();
+    io.shutdown();
+  }
+
+  private static boolean isRetryable(final HttpRequest request) {
+    return request.isIdempotent();
+  }
+
+  private static PooledConnection open(final String route, final String scheme, final String host, final int port,
+      final int connectTimeout) throws IOException {
+    // URL.getHost() keeps the brackets around IPv6 literals
+    final String address = host.startsWith("[") ? host.substring(1, host.length() - 1) : host;
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.connect(new InetSocketAddress(address, port), connectTimeout);
+      if ("https".equals(scheme)) {
+        final SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+            .createSocket(socket, address, port, true);
+        final SSLParameters params = ssl.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        ssl.setSSLParameters(params);
+        ssl.startHandshake();
+        socket = ssl;
+      }
+      return new PooledConnection(route, socket);
+    } catch (IOException ex) {
+      socket.close();
+      throw ex;
+    }
+  }
+
+  private static void writeRequest(final PooledConnection conn, final HttpRequest request, final String host, final int port) throws IOException {
+    final URL url = request.getUrl();
+    final String target = url.getFile().length() == 0 ? "/" : url.getFile();
+    final StringBuilder head = new StringBuilder(256 + target.length());
+    head.append(request.getMethod()).append(' ').append(target).append(" HTTP/1.1\r\n");
+    head.append("Host: ").append(host);
+    if (port != -1) {
+      head.append(':').append(port);
+    }
+    head.append("\r\n");
+    final RequestBody body = request.getBody();
+    boolean connectionHeader = false;
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      if ("host".equalsIgnoreCase(header.getKey()) || "content-length".equalsIgnoreCase(header.getKey())) {
+        continue;
+      }
+      // The body supplies its own Content-Type
+      if (body != null && "content-type".equalsIgnoreCase(header.getKey())) {
+        continue;
+      }
+      if ("connection".equalsIgnoreCase(header.getKey())) {
+        connectionHeader = true;
+      }
+      head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+    }
+    if (!connectionHeader) {
+      head.append("Connection: keep-alive\r\n");
+    }
+    if (body != null) {
+      head.append("Content-Type: ").append(body.getContentType()).append("\r\n");
+      head.append("Content-Length: ").append(body.getContentLength()).append("\r\n");
+    }
+    head.append("\r\n");
+    conn.out.write(head.toString().getBytes(ASCII));
+    if (body != null) {
+      // Through the connection's buffer, so head and body leave in as few packets as possible
+      body.writeTo(conn.out);
+    }
+    conn.out.flush();
+  }
+
+  private HttpResponse readResponse(final PooledConnection conn, final HttpRequest request, String statusLine,
+      final long connectNanos) throws IOException {
+    Map<String, String> headers = readHeaders(conn.in);
+    int status = parseStatus(statusLine);
+    // Skip interim responses such as 100 Continue
+    while (status >= 100 && status < 200) {
+      statusLine = readLine(conn.in);
+      if (statusLine == null) {
+        throw new EOFException("Connection closed after an interim response");
+      }
+      headers = readHeaders(conn.in);
+      status = parseStatus(statusLine);
+    }
+
+    final String connection = lower(headers.get("Connection"));
+    boolean keepAlive = statusLine.startsWith("HTTP/1.0")
+        ? connection.contains("keep-alive")
+        : !connection.contains("close");
+    final String keepAliveHeader = headers.get("Keep-Alive");
+    if (keepAliveHeader != null) {
+      conn.keepAliveNanos = parseKeepAliveTimeout(keepAliveHeader);
+    }
+
+    final BodyStream body;
+    final String transferEncoding = lower(headers.get("Transfer-Encoding"));
+    final String contentLength = headers.get("Content-Length");
+    if ("HEAD".equals(request.getMethod()) || status == 204 || status == 304) {
+      body = new FixedLengthBody(conn, 0, keepAlive);
+    } else if (transferEncoding.contains("chunked")) {
+      body = new ChunkedBody(conn, keepAlive);
+    } else if (contentLength != null) {
+      final long length;
+      try {
+        length = Long.parseLong(contentLength.trim());
+      } catch (NumberFormatException ex) {
+        throw new IOException("Invalid Content-Length: " + contentLength);
+      }
+      body = new FixedLengthBody(conn, length, keepAlive);
+    } else {
+      // Body runs until the server closes the connection
+      keepAlive = false;
+      body = new FixedLengthBody(conn, Long.MAX_VALUE, false);
+    }
+    final int statusCode = status;
+    final Map<String, String> responseHeaders = headers;
+    return new HttpResponse() {
+      public int getStatusCode() {
+        return statusCode;
+      }
+
+      public String getHeader(final String name) {
+        return responseHeaders.get(name);
+      }
+
+      public InputStream getBody() {
+        return body;
+      }
+
+      public long getConnectNanos() {
+        return connectNanos;
+      }
+
+      public void close() {
+        body.close();
+      }
+    };
+  }
+
+  private static int parseStatus(final String statusLine) throws IOException {
+    // HTTP/1.1 200 OK
+    final int start = statusLine.indexOf(' ');
+    if (!statusLine.startsWith("HTTP/") || start < 0 || statusLine.length() < start + 4) {
+      throw new IOException("Malformed status line: " + statusLine);
+    }
+    try {
+      return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+    } catch (NumberFormatException ex) {
+      throw new IOException("Malformed status line: " + statusLine);
+    }
+  }
+
+  private static Map<String, String> readHeaders(final InputStream in) throws IOException {
+    final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+    String line;
+    while ((line = readLine(in)) != null && line.length() != 0) {
+      final int colon = line.indexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      final String name = line.substring(0, colon).trim();
+      final String value = line.substring(colon + 1).trim();
+      final String previous = headers.get(name);
+      headers.put(name, previous == null ? value : previous + ", " + value);
+    }
+    if (line == null) {
+      throw new EOFException("Connection closed while reading response headers");
+    }
+    return headers;
+  }
+
+  private static long parseKeepAliveTimeout(final String header) {
+    // Keep-Alive: timeout=5, max=100
+    for (String param : header.split(",")) {
+      final String p = param.trim();
+      if (p.regionMatches(true, 0, "timeout=", 0, 8)) {
+        try {
+          return TimeUnit.SECONDS.toNanos(Long.parseLong(p.substring(8).trim()));
+        } catch (NumberFormatException ignored) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static String lower(final String value) {
+    return value == null ? "" : value.toLowerCase(Locale.ROOT);
+  }
+
+  // Reads a CRLF (or bare LF) terminated line, or returns null at end of stream
+  static String readLine(final InputStream in) throws IOException {
+    final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+    int b;
+    while ((b = in.read()) != -1) {
+      if (b == '\n') {
+        final byte[] bytes = line.toByteArray();
+        final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, ASCII);
+      }
+      if (line.size() >= MAX_LINE_LENGTH) {
+        throw new IOException("Response line too long");
+      }
+      line.write(b);
+    }
+    if (line.size() != 0) {
+      throw new EOFException("Connection closed in the middle of a line");
+    }
+    return null;
+  }
+
+  /**
+   * Response body that hands its connection back to the pool exactly once, either
+   * when the body has been read to the end or when it is closed.
+   */
+  private abstract class BodyStream extends InputStream {
+    final PooledConnection conn;
+    final boolean keepAlive;
+    private boolean done;
+
+    BodyStream(final PooledConnection pConn, final boolean pKeepAlive) {
+      conn = pConn;
+      keepAlive = pKeepAlive;
+    }
+
+    abstract int readBody(byte[] b, int off, int len) throws IOException;
+
+    @Override
+    public int read() throws IOException {
+      final byte[] one = new byte[1];
+      final int n = read(one, 0, 1);
+      return n == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (done) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      try {
+        final int n = readBody(b, off, len);
+        if (n == -1) {
+          finish(keepAlive);
+        }
+        return n;
+      } catch (IOException ex) {
+        finish(false);
+        throw ex;
+      }
+    }
+
+    @Override
+    public void close() {
+      if (done) {
+        return;
+      }
+      // Skip a small unread remainder rather than give up the connection
+      final byte[] skip = new byte[512];
+      int drained = 0;
+      try {
+        int n;
+        while (!done && drained < DRAIN_LIMIT && (n = read(skip, 0, skip.length)) != -1) {
+          drained += n;
+        }
+      } catch (IOException ignored) {
+        // read() has already released the connection
+      }
+      finish(false);
+    }
+
+    final void finish(final boolean reusable) {
+      if (!done) {
+        done = true;
+        pool.release(conn, reusable);
+      }
+    }
+  }
+
+  private final class FixedLengthBody extends BodyStream {
+    private long remaining;
+
+    FixedLengthBody(final PooledConnection conn, final long length, final boolean keepAlive) {
+      super(conn, keepAlive);
+      remaining = length;
+      if (length == 0) {
+        finish(keepAlive);
+      }
+    }
+
+    @Override
+    int readBody(final byte[] b, final int off, final int len) throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      final int n = conn.in.read(b, off, (int) Math.min(len, remaining));
+      if (n == -1) {
+        if (remaining != Long.MAX_VALUE) {
+          throw new EOFException("Connection closed before the response body was complete");
+        }
+        return -1;
+      }
+      if (remaining != Long.MAX_VALUE) {
+        remaining -= n;
+      }
+      return n;
+    }
+  }
+
+  private final class ChunkedBody extends BodyStream {
+    private long chunkRemaining;
+    private boolean lastChunk;
+
+    ChunkedBody(final PooledConnection conn, final boolean keepAlive) {
+      super(conn, keepAlive);
+    }
+
+    @Override
+    int readBody(final byte[] b, final int off, final int len) throws IOException {
+      if (lastChunk) {
+        return -1;
+      }
+      if (chunkRemaining == 0) {
+        final String sizeLine = readLine(conn.in);
+        if (sizeLine == null) {
+          throw new EOFException("Connection closed before the last chunk");
+        }
+        final int semicolon = sizeLine.indexOf(';');
+        final String size = (semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim();
+        try {
+          chunkRemaining = Long.parseLong(size, 16);
+        } catch (NumberFormatException ex) {
+          throw new IOException("Invalid chunk size: " + sizeLine);
+        }
+        if (chunkRemaining == 0) {
+          // Discard any trailers
+          readHeaders(conn.in);
+          lastChunk = true;
+          return -1;
+        }
+      }
+      final int n = conn.in.read(b, off, (int) Math.min(len, chunkRemaining));
+      if (n == -1) {
+        throw new EOFException("Connection closed in the middle of a chunk");
+      }
+      chunkRemaining -= n;
+      if (chunkRemaining == 0 && readLine(conn.in) == null) {
+        throw new EOFException("Connection closed after a chunk");
+      }
+      return n;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+/**
+ * Percent-encodes text as UTF-8 application/x-www-form-urlencoded data, the same way as
+ * {@link java.net.URLEncoder}, but straight into a caller's buffer rather than through
+ * a new String per value. Each thread has a reusable buffer for building query strings.
+ */
+public final class QueryEncoder {
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  // Buffers that grew past this are not kept, so one huge request does not pin memory
+  private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(256);
+    }
+  };
+
+  private QueryEncoder() {
+  }
+
+  /**
+   * Returns this thread's query buffer, emptied. The buffer is reused by the next call on
+   * the same thread, so copy out its contents (for example with toString) before then.
+   * @return An empty StringBuilder.
+   */
+  public static StringBuilder buffer() {
+    StringBuilder buffer = BUFFER.get();
+    if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+      buffer = new StringBuilder(256);
+      BUFFER.set(buffer);
+    }
+    buffer.setLength(0);
+    return buffer;
+  }
+
+  /**
+   * Appends the encoded form of the text to the buffer.
+   * @param text The text to encode.
+   * @param out The buffer to append to.
+   */
+  public static void encode(final CharSequence text, final StringBuilder out) {
+    encode(text, out, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Appends the encoded form of the text to the buffer, giving up as soon as the buffer
+   * grows past the limit. The buffer then holds a truncated encoding.
+   * @param text The text to encode.
+   * @param out The buffer to append to.
+   * @param limit The longest the buffer may grow, in chars.
+   * @return True if the whole text was encoded within the limit.
+   */
+  public static boolean encode(final CharSequence text, final StringBuilder out, final int limit) {
+    return encode(text, 0, text.length(), out, limit);
+  }
+
+  /**
+   * Appends the encoded form of text[start..end) to the buffer. The range must not split
+   * a surrogate pair.
+   */
+  static void encode(final CharSequence text, final int start, final int end, final StringBuilder out) {
+    encode(text, start, end, out, Integer.MAX_VALUE);
+  }
+
+  // The one encoding loop, shared by query strings and FormBody
+  private static boolean encode(final CharSequence text, final int start, final int end, final StringBuilder out, final int limit) {
+    for (int i = start; i < end && out.length() <= limit; ) {
+      final int codePoint = Character.codePointAt(text, i);
+      i += Character.charCount(codePoint);
+      if (isUnreserved(codePoint)) {
+        out.append((char) codePoint);
+      } else if (codePoint == ' ') {
+        out.append('+');
+      } else if (codePoint < 0x80) {
+        escape(codePoint, out);
+      } else if (codePoint < 0x800) {
+        escape(0xC0 | (codePoint >> 6), out);
+        escape(0x80 | (codePoint & 0x3F), out);
+      } else if (codePoint < 0x10000) {
+        if (Character.isSurrogate((char) codePoint)) {
+          // Unpaired surrogate, which URLEncoder replaces with '?'
+          escape('?', out);
+        } else {
+          escape(0xE0 | (codePoint >> 12), out);
+          escape(0x80 | ((codePoint >> 6) & 0x3F), out);
+          escape(0x80 | (codePoint & 0x3F), out);
+        }
+      } else {
+        escape(0xF0 | (codePoint >> 18), out);
+        escape(0x80 | ((codePoint >> 12) & 0x3F), out);
+        escape(0x80 | ((codePoint >> 6) & 0x3F), out);
+        escape(0x80 | (codePoint & 0x3F), out);
+      }
+    }
+    return out.length() <= limit;
+  }
+
+  /**
+   * Returns the length of the encoded form of the text without encoding it.
+   * @param text The text.
+   * @return The encoded length, in chars (which are also bytes, being ASCII).
+   */
+  public static long encodedLength(final CharSequence text) {
+    long length = 0;
+    for (int i = 0; i < text.length(); ) {
+      final int codePoint = Character.codePointAt(text, i);
+      i += Character.charCount(codePoint);
+      if (isUnreserved(codePoint) || codePoint == ' ') {
+        length++;
+      } else if (codePoint < 0x80 || (codePoint < 0x10000 && Character.isSurrogate((char) codePoint))) {
+        length += 3;
+      } else if (codePoint < 0x800) {
+        length += 6;
+      } else if (codePoint < 0x10000) {
+        length += 9;
+      } else {
+        length += 12;
+      }
+    }
+    return length;
+  }
+
+  static boolean isUnreserved(final int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+        || c == '-' || c == '_' || c == '.' || c == '*';
+  }
+
+  private static void escape(final int b, final StringBuilder out) {
+    out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+  }
+}
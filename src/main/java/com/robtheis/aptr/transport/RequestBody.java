@@ -0,0 +1,47 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The body of an {@link HttpRequest}, written straight to the connection. A body may be
+ * written more than once, for example when a request is retried on a fresh connection.
+ */
+public interface RequestBody {
+
+  /**
+   * Returns the value for the Content-Type header.
+   * @return The media type of the body.
+   */
+  String getContentType();
+
+  /**
+   * Returns the exact number of bytes {@link #writeTo(OutputStream)} will write.
+   * @return The body length in bytes.
+   */
+  long getContentLength();
+
+  /**
+   * Writes the body to the stream. The stream is neither flushed nor closed.
+   * @param out The stream to write to.
+   * @throws IOException on error.
+   */
+  void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,75 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Sends HTTP requests on behalf of the API classes. Implementations must be
+ * safe for use by concurrent threads.
+ */
+public interface Transport {
+
+  /**
+   * Sends the request and returns the response once the status line and headers
+   * have been read. The caller must close the returned response so that the
+   * underlying connection can be released.
+   *
+   * @param request The request to send.
+   * @return The response.
+   * @throws IOException on error.
+   */
+  HttpResponse execute(HttpRequest request) throws IOException;
+
+  /**
+   * Sends the request without blocking the calling thread. The caller must close the
+   * response, as with {@link #execute(HttpRequest)}.
+   *
+   * This default runs {@link #execute(HttpRequest)} on the given executor, tying up one of
+   * its threads for each request on the wire, or, given none, on a bounded pool of I/O
+   * threads shared by such transports. Transports with threads of their own, or with
+   * non-blocking I/O, override it.
+   *
+   * @param request The request to send.
+   * @param executor The executor to run blocking work on, or null to leave it to the transport.
+   * @return A future for the response, completed exceptionally on error.
+   */
+  default CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor executor) {
+    final CompletableFuture<HttpResponse> response = new CompletableFuture<HttpResponse>();
+    try {
+      (executor != null ? executor : IoThreads.shared()).execute(() -> {
+        try {
+          response.complete(execute(request));
+        } catch (IOException | RuntimeException ex) {
+          response.completeExceptionally(ex);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      response.completeExceptionally(new IOException("No thread to send " + request.getUrl() + " on", ex));
+    }
+    return response;
+  }
+
+  /**
+   * Releases any resources (such as pooled connections) held by this transport.
+   */
+  void shutdown();
+}
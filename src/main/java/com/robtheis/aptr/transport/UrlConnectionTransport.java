@@ -0,0 +1,103 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+/**
+ * Transport built on {@link HttpURLConnection}. Connections are not disconnected
+ * after use, so the JDK keep-alive cache can reuse them, but pool size and idle
+ * time are then governed by the http.maxConnections and http.keepAlive system
+ * properties. Use this transport when requests must go through the JVM-wide
+ * proxy settings.
+ */
+public final class UrlConnectionTransport implements Transport {
+
+  @Override
+  public HttpResponse execute(final HttpRequest request) throws IOException {
+    final HttpURLConnection uc = (HttpURLConnection) request.getUrl().openConnection();
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      uc.setRequestProperty(header.getKey(), header.getValue());
+    }
+    uc.setRequestMethod(request.getMethod());
+    uc.setConnectTimeout(request.getConnectTimeout());
+    uc.setReadTimeout(request.getReadTimeout());
+    final RequestBody requestBody = request.getBody();
+    if (requestBody != null) {
+      uc.setRequestProperty("Content-Type", requestBody.getContentType());
+      uc.setDoOutput(true);
+      // Streams the body instead of buffering it to work out the length
+      uc.setFixedLengthStreamingMode(requestBody.getContentLength());
+    }
+
+    final int responseCode;
+    final long connectNanos;
+    try {
+      // Connecting first, rather than as a side effect of sending, tells the two apart
+      final long connectStart = System.nanoTime();
+      uc.connect();
+      connectNanos = System.nanoTime() - connectStart;
+      if (requestBody != null) {
+        try (OutputStream out = uc.getOutputStream()) {
+          requestBody.writeTo(out);
+        }
+      }
+      responseCode = uc.getResponseCode();
+    } catch (IOException ex) {
+      uc.disconnect();
+      throw ex;
+    }
+    InputStream body = responseCode >= 400 ? uc.getErrorStream() : uc.getInputStream();
+    if (body == null) {
+      body = new ByteArrayInputStream(new byte[0]);
+    }
+    final InputStream in = body;
+    return new HttpResponse() {
+      public int getStatusCode() {
+        return responseCode;
+      }
+
+      public String getHeader(final String name) {
+        return uc.getHeaderField(name);
+      }
+
+      public InputStream getBody() {
+        return in;
+      }
+
+      public long getConnectNanos() {
+        return connectNanos;
+      }
+
+      public void close() throws IOException {
+        // Closing (rather than disconnecting) hands the socket back to the keep-alive cache
+        in.close();
+      }
+    };
+  }
+
+  @Override
+  public void shutdown() {
+    // Nothing to release; connections belong to the JDK keep-alive cache
+  }
+}
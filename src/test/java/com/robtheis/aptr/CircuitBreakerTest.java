@@ -0,0 +1,244 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.Transport;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+  private static final String ENDPOINT = "localhost";
+  private static final IOException DOWN = new IOException("connection refused");
+
+  private final List<String> changes = new CopyOnWriteArrayList<String>();
+
+  private CircuitBreaker.Builder builder() {
+    return CircuitBreaker.builder().listener((endpoint, pair, from, to) -> changes.add(from + " -> " + to));
+  }
+
+  // Sends one call through the circuit with the given outcome
+  private static void call(final CircuitBreaker.Circuit circuit, final Throwable error) throws CircuitOpenException {
+    circuit.record(circuit.acquire(), 0, error);
+  }
+
+  private static void assertRejected(final CircuitBreaker.Circuit circuit) {
+    try {
+      circuit.acquire();
+      fail("expected the circuit to turn the call away");
+    } catch (CircuitOpenException expected) {
+      // Open, or every probe taken
+    }
+  }
+
+  // Waits out the open duration, with some slack for coarse timers
+  private static void waitOut(final long millis) throws InterruptedException {
+    Thread.sleep(millis + 20);
+  }
+
+  @Test
+  public void opensOnceFailureRateIsReached() throws Exception {
+    final CircuitBreaker breaker = builder().window(4, 4).failureRate(0.5).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    call(circuit, null);
+    call(circuit, DOWN);
+    call(circuit, DOWN);
+    // Too few calls to judge by yet
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+    call(circuit, null);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT, null));
+    assertRejected(circuit);
+    assertEquals(1, changes.size());
+    assertEquals("CLOSED -> OPEN", changes.get(0));
+  }
+
+  @Test
+  public void opensOnceSlowCallRateIsReached() throws Exception {
+    final CircuitBreaker breaker = builder().window(2, 2).slowCallRate(1.0, 100).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    circuit.record(circuit.acquire(), TimeUnit.MILLISECONDS.toNanos(150), null);
+    circuit.record(circuit.acquire(), TimeUnit.MILLISECONDS.toNanos(100), null);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT, null));
+  }
+
+  @Test
+  public void clientErrorsAndThrottlingAreNotCounted() throws Exception {
+    final CircuitBreaker breaker = builder().window(2, 2).failureRate(0.5).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    call(circuit, new ServiceException("bad request", 400, -1));
+    call(circuit, new ServiceException("throttled", 429, -1));
+    call(circuit, new ServiceException("unavailable", 503, -1));
+    call(circuit, null);
+    call(circuit, null);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+    call(circuit, new ServiceException("internal error", 500, -1));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT, null));
+  }
+
+  @Test
+  public void recoversThroughHalfOpen() throws Exception {
+    final CircuitBreaker breaker = builder().window(2, 2).openDuration(50).probes(2).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    call(circuit, DOWN);
+    call(circuit, DOWN);
+    assertRejected(circuit);
+    waitOut(50);
+    final int first = circuit.acquire();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT, null));
+    final int second = circuit.acquire();
+    // Both probes are out
+    assertRejected(circuit);
+    circuit.record(first, 0, null);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT, null));
+    circuit.record(second, 0, null);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+    assertEquals("[CLOSED -> OPEN, OPEN -> HALF_OPEN, HALF_OPEN -> CLOSED]", changes.toString());
+  }
+
+  @Test
+  public void failedProbesOpenTheCircuitAgain() throws Exception {
+    final CircuitBreaker breaker = builder().window(2, 2).openDuration(50).probes(2).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    call(circuit, DOWN);
+    call(circuit, DOWN);
+    waitOut(50);
+    call(circuit, null);
+    call(circuit, DOWN);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT, null));
+    assertRejected(circuit);
+    waitOut(50);
+    call(circuit, null);
+    call(circuit, null);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+  }
+
+  @Test
+  public void moreProbesThanTheWindowHoldsStillClose() throws Exception {
+    final CircuitBreaker breaker = builder().window(3, 1).openDuration(50).probes(5).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    call(circuit, DOWN);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT, null));
+    waitOut(50);
+    for (int i = 0; i < 4; i++) {
+      call(circuit, null);
+      assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT, null));
+    }
+    call(circuit, null);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+  }
+
+  @Test
+  public void cancelledProbeIsHandedBack() throws Exception {
+    final CircuitBreaker breaker = builder().window(1, 1).openDuration(50).probes(1).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    call(circuit, DOWN);
+    waitOut(50);
+    final int probe = circuit.acquire();
+    assertRejected(circuit);
+    circuit.cancel(probe);
+    call(circuit, null);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+  }
+
+  @Test
+  public void callsBegunBeforeAStateChangeAreNotCountedAfterIt() throws Exception {
+    final CircuitBreaker breaker = builder().window(1, 1).openDuration(50).build();
+    final CircuitBreaker.Circuit circuit = breaker.circuit(ENDPOINT, null);
+    final int stale = circuit.acquire();
+    call(circuit, DOWN);
+    waitOut(50);
+    call(circuit, null);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT, null));
+    circuit.record(stale, 0, DOWN);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT, null));
+  }
+
+  @Test
+  public void pairsHaveCircuitsOfTheirOwnWhenPerPair() throws Exception {
+    final LanguagePair spanish = LanguagePair.of(Language.SPANISH, Language.ENGLISH);
+    final LanguagePair catalan = LanguagePair.of(Language.CATALAN, Language.ENGLISH);
+    final CircuitBreaker breaker = builder().window(1, 1).perPair(true).build();
+    call(breaker.circuit(ENDPOINT, spanish), DOWN);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT, spanish));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, catalan));
+  }
+
+  /**
+   * Hands out asynchronous responses that only the test completes.
+   */
+  private static final class PendingTransport implements Transport {
+    final CompletableFuture<HttpResponse> response = new CompletableFuture<HttpResponse>();
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+      throw new IOException("blocking requests are not expected");
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor executor) {
+      return response;
+    }
+
+    @Override
+    public void shutdown() {
+      response.cancel(false);
+    }
+  }
+
+  private static final class Api extends ApertiumTranslatorAPI {
+    Api(final Transport transport, final CircuitBreaker breaker) {
+      super(ClientSettings.builder().transport(transport).circuitBreaker(breaker).build());
+    }
+
+    CompletableFuture<String> translateAsync() throws Exception {
+      return retrieveSubObjStringAsync(ServiceRequest.to(new URL("http://localhost/translate?q=hola"))
+          .withOptions(startCall(CallOptions.DEFAULT)), "responseData", "translatedText");
+    }
+  }
+
+  @Test
+  public void cancelledRequestIsNotCountedAsFailure() throws Exception {
+    final CircuitBreaker breaker = builder().window(1, 1).failureRate(1.0).build();
+    final PendingTransport transport = new PendingTransport();
+    final CompletableFuture<String> result = new Api(transport, breaker).translateAsync();
+    // Shutting down the transport cancels the request still on the wire
+    transport.shutdown();
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail("expected the cancelled request to fail the call");
+    } catch (ExecutionException expected) {
+      // The call fails, but the endpoint is not to blame
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT, null));
+    assertTrue(changes.isEmpty());
+  }
+}
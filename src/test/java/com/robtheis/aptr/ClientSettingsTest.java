@@ -0,0 +1,70 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.robtheis.aptr.translate.TranslatorClient;
+import org.junit.Test;
+
+public class ClientSettingsTest {
+  private final StubTransport transport = new StubTransport();
+
+  private TranslatorClient.Builder builder() {
+    return TranslatorClient.builder().key("0123456789abcdef0123456789a").transport(transport);
+  }
+
+  // The window is package-private, so it is not reachable through a TranslatorClient reference
+  private static LatencyWindow latencies(final ApertiumTranslatorAPI client) {
+    return client.getLatencyWindow();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void transportIsRequired() {
+    ClientSettings.builder().build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void percentileMustBeBelowOne() {
+    ClientSettings.builder().transport(transport).hedging(1).build();
+  }
+
+  @Test
+  public void replacementKeepsLatenciesAtTheSamePercentile() {
+    final TranslatorClient first = builder().hedging(0.95).build();
+    final TranslatorClient second = builder().hedging(0.95).readTimeout(1000).replacing(first).build();
+    assertNotNull(latencies(first));
+    assertSame(latencies(first), latencies(second));
+  }
+
+  @Test
+  public void replacementStartsOverAtAnotherPercentile() {
+    final TranslatorClient first = builder().hedging(0.95).build();
+    final TranslatorClient second = builder().hedging(0.99).replacing(first).build();
+    assertNotSame(latencies(first), latencies(second));
+  }
+
+  @Test
+  public void replacementWithoutHedgingKeepsNoLatencies() {
+    final TranslatorClient first = builder().hedging(0.95).build();
+    assertNull(latencies(builder().replacing(first).build()));
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+public class InFlightLimiterTest {
+  private final List<Runnable> handedOff = new ArrayList<Runnable>();
+  // Collects the tasks started on release so the test decides when they run
+  private final Executor executor = handedOff::add;
+
+  @Test
+  public void tasksOverTheLimitWaitForARelease() {
+    final InFlightLimiter limiter = new InFlightLimiter(2, executor);
+    final List<String> started = new ArrayList<String>();
+    limiter.submit(() -> started.add("a"));
+    limiter.submit(() -> started.add("b"));
+    limiter.submit(() -> started.add("c"));
+    limiter.submit(() -> started.add("d"));
+    // Submitting never blocks; the last two are queued
+    assertEquals(2, started.size());
+    limiter.release();
+    assertEquals(1, handedOff.size());
+    handedOff.remove(0).run();
+    limiter.release();
+    handedOff.remove(0).run();
+    assertEquals(4, started.size());
+    assertEquals("c", started.get(2));
+    assertEquals("d", started.get(3));
+  }
+
+  @Test
+  public void releasedSlotIsReusedWhenNothingWaits() {
+    final InFlightLimiter limiter = new InFlightLimiter(1, executor);
+    final List<String> started = new ArrayList<String>();
+    limiter.submit(() -> started.add("a"));
+    limiter.release();
+    // The slot is free again, so the next task runs on the caller's thread
+    limiter.submit(() -> started.add("b"));
+    assertEquals(2, started.size());
+    assertEquals(0, handedOff.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void limitMustBePositive() {
+    new InFlightLimiter(0, executor);
+  }
+}
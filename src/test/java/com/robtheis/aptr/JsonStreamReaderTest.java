@@ -0,0 +1,126 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class JsonStreamReaderTest {
+
+  @Test
+  public void walksToNestedValue() throws IOException {
+    final JsonStreamReader json = reader("{\"responseData\":{\"translatedText\":\"Hello\"},\"responseDetails\":null,\"responseStatus\":200}");
+    json.beginObject();
+    assertEquals("responseData", json.nextName());
+    json.beginObject();
+    assertEquals("translatedText", json.nextName());
+    assertEquals("Hello", json.nextString());
+    json.endObject();
+    assertEquals("responseDetails", json.nextName());
+    assertEquals(JsonStreamReader.NULL, json.peek());
+    json.skipValue();
+    assertEquals("responseStatus", json.nextName());
+    assertEquals(JsonStreamReader.NUMBER, json.peek());
+    assertEquals("200", json.nextString());
+    json.endObject();
+    assertEquals(JsonStreamReader.END_DOCUMENT, json.peek());
+  }
+
+  @Test
+  public void skipsNestedValues() throws IOException {
+    final JsonStreamReader json = reader("{\"a\":[1,{\"b\":[true,false,\"x\\\"]\"]},[]],\"c\":\"kept\"}");
+    json.beginObject();
+    assertEquals("a", json.nextName());
+    json.skipValue();
+    assertEquals("c", json.nextName());
+    assertEquals("kept", json.nextString());
+    json.endObject();
+  }
+
+  @Test
+  public void readsArrays() throws IOException {
+    final JsonStreamReader json = reader(" [ \"a\" , \"b\" ] ");
+    json.beginArray();
+    assertEquals("a", json.nextString());
+    assertEquals("b", json.nextString());
+    assertFalse(json.hasNext());
+    json.endArray();
+  }
+
+  @Test
+  public void decodesEscapes() throws IOException {
+    final JsonStreamReader json = reader("\"tab\\there \\\"quoted\\\" \\u00e9 \\ud83d\\ude00 \\/ \\\\\"");
+    assertEquals("tab\there \"quoted\" é 😀 / \\", json.nextString());
+  }
+
+  @Test
+  public void readsStringsAcrossBufferRefills() throws IOException {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      text.append((char) ('a' + i % 26));
+      if (i % 700 == 0) {
+        text.append("\\n");
+      }
+    }
+    // A reader that returns a few characters at a time, so values straddle every boundary
+    final Reader trickle = new Reader() {
+      private final StringReader in = new StringReader("{\"t\":\"" + text + "\"}");
+
+      public int read(final char[] buf, final int off, final int len) throws IOException {
+        return in.read(buf, off, Math.min(len, 7));
+      }
+
+      public void close() {
+        in.close();
+      }
+    };
+    final JsonStreamReader json = new JsonStreamReader(trickle);
+    json.beginObject();
+    assertEquals("t", json.nextName());
+    assertEquals(text.toString().replace("\\n", "\n"), json.nextString());
+    json.endObject();
+  }
+
+  @Test
+  public void rejectsWrongToken() throws IOException {
+    final JsonStreamReader json = reader("[\"a\"]");
+    try {
+      json.beginObject();
+      fail("expected a syntax error");
+    } catch (IOException expected) {
+      // An array is not an object
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void rejectsUnterminatedString() throws IOException {
+    final JsonStreamReader json = reader("\"never ends");
+    json.nextString();
+  }
+
+  private static JsonStreamReader reader(final String json) {
+    return new JsonStreamReader(new StringReader(json));
+  }
+}
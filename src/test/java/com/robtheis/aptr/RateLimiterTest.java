@@ -0,0 +1,172 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.transport.Transport;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+public class RateLimiterTest {
+  private static final String RESPONSE = "responseData";
+  private static final String TRANSLATION = "translatedText";
+
+  // Exposes the protected request methods
+  private static final class Api extends ApertiumTranslatorAPI {
+    Api(final Transport transport, final RateLimiter limiter) {
+      super(ClientSettings.builder().transport(transport).rateLimiter(limiter).build());
+    }
+
+    String translate(final CallOptions options) throws Exception {
+      return retrieveSubObjString(request(options), RESPONSE, TRANSLATION);
+    }
+
+    String translateAsync(final CallOptions options) throws Exception {
+      return retrieveSubObjStringAsync(request(options), RESPONSE, TRANSLATION).get();
+    }
+
+    private ServiceRequest request(final CallOptions options) throws Exception {
+      return ServiceRequest.to(new URL("http://localhost/translate?q=hola")).withOptions(startCall(options));
+    }
+  }
+
+  @Test
+  public void throttleHalvesTheRates() {
+    final RateLimiter limiter = new RateLimiter(100, 1000);
+    limiter.recordThrottle(-1);
+    assertEquals(50, limiter.getRequestRate(), 1e-9);
+    assertEquals(500, limiter.getByteRate(), 1e-9);
+  }
+
+  @Test
+  public void throttlesWithinASecondCutTheRatesOnce() {
+    final RateLimiter limiter = new RateLimiter(100);
+    for(int i = 0; i < 10; i++) {
+      limiter.recordThrottle(-1);
+    }
+    assertEquals(50, limiter.getRequestRate(), 1e-9);
+  }
+
+  @Test
+  public void successesRaiseTheRatesBackToTheConfiguredOnes() {
+    final RateLimiter limiter = new RateLimiter(100);
+    limiter.recordSuccess();
+    assertEquals(100, limiter.getRequestRate(), 1e-9);
+    limiter.recordThrottle(-1);
+    limiter.recordSuccess();
+    // Each success at 50 requests a second wins back 1/20 of the rate, spread over 50 requests
+    assertEquals(50.1, limiter.getRequestRate(), 1e-9);
+    for(int i = 0; i < 1000; i++) {
+      limiter.recordSuccess();
+    }
+    assertEquals(100, limiter.getRequestRate(), 1e-9);
+  }
+
+  @Test
+  public void retryAfterHoldsBackTheNextRequest() {
+    final RateLimiter limiter = new RateLimiter(1000);
+    limiter.recordThrottle(500);
+    final long delay = limiter.reserve(0);
+    assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(400));
+    assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(500));
+  }
+
+  @Test
+  public void retryAfterCountsAgainstTheTimeout() throws Exception {
+    final RateLimiter limiter = new RateLimiter(1000);
+    limiter.recordThrottle(500);
+    assertFalse(limiter.tryAcquire(0, 100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void tryAcquireTakesAvailableTokens() throws Exception {
+    final RateLimiter limiter = new RateLimiter(2);
+    assertTrue(limiter.tryAcquire(0, 0, TimeUnit.NANOSECONDS));
+    assertTrue(limiter.tryAcquire(0, 0, TimeUnit.NANOSECONDS));
+    assertFalse(limiter.tryAcquire(0, 0, TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void refusedReservationTakesNoTokens() {
+    final RateLimiter limiter = new RateLimiter(1);
+    assertEquals(0, limiter.reserve(0));
+    assertEquals(-1, limiter.reserve(0, TimeUnit.MILLISECONDS.toNanos(10)));
+    assertEquals(-1, limiter.reserve(0, TimeUnit.MILLISECONDS.toNanos(10)));
+    // Had the refused reservations been taken, the next one would wait three seconds
+    assertTrue(limiter.reserve(0) <= TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void byteLimitCountsAgainstTheTimeout() throws Exception {
+    final RateLimiter limiter = new RateLimiter(1000, 100);
+    assertTrue(limiter.tryAcquire(100, 0, TimeUnit.NANOSECONDS));
+    assertFalse(limiter.tryAcquire(50, 100, TimeUnit.MILLISECONDS));
+    assertTrue(limiter.tryAcquire(5, 100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void blockingCallFailsAtOnceWhenTheLimiterWouldOutlastTheDeadline() throws Exception {
+    final StubTransport transport = new StubTransport();
+    final Api api = new Api(transport, new RateLimiter(0.5));
+    assertEquals("hello", api.translate(CallOptions.DEFAULT));
+    final long start = System.nanoTime();
+    try {
+      api.translate(CallOptions.DEFAULT.withDeadlineAfter(200));
+      fail("expected the call to run out of time");
+    } catch (Exception ex) {
+      assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+    assertEquals(1, transport.requests.get());
+  }
+
+  @Test
+  public void asyncCallFailsAtOnceWhenTheLimiterWouldOutlastTheDeadline() throws Exception {
+    final StubTransport transport = new StubTransport();
+    final Api api = new Api(transport, new RateLimiter(0.5));
+    assertEquals("hello", api.translateAsync(CallOptions.DEFAULT));
+    final long start = System.nanoTime();
+    try {
+      api.translateAsync(CallOptions.DEFAULT.withDeadlineAfter(200));
+      fail("expected the call to run out of time");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause().getCause() instanceof TimeoutException);
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+    assertEquals(1, transport.requests.get());
+  }
+
+  @Test
+  public void callWithinTheDeadlineWaitsForTheLimiter() throws Exception {
+    final StubTransport transport = new StubTransport();
+    final Api api = new Api(transport, new RateLimiter(10));
+    final long start = System.nanoTime();
+    for(int i = 0; i < 12; i++) {
+      assertEquals("hello", api.translate(CallOptions.DEFAULT.withDeadlineAfter(5000)));
+    }
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    assertEquals(12, transport.requests.get());
+  }
+}
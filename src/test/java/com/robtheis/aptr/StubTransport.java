@@ -0,0 +1,133 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr;
+
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.Transport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory transport for tests. Each service (the last segment of the URL path) is
+ * answered with a fixed status and body, by default a translation of every text to "hello".
+ * In echo mode, translate requests are answered with each of their texts in upper case.
+ */
+public final class StubTransport implements Transport {
+  public static final String TRANSLATION = "{\"responseData\":{\"translatedText\":\"hello\"},\"responseStatus\":200}";
+
+  public final AtomicInteger requests = new AtomicInteger();
+  // Every text sent to the translate service in echo mode, in the order received
+  public final Queue<String> texts = new ConcurrentLinkedQueue<String>();
+  private final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+  private final ConcurrentHashMap<String, Object[]> responses = new ConcurrentHashMap<String, Object[]>();
+  private volatile Object[] fallback = {200, TRANSLATION};
+  private final ConcurrentHashMap<String, String> headers = new ConcurrentHashMap<String, String>();
+  private volatile boolean echo;
+
+  // Answers every service not given its own response
+  public void respond(final int status, final String body) {
+    fallback = new Object[] {status, body};
+  }
+
+  public void respond(final String service, final int status, final String body) {
+    responses.put(service, new Object[] {status, body});
+  }
+
+  // Answers translate requests with their texts in upper case
+  public void echo() {
+    echo = true;
+  }
+
+  // Adds a header, such as Retry-After, to every response
+  public void header(final String name, final String value) {
+    headers.put(name, value);
+  }
+
+  public int requests(final String service) {
+    final AtomicInteger count = counts.get(service);
+    return count != null ? count.get() : 0;
+  }
+
+  @Override
+  public HttpResponse execute(final HttpRequest request) throws IOException {
+    final String path = request.getUrl().getPath();
+    final String service = path.substring(path.lastIndexOf('/') + 1);
+    requests.incrementAndGet();
+    counts.computeIfAbsent(service, s -> new AtomicInteger()).incrementAndGet();
+    final Object[] response = echo && service.equals("translate") ? echo(request) : responses.getOrDefault(service, fallback);
+    final int code = (Integer) response[0];
+    final byte[] bytes = ((String) response[1]).getBytes(StandardCharsets.UTF_8);
+    return new HttpResponse() {
+      public int getStatusCode() {
+        return code;
+      }
+
+      public String getHeader(final String name) {
+        return headers.get(name);
+      }
+
+      public InputStream getBody() {
+        return new ByteArrayInputStream(bytes);
+      }
+
+      public void close() {
+      }
+    };
+  }
+
+  private Object[] echo(final HttpRequest request) throws IOException {
+    String params = request.getUrl().getQuery();
+    if (request.getBody() != null) {
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      request.getBody().writeTo(body);
+      params = body.toString(StandardCharsets.UTF_8.name());
+    }
+    final List<String> translations = new ArrayList<String>();
+    for (String param : params.split("&")) {
+      if (param.startsWith("q=")) {
+        final String text = URLDecoder.decode(param.substring(2), StandardCharsets.UTF_8.name());
+        texts.add(text);
+        translations.add("{\"responseData\":{\"translatedText\":\"" + quote(text.toUpperCase(Locale.ROOT))
+            + "\"},\"responseStatus\":200}");
+      }
+    }
+    final String body = translations.size() == 1 ? translations.get(0)
+        : "{\"responseData\":[" + String.join(",", translations) + "],\"responseStatus\":200}";
+    return new Object[] {200, body};
+  }
+
+  private static String quote(final String text) {
+    return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+  }
+
+  @Override
+  public void shutdown() {
+  }
+}
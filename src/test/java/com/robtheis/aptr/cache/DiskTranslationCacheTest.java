@@ -0,0 +1,203 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.language.Language;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiskTranslationCacheTest {
+  private static final Language FROM = Language.SPANISH;
+  private static final Language TO = Language.ENGLISH;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File log(final File dir) {
+    return new File(dir, "translations.log");
+  }
+
+  private File index(final File dir) {
+    return new File(dir, "translations.idx");
+  }
+
+  @Test
+  public void tornTailIsTruncated() throws Exception {
+    final File dir = folder.newFolder();
+    DiskTranslationCache cache = new DiskTranslationCache(dir);
+    cache.put(FROM, TO, "hola", "hello");
+    final long whole = cache.getStats().getBytes();
+    cache.put(FROM, TO, "adios", "goodbye");
+    cache.close();
+    // A crash part way through the second record
+    try (RandomAccessFile file = new RandomAccessFile(log(dir), "rw")) {
+      file.setLength(file.length() - 3);
+    }
+    cache = new DiskTranslationCache(dir);
+    try {
+      assertEquals("hello", cache.get(FROM, TO, "hola"));
+      assertNull(cache.get(FROM, TO, "adios"));
+      assertEquals(whole, cache.getStats().getBytes());
+      assertEquals(whole, log(dir).length());
+      cache.put(FROM, TO, "adios", "goodbye");
+      assertEquals("goodbye", cache.get(FROM, TO, "adios"));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void garbageAfterTheIndexedRecordsIsTruncated() throws Exception {
+    final File dir = folder.newFolder();
+    DiskTranslationCache cache = new DiskTranslationCache(dir);
+    cache.put(FROM, TO, "hola", "hello");
+    final long whole = cache.getStats().getBytes();
+    cache.close();
+    try (RandomAccessFile file = new RandomAccessFile(log(dir), "rw")) {
+      file.seek(file.length());
+      file.write(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 5});
+    }
+    cache = new DiskTranslationCache(dir);
+    try {
+      assertEquals("hello", cache.get(FROM, TO, "hola"));
+      assertEquals(whole, log(dir).length());
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void reopeningReplaysOnlyTheRecordsAppendedSinceTheIndexWasWritten() throws Exception {
+    final File dir = folder.newFolder();
+    final File saved = folder.newFile();
+    DiskTranslationCache cache = new DiskTranslationCache(dir);
+    cache.put(FROM, TO, "hola", "hello");
+    cache.flush();
+    // The index as it was before the next append
+    Files.copy(index(dir).toPath(), saved.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    final long firstEnd = cache.getStats().getBytes();
+    cache.put(FROM, TO, "adios", "goodbye");
+    final long length = cache.getStats().getBytes();
+    cache.close();
+    Files.copy(saved.toPath(), index(dir).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    // Damage the first record. Replaying the whole log would stop there and truncate both.
+    try (RandomAccessFile file = new RandomAccessFile(log(dir), "rw")) {
+      file.seek(firstEnd - 1);
+      file.write('X');
+    }
+    cache = new DiskTranslationCache(dir);
+    try {
+      assertEquals("goodbye", cache.get(FROM, TO, "adios"));
+      assertEquals(2, cache.getStats().getEntries());
+      assertEquals(length, log(dir).length());
+      // The damaged record fails its CRC when read, and misses
+      assertNull(cache.get(FROM, TO, "hola"));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void compactionKeepsOnlyLiveRecords() throws Exception {
+    final File expectedDir = folder.newFolder();
+    final DiskTranslationCache expected = new DiskTranslationCache(expectedDir);
+    expected.put(FROM, TO, "hola", "hi");
+    expected.put(FROM, TO, "adios", "goodbye");
+    final long liveLength = expected.getStats().getBytes();
+    expected.close();
+
+    final File dir = folder.newFolder();
+    DiskTranslationCache cache = new DiskTranslationCache(dir);
+    cache.put(FROM, TO, "hola", "hello");
+    cache.put(FROM, TO, "adios", "goodbye");
+    cache.put(FROM, TO, "hola", "hi");
+    assertTrue(cache.getStats().getBytes() > liveLength);
+    cache.compact();
+    try {
+      assertEquals(liveLength, cache.getStats().getBytes());
+      assertEquals(liveLength, log(dir).length());
+      assertEquals("hi", cache.get(FROM, TO, "hola"));
+      assertEquals("goodbye", cache.get(FROM, TO, "adios"));
+    } finally {
+      cache.close();
+    }
+    cache = new DiskTranslationCache(dir);
+    try {
+      assertEquals(2, cache.getStats().getEntries());
+      assertEquals("hi", cache.get(FROM, TO, "hola"));
+      assertEquals("goodbye", cache.get(FROM, TO, "adios"));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void clearDuringCompactionAbortsIt() throws Exception {
+    final File dir = folder.newFolder();
+    DiskTranslationCache cache = new DiskTranslationCache(dir);
+    cache.put(FROM, TO, "hola", "hello");
+    cache.put(FROM, TO, "hola", "hi");
+    final DiskTranslationCache cleared = cache;
+    cache.afterCopy = () -> {
+      cleared.clear();
+      cleared.put(FROM, TO, "gracias", "thanks");
+    };
+    cache.compact();
+    try {
+      assertNull(cache.get(FROM, TO, "hola"));
+      assertEquals("thanks", cache.get(FROM, TO, "gracias"));
+      assertEquals(1, cache.getStats().getEntries());
+      assertTrue(!new File(dir, "translations.log.compact").exists());
+    } finally {
+      cache.close();
+    }
+    cache = new DiskTranslationCache(dir);
+    try {
+      assertNull(cache.get(FROM, TO, "hola"));
+      assertEquals("thanks", cache.get(FROM, TO, "gracias"));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void secondOpenOfTheDirectoryFails() throws Exception {
+    final File dir = folder.newFolder();
+    final DiskTranslationCache cache = new DiskTranslationCache(dir);
+    try {
+      new DiskTranslationCache(dir).close();
+      fail("expected the directory to be locked");
+    } catch (IOException expected) {
+      // Only one cache may have it open
+    } finally {
+      cache.close();
+    }
+    new DiskTranslationCache(dir).close();
+  }
+}
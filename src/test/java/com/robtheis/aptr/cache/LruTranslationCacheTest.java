@@ -0,0 +1,126 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.robtheis.aptr.language.Language;
+import org.junit.Test;
+
+public class LruTranslationCacheTest {
+  private static final Language FROM = Language.SPANISH;
+  private static final Language TO = Language.ENGLISH;
+
+  // 160 bytes of overhead plus 2 bytes for each of the 9 characters of text and translation
+  private static final int ENTRY_BYTES = 160 + 2 * 9;
+
+  @Test
+  public void entryCostsOverheadPlusTwoBytesPerCharacter() throws Exception {
+    final LruTranslationCache cache = new LruTranslationCache(10000, 0);
+    cache.put(FROM, TO, "hola", "hello");
+    assertEquals(ENTRY_BYTES, cache.getStats().getBytes());
+    // Replacing an entry swaps its size for the new one
+    cache.put(FROM, TO, "hola", "hi");
+    assertEquals(160 + 2 * 6, cache.getStats().getBytes());
+    assertEquals(1, cache.getStats().getEntries());
+  }
+
+  @Test
+  public void entryOverTheBudgetIsNotKept() throws Exception {
+    final LruTranslationCache cache = new LruTranslationCache(ENTRY_BYTES - 1, 0);
+    cache.put(FROM, TO, "hola", "hello");
+    assertNull(cache.get(FROM, TO, "hola"));
+    assertEquals(0, cache.getStats().getBytes());
+    assertEquals(0, cache.getStats().getEvictions());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntryIsEvictedFirst() throws Exception {
+    final LruTranslationCache cache = new LruTranslationCache(3 * ENTRY_BYTES, 0);
+    cache.put(FROM, TO, "uno1", "one11");
+    cache.put(FROM, TO, "dos2", "two22");
+    cache.put(FROM, TO, "tres", "three");
+    // Reading the first entry leaves the second as the least recently used
+    assertEquals("one11", cache.get(FROM, TO, "uno1"));
+    cache.put(FROM, TO, "cuat", "four4");
+    assertNull(cache.get(FROM, TO, "dos2"));
+    assertEquals("one11", cache.get(FROM, TO, "uno1"));
+    assertEquals("three", cache.get(FROM, TO, "tres"));
+    assertEquals("four4", cache.get(FROM, TO, "cuat"));
+    final CacheStats stats = cache.getStats();
+    assertEquals(1, stats.getEvictions());
+    assertEquals(3, stats.getEntries());
+    assertEquals(3 * ENTRY_BYTES, stats.getBytes());
+  }
+
+  @Test
+  public void largeEntryEvictsAsManyAsItNeeds() throws Exception {
+    final LruTranslationCache cache = new LruTranslationCache(3 * ENTRY_BYTES, 0);
+    cache.put(FROM, TO, "uno1", "one11");
+    cache.put(FROM, TO, "dos2", "two22");
+    cache.put(FROM, TO, "tres", "three");
+    // Twice the size of the others: 160 + 2 * 98
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 49; i++) {
+      text.append('x');
+    }
+    cache.put(FROM, TO, text.toString(), text.toString());
+    assertNull(cache.get(FROM, TO, "uno1"));
+    assertNull(cache.get(FROM, TO, "dos2"));
+    assertEquals("three", cache.get(FROM, TO, "tres"));
+    final CacheStats stats = cache.getStats();
+    assertEquals(2, stats.getEvictions());
+    assertEquals(2, stats.getEntries());
+    assertEquals(3 * ENTRY_BYTES, stats.getBytes());
+  }
+
+  @Test
+  public void expiredEntryIsAMiss() throws Exception {
+    final LruTranslationCache cache = new LruTranslationCache(10000, 50);
+    cache.put(FROM, TO, "hola", "hello");
+    assertEquals("hello", cache.get(FROM, TO, "hola"));
+    Thread.sleep(100);
+    assertNull(cache.get(FROM, TO, "hola"));
+    final CacheStats stats = cache.getStats();
+    assertEquals(1, stats.getHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(1, stats.getExpirations());
+    assertEquals(0, stats.getEvictions());
+    assertEquals(0, stats.getEntries());
+    assertEquals(0, stats.getBytes());
+  }
+
+  @Test
+  public void countersTrackHitsAndMisses() throws Exception {
+    final LruTranslationCache cache = new LruTranslationCache(10000, 0);
+    assertNull(cache.get(FROM, TO, "hola"));
+    cache.put(FROM, TO, "hola", "hello");
+    assertEquals("hello", cache.get(FROM, TO, "hola"));
+    assertEquals("hello", cache.get(FROM, TO, "hola"));
+    // The pair is part of the key
+    assertNull(cache.get(TO, FROM, "hola"));
+    final CacheStats stats = cache.getStats();
+    assertEquals(2, stats.getHits());
+    assertEquals(2, stats.getMisses());
+    assertEquals(0.5, stats.getHitRate(), 1e-9);
+    cache.clear();
+    assertEquals(0, cache.getStats().getEntries());
+    assertEquals(0, cache.getStats().getBytes());
+  }
+}
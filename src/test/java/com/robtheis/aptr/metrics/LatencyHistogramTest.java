@@ -0,0 +1,113 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void emptyHistogramReportsZeros() {
+    assertArrayEquals(new long[] {0, 0, 0, 0, 0}, new LatencyHistogram().snapshot(0.5, 0.99));
+  }
+
+  @Test
+  public void smallLatenciesAreExact() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 20; i++) {
+      histogram.record(i);
+    }
+    // p50, p95, p100, then the mean, maximum and count
+    assertArrayEquals(new long[] {10, 19, 20, 10, 20, 20}, histogram.snapshot(0.5, 0.95, 1.0));
+  }
+
+  @Test
+  public void percentileTakesNearestRank() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 7; i++) {
+      histogram.record(5);
+    }
+    for (int i = 0; i < 93; i++) {
+      histogram.record(30);
+    }
+    // 0.07 * 100 is a shade over 7 in floating point; the 7th latency is still the answer
+    assertEquals(5, histogram.snapshot(0.07)[0]);
+    assertEquals(30, histogram.snapshot(0.08)[0]);
+    assertEquals(5, histogram.snapshot(0.0)[0]);
+  }
+
+  @Test
+  public void percentilesAreWithinThreePercent() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 1000);
+    }
+    final double[] percentiles = {0.5, 0.9, 0.99, 0.999};
+    final long[] values = histogram.snapshot(percentiles);
+    for (int p = 0; p < percentiles.length; p++) {
+      final double exact = percentiles[p] * 100000 * 1000;
+      // Each bucket reports its upper edge, so a percentile is never under the true value
+      assertTrue(values[p] + " for " + percentiles[p], values[p] >= exact && values[p] <= exact * 1.03);
+    }
+    assertEquals(50000500L, values[4]);
+    assertEquals(100000000L, values[5]);
+    assertEquals(100000L, values[6]);
+  }
+
+  @Test
+  public void bucketUpperEdgeIsCloseAboveEachLatency() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      final long latency = random.nextLong() >>> (24 + random.nextInt(40));
+      final LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(latency);
+      // A larger second latency keeps the maximum from capping the first one's bucket
+      histogram.record(1L << 50);
+      final long reported = histogram.snapshot(0.5)[0];
+      assertTrue(latency + " reported as " + reported, reported >= latency && reported - latency <= latency / 32);
+    }
+  }
+
+  @Test
+  public void percentileNeverExceedsMaximum() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000);
+    assertEquals(1000, histogram.snapshot(0.5)[0]);
+  }
+
+  @Test
+  public void latenciesBeyondTopBucketReportMaximum() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final long huge = 1L << 45;
+    histogram.record(huge);
+    histogram.record(huge + 12345);
+    assertEquals(huge + 12345, histogram.snapshot(1.0)[0]);
+  }
+
+  @Test
+  public void negativeLatencyCountsAsZero() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertArrayEquals(new long[] {0, 0, 0, 1}, histogram.snapshot(0.5));
+  }
+}
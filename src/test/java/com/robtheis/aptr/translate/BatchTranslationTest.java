@@ -0,0 +1,190 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.StubTransport;
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.Transport;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class BatchTranslationTest {
+  private static final String KEY = "0123456789abcdef0123456789a";
+
+  private final StubTransport transport = new StubTransport();
+
+  private TranslatorClient.Builder builder() {
+    transport.echo();
+    return TranslatorClient.builder().key(KEY).transport(transport);
+  }
+
+  private static String text(final char c, final int length) {
+    final char[] chars = new char[length];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private static String[] upperCase(final String[] texts) {
+    final String[] expected = new String[texts.length];
+    for(int i = 0; i < texts.length; i++) {
+      expected[i] = texts[i] != null ? texts[i].toUpperCase(Locale.ROOT) : null;
+    }
+    return expected;
+  }
+
+  @Test
+  public void textsArePackedUpToTheSizeLimit() throws Exception {
+    final TranslatorClient client = builder().build();
+    // 4000 + 4000 bytes fit in one 10240-byte request; the third text starts the next one
+    final String[] texts = {text('a', 4000), text('b', 4000), text('c', 4000), "d"};
+    assertArrayEquals(upperCase(texts), client.translate(texts, Language.SPANISH, Language.ENGLISH));
+    assertEquals(2, transport.requests("translate"));
+    // A text at the limit on its own
+    transport.texts.clear();
+    final String[] full = {"e", text('f', TranslatorClient.MAX_TEXT_BYTES), "g"};
+    assertArrayEquals(upperCase(full), client.translate(full, Language.SPANISH, Language.ENGLISH));
+    assertEquals(5, transport.requests("translate"));
+    assertEquals(Arrays.asList("e", text('f', TranslatorClient.MAX_TEXT_BYTES), "g"), Arrays.asList(transport.texts.toArray()));
+  }
+
+  @Test
+  public void textOverTheLimitIsRejectedBeforeAnythingIsSent() throws Exception {
+    final TranslatorClient client = builder().build();
+    final String[] texts = {"hola", text('a', TranslatorClient.MAX_TEXT_BYTES + 1)};
+    try {
+      client.translate(texts, Language.SPANISH, Language.ENGLISH);
+      fail("expected the long text to be rejected");
+    } catch (RuntimeException expected) {
+      assertEquals("TEXT_TOO_LARGE", expected.getMessage());
+    }
+    assertEquals(0, transport.requests.get());
+  }
+
+  @Test
+  public void nullAndEmptyTextsAreReturnedUnsent() throws Exception {
+    final TranslatorClient client = builder().build();
+    final String[] texts = {null, "", "hola", null, "adios", ""};
+    assertArrayEquals(upperCase(texts), client.translate(texts, Language.SPANISH, Language.ENGLISH));
+    assertArrayEquals(upperCase(texts), client.translateAsync(texts, Language.SPANISH, Language.ENGLISH).get(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("hola", "adios", "hola", "adios"), Arrays.asList(transport.texts.toArray()));
+    final String[] nothing = {null, ""};
+    assertArrayEquals(nothing, client.translate(nothing, Language.SPANISH, Language.ENGLISH));
+    assertArrayEquals(nothing, client.translateAsync(nothing, Language.SPANISH, Language.ENGLISH).get(5, TimeUnit.SECONDS));
+    assertEquals(2, transport.requests("translate"));
+  }
+
+  @Test
+  public void asyncTranslationsComeBackInInputOrder() throws Exception {
+    final TranslatorClient client = builder().build();
+    final String[] texts = new String[40];
+    for(int i = 0; i < texts.length; i++) {
+      texts[i] = i % 7 == 3 ? null : text((char) ('a' + i % 26), 100 + i * 97);
+    }
+    assertArrayEquals(upperCase(texts), client.translateAsync(texts, Language.SPANISH, Language.ENGLISH).get(5, TimeUnit.SECONDS));
+    assertTrue(transport.requests("translate") > 1);
+  }
+
+  // Holds every asynchronous request until release() lets the oldest one through
+  private static final class GatedTransport implements Transport {
+    final StubTransport stub = new StubTransport();
+    final LinkedBlockingQueue<CompletableFuture<Void>> held = new LinkedBlockingQueue<CompletableFuture<Void>>();
+
+    GatedTransport() {
+      stub.echo();
+    }
+
+    void release() throws InterruptedException {
+      held.poll(5, TimeUnit.SECONDS).complete(null);
+    }
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+      return stub.execute(request);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor executor) {
+      final CompletableFuture<Void> gate = new CompletableFuture<Void>();
+      held.add(gate);
+      return gate.thenApply(open -> {
+        try {
+          return stub.execute(request);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      });
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+
+  @Test
+  public void asyncBatchesWaitForAFreeSlot() throws Exception {
+    final GatedTransport gated = new GatedTransport();
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(gated).maxAsyncRequests(2).build();
+    // Too big to share a request, so each is a batch of its own
+    final String[] texts = {text('a', 6000), text('b', 6000), text('c', 6000), text('d', 6000), text('e', 6000)};
+    final CompletableFuture<String[]> result = client.translateAsync(texts, Language.SPANISH, Language.ENGLISH);
+    Thread.sleep(50);
+    assertEquals(2, gated.held.size());
+    gated.release();
+    // The freed slot goes to the next batch, which starts on another thread
+    for(int i = 0; i < 100 && gated.held.size() < 2; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, gated.held.size());
+    assertEquals(1, gated.stub.requests("translate"));
+    assertFalse(result.isDone());
+    for(int i = 0; i < 4; i++) {
+      gated.release();
+    }
+    assertArrayEquals(upperCase(texts), result.get(5, TimeUnit.SECONDS));
+    assertEquals(5, gated.stub.requests("translate"));
+  }
+
+  @Test
+  public void failedBatchFailsTheWholeCall() throws Exception {
+    transport.respond("translate", 500, "{\"responseDetails\":\"down\",\"responseStatus\":500}");
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(transport).build();
+    try {
+      client.translateAsync(new String[] {"hola", text('a', 6000), text('b', 6000)}, Language.SPANISH, Language.ENGLISH)
+          .get(5, TimeUnit.SECONDS);
+      fail("expected the failed batches to fail the call");
+    } catch (ExecutionException expected) {
+    }
+    assertEquals(2, transport.requests("translate"));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.robtheis.aptr.StubTransport;
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.Transport;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class BulkTranslatorTest {
+  private static final String KEY = "0123456789abcdef0123456789a";
+
+  /**
+   * Answers like a {@link StubTransport}, but throws an error for any text containing "boom".
+   */
+  private static final class FailingTransport implements Transport {
+    private final StubTransport stub = new StubTransport();
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+      if (request.getUrl().toString().contains("boom")) {
+        throw new AssertionError("boom");
+      }
+      return stub.execute(request);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+
+  private static BulkTranslator.Item item(final String text) {
+    return new BulkTranslator.Item(text, Language.SPANISH, Language.ENGLISH);
+  }
+
+  @Test
+  public void resultsComeBackInInputOrder() throws Exception {
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(new StubTransport()).build();
+    final List<BulkTranslator.Result> results = new BulkTranslator(client, 2)
+        .translateAll(Arrays.asList(item("uno"), item("dos"), item("tres")));
+    assertEquals(3, results.size());
+    for (int i = 0; i < results.size(); i++) {
+      assertEquals(i, results.get(i).getIndex());
+      assertTrue(results.get(i).isSuccess());
+      assertEquals("hello", results.get(i).getTranslation());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void errorInItemIsReportedAsFailedResult() throws Exception {
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(new FailingTransport()).build();
+    final List<BulkTranslator.Result> results = new BulkTranslator(client, 2)
+        .translateAll(Arrays.asList(item("uno"), item("boom"), item("tres")));
+    assertEquals(3, results.size());
+    assertTrue(results.get(0).isSuccess());
+    assertFalse(results.get(1).isSuccess());
+    assertNull(results.get(1).getTranslation());
+    assertTrue(results.get(1).getError() instanceof AssertionError);
+    assertTrue(results.get(2).isSuccess());
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+public class DocumentSplitterTest {
+  // Splits the text and checks the pieces join back to it, each fits and none splits a surrogate pair
+  private static List<String> split(final String text, final int maxBytes) {
+    final List<String> pieces = DocumentSplitter.split(text, maxBytes, Locale.ENGLISH);
+    final StringBuilder joined = new StringBuilder();
+    for (String piece : pieces) {
+      assertFalse(piece.isEmpty());
+      assertTrue(piece.getBytes(StandardCharsets.UTF_8).length <= maxBytes);
+      assertFalse(Character.isLowSurrogate(piece.charAt(0)));
+      assertFalse(Character.isHighSurrogate(piece.charAt(piece.length() - 1)));
+      joined.append(piece);
+    }
+    assertEquals(text, joined.toString());
+    return pieces;
+  }
+
+  @Test
+  public void textThatFitsIsOnePiece() {
+    assertEquals(Arrays.asList("Hola. Adios."), split("Hola. Adios.", 100));
+    assertTrue(split("", 100).isEmpty());
+  }
+
+  @Test
+  public void splitsAtTheLastParagraphBreakThatFits() {
+    // A later sentence end fits as well, but the blank line wins
+    final String text = "One. Two.\n \nThree. Four. Five six seven.";
+    assertEquals(Arrays.asList("One. Two.\n \n", "Three. Four. Five six seven."), split(text, 30));
+  }
+
+  @Test
+  public void splitsAtTheLastSentenceEndWithoutAParagraphBreak() {
+    // A later space fits as well, but the sentence end wins
+    final String text = "One two three. Four five six. Seven eight nine.";
+    assertEquals(Arrays.asList("One two three. Four five six. ", "Seven eight nine."), split(text, 40));
+  }
+
+  @Test
+  public void splitsAtWhitespaceWithoutASentenceEnd() {
+    assertEquals(Arrays.asList("alpha beta ", "gamma delta"), split("alpha beta gamma delta", 12));
+  }
+
+  @Test
+  public void cutsWordsOnlyAsALastResort() {
+    assertEquals(Arrays.asList("abcd", "efgh", "ij"), split("abcdefghij", 4));
+  }
+
+  @Test
+  public void countsUtf8BytesAndKeepsSurrogatePairsWhole() {
+    assertEquals(Arrays.asList("éé", "éé", "é"), split("ééééé", 5));
+    // Each emoji is two chars and four bytes
+    final String emoji = "😀";
+    assertEquals(Arrays.asList("a" + emoji, emoji, emoji), split("a" + emoji + emoji + emoji, 5));
+    assertEquals(Arrays.asList(emoji, emoji), split(emoji + emoji, 4));
+  }
+
+  @Test
+  public void maxBytesBelowTheLargestCharacterIsRejected() {
+    try {
+      DocumentSplitter.split("abc", 3, Locale.ENGLISH);
+      fail("expected maxBytes below 4 to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void piecesAlwaysJoinBackAndFit() {
+    final String[] words = {"uno", "dos.", "tres", "été", "中文", "😀", "\n\n", "\n", "fin.", "  "};
+    final Random random = new Random(42);
+    for (int run = 0; run < 200; run++) {
+      final StringBuilder text = new StringBuilder();
+      final int length = random.nextInt(60);
+      for (int i = 0; i < length; i++) {
+        text.append(words[random.nextInt(words.length)]).append(random.nextBoolean() ? " " : "");
+      }
+      split(text.toString(), 4 + random.nextInt(40));
+    }
+  }
+}
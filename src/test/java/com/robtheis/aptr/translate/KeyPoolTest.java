@@ -0,0 +1,149 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.ServiceException;
+import com.robtheis.aptr.StubTransport;
+import com.robtheis.aptr.language.Language;
+import org.junit.Test;
+
+public class KeyPoolTest {
+  private static final String FIRST = "0123456789abcdef0123456789a";
+  private static final String SECOND = "0123456789abcdef0123456789b";
+
+  private static ServiceException throttled(final long retryAfterMillis) {
+    return new ServiceException("Too Many Requests", 429, retryAfterMillis);
+  }
+
+  @Test
+  public void keysAreUsedInTurn() {
+    final KeyPool pool = new KeyPool("a", "b", "c");
+    assertEquals("a", pool.acquire());
+    assertEquals("b", pool.acquire());
+    assertEquals("c", pool.acquire());
+    assertEquals("a", pool.acquire());
+    assertEquals(2, pool.getStats().get("a").getRequests());
+    assertEquals(1, pool.getStats().get("c").getRequests());
+  }
+
+  @Test
+  public void throttledKeyIsSkippedUntilItsCooldownEnds() throws Exception {
+    final KeyPool pool = new KeyPool(100, 1000, "a", "b");
+    pool.recordFailure("a", throttled(-1));
+    assertTrue(pool.getStats().get("a").isSidelined());
+    for(int i = 0; i < 4; i++) {
+      assertEquals("b", pool.acquire());
+    }
+    Thread.sleep(200);
+    assertFalse(pool.getStats().get("a").isSidelined());
+    assertEquals("a", pool.acquire());
+  }
+
+  @Test
+  public void otherFailuresAreOnlyCounted() {
+    final KeyPool pool = new KeyPool("a", "b");
+    pool.recordFailure("a", new ServiceException("Internal Server Error", 500, -1));
+    pool.recordFailure("a", new Exception("connection reset"));
+    assertEquals(2, pool.getStats().get("a").getErrors());
+    assertEquals(0, pool.getStats().get("a").getThrottles());
+    assertFalse(pool.getStats().get("a").isSidelined());
+  }
+
+  // When every key is sidelined, the one whose cooldown ends first is used, from whichever
+  // key the turn starts at; the tests below compare cooldowns that way
+  @Test
+  public void allKeysCoolingDownUsesTheOneFreeSoonest() {
+    final KeyPool pool = new KeyPool(1000, 60000, "a", "b");
+    pool.recordFailure("a", throttled(5000));
+    pool.recordFailure("b", throttled(-1));
+    assertEquals("b", pool.acquire());
+    assertEquals("b", pool.acquire());
+    assertEquals(2, pool.getStats().get("b").getRequests());
+    assertTrue(pool.getStats().get("a").isSidelined());
+    assertTrue(pool.getStats().get("b").isSidelined());
+  }
+
+  @Test
+  public void cooldownDoublesWithEachConsecutiveThrottle() {
+    final KeyPool pool = new KeyPool(1000, 60000, "a", "b");
+    // Two throttles in a row sideline a for 2 seconds, longer than b's 1.5
+    pool.recordFailure("a", throttled(-1));
+    pool.recordFailure("a", throttled(-1));
+    pool.recordFailure("b", throttled(1500));
+    assertEquals("b", pool.acquire());
+    assertEquals("b", pool.acquire());
+    // A success ends the run, so the next throttle is back to 1 second
+    pool.recordSuccess("a");
+    pool.recordFailure("a", throttled(-1));
+    assertEquals("a", pool.acquire());
+    assertEquals("a", pool.acquire());
+  }
+
+  @Test
+  public void cooldownIsCappedAtTheMaximum() {
+    final KeyPool pool = new KeyPool(1000, 3000, "a", "b");
+    // Uncapped, the third throttle would sideline a for 4 seconds
+    for(int i = 0; i < 3; i++) {
+      pool.recordFailure("a", throttled(-1));
+    }
+    pool.recordFailure("b", throttled(3500));
+    assertEquals("a", pool.acquire());
+    assertEquals("a", pool.acquire());
+    assertEquals(3, pool.getStats().get("a").getThrottles());
+  }
+
+  @Test
+  public void retryAfterLongerThanTheCooldownIsHonoured() {
+    final KeyPool pool = new KeyPool(1000, 60000, "a", "b");
+    pool.recordFailure("a", throttled(4000));
+    pool.recordFailure("b", throttled(-1));
+    pool.recordFailure("b", throttled(-1));
+    // a's Retry-After outlasts b's doubled cooldown
+    assertEquals("b", pool.acquire());
+    assertEquals("b", pool.acquire());
+  }
+
+  @Test
+  public void throttledResponseSidelinesTheKeyItWasSentWith() throws Exception {
+    final StubTransport transport = new StubTransport();
+    final KeyPool pool = new KeyPool(1000, 60000, FIRST, SECOND);
+    final TranslatorClient client = TranslatorClient.builder().keyPool(pool).transport(transport).build();
+    transport.respond("translate", 429, "{\"responseDetails\":\"slow down\",\"responseStatus\":429}");
+    transport.header("Retry-After", "30");
+    try {
+      client.translate("hola", Language.SPANISH, Language.ENGLISH);
+      fail("expected the throttled response to fail the call");
+    } catch (Exception expected) {
+      assertEquals(429, ServiceException.find(expected).getStatusCode());
+    }
+    assertTrue(pool.getStats().get(FIRST).isSidelined());
+    assertEquals(1, pool.getStats().get(FIRST).getThrottles());
+    transport.respond("translate", 200, StubTransport.TRANSLATION);
+    for(int i = 0; i < 3; i++) {
+      assertEquals("hello", client.translate("hola", Language.SPANISH, Language.ENGLISH));
+    }
+    assertEquals(1, pool.getStats().get(FIRST).getRequests());
+    assertEquals(3, pool.getStats().get(SECOND).getRequests());
+    assertTrue(pool.getStats().get(FIRST).isSidelined());
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.CallOptions;
+import com.robtheis.aptr.language.Language;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+public class MicroBatcherTest {
+
+  /**
+   * One request the batcher sent.
+   */
+  private static final class Sent {
+    final String[] texts;
+    final Language from;
+    final CallOptions call;
+    final CompletableFuture<String[]> response = new CompletableFuture<String[]>();
+
+    Sent(final String[] pTexts, final Language pFrom, final CallOptions pCall) {
+      texts = pTexts;
+      from = pFrom;
+      call = pCall;
+    }
+
+    // Answers each text with itself in upper case
+    void answer() {
+      final String[] translations = new String[texts.length];
+      for (int i = 0; i < texts.length; i++) {
+        translations[i] = texts[i].toUpperCase();
+      }
+      response.complete(translations);
+    }
+  }
+
+  private final List<Sent> sent = new CopyOnWriteArrayList<Sent>();
+
+  private MicroBatcher batcher(final long maxDelayMillis, final int maxItems) {
+    return new MicroBatcher((texts, from, to, call) -> {
+      final Sent request = new Sent(texts, from, call);
+      sent.add(request);
+      return request.response;
+    }, maxDelayMillis, maxItems);
+  }
+
+  @Test
+  public void fullGroupIsSentAtOnce() throws Exception {
+    final MicroBatcher batcher = batcher(60000, 3);
+    final CompletableFuture<String> a = batcher.submit("a", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    final CompletableFuture<String> b = batcher.submit("b", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    assertEquals(0, sent.size());
+    final CompletableFuture<String> c = batcher.submit("c", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    final CompletableFuture<String> d = batcher.submit("d", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    assertEquals(1, sent.size());
+    assertArrayEquals(new String[] {"a", "b", "c"}, sent.get(0).texts);
+    sent.get(0).answer();
+    assertEquals("A", a.get());
+    assertEquals("B", b.get());
+    assertEquals("C", c.get());
+    assertFalse(d.isDone());
+    batcher.flush();
+    assertEquals(2, sent.size());
+    assertArrayEquals(new String[] {"d"}, sent.get(1).texts);
+  }
+
+  @Test
+  public void groupIsSplitBeforeSizeLimit() throws Exception {
+    final MicroBatcher batcher = batcher(60000, 50);
+    final char[] chars = new char[TranslatorClient.MAX_TEXT_BYTES / 2 + 1];
+    Arrays.fill(chars, 'x');
+    final String big = new String(chars);
+    batcher.submit(big, Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.submit(big, Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    assertEquals(1, sent.size());
+    assertEquals(1, sent.get(0).texts.length);
+    batcher.flush();
+    assertEquals(2, sent.size());
+    assertEquals(1, sent.get(1).texts.length);
+  }
+
+  @Test
+  public void pairsAndSettingsGetGroupsOfTheirOwn() throws Exception {
+    final MicroBatcher batcher = batcher(60000, 50);
+    final CallOptions quick = CallOptions.DEFAULT.withReadTimeout(500);
+    batcher.submit("a", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.submit("b", Language.CATALAN, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.submit("c", Language.SPANISH, Language.ENGLISH, quick);
+    batcher.submit("d", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withoutHedging());
+    batcher.submit("e", Language.SPANISH, Language.ENGLISH, quick);
+    batcher.submit("f", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.flush();
+    assertEquals(4, sent.size());
+    for (Sent request : sent) {
+      if (request.from == Language.CATALAN) {
+        assertArrayEquals(new String[] {"b"}, request.texts);
+      } else if (request.call.getReadTimeout() == 500) {
+        assertArrayEquals(new String[] {"c", "e"}, request.texts);
+      } else if (!request.call.isHedging()) {
+        assertArrayEquals(new String[] {"d"}, request.texts);
+      } else {
+        assertArrayEquals(new String[] {"a", "f"}, request.texts);
+      }
+    }
+  }
+
+  @Test
+  public void groupIsSentWithLatestDeadline() throws Exception {
+    final MicroBatcher batcher = batcher(60000, 50);
+    batcher.submit("a", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withDeadlineAfter(1000));
+    batcher.submit("b", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withDeadlineAfter(60000));
+    batcher.submit("c", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withDeadlineAfter(2000));
+    batcher.flush();
+    assertEquals(1, sent.size());
+    assertTrue(sent.get(0).call.remainingNanos() > TimeUnit.SECONDS.toNanos(30));
+
+    batcher.submit("d", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withDeadlineAfter(1000));
+    batcher.submit("e", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.flush();
+    assertEquals(2, sent.size());
+    assertFalse(sent.get(1).call.hasDeadline());
+  }
+
+  @Test
+  public void eachCallerWaitsOnlyUntilItsOwnDeadline() throws Exception {
+    final MicroBatcher batcher = batcher(60000, 50);
+    final CompletableFuture<String> hurried = batcher.submit("a", Language.SPANISH, Language.ENGLISH,
+        CallOptions.DEFAULT.withDeadlineAfter(100));
+    final CompletableFuture<String> patient = batcher.submit("b", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.flush();
+    try {
+      hurried.get(5, TimeUnit.SECONDS);
+      fail("expected the deadline to pass");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+    assertFalse(patient.isDone());
+    sent.get(0).answer();
+    assertEquals("B", patient.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void openGroupIsSentAfterMaxDelay() throws Exception {
+    final MicroBatcher batcher = batcher(20, 50);
+    final CompletableFuture<String> a = batcher.submit("a", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.submit("b", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withReadTimeout(500));
+    final long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (sent.size() < 2 && System.nanoTime() < giveUp) {
+      Thread.sleep(5);
+    }
+    assertEquals(2, sent.size());
+    for (Sent request : sent) {
+      request.answer();
+    }
+    assertEquals("A", a.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void failedRequestFailsEveryCaller() throws Exception {
+    final MicroBatcher batcher = batcher(60000, 50);
+    final CompletableFuture<String> a = batcher.submit("a", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    final CompletableFuture<String> b = batcher.submit("b", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT);
+    batcher.flush();
+    final Exception error = new Exception("boom");
+    sent.get(0).response.completeExceptionally(error);
+    for (CompletableFuture<String> result : Arrays.asList(a, b)) {
+      try {
+        result.get();
+        fail("expected the request's exception");
+      } catch (ExecutionException ex) {
+        assertEquals(error, ex.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PairGraphTest {
+  private static final Language CA = Language.CATALAN;
+  private static final Language ES = Language.SPANISH;
+  private static final Language EN = Language.ENGLISH;
+  private static final Language FR = Language.FRENCH;
+  private static final Language IT = Language.ITALIAN;
+  private static final Language PT = Language.PORTUGUESE;
+  private static final Language EO = Language.ESPERANTO;
+
+  private static LanguagePair pair(final Language from, final Language to) {
+    return LanguagePair.of(from, to);
+  }
+
+  private static PairGraph graph(final LanguagePair... pairs) {
+    return new PairGraph(Arrays.asList(pairs));
+  }
+
+  @Test
+  public void supportedPairIsASingleHop() {
+    final PairGraph graph = graph(pair(ES, EN), pair(EN, FR));
+    assertEquals(Arrays.asList(pair(ES, EN)), graph.route(ES, EN));
+  }
+
+  @Test
+  public void routesGoThroughPivotsUpToThreeHops() {
+    final PairGraph graph = graph(pair(CA, ES), pair(ES, EN), pair(EN, FR), pair(FR, EO));
+    assertEquals(Arrays.asList(pair(CA, ES), pair(ES, EN)), graph.route(CA, EN));
+    assertEquals(Arrays.asList(pair(CA, ES), pair(ES, EN), pair(EN, FR)), graph.route(CA, FR));
+    // Four hops is one too many
+    assertNull(graph.route(CA, EO));
+    assertEquals(Arrays.asList(pair(ES, EN), pair(EN, FR), pair(FR, EO)), graph.route(ES, EO));
+  }
+
+  @Test
+  public void shortestRouteWins() {
+    final PairGraph graph = graph(pair(CA, ES), pair(ES, EN), pair(EN, PT), pair(CA, IT), pair(IT, PT));
+    assertEquals(Arrays.asList(pair(CA, IT), pair(IT, PT)), graph.route(CA, PT));
+  }
+
+  @Test
+  public void betterConnectedPivotWinsAmongRoutesOfTheSameLength() {
+    // Spanish is paired with more languages than Italian
+    final PairGraph viaSpanish = graph(pair(CA, IT), pair(CA, ES), pair(IT, PT), pair(ES, PT), pair(EN, ES), pair(ES, FR));
+    assertEquals(Arrays.asList(pair(CA, ES), pair(ES, PT)), viaSpanish.route(CA, PT));
+    // The same routes, with Italian the better connected
+    final PairGraph viaItalian = graph(pair(CA, ES), pair(CA, IT), pair(ES, PT), pair(IT, PT), pair(EN, IT), pair(IT, FR));
+    assertEquals(Arrays.asList(pair(CA, IT), pair(IT, PT)), viaItalian.route(CA, PT));
+  }
+
+  @Test
+  public void pairsOnlyGoOneWay() {
+    final PairGraph graph = graph(pair(ES, EN), pair(EN, FR));
+    assertNull(graph.route(EN, ES));
+    assertNull(graph.route(FR, ES));
+    assertNull(graph.route(PT, EN));
+  }
+
+  @Test
+  public void routesAreWorkedOutOnce() {
+    final PairGraph graph = graph(pair(CA, ES), pair(ES, EN));
+    final List<LanguagePair> route = graph.route(CA, EN);
+    assertSame(route, graph.route(CA, EN));
+    assertNull(graph.route(EN, CA));
+    assertNull(graph.route(EN, CA));
+  }
+
+  @Test
+  public void routeToTheSameLanguageIsRejected() {
+    try {
+      graph(pair(ES, EN)).route(ES, ES);
+      fail("expected a route from a language to itself to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
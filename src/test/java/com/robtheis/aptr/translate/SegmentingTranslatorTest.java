@@ -0,0 +1,77 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.robtheis.aptr.CallOptions;
+import com.robtheis.aptr.StubTransport;
+import com.robtheis.aptr.cache.LruTranslationCache;
+import com.robtheis.aptr.language.Language;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class SegmentingTranslatorTest {
+  private static final String KEY = "0123456789abcdef0123456789a";
+
+  private final StubTransport transport = new StubTransport();
+
+  private TranslatorClient.Builder builder() {
+    transport.echo();
+    return TranslatorClient.builder().key(KEY).transport(transport);
+  }
+
+  private List<String> sent() {
+    final List<String> texts = new ArrayList<String>(transport.texts);
+    Collections.sort(texts);
+    return texts;
+  }
+
+  @Test
+  public void translationsKeepTheWhitespaceAroundSentences() throws Exception {
+    final SegmentingTranslator translator = new SegmentingTranslator(builder().build());
+    final String[] texts = {"Hola.  Adios.\n\nHola.", "  Hola. ", null, "", " \n "};
+    final String[] expected = {"HOLA.  ADIOS.\n\nHOLA.", "  HOLA. ", null, "", " \n "};
+    assertArrayEquals(expected, translator.translate(texts, Language.SPANISH, Language.ENGLISH));
+    assertArrayEquals(expected, translator.translateAsync(texts, Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT)
+        .get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void eachDistinctSentenceIsSentOnce() throws Exception {
+    final SegmentingTranslator translator = new SegmentingTranslator(builder().build());
+    final String[] texts = {"Hola. Gracias.", "Gracias. Hola.", "Hola. Hola. Adios."};
+    final String[] results = translator.translate(texts, Language.SPANISH, Language.ENGLISH);
+    assertArrayEquals(new String[] {"HOLA. GRACIAS.", "GRACIAS. HOLA.", "HOLA. HOLA. ADIOS."}, results);
+    assertEquals(Arrays.asList("Adios.", "Gracias.", "Hola."), sent());
+    assertEquals(1, transport.requests("translate"));
+  }
+
+  @Test
+  public void sentencesInTheCacheAreNotSentAgain() throws Exception {
+    final SegmentingTranslator translator = new SegmentingTranslator(builder().cache(new LruTranslationCache(1 << 20, 0)).build());
+    translator.translate("Hola. Gracias.", Language.SPANISH, Language.ENGLISH);
+    assertEquals("GRACIAS. ADIOS. HOLA.", translator.translate("Gracias. Adios. Hola.", Language.SPANISH, Language.ENGLISH));
+    assertEquals(Arrays.asList("Adios.", "Gracias.", "Hola."), sent());
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.CallOptions;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class SingleFlightTest {
+  private final SingleFlight<String, String> flights = new SingleFlight<String, String>();
+  private final AtomicInteger calls = new AtomicInteger();
+
+  @Test
+  public void concurrentCallsShareOneResult() throws Exception {
+    final CompletableFuture<String> leader = new CompletableFuture<String>();
+    final CompletableFuture<String> first = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    final CompletableFuture<String> second = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    leader.complete("v");
+    assertEquals("v", first.get());
+    assertEquals("v", second.get());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void differentSettingsAreNotCoalesced() throws Exception {
+    final CompletableFuture<String> leader = new CompletableFuture<String>();
+    flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    flights.executeAsync("k", CallOptions.DEFAULT.withReadTimeout(100), () -> started(leader));
+    assertEquals(2, calls.get());
+    leader.complete("v");
+  }
+
+  @Test
+  public void cancellingOneCallerLeavesTheOthers() throws Exception {
+    final CompletableFuture<String> leader = new CompletableFuture<String>();
+    final CompletableFuture<String> first = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    final CompletableFuture<String> second = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    final CompletableFuture<String> third = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    first.cancel(false);
+    second.obtrudeValue("changed");
+    leader.complete("v");
+    assertEquals("v", third.get());
+    try {
+      first.get();
+      fail("expected the cancelled future to stay cancelled");
+    } catch (CancellationException expected) {
+      // Only the caller that cancelled sees it
+    }
+  }
+
+  @Test
+  public void asyncFollowerWaitsNoLongerThanItsDeadline() throws Exception {
+    final CompletableFuture<String> leader = new CompletableFuture<String>();
+    final CompletableFuture<String> first = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    final CompletableFuture<String> follower = flights.executeAsync("k", CallOptions.DEFAULT.withDeadlineAfter(50), () -> started(leader));
+    try {
+      follower.get(5, TimeUnit.SECONDS);
+      fail("expected the follower's deadline to pass");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+    assertFalse(first.isDone());
+    leader.complete("v");
+    assertEquals("v", first.get());
+  }
+
+  @Test
+  public void syncFollowerWaitsNoLongerThanItsDeadline() throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Thread leader = new Thread(() -> {
+      try {
+        flights.execute("k", CallOptions.DEFAULT, () -> {
+          running.countDown();
+          release.await();
+          return "v";
+        });
+      } catch (Exception ignored) {
+        // Not under test
+      }
+    });
+    leader.start();
+    running.await();
+    final long start = System.nanoTime();
+    try {
+      flights.execute("k", CallOptions.DEFAULT.withDeadlineAfter(50), () -> "mine");
+      fail("expected the follower's deadline to pass");
+    } catch (TimeoutException expected) {
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    } finally {
+      release.countDown();
+      leader.join();
+    }
+  }
+
+  @Test
+  public void followerRunsAgainWhenOnlyTheLeaderTimedOut() throws Exception {
+    final CompletableFuture<String> leader = new CompletableFuture<String>();
+    final CompletableFuture<String> first = flights.executeAsync("k", CallOptions.DEFAULT.withDeadlineAfter(1000), () -> started(leader));
+    final CompletableFuture<String> follower = flights.executeAsync("k", CallOptions.DEFAULT,
+        () -> started(CompletableFuture.completedFuture("retried")));
+    leader.completeExceptionally(new TimeoutException("leader's deadline"));
+    assertEquals("retried", follower.get(5, TimeUnit.SECONDS));
+    assertTrue(first.isCompletedExceptionally());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void syncFollowerRunsAgainWhenOnlyTheLeaderTimedOut() throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Thread leader = new Thread(() -> {
+      try {
+        flights.execute("k", CallOptions.DEFAULT, () -> {
+          running.countDown();
+          release.await();
+          throw new Exception("wrapped", new TimeoutException("leader's deadline"));
+        });
+      } catch (Exception ignored) {
+        // Expected
+      }
+    });
+    leader.start();
+    running.await();
+    final CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> {
+      try {
+        return flights.execute("k", CallOptions.DEFAULT, () -> "retried");
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    Thread.sleep(50);
+    release.countDown();
+    assertEquals("retried", follower.get(5, TimeUnit.SECONDS));
+    leader.join();
+  }
+
+  @Test
+  public void otherFailuresAreShared() throws Exception {
+    final CompletableFuture<String> leader = new CompletableFuture<String>();
+    flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    final CompletableFuture<String> follower = flights.executeAsync("k", CallOptions.DEFAULT, () -> started(leader));
+    leader.completeExceptionally(new IllegalStateException("boom"));
+    try {
+      follower.get();
+      fail("expected the leader's exception");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof IllegalStateException);
+    }
+    assertEquals(1, calls.get());
+  }
+
+  private CompletableFuture<String> started(final CompletableFuture<String> future) {
+    calls.incrementAndGet();
+    return future;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.robtheis.aptr.StubTransport;
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.transport.Transport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class TranslateTest {
+  private final Transport original = Translate.getTransport();
+
+  @After
+  public void restoreDefaults() {
+    Translate.setTransport(original);
+    Translate.setMicroBatching(0, 0);
+  }
+
+  @Test
+  public void changingASettingRebuildsTheSharedClient() throws Exception {
+    final StubTransport first = new StubTransport();
+    final StubTransport second = new StubTransport();
+    Translate.setKey("0123456789abcdef0123456789a");
+    Translate.setTransport(first);
+    assertEquals("hello", Translate.execute("hola", Language.SPANISH, Language.ENGLISH));
+    Translate.setTransport(second);
+    assertEquals("hello", Translate.execute("hola", Language.SPANISH, Language.ENGLISH));
+    assertEquals(1, first.requests.get());
+    assertEquals(1, second.requests.get());
+  }
+
+  @Test
+  public void changingASettingShutsDownTheReplacedClient() throws Exception {
+    final StubTransport transport = new StubTransport();
+    Translate.setKey("0123456789abcdef0123456789a");
+    Translate.setTransport(transport);
+    Translate.setMicroBatching(60000, 50);
+    final CompletableFuture<String> held = Translate.executeAsync("hola", Language.SPANISH, Language.ENGLISH);
+    Thread.sleep(50);
+    assertFalse(held.isDone());
+    Translate.setMicroBatching(0, 0);
+    // The next call builds a new client, and the old one sends what it held back
+    assertEquals("hello", Translate.executeAsync("adios", Language.SPANISH, Language.ENGLISH).get(5, TimeUnit.SECONDS));
+    assertEquals("hello", held.get(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.robtheis.aptr.CallOptions;
+import com.robtheis.aptr.StubTransport;
+import com.robtheis.aptr.language.Language;
+import com.robtheis.aptr.language.LanguagePair;
+import com.robtheis.aptr.metrics.InMemoryMetricsRegistry;
+import com.robtheis.aptr.metrics.RequestStats;
+import com.robtheis.aptr.transport.HttpRequest;
+import com.robtheis.aptr.transport.HttpResponse;
+import com.robtheis.aptr.transport.Transport;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class TranslatorClientTest {
+  private static final String KEY = "0123456789abcdef0123456789a";
+  private static final String PAIRS = "{\"responseData\":[{\"sourceLanguage\":\"es\",\"targetLanguage\":\"en\"}],"
+      + "\"responseStatus\":200}";
+
+  private final StubTransport transport = new StubTransport();
+
+  private TranslatorClient.Builder builder() {
+    return TranslatorClient.builder().key(KEY).transport(transport);
+  }
+
+  @Test
+  public void clientsKeepTheirOwnSettings() throws Exception {
+    final StubTransport other = new StubTransport();
+    other.respond(200, "{\"responseData\":{\"translatedText\":\"hi\"},\"responseStatus\":200}");
+    final TranslatorClient first = builder().build();
+    final TranslatorClient second = TranslatorClient.builder().key(KEY).transport(other)
+        .endpoint("http://localhost/json").build();
+    assertEquals("hello", first.translate("hola", Language.SPANISH, Language.ENGLISH));
+    assertEquals("hi", second.translate("hola", Language.SPANISH, Language.ENGLISH));
+    assertEquals(1, transport.requests.get());
+    assertEquals(1, other.requests.get());
+    assertEquals("http://localhost/json/", second.getEndpoint());
+  }
+
+  @Test
+  public void shutdownSendsTextsHeldForBatching() throws Exception {
+    final TranslatorClient client = builder().microBatching(60000, 50).build();
+    final CompletableFuture<String> result = client.translateAsync("hola", Language.SPANISH, Language.ENGLISH);
+    Thread.sleep(50);
+    assertFalse(result.isDone());
+    assertEquals(0, transport.requests.get());
+    client.shutdown();
+    assertEquals("hello", result.get(5, TimeUnit.SECONDS));
+    assertEquals(1, transport.requests.get());
+  }
+
+  @Test
+  public void replacementTakesOverSupportedPairs() throws Exception {
+    transport.respond("listPairs", 200, PAIRS);
+    final TranslatorClient first = builder().validatePairs(true).build();
+    assertEquals("hello", first.translate("hola", Language.SPANISH, Language.ENGLISH));
+    final TranslatorClient second = builder().validatePairs(true).coalescing(true).replacing(first).build();
+    assertEquals("hello", second.translate("hola", Language.SPANISH, Language.ENGLISH));
+    assertSame(first.getSupportedPairs(), second.getSupportedPairs());
+    assertEquals(1, transport.requests("listPairs"));
+    // Later refreshes go through the new client
+    second.getSupportedPairs().refresh();
+    assertEquals(2, transport.requests("listPairs"));
+  }
+
+  @Test
+  public void replacementForAnotherEndpointFetchesItsOwnPairs() throws Exception {
+    transport.respond("listPairs", 200, PAIRS);
+    final TranslatorClient first = builder().validatePairs(true).build();
+    first.translate("hola", Language.SPANISH, Language.ENGLISH);
+    final TranslatorClient second = builder().validatePairs(true).endpoint("http://localhost/json/")
+        .replacing(first).build();
+    assertNotSame(first.getSupportedPairs(), second.getSupportedPairs());
+    second.translate("hola", Language.SPANISH, Language.ENGLISH);
+    assertEquals(2, transport.requests("listPairs"));
+  }
+
+  @Test
+  public void unsupportedPairIsRejectedWithoutRoundTrip() throws Exception {
+    transport.respond("listPairs", 200, PAIRS);
+    final TranslatorClient client = builder().validatePairs(true).build();
+    try {
+      client.translate("hello", Language.ENGLISH, Language.SPANISH);
+      fail("expected en|es to be rejected");
+    } catch (RuntimeException expected) {
+      assertTrue(expected.getMessage().startsWith("UNSUPPORTED_LANGUAGE_PAIR"));
+    }
+    assertEquals(1, transport.requests.get());
+  }
+
+  @Test
+  public void pairsThatCannotBeFetchedAllowEveryPair() throws Exception {
+    transport.respond("listPairs", 500, "{}");
+    final TranslatorClient client = builder().validatePairs(true).build();
+    assertEquals("hello", client.translate("hello", Language.ENGLISH, Language.SPANISH));
+  }
+
+  // Holds the listPairs response until release() is called; translations are answered at once
+  private static final class HeldPairsTransport implements Transport {
+    final StubTransport stub = new StubTransport();
+    final CompletableFuture<Void> released = new CompletableFuture<Void>();
+
+    void release() {
+      released.complete(null);
+    }
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+      if(request.getUrl().getPath().endsWith("listPairs")) {
+        throw new IOException("the pairs are only fetched asynchronously");
+      }
+      return stub.execute(request);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor executor) {
+      if(request.getUrl().getPath().endsWith("listPairs")) {
+        return released.thenCompose(done -> stub.executeAsync(request, executor));
+      }
+      return stub.executeAsync(request, executor);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+
+  @Test
+  public void asyncCallsChainOnOneLoadOfThePairs() throws Exception {
+    final HeldPairsTransport held = new HeldPairsTransport();
+    held.stub.respond("listPairs", 200, PAIRS);
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(held).validatePairs(true).build();
+    final CompletableFuture<String> supported = client.translateAsync("hola", Language.SPANISH, Language.ENGLISH);
+    final CompletableFuture<String> unsupported = client.translateAsync("hello", Language.ENGLISH, Language.SPANISH);
+    Thread.sleep(50);
+    assertFalse(supported.isDone());
+    assertFalse(unsupported.isDone());
+    held.release();
+    assertEquals("hello", supported.get(5, TimeUnit.SECONDS));
+    try {
+      unsupported.get(5, TimeUnit.SECONDS);
+      fail("expected en|es to be rejected");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause().getMessage().startsWith("UNSUPPORTED_LANGUAGE_PAIR"));
+    }
+    assertEquals(1, held.stub.requests("listPairs"));
+    assertEquals(1, held.stub.requests("translate"));
+  }
+
+  @Test
+  public void waitForThePairsIsBoundByTheDeadline() throws Exception {
+    final HeldPairsTransport held = new HeldPairsTransport();
+    held.stub.respond("listPairs", 200, PAIRS);
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(held).validatePairs(true).build();
+    final CompletableFuture<String> result = client.translateAsync("hola", Language.SPANISH, Language.ENGLISH,
+        CallOptions.DEFAULT.withDeadlineAfter(100));
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail("expected the deadline to pass while the pairs were loading");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause().getCause() instanceof TimeoutException);
+    }
+    try {
+      client.translate("hola", Language.SPANISH, Language.ENGLISH, CallOptions.DEFAULT.withDeadlineAfter(100));
+      fail("expected the deadline to pass while the pairs were loading");
+    } catch (Exception expected) {
+      assertTrue(expected.getCause() instanceof TimeoutException);
+    }
+    assertEquals(0, held.stub.requests("translate"));
+    // The load carries on past the deadline, for later calls
+    held.release();
+    assertEquals("hello", client.translateAsync("hola", Language.SPANISH, Language.ENGLISH).get(5, TimeUnit.SECONDS));
+    assertEquals(1, held.stub.requests("listPairs"));
+  }
+
+  @Test
+  public void sameLanguageIsSentAsIs() throws Exception {
+    transport.respond("listPairs", 200, PAIRS);
+    final TranslatorClient client = builder().validatePairs(true).pivoting(true).build();
+    assertEquals("hello", client.translate("hello", Language.ENGLISH, Language.ENGLISH));
+    assertEquals("hello", client.translate(new String[] {"hi"}, Language.ENGLISH, Language.ENGLISH)[0]);
+    assertEquals(2, transport.requests("translate"));
+  }
+
+  @Test
+  public void listPairsSkipsEntriesThatAreNotPairs() throws Exception {
+    transport.respond("listPairs", 200, "{\"responseData\":["
+        + "{\"sourceLanguage\":\"en\",\"targetLanguage\":\"en\"},"
+        + "{\"sourceLanguage\":\"xx\",\"targetLanguage\":\"en\"},"
+        + "{\"sourceLanguage\":\"es\"},"
+        + "{\"sourceLanguage\":\"es\",\"targetLanguage\":\"en\"}],\"responseStatus\":200}");
+    final Set<LanguagePair> pairs = builder().build().listPairs();
+    assertEquals(Collections.singleton(LanguagePair.of(Language.SPANISH, Language.ENGLISH)), pairs);
+  }
+
+  @Test
+  public void requestSizeIsTheLengthOnTheWire() throws Exception {
+    final AtomicLong sent = new AtomicLong();
+    final Transport measuring = new Transport() {
+      @Override
+      public HttpResponse execute(final HttpRequest request) throws IOException {
+        sent.addAndGet(request.getUrl().toString().length() + (request.getBody() != null ? request.getBody().getContentLength() : 0));
+        return transport.execute(request);
+      }
+
+      @Override
+      public void shutdown() {
+      }
+    };
+    final InMemoryMetricsRegistry metrics = new InMemoryMetricsRegistry();
+    final TranslatorClient client = TranslatorClient.builder().key(KEY).transport(measuring).metrics(metrics).build();
+    final char[] longText = new char[3000];
+    Arrays.fill(longText, '\u00e9');
+    // A GET, then a POST for text too long for the URL
+    client.translate("hola y adios", Language.SPANISH, Language.ENGLISH);
+    client.translate(new String(longText), Language.SPANISH, Language.ENGLISH);
+    long counted = 0;
+    for(RequestStats stats : metrics.getStats()) {
+      counted += stats.getRequestBytes();
+    }
+    assertEquals(sent.get(), counted);
+  }
+}
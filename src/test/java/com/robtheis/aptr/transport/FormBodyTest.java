@@ -0,0 +1,76 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+
+public class FormBodyTest {
+
+  private static String expected(final String name, final String value) throws Exception {
+    return URLEncoder.encode(name, "UTF-8") + "=" + URLEncoder.encode(value, "UTF-8");
+  }
+
+  private static String written(final FormBody body) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  public void encodesLikeUrlEncoder() throws Exception {
+    final String value = "Hola, mundo! ¿Qué tal? 日本語 😀 a+b=c&d";
+    final FormBody body = new FormBody().add("q", value);
+    assertEquals(expected("q", value), written(body));
+    assertEquals(written(body).length(), body.getContentLength());
+  }
+
+  @Test
+  public void surrogatePairAcrossAChunkBoundaryStaysWhole() throws Exception {
+    final StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 255; i++) {
+      value.append('a');
+    }
+    value.append("😀").append("tail");
+    final FormBody body = new FormBody().add("q", value);
+    assertEquals(expected("q", value.toString()), written(body));
+  }
+
+  @Test
+  public void unpairedSurrogateIsEncodedAsQuestionMark() throws Exception {
+    final String value = "a\uD83Db\uDE00";
+    assertEquals(expected("q", value), written(new FormBody().add("q", value)));
+  }
+
+  @Test
+  public void longRandomTextMatchesUrlEncoder() throws Exception {
+    final Random random = new Random(42);
+    final StringBuilder value = new StringBuilder();
+    while (value.length() < 5000) {
+      value.appendCodePoint(random.nextInt(4) == 0 ? 0x10000 + random.nextInt(0x1000) : 0x20 + random.nextInt(0x3000));
+    }
+    final FormBody body = new FormBody().addEncoded("key=abc").add("q", value).add("q", "x y");
+    assertEquals("key=abc&" + expected("q", value.toString()) + "&q=x+y", written(body));
+    assertEquals(written(body), body.toString());
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpClientTransportTest {
+
+  /**
+   * Counts the blocking requests handed to it, and sends them through a pool.
+   */
+  private static final class CountingTransport implements Transport {
+    private final PooledTransport pool = new PooledTransport();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger shutdowns = new AtomicInteger();
+
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+      requests.incrementAndGet();
+      return pool.execute(request);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request, final Executor executor) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {
+      shutdowns.incrementAndGet();
+      pool.shutdown();
+    }
+  }
+
+  private HttpServer server;
+  private final AtomicInteger served = new AtomicInteger();
+  private volatile long delayMillis;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      final int n = served.getAndIncrement();
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException ignored) {
+        // Answer now
+      }
+      final byte[] body = ("r" + n).getBytes(StandardCharsets.US_ASCII);
+      exchange.sendResponseHeaders(200, body.length);
+      final OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private HttpRequest request(final int readTimeout) throws IOException {
+    final HttpRequest request = new HttpRequest("GET", new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/json/translate"));
+    request.setConnectTimeout(1000);
+    request.setReadTimeout(readTimeout);
+    return request;
+  }
+
+  private static String read(final HttpResponse response) throws IOException {
+    try {
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      final InputStream in = response.getBody();
+      int b;
+      while ((b = in.read()) != -1) {
+        body.write(b);
+      }
+      return body.toString("US-ASCII");
+    } finally {
+      response.close();
+    }
+  }
+
+  @Test
+  public void withoutFallbackEverythingGoesThroughHttpClient() throws Exception {
+    final HttpClientTransport transport = new HttpClientTransport();
+    try {
+      assertEquals("r0", read(transport.execute(request(5000))));
+      assertEquals("r1", read(transport.execute(request(5000))));
+      assertEquals("r2", read(transport.executeAsync(request(5000), null).get()));
+    } finally {
+      transport.shutdown();
+    }
+  }
+
+  @Test
+  public void blockingRequestsToHttp1ServerSwitchToFallback() throws Exception {
+    final CountingTransport fallback = new CountingTransport();
+    final HttpClientTransport transport = new HttpClientTransport(HttpClient.Version.HTTP_2, null, fallback);
+    assertEquals("r0", read(transport.execute(request(5000))));
+    assertEquals(0, fallback.requests.get());
+    assertEquals("r1", read(transport.execute(request(5000))));
+    assertEquals(1, fallback.requests.get());
+    // Asynchronous requests stay on the HTTP client
+    assertEquals("r2", read(transport.executeAsync(request(5000), null).get()));
+    assertEquals(1, fallback.requests.get());
+    transport.shutdown();
+    assertEquals(1, fallback.shutdowns.get());
+  }
+
+  @Test
+  public void readTimeoutHoldsEachRequestOnSharedClient() throws Exception {
+    final HttpClientTransport transport = new HttpClientTransport(HttpClient.Version.HTTP_1_1, 10000, null, null);
+    try {
+      assertEquals("r0", read(transport.execute(request(5000))));
+      delayMillis = 2000;
+      try {
+        read(transport.execute(request(200)));
+        fail("expected a timeout");
+      } catch (IOException expected) {
+        // The client's own connect timeout does not stretch the request's limit
+      }
+    } finally {
+      transport.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeConnectTimeoutIsRejected() {
+    new HttpClientTransport(HttpClient.Version.HTTP_2, -1, null, null);
+  }
+
+  @Test
+  public void slowBodyIsBoundByReadTimeout() throws Exception {
+    server.createContext("/slow", exchange -> {
+      exchange.sendResponseHeaders(200, 10);
+      final OutputStream out = exchange.getResponseBody();
+      try {
+        for (int i = 0; i < 10; i++) {
+          out.write('x');
+          out.flush();
+          Thread.sleep(300);
+        }
+        out.close();
+      } catch (InterruptedException | IOException ignored) {
+        // The client gave up
+      }
+    });
+    final HttpClientTransport transport = new HttpClientTransport();
+    try {
+      for (int attempt = 0; attempt < 2; attempt++) {
+        final HttpRequest request = new HttpRequest("GET", new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/slow"));
+        request.setReadTimeout(500);
+        final long start = System.nanoTime();
+        try {
+          if (attempt == 0) {
+            read(transport.execute(request));
+          } else {
+            read(transport.executeAsync(request, null).get());
+          }
+          fail("expected a timeout");
+        } catch (HttpTimeoutException expected) {
+          // Blocking
+        } catch (ExecutionException ex) {
+          assertTrue(ex.getCause() instanceof HttpTimeoutException);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+      }
+    } finally {
+      transport.shutdown();
+    }
+  }
+}
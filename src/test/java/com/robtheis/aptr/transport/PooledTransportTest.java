@@ -0,0 +1,286 @@
+/*
+ * apertium-translator-java-api
+ *
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.robtheis.aptr.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledTransportTest {
+
+  /**
+   * What the server does on one connection, given how many connections came before it.
+   */
+  private interface Script {
+    void run(int connection, Socket socket) throws IOException;
+  }
+
+  private ServerSocket server;
+  private Thread acceptor;
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger requests = new AtomicInteger();
+  private PooledTransport transport;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new ServerSocket(0);
+    transport = new PooledTransport();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    transport.shutdown();
+    server.close();
+    if (acceptor != null) {
+      acceptor.join(5000);
+    }
+  }
+
+  private void serve(final Script script) {
+    acceptor = new Thread(() -> {
+      while (true) {
+        final Socket socket;
+        try {
+          socket = server.accept();
+        } catch (IOException ex) {
+          return;
+        }
+        final int connection = connections.getAndIncrement();
+        final Thread handler = new Thread(() -> {
+          try {
+            script.run(connection, socket);
+          } catch (IOException ignored) {
+            // The client went away
+          } finally {
+            try {
+              socket.close();
+            } catch (IOException ignored) {
+              // Already closed
+            }
+          }
+        });
+        handler.setDaemon(true);
+        handler.start();
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  // Reads one request, head and body, or returns false if the client closed the connection
+  private boolean readRequest(final InputStream in) throws IOException {
+    int length = 0;
+    String line;
+    boolean first = true;
+    while ((line = PooledTransport.readLine(in)) != null && line.length() != 0) {
+      if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+        length = Integer.parseInt(line.substring(15).trim());
+      }
+      first = false;
+    }
+    if (line == null && first) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      in.read();
+    }
+    requests.incrementAndGet();
+    return true;
+  }
+
+  private static void respond(final OutputStream out, final String body) throws IOException {
+    final byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+    out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + bytes.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.write(bytes);
+    out.flush();
+  }
+
+  private String get(final HttpRequest request) throws IOException {
+    final HttpResponse response = transport.execute(request);
+    try {
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      final InputStream in = response.getBody();
+      int b;
+      while ((b = in.read()) != -1) {
+        body.write(b);
+      }
+      return body.toString("US-ASCII");
+    } finally {
+      response.close();
+    }
+  }
+
+  private HttpRequest request(final String method) throws IOException {
+    final HttpRequest request = new HttpRequest(method, new URL("http://127.0.0.1:" + server.getLocalPort() + "/json/translate"));
+    request.setReadTimeout(5000);
+    return request;
+  }
+
+  @Test
+  public void keepAliveConnectionIsReused() throws IOException {
+    serve((connection, socket) -> {
+      int served = 0;
+      while (readRequest(socket.getInputStream())) {
+        respond(socket.getOutputStream(), "r" + served++);
+      }
+    });
+    assertEquals("r0", get(request("GET")));
+    assertEquals("r1", get(request("GET")));
+    assertEquals(1, transport.getPoolStats().getCreated());
+    assertEquals(1, transport.getPoolStats().getReused());
+  }
+
+  @Test
+  public void staleConnectionIsRetriedOnNewConnection() throws IOException {
+    // The server answers once on each connection, then drops it as if its keep-alive ran out
+    serve((connection, socket) -> {
+      if (readRequest(socket.getInputStream())) {
+        respond(socket.getOutputStream(), "c" + connection);
+      }
+    });
+    assertEquals("c0", get(request("GET")));
+    assertEquals("c1", get(request("GET")));
+    assertEquals(2, transport.getPoolStats().getCreated());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void staleConnectionIsNotRetriedForNonIdempotentRequest() throws IOException {
+    serve((connection, socket) -> {
+      if (readRequest(socket.getInputStream())) {
+        respond(socket.getOutputStream(), "c" + connection);
+      }
+    });
+    assertEquals("c0", get(request("GET")));
+    final HttpRequest post = request("POST");
+    post.setBody(new FormBody().add("q", "hola"));
+    try {
+      get(post);
+      fail("a POST on a dropped connection must not be resent");
+    } catch (IOException expected) {
+      // The caller decides whether to try again
+    }
+    assertEquals(1, connections.get());
+  }
+
+  @Test
+  public void readTimeoutOnReusedConnectionIsNotRetried() throws IOException {
+    // The second request on the connection is read but never answered
+    serve((connection, socket) -> {
+      if (readRequest(socket.getInputStream())) {
+        respond(socket.getOutputStream(), "c" + connection);
+      }
+      readRequest(socket.getInputStream());
+      try {
+        Thread.sleep(2000);
+      } catch (InterruptedException ignored) {
+        // Done waiting
+      }
+    });
+    assertEquals("c0", get(request("GET")));
+    final HttpRequest slow = request("GET");
+    slow.setReadTimeout(200);
+    try {
+      get(slow);
+      fail("expected a read timeout");
+    } catch (SocketTimeoutException expected) {
+      // A slow server is not a dropped connection
+    }
+    assertEquals(1, connections.get());
+  }
+
+  @Test
+  public void waitForBusyRouteIsBoundByConnectTimeout() throws Exception {
+    // The only connection the route may have is held by a request the server never answers
+    serve((connection, socket) -> {
+      readRequest(socket.getInputStream());
+      try {
+        Thread.sleep(2000);
+      } catch (InterruptedException ignored) {
+        // Done waiting
+      }
+    });
+    final PooledTransport single = new PooledTransport(1, 1, 5000, 0);
+    final Thread holder = new Thread(() -> {
+      try {
+        single.execute(request("GET")).close();
+      } catch (IOException ignored) {
+        // Timed out or shut down
+      }
+    });
+    holder.setDaemon(true);
+    holder.start();
+    while (single.getPoolStats().getLeased() == 0) {
+      Thread.sleep(5);
+    }
+    final HttpRequest waiting = request("GET");
+    waiting.setConnectTimeout(200);
+    final long start = System.nanoTime();
+    try {
+      single.execute(waiting);
+      fail("expected the wait for a connection to time out");
+    } catch (SocketTimeoutException expected) {
+      // No connection came free within the connect timeout
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    single.shutdown();
+  }
+
+  @Test
+  public void asyncRequestRunsOnTheTransportsOwnThreads() throws Exception {
+    serve((connection, socket) -> {
+      while (readRequest(socket.getInputStream())) {
+        respond(socket.getOutputStream(), "ok");
+      }
+    });
+    final HttpResponse response = transport.executeAsync(request("GET"), null).get(5, TimeUnit.SECONDS);
+    response.close();
+    boolean found = false;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      found |= thread.getName().startsWith("aptr-pooled-io-");
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void asyncRequestFailsOnceShutDown() throws Exception {
+    transport.shutdown();
+    try {
+      transport.executeAsync(request("GET"), null).get(5, TimeUnit.SECONDS);
+      fail("expected the request to fail");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof IOException);
+    }
+  }
+}